@@ -0,0 +1,30 @@
+plugins {
+    id("me.champeau.jmh")
+}
+
+description = "jmccc benchmarks"
+
+dependencies {
+    jmh(project(":jmccc"))
+    jmh(project(":jmccc-mcdownloader"))
+    jmh("org.apache.httpcomponents:httpasyncclient:4.1.5")
+    jmh("org.apache.httpcomponents.client5:httpclient5:5.2.1")
+}
+
+jmh {
+    jmhVersion.set("1.37")
+    // -PjmhInclude=Checksum runs only the matching benchmarks
+    if (project.hasProperty("jmhInclude")) {
+        includes.set(listOf(project.property("jmhInclude").toString()))
+    }
+    // -PjmhProfilers=gc reports the allocation rates
+    if (project.hasProperty("jmhProfilers")) {
+        profilers.set(project.property("jmhProfilers").toString().split(",").toList())
+    }
+    resultFormat.set("JSON")
+}
+
+tasks.withType<AbstractPublishToMaven>().configureEach {
+    // benchmarks are not published
+    enabled = false
+}
@@ -0,0 +1,29 @@
+package org.to2mbn.jmccc.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+final class Benchmarks {
+
+    private Benchmarks() {
+    }
+
+    static void deleteRecursively(File directory) throws IOException {
+        if (directory == null || !directory.exists()) {
+            return;
+        }
+        List<File> files;
+        try (Stream<java.nio.file.Path> paths = Files.walk(directory.toPath())) {
+            files = paths.sorted(Comparator.reverseOrder()).map(java.nio.file.Path::toFile).collect(Collectors.toList());
+        }
+        for (File file : files) {
+            file.delete();
+        }
+    }
+
+}
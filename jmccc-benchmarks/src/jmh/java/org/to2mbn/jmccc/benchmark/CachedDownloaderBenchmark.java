@@ -0,0 +1,102 @@
+package org.to2mbn.jmccc.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.to2mbn.jmccc.mcdownloader.download.Downloader;
+import org.to2mbn.jmccc.mcdownloader.download.cache.CacheNames;
+import org.to2mbn.jmccc.mcdownloader.download.cache.CachedDownloaderBuilder;
+import org.to2mbn.jmccc.mcdownloader.download.io.JdkDownloaderBuilder;
+import org.to2mbn.jmccc.mcdownloader.download.tasks.DownloadTask;
+import org.to2mbn.jmccc.mcdownloader.download.tasks.FileDownloadTask;
+import org.to2mbn.jmccc.mcdownloader.download.tasks.MemoryDownloadTask;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures the hit and miss paths of the cached downloader, with the default
+ * in-memory cache and the disk cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CachedDownloaderBenchmark {
+
+    @Param({"memory", "disk"})
+    public String cache;
+
+    @Param({"65536", "4194304"})
+    public int size;
+
+    private final AtomicLong ids = new AtomicLong();
+
+    private LocalHttpServer server;
+    private Downloader downloader;
+    private File directory;
+    private File target;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        server = new LocalHttpServer(size);
+        directory = Files.createTempDirectory("jmccc-benchmark").toFile();
+        target = new File(directory, "target");
+
+        CachedDownloaderBuilder builder = CachedDownloaderBuilder.create(JdkDownloaderBuilder.create());
+        switch (cache) {
+            case "memory":
+                break;
+            case "disk":
+                builder.diskCache(new File(directory, "cache"), Long.MAX_VALUE);
+                break;
+            default:
+                throw new IllegalArgumentException(cache);
+        }
+        downloader = builder.build();
+
+        // fills the cache for the hit benchmarks
+        downloader.download(cacheable(new MemoryDownloadTask(server.uri(size))), null).get();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        downloader.shutdown();
+        server.close();
+        Benchmarks.deleteRecursively(directory);
+    }
+
+    @Benchmark
+    public byte[] memoryHit() throws Exception {
+        return downloader.download(cacheable(new MemoryDownloadTask(server.uri(size))), null).get();
+    }
+
+    @Benchmark
+    public Void fileHit() throws Exception {
+        return downloader.download(cacheable(new FileDownloadTask(server.uri(size), target)), null).get();
+    }
+
+    @Benchmark
+    public byte[] miss() throws Exception {
+        return downloader.download(cacheable(new MemoryDownloadTask(server.uri(size, ids.incrementAndGet()))), null).get();
+    }
+
+    private static <T> DownloadTask<T> cacheable(DownloadTask<T> task) {
+        return task.cacheable().cachePool(CacheNames.LIBRARY);
+    }
+
+}
@@ -0,0 +1,108 @@
+package org.to2mbn.jmccc.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.to2mbn.jmccc.util.ChecksumEngine;
+import org.to2mbn.jmccc.util.ChecksumUtils;
+import org.to2mbn.jmccc.util.HexUtils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the SHA-1 hashing of files, one by one and in batches.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ChecksumBenchmark {
+
+    /**
+     * The number of files in a batch, which are about the size of the assets.
+     */
+    private static final int BATCH_SIZE = 1000;
+    private static final int BATCH_FILE_SIZE = 16 * 1024;
+
+    @Param({"65536", "16777216"})
+    public int size;
+
+    private File directory;
+    private File file;
+    private List<ChecksumEngine.Request> batch;
+    private ChecksumEngine engine;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        directory = Files.createTempDirectory("jmccc-benchmark").toFile();
+        Random random = new Random(0);
+
+        byte[] data = new byte[size];
+        random.nextBytes(data);
+        file = new File(directory, "single");
+        Files.write(file.toPath(), data);
+
+        batch = new ArrayList<>(BATCH_SIZE);
+        byte[] small = new byte[BATCH_FILE_SIZE];
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            random.nextBytes(small);
+            File f = new File(directory, "batch-" + i);
+            Files.write(f.toPath(), small);
+            batch.add(new ChecksumEngine.Request(f, HexUtils.bytesToHex(ChecksumUtils.compute(f, "SHA-1")), small.length));
+        }
+
+        engine = new ChecksumEngine();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        engine.close();
+        Benchmarks.deleteRecursively(directory);
+    }
+
+    @Benchmark
+    public byte[] computeFile() throws Exception {
+        return ChecksumUtils.compute(file, "SHA-1");
+    }
+
+    @Benchmark
+    public byte[] computeStream() throws Exception {
+        try (InputStream in = new FileInputStream(file)) {
+            return ChecksumUtils.compute(in, "SHA-1");
+        }
+    }
+
+    @Benchmark
+    public boolean verifyBatchSequentially() throws Exception {
+        boolean valid = true;
+        for (ChecksumEngine.Request request : batch) {
+            valid &= ChecksumUtils.verify(request.getFile(), request.getChecksum(), "SHA-1", request.getSize());
+        }
+        return valid;
+    }
+
+    @Benchmark
+    public boolean[] verifyBatchInParallel() throws Exception {
+        return engine.verifyAll(batch);
+    }
+
+}
@@ -0,0 +1,110 @@
+package org.to2mbn.jmccc.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.to2mbn.jmccc.mcdownloader.download.Downloader;
+import org.to2mbn.jmccc.mcdownloader.download.combine.CombinedDownloadTask;
+import org.to2mbn.jmccc.mcdownloader.download.combine.CombinedDownloader;
+import org.to2mbn.jmccc.mcdownloader.download.combine.CombinedDownloaderBuilder;
+import org.to2mbn.jmccc.mcdownloader.download.concurrent.CompletedFuture;
+import org.to2mbn.jmccc.mcdownloader.download.concurrent.DownloadCallback;
+import org.to2mbn.jmccc.mcdownloader.download.tasks.DownloadTask;
+import org.to2mbn.jmccc.mcdownloader.download.tasks.MemoryDownloadTask;
+import org.to2mbn.jmccc.util.Builder;
+
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the overhead of submitting thousands of tiny subtasks to the
+ * combined downloader.
+ * <p>
+ * The underlying downloader completes every task immediately without any I/O,
+ * so only the scheduling and the callbacks are measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CombinedDownloaderBenchmark {
+
+    @Param({"1000", "10000"})
+    public int subtasks;
+
+    @Param({"true", "false"})
+    public boolean coalesce;
+
+    private CombinedDownloader downloader;
+    private CombinedDownloadTask<?>[] tasks;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        downloader = CombinedDownloaderBuilder.create(new Builder<Downloader>() {
+
+                    @Override
+                    public Downloader build() {
+                        return new ImmediateDownloader();
+                    }
+                })
+                .coalesceDownloads(coalesce)
+                .build();
+
+        tasks = new CombinedDownloadTask<?>[subtasks];
+        for (int i = 0; i < subtasks; i++) {
+            tasks[i] = CombinedDownloadTask.single(new MemoryDownloadTask("http://localhost/" + i));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        downloader.shutdown();
+    }
+
+    @Benchmark
+    public Void submitSubtasks() throws Exception {
+        return downloader.download(CombinedDownloadTask.multiple(tasks), null).get();
+    }
+
+    private static class ImmediateDownloader implements Downloader {
+
+        private volatile boolean shutdown;
+
+        @Override
+        public <T> Future<T> download(DownloadTask<T> task, DownloadCallback<T> callback) {
+            return download(task, callback, 1);
+        }
+
+        @Override
+        public <T> Future<T> download(DownloadTask<T> task, DownloadCallback<T> callback, int tries) {
+            if (callback != null) {
+                callback.done(null);
+            }
+            return new CompletedFuture<>(null);
+        }
+
+        @Override
+        public void shutdown() {
+            shutdown = true;
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return shutdown;
+        }
+
+    }
+
+}
@@ -0,0 +1,106 @@
+package org.to2mbn.jmccc.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.to2mbn.jmccc.mcdownloader.download.Downloader;
+import org.to2mbn.jmccc.mcdownloader.download.io.BufferPool;
+import org.to2mbn.jmccc.mcdownloader.download.io.JdkDownloaderBuilder;
+import org.to2mbn.jmccc.mcdownloader.download.io.async.HttpAsyncDownloaderBuilder;
+import org.to2mbn.jmccc.mcdownloader.download.io.http2.Http2DownloaderBuilder;
+import org.to2mbn.jmccc.mcdownloader.download.tasks.MemoryDownloadTask;
+
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the throughput of the downloader backends against a local server.
+ * <p>
+ * The http2 backend is measured against an HTTP/2 server, and the others are
+ * measured against an HTTP/1.1 server. The unpooled runs allocate a new buffer
+ * for each transfer (the http2 backend reads into the buffers of its client,
+ * so it's not affected); run with <code>-PjmhProfilers=gc</code> to compare the
+ * allocation rates.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DownloaderBenchmark {
+
+    @Param({"jdk", "async", "http2"})
+    public String backend;
+
+    @Param({"4096", "1048576", "16777216"})
+    public int size;
+
+    @Param({"true", "false"})
+    public boolean pooled;
+
+    private AutoCloseable server;
+    private URI uri;
+    private Downloader downloader;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        if ("http2".equals(backend)) {
+            LocalHttp2Server http2Server = new LocalHttp2Server(size);
+            server = http2Server;
+            uri = http2Server.uri(size);
+        } else {
+            LocalHttpServer httpServer = new LocalHttpServer(size);
+            server = httpServer;
+            uri = httpServer.uri(size);
+        }
+        switch (backend) {
+            case "jdk":
+                downloader = JdkDownloaderBuilder.create()
+                        .connectionReuse(true)
+                        .bufferPool(pooled ? null : new BufferPool(8192, 0, false))
+                        .build();
+                break;
+            case "async":
+                downloader = HttpAsyncDownloaderBuilder.create()
+                        .bufferPool(pooled ? null : new BufferPool(64 * 1024, 0, true))
+                        .build();
+                break;
+            case "http2":
+                // fails rather than falls back if HTTP/2 doesn't work
+                downloader = Http2DownloaderBuilder.create().fallbackEnabled(false).build();
+                break;
+            default:
+                throw new IllegalArgumentException(backend);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        downloader.shutdown();
+        server.close();
+    }
+
+    @Benchmark
+    public byte[] download() throws Exception {
+        return downloader.download(new MemoryDownloadTask(uri), null).get();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public byte[] downloadConcurrently() throws Exception {
+        return downloader.download(new MemoryDownloadTask(uri), null).get();
+    }
+
+}
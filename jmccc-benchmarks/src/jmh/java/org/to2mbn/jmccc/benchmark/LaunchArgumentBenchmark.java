@@ -0,0 +1,113 @@
+package org.to2mbn.jmccc.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.to2mbn.jmccc.auth.OfflineAuthenticator;
+import org.to2mbn.jmccc.launch.LaunchArgument;
+import org.to2mbn.jmccc.option.LaunchOption;
+import org.to2mbn.jmccc.option.MinecraftDirectory;
+import org.to2mbn.jmccc.version.DownloadInfo;
+import org.to2mbn.jmccc.version.Library;
+import org.to2mbn.jmccc.version.Version;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the rendering of the launch arguments of a modern version.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LaunchArgumentBenchmark {
+
+    private static final int LIBRARIES = 100;
+
+    private static final List<String> GAME_ARGS = Arrays.asList(
+            "--username", "${auth_player_name}",
+            "--version", "${version_name}",
+            "--gameDir", "${game_directory}",
+            "--assetsDir", "${assets_root}",
+            "--assetIndex", "${assets_index_name}",
+            "--uuid", "${auth_uuid}",
+            "--accessToken", "${auth_access_token}",
+            "--xuid", "${auth_xuid}",
+            "--userType", "${user_type}",
+            "--versionType", "${version_type}",
+            "--width", "${resolution_width}",
+            "--height", "${resolution_height}");
+
+    private static final List<String> JVM_ARGS = Arrays.asList(
+            "-XX:HeapDumpPath=MojangTricksIntelDriversForPerformance_javaw.exe_minecraft.exe.heapdump",
+            "-Djava.library.path=${natives_directory}",
+            "-Djna.tmpdir=${natives_directory}",
+            "-Dorg.lwjgl.system.SharedLibraryExtractPath=${natives_directory}",
+            "-Dio.netty.native.workdir=${natives_directory}",
+            "-Dminecraft.launcher.brand=${launcher_name}",
+            "-Dminecraft.launcher.version=${launcher_version}",
+            "-cp", "${classpath}");
+
+    private LaunchOption option;
+    private Map<String, String> variables;
+    private Set<File> libraries;
+    private File nativesDir;
+
+    @Setup
+    public void setup() throws Exception {
+        Version version = new Version("1.20.1", "release", "net.minecraft.client.main.Main", "5", GAME_ARGS, JVM_ARGS, null, "1.20.1", Collections.<Library>emptySet(), false, null, Collections.<String, DownloadInfo>emptyMap());
+        MinecraftDirectory mcdir = new MinecraftDirectory("mcdir");
+        option = new LaunchOption(version, new OfflineAuthenticator("player"), mcdir);
+        nativesDir = mcdir.getNatives(version);
+
+        libraries = new LinkedHashSet<>();
+        for (int i = 0; i < LIBRARIES; i++) {
+            libraries.add(new File(mcdir.getLibraries(), "org/example/library-" + i + "/1.0/library-" + i + "-1.0.jar"));
+        }
+
+        variables = new HashMap<>();
+        variables.put("auth_player_name", "player");
+        variables.put("version_name", version.getVersion());
+        variables.put("game_directory", mcdir.getAbsolutePath());
+        variables.put("assets_root", mcdir.getAssets().getAbsolutePath());
+        variables.put("assets_index_name", version.getAssets());
+        variables.put("auth_uuid", "00000000000000000000000000000000");
+        variables.put("auth_access_token", "00000000000000000000000000000000");
+        variables.put("auth_xuid", "0");
+        variables.put("user_type", "mojang");
+        variables.put("version_type", version.getType());
+        variables.put("resolution_width", "854");
+        variables.put("resolution_height", "480");
+        variables.put("natives_directory", nativesDir.getAbsolutePath());
+        variables.put("launcher_name", "jmccc");
+        variables.put("launcher_version", "3");
+    }
+
+    @Benchmark
+    public String[] generateCommandline() {
+        return new LaunchArgument(option, new HashMap<>(variables), libraries, nativesDir).generateCommandline();
+    }
+
+    @Benchmark
+    public List<String> renderGameArguments() {
+        return new LaunchArgument(option, variables, libraries, nativesDir).getGameArguments();
+    }
+
+}
@@ -0,0 +1,77 @@
+package org.to2mbn.jmccc.benchmark;
+
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.EntityDetails;
+import org.apache.hc.core5.http.HttpException;
+import org.apache.hc.core5.http.HttpRequest;
+import org.apache.hc.core5.http.Message;
+import org.apache.hc.core5.http.URIScheme;
+import org.apache.hc.core5.http.impl.bootstrap.HttpAsyncServer;
+import org.apache.hc.core5.http.nio.AsyncRequestConsumer;
+import org.apache.hc.core5.http.nio.AsyncServerRequestHandler;
+import org.apache.hc.core5.http.nio.entity.BasicAsyncEntityProducer;
+import org.apache.hc.core5.http.nio.entity.DiscardingEntityConsumer;
+import org.apache.hc.core5.http.nio.support.BasicRequestConsumer;
+import org.apache.hc.core5.http.nio.support.BasicResponseProducer;
+import org.apache.hc.core5.http.protocol.HttpContext;
+import org.apache.hc.core5.http2.HttpVersionPolicy;
+import org.apache.hc.core5.http2.impl.nio.bootstrap.H2ServerBootstrap;
+import org.apache.hc.core5.io.CloseMode;
+import org.apache.hc.core5.reactor.ListenerEndpoint;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * An in-process HTTP/2 (cleartext, prior knowledge) server which serves random
+ * data of the given size, in the same way as {@link LocalHttpServer}.
+ */
+class LocalHttp2Server implements AutoCloseable {
+
+    private static final String HOST = "127.0.0.1";
+
+    private final HttpAsyncServer server;
+    private final int port;
+    private final byte[] data;
+
+    public LocalHttp2Server(int maxSize) throws Exception {
+        data = new byte[maxSize];
+        new Random(0).nextBytes(data);
+
+        server = H2ServerBootstrap.bootstrap()
+                .setCanonicalHostName(HOST)
+                .setVersionPolicy(HttpVersionPolicy.FORCE_HTTP_2)
+                .register("/data/*", new AsyncServerRequestHandler<Message<HttpRequest, Void>>() {
+
+                    @Override
+                    public AsyncRequestConsumer<Message<HttpRequest, Void>> prepare(HttpRequest request, EntityDetails entityDetails, HttpContext context) {
+                        return new BasicRequestConsumer<>(entityDetails == null ? null : new DiscardingEntityConsumer<Void>());
+                    }
+
+                    @Override
+                    public void handle(Message<HttpRequest, Void> message, ResponseTrigger responseTrigger, HttpContext context) throws HttpException, IOException {
+                        String path = message.getHead().getPath();
+                        int size = Integer.parseInt(path.substring(path.lastIndexOf('/') + 1));
+                        responseTrigger.submitResponse(new BasicResponseProducer(200,
+                                new BasicAsyncEntityProducer(Arrays.copyOf(data, size), ContentType.APPLICATION_OCTET_STREAM)), context);
+                    }
+                })
+                .create();
+        server.start();
+        ListenerEndpoint endpoint = server.listen(new InetSocketAddress(HOST, 0), URIScheme.HTTP).get();
+        port = ((InetSocketAddress) endpoint.getAddress()).getPort();
+    }
+
+    public URI uri(int size) {
+        return URI.create("http://" + HOST + ":" + port + "/data/" + size);
+    }
+
+    @Override
+    public void close() {
+        server.close(CloseMode.IMMEDIATE);
+    }
+
+}
@@ -0,0 +1,70 @@
+package org.to2mbn.jmccc.benchmark;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An in-process HTTP server which serves random data of the given size.
+ * <p>
+ * <code>/data/{size}</code> responds with <code>size</code> bytes. Any query is
+ * ignored, so that distinct uris of the same resource can be built.
+ */
+class LocalHttpServer implements AutoCloseable {
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final AtomicLong requests = new AtomicLong();
+    private final byte[] data;
+
+    public LocalHttpServer(int maxSize) throws IOException {
+        data = new byte[maxSize];
+        new Random(0).nextBytes(data);
+
+        executor = Executors.newCachedThreadPool();
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 128);
+        server.setExecutor(executor);
+        server.createContext("/data/", new HttpHandler() {
+
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                requests.incrementAndGet();
+                String path = exchange.getRequestURI().getPath();
+                int size = Integer.parseInt(path.substring(path.lastIndexOf('/') + 1));
+                exchange.sendResponseHeaders(200, size);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(data, 0, size);
+                }
+            }
+        });
+        server.start();
+    }
+
+    public URI uri(int size) {
+        return URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/data/" + size);
+    }
+
+    public URI uri(int size, long id) {
+        return URI.create(uri(size) + "?id=" + id);
+    }
+
+    public long getRequests() {
+        return requests.get();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+}
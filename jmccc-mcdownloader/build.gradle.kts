@@ -2,6 +2,7 @@ dependencies {
     api(project(":jmccc"))
     implementation("org.tukaani:xz:1.9")
     implementation("org.apache.httpcomponents:httpasyncclient:4.1.5")
+    implementation("org.apache.httpcomponents.client5:httpclient5:5.2.1")
     implementation("org.ehcache.modules:ehcache-impl:3.10.8")
     implementation("javax.cache:cache-api:1.1.1")
     implementation("org.apache.commons:commons-compress:1.22")
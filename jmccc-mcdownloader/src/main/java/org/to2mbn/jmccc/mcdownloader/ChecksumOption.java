@@ -11,6 +11,14 @@ public enum ChecksumOption implements MinecraftDownloadOption {
     /**
      * Verify the checksums of assets.
      */
-    CHECK_ASSETS;
+    CHECK_ASSETS,
+
+    /**
+     * Hash all the files to verify, even if they haven't been changed since
+     * their last successful verification.
+     *
+     * @see VerificationIndex
+     */
+    IGNORE_VERIFICATION_INDEX;
 
 }
@@ -6,6 +6,7 @@ import org.to2mbn.jmccc.mcdownloader.download.combine.CombinedDownloadTask;
 import org.to2mbn.jmccc.mcdownloader.download.concurrent.CallbackAdapter;
 import org.to2mbn.jmccc.mcdownloader.provider.MinecraftDownloadProvider;
 import org.to2mbn.jmccc.option.MinecraftDirectory;
+import org.to2mbn.jmccc.util.ChecksumEngine;
 import org.to2mbn.jmccc.util.ChecksumUtils;
 import org.to2mbn.jmccc.util.IOUtils;
 import org.to2mbn.jmccc.version.Asset;
@@ -20,21 +21,27 @@ import java.security.NoSuchAlgorithmException;
 import java.util.*;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 class IncrementallyDownloadTask extends CombinedDownloadTask<Version> {
 
+    private static final Logger LOGGER = Logger.getLogger(IncrementallyDownloadTask.class.getCanonicalName());
+
     private MinecraftDirectory mcdir;
     private String version;
     private MinecraftDownloadProvider provider;
     private boolean checkLibrariesHash;
     private boolean checkAssetsHash;
+    private boolean useVerificationIndex;
     private boolean updateSnapshots;
     private AssetOption assetOption;
 
     private Set<String> handledVersions = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
     private String resolvedVersion;
+    private VerificationIndex verificationIndex;
 
-    public IncrementallyDownloadTask(MinecraftDownloadProvider downloadProvider, MinecraftDirectory mcdir, String version, boolean checkLibrariesHash, boolean checkAssetsHash, boolean updateSnapshots, AssetOption assetOption) {
+    public IncrementallyDownloadTask(MinecraftDownloadProvider downloadProvider, MinecraftDirectory mcdir, String version, boolean checkLibrariesHash, boolean checkAssetsHash, boolean useVerificationIndex, boolean updateSnapshots, AssetOption assetOption) {
         Objects.requireNonNull(mcdir);
         Objects.requireNonNull(version);
         Objects.requireNonNull(downloadProvider);
@@ -43,6 +50,7 @@ class IncrementallyDownloadTask extends CombinedDownloadTask<Version> {
         this.provider = downloadProvider;
         this.checkLibrariesHash = checkLibrariesHash;
         this.checkAssetsHash = checkAssetsHash;
+        this.useVerificationIndex = useVerificationIndex;
         this.updateSnapshots = updateSnapshots;
         this.assetOption = assetOption;
     }
@@ -51,6 +59,9 @@ class IncrementallyDownloadTask extends CombinedDownloadTask<Version> {
     public void execute(final CombinedDownloadContext<Version> context) throws Exception {
         handledVersions.clear();
         resolvedVersion = null;
+        verificationIndex = useVerificationIndex && (checkLibrariesHash || checkAssetsHash)
+                ? VerificationIndex.load(mcdir)
+                : null;
 
         handleVersionJson(version, context, new Callable<Void>() {
 
@@ -97,6 +108,14 @@ class IncrementallyDownloadTask extends CombinedDownloadTask<Version> {
 
                     @Override
                     public Void call() throws Exception {
+                        if (verificationIndex != null) {
+                            try {
+                                verificationIndex.save();
+                            } catch (IOException e) {
+                                // the files are still valid, they will be hashed again next time
+                                LOGGER.log(Level.WARNING, "Couldn't save the verification index", e);
+                            }
+                        }
                         context.done(versionModel);
                         return null;
                     }
@@ -161,20 +180,34 @@ class IncrementallyDownloadTask extends CombinedDownloadTask<Version> {
 
         final boolean fatal = assetOption == AssetOption.FORCIBLY_DOWNLOAD;
 
-        if (checkAssetsHash)
-            for (final Asset asset : hashMapping.values())
-                context.submit(new Callable<Void>() {
+        if (checkAssetsHash) {
+            final List<Asset> toVerify = new ArrayList<>(hashMapping.values());
+            context.submit(new Callable<Void>() {
 
-                    @Override
-                    public Void call() throws Exception {
-                        if (!asset.isValid(mcdir))
-                            context.submit(provider.asset(mcdir, asset), null, fatal);
-
-                        return null;
+                @Override
+                public Void call() throws Exception {
+                    List<ChecksumEngine.Request> requests = new ArrayList<>(toVerify.size());
+                    for (Asset asset : toVerify)
+                        requests.add(new ChecksumEngine.Request(mcdir.getAsset(asset), asset.getHash(), asset.getSize()));
+
+                    // hashes the assets in parallel, bounded by the engine rather than the combined executor
+                    boolean[] valid;
+                    try (ChecksumEngine engine = new ChecksumEngine()) {
+                        if (verificationIndex == null)
+                            valid = engine.verifyAll(requests);
+                        else
+                            valid = verificationIndex.verifyAll(engine, requests);
                     }
-                }, null, false);
 
-        else
+                    for (int i = 0; i < valid.length; i++)
+                        if (!valid[i])
+                            context.submit(provider.asset(mcdir, toVerify.get(i)), null, fatal);
+
+                    return null;
+                }
+            }, null, false);
+
+        } else
             for (Asset asset : hashMapping.values())
                 if (!mcdir.getAsset(asset).isFile())
                     context.submit(provider.asset(mcdir, asset), null, fatal);
@@ -216,7 +249,14 @@ class IncrementallyDownloadTask extends CombinedDownloadTask<Version> {
         if (info == null)
             return !target.isFile();
         else
-            return !ChecksumUtils.verify(target, info.getChecksum(), "SHA-1", info.getSize());
+            return !verify(target, info.getChecksum(), info.getSize());
+    }
+
+    private boolean verify(File file, String checksum, long size) throws NoSuchAlgorithmException, IOException {
+        if (verificationIndex == null)
+            return ChecksumUtils.verify(file, checksum, "SHA-1", size);
+        else
+            return verificationIndex.verify(file, checksum, size);
     }
 
     private void checkAndUpdate(final CombinedDownloadContext<?> context, final Library lib) throws InterruptedException {
@@ -57,6 +57,7 @@ class MinecraftDownloaderImpl implements MinecraftDownloader {
     public Future<Version> downloadIncrementally(MinecraftDirectory dir, String version, CombinedDownloadCallback<Version> callback, MinecraftDownloadOption... options) {
         boolean checkLibrariesHash = false;
         boolean checkAssetsHash = false;
+        boolean useVerificationIndex = true;
         boolean updateSnapshots = false;
         AssetOption assetOption = null;
         CacheOption cacheOption = null;
@@ -85,13 +86,16 @@ class MinecraftDownloaderImpl implements MinecraftDownloader {
                     case CHECK_LIBRARIES:
                         checkLibrariesHash = true;
                         break;
+                    case IGNORE_VERIFICATION_INDEX:
+                        useVerificationIndex = false;
+                        break;
                     default:
                         break;
                 }
             }
         }
 
-        CombinedDownloadTask<Version> task = new IncrementallyDownloadTask(downloadProvider, dir, version, checkLibrariesHash, checkAssetsHash, updateSnapshots, assetOption);
+        CombinedDownloadTask<Version> task = new IncrementallyDownloadTask(downloadProvider, dir, version, checkLibrariesHash, checkAssetsHash, useVerificationIndex, updateSnapshots, assetOption);
 
         if (cacheOption != null) {
             task = processCacheOption(task, cacheOption);
@@ -0,0 +1,405 @@
+package org.to2mbn.jmccc.mcdownloader;
+
+import org.to2mbn.jmccc.option.MinecraftDirectory;
+import org.to2mbn.jmccc.util.ChecksumEngine;
+import org.to2mbn.jmccc.util.ChecksumUtils;
+import org.to2mbn.jmccc.util.FileUtils;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Remembers the files which have been verified, so that they won't be hashed
+ * again until they are changed.
+ * <p>
+ * For each verified file, the index records its path, size, last modified
+ * time, file key (the inode on most platforms) and checksum. A file is
+ * considered valid without being hashed if all of them are unchanged. The index
+ * is stored in <code>${mcdir}/.jmccc/verification.index</code>.
+ * <p>
+ * Several installations may share the same minecraft directory. When the index
+ * is saved, the changes since it was loaded are merged into the index on disk
+ * under a file lock, so that the entries of the other installations are kept.
+ * <p>
+ * This class is thread-safe.
+ */
+public class VerificationIndex {
+
+    private static final Logger LOGGER = Logger.getLogger(VerificationIndex.class.getCanonicalName());
+
+    private static final String HEADER = "# jmccc verification index v1";
+
+    /**
+     * Files modified within this period before the verification are not
+     * recorded, because another modification in the same timestamp granularity
+     * couldn't be detected.
+     */
+    private static final long RACY_PERIOD = 2000;
+
+    // a FileLock is held by the whole JVM, so the indexes of the same file also share the same lock
+    private static final Map<Path, Lock> PROCESS_LOCKS = new ConcurrentHashMap<>();
+
+    private final Path root;
+    private final Path indexFile;
+    private final Path lockFile;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    // the keys whose entries have been added or removed since the last save
+    private final Set<String> changed = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    private VerificationIndex(Path root, Path indexFile) {
+        this.root = root;
+        this.indexFile = indexFile;
+        this.lockFile = indexFile.resolveSibling(indexFile.getFileName() + ".lock");
+    }
+
+    /**
+     * Loads the verification index of the given minecraft directory.
+     * <p>
+     * If the index doesn't exist or is corrupted, an empty index is returned.
+     *
+     * @param mcdir the minecraft directory
+     * @return the verification index
+     * @throws NullPointerException if <code>mcdir==null</code>
+     */
+    public static VerificationIndex load(MinecraftDirectory mcdir) {
+        Objects.requireNonNull(mcdir);
+        VerificationIndex index = new VerificationIndex(mcdir.getRoot().toPath().toAbsolutePath(), mcdir.get(".jmccc/verification.index"));
+        index.read(index.entries);
+        return index;
+    }
+
+    /**
+     * Verifies the given file, skipping the hashing if the file is unchanged
+     * since its last successful verification.
+     *
+     * @param file     the file to verify
+     * @param checksum the expected SHA-1 checksum (in hex), null if unknown
+     * @param size     the expected size of the file, -1 if unknown
+     * @return true if the file is valid
+     * @throws IOException              if an I/O error occurs
+     * @throws NoSuchAlgorithmException if SHA-1 is not supported
+     */
+    public boolean verify(File file, String checksum, long size) throws IOException, NoSuchAlgorithmException {
+        Objects.requireNonNull(file);
+
+        String key = keyOf(file);
+        Lookup lookup = lookup(key, file, checksum, size);
+        if (lookup.result != null) {
+            return lookup.result;
+        }
+
+        long verifyTime = System.currentTimeMillis();
+        boolean valid = ChecksumUtils.verify(file, checksum, "SHA-1", size);
+        record(key, lookup.current, valid, verifyTime);
+        return valid;
+    }
+
+    /**
+     * Verifies the given files, skipping the hashing of the files which are
+     * unchanged since their last successful verification. The rest of the
+     * files are hashed in parallel by the given engine.
+     *
+     * @param engine   the engine to hash the files
+     * @param requests the files to verify, only SHA-1 checksums are supported
+     * @return whether each file is valid, in the order of the requests
+     * @throws IOException              if an I/O error occurs
+     * @throws NoSuchAlgorithmException if SHA-1 is not supported
+     * @throws InterruptedException     if the current thread is interrupted
+     */
+    public boolean[] verifyAll(ChecksumEngine engine, List<ChecksumEngine.Request> requests) throws IOException, NoSuchAlgorithmException, InterruptedException {
+        Objects.requireNonNull(engine);
+        Objects.requireNonNull(requests);
+
+        boolean[] result = new boolean[requests.size()];
+        List<Integer> toHash = new ArrayList<>();
+        List<ChecksumEngine.Request> hashRequests = new ArrayList<>();
+        String[] keys = new String[result.length];
+        Entry[] current = new Entry[result.length];
+
+        // only the metadata are read in this pass
+        for (int i = 0; i < result.length; i++) {
+            ChecksumEngine.Request request = requests.get(i);
+            if (request.getChecksum() != null && !"SHA-1".equals(request.getAlgorithm())) {
+                throw new IllegalArgumentException("Unsupported algorithm: " + request.getAlgorithm());
+            }
+            keys[i] = keyOf(request.getFile());
+            Lookup lookup = lookup(keys[i], request.getFile(), request.getChecksum(), request.getSize());
+            if (lookup.result == null) {
+                current[i] = lookup.current;
+                toHash.add(i);
+                hashRequests.add(request);
+            } else {
+                result[i] = lookup.result;
+            }
+        }
+
+        long verifyTime = System.currentTimeMillis();
+        boolean[] hashed = engine.verifyAll(hashRequests);
+        for (int i = 0; i < hashed.length; i++) {
+            int idx = toHash.get(i);
+            result[idx] = hashed[i];
+            record(keys[idx], current[idx], hashed[i], verifyTime);
+        }
+        return result;
+    }
+
+    /**
+     * Forgets the verification of the given file.
+     *
+     * @param file the file
+     */
+    public void invalidate(File file) {
+        remove(keyOf(file));
+    }
+
+    /**
+     * Saves the index if it has been changed.
+     * <p>
+     * The changes are merged into the index on disk, which may have been
+     * saved by another installation since this index was loaded.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    public synchronized void save() throws IOException {
+        if (changed.isEmpty()) {
+            return;
+        }
+
+        FileUtils.prepareWrite(indexFile.toFile());
+        Lock processLock = processLockOf(indexFile);
+        processLock.lock();
+        List<String> saving = new ArrayList<>();
+        try (FileChannel lockChannel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            // the file lock is released when the channel is closed
+            lockChannel.lock();
+
+            Map<String, Entry> saved = new HashMap<>();
+            read(saved);
+            for (String key : changed) {
+                // the key is added again if it's changed during the save
+                changed.remove(key);
+                saving.add(key);
+                Entry entry = entries.get(key);
+                if (entry == null) {
+                    saved.remove(key);
+                } else {
+                    saved.put(key, entry);
+                }
+            }
+            write(saved);
+        } catch (Throwable e) {
+            changed.addAll(saving);
+            throw e;
+        } finally {
+            processLock.unlock();
+        }
+    }
+
+    /**
+     * Gets the number of files in the index.
+     *
+     * @return the number of files in the index
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Reads the index on disk into the given map. If the index is corrupted,
+     * nothing is read.
+     */
+    private void read(Map<String, Entry> target) {
+        if (!Files.isRegularFile(indexFile)) {
+            return;
+        }
+        Map<String, Entry> result = new HashMap<>();
+        try (BufferedReader reader = Files.newBufferedReader(indexFile, StandardCharsets.UTF_8)) {
+            if (!HEADER.equals(reader.readLine())) {
+                throw new IOException("Unknown format");
+            }
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t", -1);
+                if (fields.length != 5) {
+                    throw new IOException("Malformed line: " + line);
+                }
+                result.put(fields[0], new Entry(Long.parseLong(fields[1]), Long.parseLong(fields[2]), fields[3], fields[4]));
+            }
+        } catch (IOException | RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Couldn't read the verification index " + indexFile + ", discarding", e);
+            return;
+        }
+        target.putAll(result);
+    }
+
+    private void write(Map<String, Entry> toWrite) throws IOException {
+        // a unique temporary file, in case the lock is not honored by the file system
+        Path tmp = Files.createTempFile(indexFile.getParent(), indexFile.getFileName().toString(), ".tmp");
+        try {
+            try (BufferedWriter writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+                writer.write(HEADER);
+                writer.newLine();
+                for (Map.Entry<String, Entry> mapping : toWrite.entrySet()) {
+                    Entry entry = mapping.getValue();
+                    writer.write(mapping.getKey() + '\t' + entry.size + '\t' + entry.lastModified + '\t' + entry.fileKey + '\t' + entry.checksum);
+                    writer.newLine();
+                }
+            }
+            try {
+                Files.move(tmp, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, indexFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private Lookup lookup(String key, File file, String checksum, long size) throws IOException {
+        BasicFileAttributes attributes = stat(file);
+        if (attributes == null || !attributes.isRegularFile()) {
+            remove(key);
+            return new Lookup(false, null);
+        }
+        if (size != -1 && attributes.size() != size) {
+            remove(key);
+            return new Lookup(false, null);
+        }
+
+        Entry current = new Entry(attributes.size(), attributes.lastModifiedTime().toMillis(), fileKeyOf(attributes), checksum);
+        if (key != null && current.equals(entries.get(key))) {
+            return new Lookup(true, current);
+        }
+        return new Lookup(null, current);
+    }
+
+    private void record(String key, Entry current, boolean valid, long verifyTime) {
+        if (!valid) {
+            remove(key);
+        } else if (key != null && current.checksum != null && verifyTime - current.lastModified > RACY_PERIOD) {
+            entries.put(key, current);
+            changed.add(key);
+        }
+    }
+
+    private void remove(String key) {
+        if (key != null && entries.remove(key) != null) {
+            changed.add(key);
+        }
+    }
+
+    /**
+     * Returns the path of the file relative to the minecraft directory, or null
+     * if the file is out of the minecraft directory.
+     */
+    private String keyOf(File file) {
+        Path path = file.toPath().toAbsolutePath().normalize();
+        if (!path.startsWith(root)) {
+            return null;
+        }
+        return root.relativize(path).toString().replace(File.separatorChar, '/');
+    }
+
+    private static Lock processLockOf(Path indexFile) {
+        Path key = indexFile.toAbsolutePath().normalize();
+        Lock lock = PROCESS_LOCKS.get(key);
+        if (lock == null) {
+            Lock newLock = new ReentrantLock();
+            lock = PROCESS_LOCKS.putIfAbsent(key, newLock);
+            if (lock == null) {
+                lock = newLock;
+            }
+        }
+        return lock;
+    }
+
+    private static BasicFileAttributes stat(File file) throws IOException {
+        try {
+            return Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    private static String fileKeyOf(BasicFileAttributes attributes) {
+        Object fileKey = attributes.fileKey();
+        return fileKey == null ? "" : fileKey.toString();
+    }
+
+    private static class Lookup {
+
+        /**
+         * The result of the verification, or null if the file needs to be
+         * hashed.
+         */
+        final Boolean result;
+        final Entry current;
+
+        Lookup(Boolean result, Entry current) {
+            this.result = result;
+            this.current = current;
+        }
+
+    }
+
+    private static class Entry {
+
+        final long size;
+        final long lastModified;
+        final String fileKey;
+        final String checksum;
+
+        Entry(long size, long lastModified, String fileKey, String checksum) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.fileKey = fileKey;
+            this.checksum = checksum == null ? null : checksum.toLowerCase();
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(size, lastModified, fileKey, checksum);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj == this) {
+                return true;
+            }
+            if (obj instanceof Entry) {
+                Entry another = (Entry) obj;
+                return size == another.size
+                        && lastModified == another.lastModified
+                        && fileKey.equals(another.fileKey)
+                        && Objects.equals(checksum, another.checksum);
+            }
+            return false;
+        }
+
+    }
+
+}
@@ -33,4 +33,15 @@ public final class CacheNames {
     private CacheNames() {
     }
 
+    /**
+     * Returns true if the resources in the given cache pool never change once
+     * they are published, such as libraries and assets.
+     *
+     * @param cachePool the name of the cache pool
+     * @return true if the cache pool is static
+     */
+    public static boolean isStatic(String cachePool) {
+        return cachePool != null && cachePool.startsWith(PREFIX_STATIC);
+    }
+
 }
@@ -2,16 +2,25 @@ package org.to2mbn.jmccc.mcdownloader.download.cache;
 
 import org.to2mbn.jmccc.mcdownloader.download.Downloader;
 import org.to2mbn.jmccc.mcdownloader.download.cache.provider.CacheProvider;
+import org.to2mbn.jmccc.mcdownloader.download.cache.provider.FileCacheProvider;
 import org.to2mbn.jmccc.mcdownloader.download.concurrent.CompletedFuture;
 import org.to2mbn.jmccc.mcdownloader.download.concurrent.DownloadCallback;
+import org.to2mbn.jmccc.mcdownloader.download.tasks.ByteRange;
 import org.to2mbn.jmccc.mcdownloader.download.tasks.DownloadSession;
 import org.to2mbn.jmccc.mcdownloader.download.tasks.DownloadTask;
+import org.to2mbn.jmccc.mcdownloader.download.tasks.ResumePoint;
+import org.to2mbn.jmccc.mcdownloader.download.tasks.SegmentedDownloadSession;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.lang.ref.SoftReference;
 import java.net.URI;
 import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.Objects;
 import java.util.concurrent.Future;
 import java.util.logging.Level;
@@ -63,14 +72,29 @@ class CachedDownloader implements Downloader {
             if (LOGGER.isLoggable(Level.FINER))
                 LOGGER.finer(String.format("Resolved the cache pool of [%s]: [%s] -> [%s]", uri, task.getCachePool(), pool));
 
-            byte[] cached = cacheProvider.get(pool, uri);
+            Object cached;
+            if (cacheProvider instanceof FileCacheProvider) {
+                cached = ((FileCacheProvider<URI>) cacheProvider).getFile(pool, uri);
+            } else {
+                cached = cacheProvider.get(pool, uri);
+            }
             if (cached == null) {
                 return submitToUpstream(new CachingDownloadTask<>(task), callback, tries);
             } else {
 
                 T result;
+                long length;
                 try {
-                    result = processCache(task, cached);
+                    if (cached instanceof Path) {
+                        String checksum = ((FileCacheProvider<URI>) cacheProvider).getChecksum((Path) cached);
+                        try (FileChannel channel = FileChannel.open((Path) cached, StandardOpenOption.READ)) {
+                            length = channel.size();
+                            result = processCache(task, channel, length, checksum);
+                        }
+                    } else {
+                        length = ((byte[]) cached).length;
+                        result = processCache(task, (byte[]) cached);
+                    }
                 } catch (Throwable e) {
                     cacheProvider.remove(pool, uri);
 
@@ -81,7 +105,7 @@ class CachedDownloader implements Downloader {
                 }
 
                 if (LOGGER.isLoggable(Level.FINE))
-                    LOGGER.fine(String.format("Applied cache [%s] from [%s], length=%d", uri, pool, cached.length));
+                    LOGGER.fine(String.format("Applied cache [%s] from [%s], length=%d", uri, pool, length));
 
                 if (callback != null) {
                     callback.done(result);
@@ -112,6 +136,21 @@ class CachedDownloader implements Downloader {
         return session.completed();
     }
 
+    private <T> T processCache(DownloadTask<T> task, FileChannel cached, long length, String checksum) throws Exception {
+        DownloadSession<T> session = task.createSession(length);
+        try {
+            if (checksum == null) {
+                session.receiveData(cached, 0, length);
+            } else {
+                session.receiveData(cached, 0, length, checksum);
+            }
+        } catch (Throwable e) {
+            session.failed();
+            throw e;
+        }
+        return session.completed();
+    }
+
     private String resolveCachePool(String unresolved) {
         if (unresolved == null) {
             return CacheNames.DEFAULT;
@@ -133,6 +172,14 @@ class CachedDownloader implements Downloader {
         return String.format("CachedDownloader [upstream=%s, cacheProvider=%s]", upstream, cacheProvider);
     }
 
+    /**
+     * Tees the data received by the proxied task into the cache.
+     * <p>
+     * Only the sessions which receive the full resource from the beginning are
+     * cached. A resumed session, a ranged request or a segmented session is
+     * passed through, since the data are not received in order from the
+     * beginning.
+     */
     private class CachingDownloadTask<T> extends DownloadTask<T> {
 
         private final DownloadTask<T> proxiedTask;
@@ -144,12 +191,63 @@ class CachedDownloader implements Downloader {
 
         @Override
         public DownloadSession<T> createSession() throws IOException {
-            return new CachingDownloadSession(proxiedTask.createSession(), 8192);
+            return createCachingSession(proxiedTask.createSession(), 8192);
         }
 
         @Override
         public DownloadSession<T> createSession(long length) throws IOException {
-            return new CachingDownloadSession(proxiedTask.createSession(length), length);
+            return createCachingSession(proxiedTask.createSession(length), length);
+        }
+
+        @Override
+        public ResumePoint getResumePoint() throws IOException {
+            return proxiedTask.getResumePoint();
+        }
+
+        @Override
+        public DownloadSession<T> createSession(ResumePoint resumePoint, long length) throws IOException {
+            DownloadSession<T> session = proxiedTask.createSession(resumePoint, length);
+            if (!resumePoint.isBeginning() || proxiedTask.getRequestRange() != null) {
+                return session;
+            }
+            return createCachingSession(session, length == -1 ? 8192 : length);
+        }
+
+        @Override
+        public ByteRange getRequestRange() {
+            return proxiedTask.getRequestRange();
+        }
+
+        @Override
+        public boolean isSegmentable() {
+            return proxiedTask.isSegmentable();
+        }
+
+        @Override
+        public SegmentedDownloadSession<T> createSegmentedSession(long length) throws IOException {
+            return proxiedTask.createSegmentedSession(length);
+        }
+
+        @Override
+        public Object getCoalescingKey() {
+            return proxiedTask.getCoalescingKey();
+        }
+
+        private DownloadSession<T> createCachingSession(DownloadSession<T> proxiedSession, long length) {
+            if (cacheProvider instanceof FileCacheProvider) {
+                URI uri = proxiedTask.getURI();
+                String pool = resolveCachePool(proxiedTask.getCachePool());
+                FileCacheProvider.Writer writer;
+                try {
+                    writer = ((FileCacheProvider<URI>) cacheProvider).newWriter(pool, uri);
+                } catch (IOException e) {
+                    LOGGER.log(Level.WARNING, String.format("Couldn't cache [%s] into [%s]", uri, pool), e);
+                    return proxiedSession;
+                }
+                return new FileCachingDownloadSession(proxiedSession, writer);
+            } else {
+                return new CachingDownloadSession(proxiedSession, length);
+            }
         }
 
         private class CachingDownloadSession implements DownloadSession<T> {
@@ -158,12 +256,16 @@ class CachedDownloader implements Downloader {
 
             // use SoftReference to prevent OOM
             private SoftReference<ByteArrayOutputStream> bufRef;
+            private WritableByteChannel bufChannel;
 
             public CachingDownloadSession(DownloadSession<T> proxiedSession, long length) {
                 this.proxiedSession = proxiedSession;
                 if (length < Integer.MAX_VALUE) {
                     try {
-                        bufRef = new SoftReference<>(new ByteArrayOutputStream((int) length));
+                        ByteArrayOutputStream buf = new ByteArrayOutputStream((int) length);
+                        bufRef = new SoftReference<>(buf);
+                        // the channel reuses its transfer buffer, so no array is allocated per chunk
+                        bufChannel = Channels.newChannel(buf);
                     } catch (OutOfMemoryError e) {
                         dropCache();
                     }
@@ -172,16 +274,16 @@ class CachedDownloader implements Downloader {
 
             @Override
             public void receiveData(ByteBuffer data) throws IOException {
-                byte[] copiedData = new byte[data.remaining()];
-                data.get(copiedData);
+                ByteBuffer teed = data.duplicate();
 
-                proxiedSession.receiveData(ByteBuffer.wrap(copiedData));
+                proxiedSession.receiveData(data);
 
                 if (bufRef != null) {
                     try {
-                        ByteArrayOutputStream buf = bufRef.get();
-                        if (buf != null) {
-                            buf.write(copiedData);
+                        if (bufRef.get() == null) {
+                            dropCache();
+                        } else {
+                            bufChannel.write(teed);
                         }
                     } catch (OutOfMemoryError e) {
                         dropCache();
@@ -213,6 +315,7 @@ class CachedDownloader implements Downloader {
                     bufRef.clear();
                     bufRef = null;
                 }
+                bufChannel = null;
             }
 
             private void saveCache() {
@@ -236,6 +339,71 @@ class CachedDownloader implements Downloader {
 
         }
 
+        /**
+         * Streams the received data into a {@link FileCacheProvider}, instead
+         * of buffering them in the heap.
+         */
+        private class FileCachingDownloadSession implements DownloadSession<T> {
+
+            private final DownloadSession<T> proxiedSession;
+            private FileCacheProvider.Writer writer;
+
+            public FileCachingDownloadSession(DownloadSession<T> proxiedSession, FileCacheProvider.Writer writer) {
+                this.proxiedSession = proxiedSession;
+                this.writer = writer;
+            }
+
+            @Override
+            public void receiveData(ByteBuffer data) throws IOException {
+                ByteBuffer teed = data.duplicate();
+
+                proxiedSession.receiveData(data);
+
+                if (writer != null) {
+                    try {
+                        writer.write(teed);
+                    } catch (IOException e) {
+                        LOGGER.log(Level.WARNING, "Couldn't write cache [" + proxiedTask.getURI() + "]", e);
+                        dropCache();
+                    }
+                }
+            }
+
+            @Override
+            public T completed() throws Exception {
+                T result;
+                try {
+                    result = proxiedSession.completed();
+                } catch (Throwable e) {
+                    dropCache();
+                    throw e;
+                }
+                if (writer != null) {
+                    try {
+                        writer.commit();
+                    } catch (IOException e) {
+                        LOGGER.log(Level.WARNING, "Couldn't write cache [" + proxiedTask.getURI() + "]", e);
+                    }
+                    writer = null;
+                }
+                return result;
+            }
+
+            @Override
+            public void failed() throws Exception {
+                dropCache();
+                proxiedSession.failed();
+            }
+
+            private void dropCache() {
+                if (writer != null) {
+                    writer.abort();
+                    writer = null;
+                }
+            }
+
+        }
+
     }
 
 }
@@ -5,11 +5,13 @@ import org.ehcache.config.builders.ResourcePoolsBuilder;
 import org.ehcache.config.units.MemoryUnit;
 import org.to2mbn.jmccc.mcdownloader.download.Downloader;
 import org.to2mbn.jmccc.mcdownloader.download.cache.provider.CacheProvider;
+import org.to2mbn.jmccc.mcdownloader.download.cache.provider.DiskCacheProvider;
 import org.to2mbn.jmccc.mcdownloader.download.cache.provider.EhcacheProvider;
 import org.to2mbn.jmccc.mcdownloader.download.cache.provider.JCacheProvider;
 import org.to2mbn.jmccc.util.Builder;
 import org.to2mbn.jmccc.util.Builders;
 
+import java.io.File;
 import java.net.URI;
 import java.time.Duration;
 import java.util.Objects;
@@ -49,6 +51,37 @@ public class CachedDownloaderBuilder implements Builder<Downloader> {
         return this;
     }
 
+    // === Disk cache Supports
+
+    /**
+     * Uses a persistent disk cache, which can be shared by several processes.
+     *
+     * @param directory the cache directory
+     * @param maxSize   the max total size (in bytes) of the cached data
+     * @return the builder itself
+     * @see DiskCacheProvider
+     */
+    public CachedDownloaderBuilder diskCache(File directory, long maxSize) {
+        return diskCache(directory, maxSize, DEFAULT_CACHE_TTL, DEFAULT_CACHE_TTL_UNIT);
+    }
+
+    /**
+     * Uses a persistent disk cache, which can be shared by several processes.
+     *
+     * @param directory      the cache directory
+     * @param maxSize        the max total size (in bytes) of the cached data
+     * @param expireTime     how long the entries in non-static cache pools live
+     * @param expireTimeUnit the unit of <code>expireTime</code>
+     * @return the builder itself
+     * @see DiskCacheProvider
+     */
+    public CachedDownloaderBuilder diskCache(File directory, long maxSize, long expireTime, TimeUnit expireTimeUnit) {
+        this.cacheProvider = new DiskCacheProviderBuilder(Objects.requireNonNull(directory), maxSize, expireTime, Objects.requireNonNull(expireTimeUnit));
+        return this;
+    }
+
+    // ===
+
     // === Ehcache Supports
 
     public CachedDownloaderBuilder ehcache(Builder<? extends org.ehcache.CacheManager> ehcache, boolean autoClose) {
@@ -160,6 +193,26 @@ public class CachedDownloaderBuilder implements Builder<Downloader> {
         return provider;
     }
 
+    private static class DiskCacheProviderBuilder implements Builder<CacheProvider<URI, byte[]>> {
+
+        private File directory;
+        private long maxSize;
+        private long expireTime;
+        private TimeUnit expireTimeUnit;
+
+        public DiskCacheProviderBuilder(File directory, long maxSize, long expireTime, TimeUnit expireTimeUnit) {
+            this.directory = directory;
+            this.maxSize = maxSize;
+            this.expireTime = expireTime;
+            this.expireTimeUnit = expireTimeUnit;
+        }
+
+        @Override
+        public CacheProvider<URI, byte[]> build() {
+            return new DiskCacheProvider(directory, maxSize, expireTime, expireTimeUnit);
+        }
+    }
+
     private static class EhcacheProviderBuilder implements Builder<CacheProvider<URI, byte[]>> {
 
         private Builder<? extends org.ehcache.CacheManager> ehcache;
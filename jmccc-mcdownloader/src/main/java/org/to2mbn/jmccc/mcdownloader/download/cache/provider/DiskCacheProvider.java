@@ -0,0 +1,717 @@
+package org.to2mbn.jmccc.mcdownloader.download.cache.provider;
+
+import org.to2mbn.jmccc.mcdownloader.download.cache.CacheNames;
+import org.to2mbn.jmccc.util.HexUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A persistent, content-addressed cache provider which stores the cache on
+ * disk.
+ * <p>
+ * The layout of the cache directory is:
+ * <pre>
+ * ${directory}/
+ *     objects/ab/abcdef...      the cached data, named by its SHA-1 checksum
+ *     index/${pool}/0123ab...   the index entries, named by the SHA-1 checksum of the uri
+ *     tmp/                      the files being written
+ *     lock                      the lock file, which also holds the total size of the objects
+ * </pre>
+ * An index entry contains the SHA-1 checksum of the data, the creation time,
+ * the uri and the length of the data. Several uris with the same content share
+ * the same object. The length of an object is checked whenever it's read, and
+ * the checksum is verified when it's read by this provider for the first time,
+ * so a corrupted object is treated as a cache miss.
+ * <p>
+ * All the files are written to <code>tmp/</code> at first, and then moved to
+ * the destination atomically. Only the index entries are forced to the storage
+ * device; an object torn by a crash fails the verification, and is treated as
+ * a cache miss. Writes and evictions are guarded by a file lock, so the cache
+ * directory can be shared by several processes. The total size of the objects
+ * is kept in the lock file, and read whenever the lock is acquired, so the
+ * limit holds for all the processes. When the total size exceeds the limit,
+ * the least recently used objects are evicted, along with the index entries
+ * whose objects no longer exist.
+ * <p>
+ * The entries in static cache pools (see {@link CacheNames#isStatic(String)})
+ * never expire. The entries in other cache pools expire after the given time.
+ */
+public class DiskCacheProvider implements FileCacheProvider<URI> {
+
+    private static final Logger LOGGER = Logger.getLogger(DiskCacheProvider.class.getCanonicalName());
+
+    private static final String OBJECTS = "objects";
+    private static final String INDEX = "index";
+    private static final String TMP = "tmp";
+    private static final String LOCK = "lock";
+    private static final int BUFFER_SIZE = 65536;
+
+    // a FileLock is held by the whole JVM, so the providers sharing the same directory also share the same lock
+    private static final Map<Path, Lock> PROCESS_LOCKS = new ConcurrentHashMap<>();
+
+    private final Path directory;
+    private final long maxSize;
+    private final long expireTime;
+
+    private final Lock processLock;
+
+    // the objects whose checksums have been verified by this provider
+    private final Set<Path> verifiedObjects = Collections.newSetFromMap(new ConcurrentHashMap<Path, Boolean>());
+
+    /**
+     * Constructs a DiskCacheProvider.
+     *
+     * @param directory      the cache directory
+     * @param maxSize        the max total size (in bytes) of the cached data
+     * @param expireTime     how long the entries in non-static cache pools live
+     * @param expireTimeUnit the unit of <code>expireTime</code>
+     * @throws NullPointerException     if
+     *                                  <code>directory==null || expireTimeUnit==null</code>
+     * @throws IllegalArgumentException if <code>maxSize &lt;= 0</code>
+     */
+    public DiskCacheProvider(File directory, long maxSize, long expireTime, TimeUnit expireTimeUnit) {
+        Objects.requireNonNull(directory);
+        Objects.requireNonNull(expireTimeUnit);
+        if (maxSize <= 0)
+            throw new IllegalArgumentException("maxSize <= 0");
+
+        this.directory = directory.toPath().toAbsolutePath().normalize();
+        this.maxSize = maxSize;
+        this.expireTime = expireTimeUnit.toMillis(expireTime);
+
+        Lock lock = PROCESS_LOCKS.get(this.directory);
+        if (lock == null) {
+            Lock newLock = new ReentrantLock();
+            lock = PROCESS_LOCKS.putIfAbsent(this.directory, newLock);
+            if (lock == null) {
+                lock = newLock;
+            }
+        }
+        processLock = lock;
+    }
+
+    /**
+     * Constructs a DiskCacheProvider whose entries in non-static cache pools
+     * expire after 2 hours.
+     *
+     * @param directory the cache directory
+     * @param maxSize   the max total size (in bytes) of the cached data
+     * @throws NullPointerException     if <code>directory==null</code>
+     * @throws IllegalArgumentException if <code>maxSize &lt;= 0</code>
+     */
+    public DiskCacheProvider(File directory, long maxSize) {
+        this(directory, maxSize, 2, TimeUnit.HOURS);
+    }
+
+    private static MessageDigest newSha1() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 is not supported", e);
+        }
+    }
+
+    private static byte[] sha1(byte[] data) {
+        return newSha1().digest(data);
+    }
+
+    private static byte[] sha1(Path file) throws IOException {
+        MessageDigest digest = newSha1();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buf = ByteBuffer.allocate(BUFFER_SIZE);
+            while (channel.read(buf) != -1) {
+                ((java.nio.Buffer) buf).flip();
+                digest.update(buf);
+                ((java.nio.Buffer) buf).clear();
+            }
+        }
+        return digest.digest();
+    }
+
+    private static String toPathName(String cachePool) {
+        StringBuilder sb = new StringBuilder(cachePool.length());
+        for (int i = 0; i < cachePool.length(); i++) {
+            char ch = cachePool.charAt(i);
+            if ((ch >= 'a' && ch <= 'z') || (ch >= 'A' && ch <= 'Z') || (ch >= '0' && ch <= '9') || ch == '.' || ch == '-' || ch == '_') {
+                sb.append(ch);
+            } else {
+                sb.append('_');
+            }
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public byte[] get(String cachePool, URI key) {
+        Path indexFile = getIndexFile(cachePool, key);
+        try {
+            IndexEntry entry = lookup(cachePool, key, indexFile);
+            if (entry == null) {
+                return null;
+            }
+
+            Path object = getObjectFile(entry.checksum);
+            byte[] data;
+            try {
+                data = Files.readAllBytes(object);
+            } catch (NoSuchFileException e) {
+                // the object has been evicted
+                Files.deleteIfExists(indexFile);
+                return null;
+            }
+
+            if (!HexUtils.bytesToHex(sha1(data)).equals(entry.checksum)) {
+                removeCorrupted(indexFile, object);
+                return null;
+            }
+
+            touch(object);
+            return data;
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Couldn't read cache [" + key + "] from [" + cachePool + "]", e);
+            return null;
+        }
+    }
+
+    @Override
+    public Path getFile(String cachePool, URI key) {
+        Path indexFile = getIndexFile(cachePool, key);
+        try {
+            IndexEntry entry = lookup(cachePool, key, indexFile);
+            if (entry == null) {
+                return null;
+            }
+
+            Path object = getObjectFile(entry.checksum);
+            boolean valid;
+            try {
+                valid = (entry.length == -1 || Files.size(object) == entry.length)
+                        && (verifiedObjects.contains(object) || HexUtils.bytesToHex(sha1(object)).equals(entry.checksum));
+            } catch (NoSuchFileException e) {
+                // the object has been evicted
+                Files.deleteIfExists(indexFile);
+                return null;
+            }
+
+            if (!valid) {
+                removeCorrupted(indexFile, object);
+                return null;
+            }
+
+            verifiedObjects.add(object);
+            touch(object);
+            return object;
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Couldn't read cache [" + key + "] from [" + cachePool + "]", e);
+            return null;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The objects are named by their SHA-1 checksums.
+     */
+    @Override
+    public String getChecksum(Path file) {
+        Path objectsDir = directory.resolve(OBJECTS);
+        if (!file.startsWith(objectsDir) || file.getNameCount() != objectsDir.getNameCount() + 2) {
+            return null;
+        }
+        return file.getFileName().toString();
+    }
+
+    @Override
+    public Writer newWriter(final String cachePool, final URI key) throws IOException {
+        Path tmpDir = directory.resolve(TMP);
+        Files.createDirectories(tmpDir);
+        final Path tmp = Files.createTempFile(tmpDir, "entry", ".tmp");
+        final FileChannel channel;
+        try {
+            channel = FileChannel.open(tmp, StandardOpenOption.WRITE);
+        } catch (Throwable e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+        final MessageDigest digest = newSha1();
+
+        return new Writer() {
+
+            private long length;
+
+            @Override
+            public void write(ByteBuffer data) throws IOException {
+                ByteBuffer digested = data.duplicate();
+                while (data.hasRemaining()) {
+                    length += channel.write(data);
+                }
+                digest.update(digested);
+            }
+
+            @Override
+            public void commit() throws IOException {
+                try {
+                    channel.close();
+                    String checksum = HexUtils.bytesToHex(digest.digest());
+                    DirectoryLock lock = acquireLock();
+                    try {
+                        Path object = getObjectFile(checksum);
+                        if (Files.exists(object)) {
+                            touch(object);
+                        } else {
+                            Files.createDirectories(object.getParent());
+                            move(tmp, object);
+                            lock.setSize(lock.getSize() + length);
+                            verifiedObjects.add(object);
+                        }
+                        writeIndex(cachePool, key, checksum, length);
+                        if (lock.getSize() > maxSize) {
+                            evict(lock);
+                        }
+                    } finally {
+                        lock.release();
+                    }
+
+                    if (LOGGER.isLoggable(Level.FINE))
+                        LOGGER.fine(String.format("Cached [%s] into [%s], length=%d", key, cachePool, length));
+                } finally {
+                    Files.deleteIfExists(tmp);
+                }
+            }
+
+            @Override
+            public void abort() {
+                try {
+                    channel.close();
+                    Files.deleteIfExists(tmp);
+                } catch (IOException e) {
+                    LOGGER.log(Level.WARNING, "Couldn't delete temporary file " + tmp, e);
+                }
+            }
+        };
+    }
+
+    private IndexEntry lookup(String cachePool, URI key, Path indexFile) throws IOException {
+        IndexEntry entry = readIndex(indexFile);
+        if (entry == null || !entry.uri.equals(key.toString())) {
+            return null;
+        }
+
+        if (!CacheNames.isStatic(cachePool) && System.currentTimeMillis() - entry.created > expireTime) {
+            Files.deleteIfExists(indexFile);
+            return null;
+        }
+        return entry;
+    }
+
+    private void removeCorrupted(Path indexFile, Path object) throws IOException {
+        LOGGER.warning("Removing corrupted cache object " + object);
+        verifiedObjects.remove(object);
+        Files.deleteIfExists(indexFile);
+        deleteObject(object);
+    }
+
+    @Override
+    public void put(String cachePool, URI key, byte[] value) {
+        String checksum = HexUtils.bytesToHex(sha1(value));
+        try {
+            DirectoryLock lock = acquireLock();
+            try {
+                Path object = getObjectFile(checksum);
+                if (Files.exists(object)) {
+                    touch(object);
+                } else {
+                    writeAtomically(object, value, false);
+                    lock.setSize(lock.getSize() + value.length);
+                    verifiedObjects.add(object);
+                }
+
+                writeIndex(cachePool, key, checksum, value.length);
+
+                if (lock.getSize() > maxSize) {
+                    evict(lock);
+                }
+            } finally {
+                lock.release();
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Couldn't write cache [" + key + "] into [" + cachePool + "]", e);
+        }
+    }
+
+    @Override
+    public void remove(String cachePool, URI key) {
+        // the object may be shared with other entries, it will be evicted when it's no longer used
+        try {
+            Files.deleteIfExists(getIndexFile(cachePool, key));
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Couldn't remove cache [" + key + "] from [" + cachePool + "]", e);
+        }
+    }
+
+    @Override
+    public boolean hasCache(String cachePool) {
+        // every cache pool is stored in its own directory
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        // no resource is held between operations
+    }
+
+    /**
+     * Gets the total size of the cached data.
+     *
+     * @return the total size (in bytes) of the cached data
+     * @throws IOException if an I/O error occurs
+     */
+    public long size() throws IOException {
+        DirectoryLock lock = acquireLock();
+        try {
+            return lock.getSize();
+        } finally {
+            lock.release();
+        }
+    }
+
+    private DirectoryLock acquireLock() throws IOException {
+        processLock.lock();
+        FileChannel channel = null;
+        try {
+            Files.createDirectories(directory);
+            channel = FileChannel.open(directory.resolve(LOCK), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            FileLock fileLock = channel.lock();
+            // the size may have been changed by another process
+            DirectoryLock lock = new DirectoryLock(channel, fileLock, readSize(channel));
+            if (lock.getSize() == -1) {
+                lock.setSize(computeSize());
+            }
+            return lock;
+        } catch (Throwable e) {
+            if (channel != null) {
+                try {
+                    // the file lock is released when the channel is closed
+                    channel.close();
+                } catch (Throwable e1) {
+                    e.addSuppressed(e1);
+                }
+            }
+            processLock.unlock();
+            throw e;
+        }
+    }
+
+    private static long readSize(FileChannel channel) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(8);
+        while (buf.hasRemaining()) {
+            if (channel.read(buf, buf.position()) == -1) {
+                // a new lock file
+                return -1;
+            }
+        }
+        ((java.nio.Buffer) buf).flip();
+        long size = buf.getLong();
+        return size < 0 ? -1 : size;
+    }
+
+    private static void writeSize(FileChannel channel, long size) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(8);
+        buf.putLong(size);
+        ((java.nio.Buffer) buf).flip();
+        while (buf.hasRemaining()) {
+            channel.write(buf, buf.position());
+        }
+    }
+
+    private long computeSize() throws IOException {
+        long total = 0;
+        for (ObjectInfo object : listObjects()) {
+            total += object.size;
+        }
+        return total;
+    }
+
+    private void evict(DirectoryLock lock) throws IOException {
+        List<ObjectInfo> objects = listObjects();
+        long total = 0;
+        for (ObjectInfo object : objects) {
+            total += object.size;
+        }
+
+        // evict until 90% of the max size to avoid evicting on every put
+        long target = maxSize / 10 * 9;
+        if (total > target) {
+            Collections.sort(objects);
+            for (ObjectInfo object : objects) {
+                if (total <= target) {
+                    break;
+                }
+                if (deleteObject(object.path)) {
+                    total -= object.size;
+                }
+            }
+        }
+        lock.setSize(total);
+        int removedEntries = removeDanglingIndexEntries();
+
+        if (LOGGER.isLoggable(Level.FINE))
+            LOGGER.fine(String.format("Evicted disk cache [%s], size=%d, removed index entries=%d", directory, total, removedEntries));
+    }
+
+    /**
+     * Removes the index entries whose objects no longer exist, e.g. the
+     * objects have been evicted, or deleted by the user.
+     */
+    private int removeDanglingIndexEntries() throws IOException {
+        final List<Path> indexFiles = new ArrayList<>();
+        Path indexDir = directory.resolve(INDEX);
+        if (!Files.isDirectory(indexDir)) {
+            return 0;
+        }
+        Files.walkFileTree(indexDir, new SimpleFileVisitor<Path>() {
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (attrs.isRegularFile()) {
+                    indexFiles.add(file);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        int removed = 0;
+        for (Path indexFile : indexFiles) {
+            IndexEntry entry = readIndex(indexFile);
+            if (entry != null && !Files.exists(getObjectFile(entry.checksum)) && Files.deleteIfExists(indexFile)) {
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    private List<ObjectInfo> listObjects() throws IOException {
+        final List<ObjectInfo> objects = new ArrayList<>();
+        Path objectsDir = directory.resolve(OBJECTS);
+        if (!Files.isDirectory(objectsDir)) {
+            return objects;
+        }
+        Files.walkFileTree(objectsDir, new SimpleFileVisitor<Path>() {
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (attrs.isRegularFile()) {
+                    objects.add(new ObjectInfo(file, attrs.size(), attrs.lastModifiedTime().toMillis()));
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                // the file may be deleted by another process
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return objects;
+    }
+
+    private boolean deleteObject(Path object) {
+        verifiedObjects.remove(object);
+        try {
+            return Files.deleteIfExists(object);
+        } catch (IOException e) {
+            // the object may be in use on some platforms
+            LOGGER.log(Level.FINE, "Couldn't delete cache object " + object, e);
+            return false;
+        }
+    }
+
+    private void writeAtomically(Path destination, byte[] data, boolean force) throws IOException {
+        Path tmpDir = directory.resolve(TMP);
+        Files.createDirectories(tmpDir);
+        Files.createDirectories(destination.getParent());
+        Path tmp = Files.createTempFile(tmpDir, destination.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                ByteBuffer buffer = ByteBuffer.wrap(data);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                if (force) {
+                    channel.force(true);
+                }
+            }
+            move(tmp, destination);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private void move(Path source, Path destination) throws IOException {
+        try {
+            Files.move(source, destination, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, destination, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private void writeIndex(String cachePool, URI key, String checksum, long length) throws IOException {
+        writeAtomically(getIndexFile(cachePool, key),
+                (checksum + "\n" + System.currentTimeMillis() + "\n" + key + "\n" + length + "\n").getBytes(StandardCharsets.UTF_8), true);
+    }
+
+    private void touch(Path object) {
+        try {
+            Files.setLastModifiedTime(object, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Couldn't update the access time of " + object, e);
+        }
+    }
+
+    private IndexEntry readIndex(Path indexFile) throws IOException {
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(indexFile, StandardCharsets.UTF_8);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+        if (lines.size() < 3) {
+            LOGGER.warning("Removing malformed cache index " + indexFile);
+            Files.deleteIfExists(indexFile);
+            return null;
+        }
+        try {
+            // the entries written by the older versions have no length
+            long length = lines.size() < 4 ? -1 : Long.parseLong(lines.get(3));
+            return new IndexEntry(lines.get(0), Long.parseLong(lines.get(1)), lines.get(2), length);
+        } catch (NumberFormatException e) {
+            LOGGER.warning("Removing malformed cache index " + indexFile);
+            Files.deleteIfExists(indexFile);
+            return null;
+        }
+    }
+
+    private Path getIndexFile(String cachePool, URI key) {
+        String name = HexUtils.bytesToHex(sha1(key.toString().getBytes(StandardCharsets.UTF_8)));
+        return directory.resolve(INDEX).resolve(toPathName(cachePool)).resolve(name);
+    }
+
+    /**
+     * Gets the file which stores the data with the given SHA-1 checksum.
+     *
+     * @param checksum the SHA-1 checksum of the data, in hex
+     * @return the object file, may not exist
+     */
+    protected Path getObjectFile(String checksum) {
+        return directory.resolve(OBJECTS).resolve(checksum.substring(0, 2)).resolve(checksum);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("DiskCacheProvider [directory=%s, maxSize=%d, expireTime=%d]", directory, maxSize, expireTime);
+    }
+
+    private static class IndexEntry {
+
+        final String checksum;
+        final long created;
+        final String uri;
+        final long length;
+
+        IndexEntry(String checksum, long created, String uri, long length) {
+            this.checksum = checksum;
+            this.created = created;
+            this.uri = uri;
+            this.length = length;
+        }
+
+    }
+
+    private static class ObjectInfo implements Comparable<ObjectInfo> {
+
+        final Path path;
+        final long size;
+        final long lastAccessed;
+
+        ObjectInfo(Path path, long size, long lastAccessed) {
+            this.path = path;
+            this.size = size;
+            this.lastAccessed = lastAccessed;
+        }
+
+        @Override
+        public int compareTo(ObjectInfo o) {
+            return Long.compare(lastAccessed, o.lastAccessed);
+        }
+
+    }
+
+    /**
+     * Holds both the process lock and the file lock of the cache directory.
+     */
+    private class DirectoryLock {
+
+        private final FileChannel channel;
+        private final FileLock lock;
+        private long size;
+        private boolean sizeChanged;
+
+        DirectoryLock(FileChannel channel, FileLock lock, long size) {
+            this.channel = channel;
+            this.lock = lock;
+            this.size = size;
+        }
+
+        long getSize() {
+            return size;
+        }
+
+        void setSize(long size) {
+            this.size = size;
+            sizeChanged = true;
+        }
+
+        void release() throws IOException {
+            try {
+                if (sizeChanged) {
+                    writeSize(channel, size);
+                }
+            } finally {
+                try {
+                    lock.release();
+                } finally {
+                    try {
+                        channel.close();
+                    } finally {
+                        processLock.unlock();
+                    }
+                }
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,84 @@
+package org.to2mbn.jmccc.mcdownloader.download.cache.provider;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+
+/**
+ * A cache provider which stores the cached data in files, so that the data
+ * can be transferred between the cache and the download targets without being
+ * copied into the heap.
+ *
+ * @param <K> the type of key
+ */
+public interface FileCacheProvider<K> extends CacheProvider<K, byte[]> {
+
+    /**
+     * Gets the file which stores the cached data.
+     * <p>
+     * The returned file must not be modified. It may be evicted at any time,
+     * so the caller should be prepared for the file being deleted.
+     *
+     * @param cachePool the cache pool
+     * @param key       the key
+     * @return the file which stores the cached data, or null if the data is
+     * not cached
+     */
+    Path getFile(String cachePool, K key);
+
+    /**
+     * Gets the SHA-1 checksum of a file returned by
+     * {@link #getFile(String, Object)}.
+     * <p>
+     * A content-addressed provider knows the checksums of its files without
+     * reading them. The default implementation returns null.
+     *
+     * @param file the file which stores the cached data
+     * @return the SHA-1 checksum (in hex) of the file, or null if unknown
+     */
+    default String getChecksum(Path file) {
+        return null;
+    }
+
+    /**
+     * Starts writing a cache entry. The entry is invisible until
+     * {@link Writer#commit()} is called.
+     *
+     * @param cachePool the cache pool
+     * @param key       the key
+     * @return the writer
+     * @throws IOException if an I/O error occurs
+     */
+    Writer newWriter(String cachePool, K key) throws IOException;
+
+    /**
+     * Writes a cache entry.
+     * <p>
+     * Once a writer is created, one of the following methods {@link #commit()},
+     * {@link #abort()} must be invoked.
+     */
+    interface Writer {
+
+        /**
+         * Writes the remaining data in the buffer.
+         *
+         * @param data the data to write
+         * @throws IOException if an I/O error occurs
+         */
+        void write(ByteBuffer data) throws IOException;
+
+        /**
+         * Publishes the cache entry.
+         *
+         * @throws IOException if an I/O error occurs
+         */
+        void commit() throws IOException;
+
+        /**
+         * Discards the cache entry.
+         */
+        void abort();
+
+    }
+
+}
@@ -0,0 +1,295 @@
+package org.to2mbn.jmccc.mcdownloader.download.combine;
+
+import org.to2mbn.jmccc.mcdownloader.download.Downloader;
+import org.to2mbn.jmccc.mcdownloader.download.concurrent.Callback;
+import org.to2mbn.jmccc.mcdownloader.download.concurrent.CallbackAsyncTask;
+import org.to2mbn.jmccc.mcdownloader.download.concurrent.Cancelable;
+import org.to2mbn.jmccc.mcdownloader.download.concurrent.DownloadCallback;
+import org.to2mbn.jmccc.mcdownloader.download.concurrent.DownloadCallbacks;
+import org.to2mbn.jmccc.mcdownloader.download.io.IllegalHttpResponseCodeException;
+import org.to2mbn.jmccc.mcdownloader.download.io.TransferStalledException;
+import org.to2mbn.jmccc.mcdownloader.download.tasks.DownloadTask;
+
+import java.net.SocketTimeoutException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Limits the number of in-flight downloads per host, and adapts the limits to
+ * the responses of the hosts.
+ * <p>
+ * The limit of each host follows the AIMD (additive increase, multiplicative
+ * decrease) rule: every successful download which completes while the limit
+ * is reached raises the limit by <code>1/limit</code>, so that the limit grows
+ * by about one per full round of downloads; a host which doesn't use its limit
+ * doesn't raise it, since its successes say nothing about a higher
+ * concurrency. Every throttling signal (<code>429</code>, <code>503</code>, a
+ * socket timeout or a stalled transfer) halves the limit. Only the downloads
+ * started after the last decrease can decrease the limit again, so a burst of
+ * failures of the same round is counted as one signal.
+ * <p>
+ * The downloads beyond the limit are queued, and started in FIFO order when the
+ * in-flight downloads of the host complete. The total number of connections is
+ * still bounded by the underlying downloader.
+ */
+class AdaptiveConcurrencyDownloader implements Downloader {
+
+    private static final double DECREASE_FACTOR = 0.5;
+
+    private final Downloader downloader;
+    private final int initialLimit;
+    private final int maxLimit;
+    private final ConcurrentMap<String, HostLimiter> hosts = new ConcurrentHashMap<>();
+
+    public AdaptiveConcurrencyDownloader(Downloader downloader, int initialLimit, int maxLimit) {
+        this.downloader = Objects.requireNonNull(downloader);
+        if (initialLimit < 1)
+            throw new IllegalArgumentException("initialLimit < 1");
+        if (maxLimit < initialLimit)
+            throw new IllegalArgumentException("maxLimit < initialLimit");
+        this.initialLimit = initialLimit;
+        this.maxLimit = maxLimit;
+    }
+
+    @Override
+    public <T> Future<T> download(DownloadTask<T> task, DownloadCallback<T> callback) {
+        return download(task, callback, 1);
+    }
+
+    @Override
+    public <T> Future<T> download(DownloadTask<T> task, DownloadCallback<T> callback, int tries) {
+        Objects.requireNonNull(task);
+        if (tries < 1)
+            throw new IllegalArgumentException("tries < 1");
+        if (downloader.isShutdown())
+            throw new RejectedExecutionException("The downloader has been shutdown.");
+
+        String host = task.getURI().getHost();
+        if (host == null) {
+            // not a network resource
+            return downloader.download(task, callback, tries);
+        }
+        host = host.toLowerCase();
+
+        HostLimiter limiter = hosts.get(host);
+        if (limiter == null) {
+            HostLimiter newLimiter = new HostLimiter(host);
+            limiter = hosts.putIfAbsent(host, newLimiter);
+            if (limiter == null) {
+                limiter = newLimiter;
+            }
+        }
+
+        PendingDownload<T> pending = new PendingDownload<>(limiter, task, callback == null ? DownloadCallbacks.<T>empty() : callback, tries);
+        pending.setCallback(callback);
+        limiter.submit(pending);
+        return pending;
+    }
+
+    @Override
+    public void shutdown() {
+        downloader.shutdown();
+        for (HostLimiter limiter : hosts.values()) {
+            for (PendingDownload<?> pending : limiter.drainQueue()) {
+                pending.cancel(true);
+            }
+        }
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return downloader.isShutdown();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("AdaptiveConcurrencyDownloader [downloader=%s, initialLimit=%d, maxLimit=%d, hosts=%s]", downloader, initialLimit, maxLimit, hosts.values());
+    }
+
+    private static boolean isThrottled(Throwable e) {
+        if (e instanceof IllegalHttpResponseCodeException) {
+            int code = ((IllegalHttpResponseCodeException) e).getResponseCode();
+            return code == 429 || code == 503;
+        }
+        return e instanceof SocketTimeoutException || e instanceof TransferStalledException;
+    }
+
+    private class HostLimiter {
+
+        private final String host;
+        private final Queue<PendingDownload<?>> queue = new ArrayDeque<>();
+        private double limit = initialLimit;
+        private int inFlight;
+        private long round;
+        private long lastDecreaseRound = -1;
+        private boolean dispatching;
+
+        public HostLimiter(String host) {
+            this.host = host;
+        }
+
+        public void submit(PendingDownload<?> pending) {
+            synchronized (this) {
+                queue.add(pending);
+            }
+            dispatch();
+        }
+
+        public synchronized boolean dequeue(PendingDownload<?> pending) {
+            return queue.remove(pending);
+        }
+
+        public synchronized List<PendingDownload<?>> drainQueue() {
+            List<PendingDownload<?>> result = new ArrayList<>(queue);
+            queue.clear();
+            return result;
+        }
+
+        public void completed(boolean succeeded) {
+            synchronized (this) {
+                // the limit is raised only if it has been used up
+                if (succeeded && inFlight >= (int) limit) {
+                    limit = Math.min(maxLimit, limit + 1 / limit);
+                }
+                inFlight--;
+            }
+            dispatch();
+        }
+
+        public void throttled(PendingDownload<?> pending) {
+            synchronized (this) {
+                if (pending.round > lastDecreaseRound) {
+                    limit = Math.max(1, limit * DECREASE_FACTOR);
+                    lastDecreaseRound = round;
+                    round++;
+                }
+            }
+        }
+
+        private void dispatch() {
+            synchronized (this) {
+                if (dispatching) {
+                    // the dispatching thread will check the queue again,
+                    // this also prevents the recursion of synchronous downloads
+                    return;
+                }
+                dispatching = true;
+            }
+            for (;;) {
+                PendingDownload<?> next;
+                synchronized (this) {
+                    if (inFlight >= (int) limit || queue.isEmpty()) {
+                        dispatching = false;
+                        return;
+                    }
+                    next = queue.poll();
+                    inFlight++;
+                    next.round = round;
+                }
+                next.start();
+            }
+        }
+
+        @Override
+        public synchronized String toString() {
+            return String.format("%s [limit=%.1f, inFlight=%d, queued=%d]", host, limit, inFlight, queue.size());
+        }
+
+    }
+
+    private class PendingDownload<T> extends CallbackAsyncTask<T> implements DownloadCallback<T> {
+
+        private final HostLimiter limiter;
+        private final DownloadTask<T> task;
+        private final DownloadCallback<T> callback;
+        private final int tries;
+
+        // the round of the limiter when this download was started
+        private volatile long round;
+
+        public PendingDownload(HostLimiter limiter, DownloadTask<T> task, DownloadCallback<T> callback, int tries) {
+            this.limiter = limiter;
+            this.task = task;
+            this.callback = callback;
+            this.tries = tries;
+            addCancelable(new Cancelable() {
+
+                @Override
+                public boolean cancel(boolean mayInterruptIfRunning) {
+                    PendingDownload.this.limiter.dequeue(PendingDownload.this);
+                    return true;
+                }
+            });
+        }
+
+        public void start() {
+            if (isCancelled()) {
+                limiter.completed(false);
+                return;
+            }
+            Future<T> future;
+            try {
+                future = downloader.download(task, this, tries);
+            } catch (Throwable e) {
+                lifecycle().failed(e);
+                limiter.completed(false);
+                return;
+            }
+            addCancelable(future);
+        }
+
+        @Override
+        protected void execute() {
+            // driven by the limiter
+        }
+
+        @Override
+        protected Callback<T> lifecycle() {
+            // makes the lifecycle accessible to the limiter
+            return super.lifecycle();
+        }
+
+        @Override
+        public void done(T result) {
+            limiter.completed(true);
+            lifecycle().done(result);
+        }
+
+        @Override
+        public void failed(Throwable e) {
+            if (isThrottled(e)) {
+                limiter.throttled(this);
+            }
+            limiter.completed(false);
+            lifecycle().failed(e);
+        }
+
+        @Override
+        public void cancelled() {
+            limiter.completed(false);
+            lifecycle().cancelled();
+        }
+
+        @Override
+        public void updateProgress(long done, long total) {
+            callback.updateProgress(done, total);
+        }
+
+        @Override
+        public void retry(Throwable e, int current, int max) {
+            if (isThrottled(e)) {
+                limiter.throttled(this);
+            }
+            callback.retry(e, current, max);
+        }
+
+    }
+
+}
@@ -0,0 +1,79 @@
+package org.to2mbn.jmccc.mcdownloader.download.combine;
+
+import org.to2mbn.jmccc.mcdownloader.download.io.DownloaderHelper;
+import org.to2mbn.jmccc.mcdownloader.download.io.IllegalHttpResponseCodeException;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Retries the retryable failures (see
+ * {@link DownloaderHelper#shouldRetry(Throwable)}) with exponential backoff.
+ * <p>
+ * The delay starts at <code>initialDelay</code> and doubles on every retry, up
+ * to <code>maxDelay</code>. If jitter is enabled, the delay is randomized
+ * between a half and the whole of it, so that the downloads which failed
+ * together don't retry together.
+ * <p>
+ * If the server requests a delay with a <code>Retry-After</code> header, the
+ * requested delay is used instead. If the requested delay is longer than
+ * <code>maxDelay</code>, the download is not retried, so that it can be handed
+ * to another mirror.
+ */
+public class BackoffRetryPolicy implements RetryPolicy {
+
+    private final long initialDelay;
+    private final long maxDelay;
+    private final boolean jitter;
+
+    /**
+     * Constructs a BackoffRetryPolicy with an initial delay of 500ms, a max
+     * delay of 30s and jitter.
+     */
+    public BackoffRetryPolicy() {
+        this(500, 30000, TimeUnit.MILLISECONDS, true);
+    }
+
+    /**
+     * @param initialDelay the delay before the first retry
+     * @param maxDelay     the max delay
+     * @param unit         the unit of <code>initialDelay</code> and
+     *                     <code>maxDelay</code>
+     * @param jitter       true to randomize the delays
+     * @throws IllegalArgumentException if <code>initialDelay &lt; 0</code> or
+     *                                  <code>maxDelay &lt; initialDelay</code>
+     */
+    public BackoffRetryPolicy(long initialDelay, long maxDelay, TimeUnit unit, boolean jitter) {
+        if (initialDelay < 0)
+            throw new IllegalArgumentException("initialDelay < 0");
+        if (maxDelay < initialDelay)
+            throw new IllegalArgumentException("maxDelay < initialDelay");
+        this.initialDelay = unit.toMillis(initialDelay);
+        this.maxDelay = unit.toMillis(maxDelay);
+        this.jitter = jitter;
+    }
+
+    @Override
+    public long getRetryDelay(Throwable e, int currentTries, int maxTries) {
+        if (currentTries >= maxTries || !DownloaderHelper.shouldRetry(e)) {
+            return -1;
+        }
+        if (e instanceof IllegalHttpResponseCodeException) {
+            long retryAfter = ((IllegalHttpResponseCodeException) e).getRetryAfter();
+            if (retryAfter != -1) {
+                return retryAfter > maxDelay ? -1 : retryAfter;
+            }
+        }
+        long delay = (long) Math.min(maxDelay, initialDelay * Math.pow(2, currentTries - 1));
+        if (jitter && delay > 1) {
+            delay = delay / 2 + ThreadLocalRandom.current().nextLong(delay - delay / 2 + 1);
+        }
+        return delay;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("BackoffRetryPolicy [initialDelay=%d, maxDelay=%d, jitter=%s]", initialDelay, maxDelay, jitter);
+    }
+
+}
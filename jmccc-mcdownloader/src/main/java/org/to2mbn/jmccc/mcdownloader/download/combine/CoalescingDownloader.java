@@ -0,0 +1,231 @@
+package org.to2mbn.jmccc.mcdownloader.download.combine;
+
+import org.to2mbn.jmccc.mcdownloader.download.Downloader;
+import org.to2mbn.jmccc.mcdownloader.download.concurrent.Callback;
+import org.to2mbn.jmccc.mcdownloader.download.concurrent.CallbackAsyncTask;
+import org.to2mbn.jmccc.mcdownloader.download.concurrent.Cancelable;
+import org.to2mbn.jmccc.mcdownloader.download.concurrent.DownloadCallback;
+import org.to2mbn.jmccc.mcdownloader.download.concurrent.DownloadCallbacks;
+import org.to2mbn.jmccc.mcdownloader.download.tasks.DownloadTask;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Future;
+
+/**
+ * Shares a single transfer between the identical tasks which are downloaded at
+ * the same time.
+ * <p>
+ * Tasks are identified by {@link DownloadTask#getCoalescingKey()}. When a task
+ * is submitted while another task with an equal key is in flight, it
+ * subscribes to the in-flight download instead of starting a new one. The
+ * subscribers receive the progress and the result of the shared download. The
+ * shared download is cancelled only after all of its subscribers are
+ * cancelled.
+ */
+class CoalescingDownloader implements Downloader {
+
+    private final Downloader downloader;
+    private final ConcurrentMap<Object, Flight<?>> flights = new ConcurrentHashMap<>();
+
+    public CoalescingDownloader(Downloader downloader) {
+        this.downloader = Objects.requireNonNull(downloader);
+    }
+
+    @Override
+    public <T> Future<T> download(DownloadTask<T> task, DownloadCallback<T> callback) {
+        return download(task, callback, 1);
+    }
+
+    @Override
+    public <T> Future<T> download(DownloadTask<T> task, DownloadCallback<T> callback, int tries) {
+        Objects.requireNonNull(task);
+        if (tries < 1)
+            throw new IllegalArgumentException("tries < 1");
+
+        Object key = task.getCoalescingKey();
+        if (key == null) {
+            return downloader.download(task, callback, tries);
+        }
+
+        Subscriber<T> subscriber = new Subscriber<>(callback == null ? DownloadCallbacks.<T>empty() : callback);
+        subscriber.setCallback(callback);
+        for (;;) {
+            Flight<T> flight = new Flight<>(key);
+            @SuppressWarnings("unchecked")
+            Flight<T> inFlight = (Flight<T>) flights.putIfAbsent(key, flight);
+            if (inFlight == null) {
+                flight.subscribe(subscriber);
+                flight.start(task, tries);
+                return subscriber;
+            } else if (inFlight.subscribe(subscriber)) {
+                return subscriber;
+            }
+            // the flight has just terminated
+            flights.remove(key, inFlight);
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        downloader.shutdown();
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return downloader.isShutdown();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("CoalescingDownloader [downloader=%s, inFlight=%d]", downloader, flights.size());
+    }
+
+    private class Flight<T> implements DownloadCallback<T> {
+
+        private final Object key;
+        private final List<Subscriber<T>> subscribers = new ArrayList<>();
+        private Future<T> future;
+        private boolean terminated;
+
+        public Flight(Object key) {
+            this.key = key;
+        }
+
+        public void start(DownloadTask<T> task, int tries) {
+            Future<T> future;
+            try {
+                future = downloader.download(task, this, tries);
+            } catch (Throwable e) {
+                flights.remove(key, this);
+                for (Subscriber<T> subscriber : terminate()) {
+                    subscriber.lifecycle().failed(e);
+                }
+                throw e;
+            }
+            boolean cancelled;
+            synchronized (this) {
+                this.future = future;
+                cancelled = terminated;
+            }
+            if (cancelled) {
+                future.cancel(true);
+            }
+        }
+
+        public synchronized boolean subscribe(Subscriber<T> subscriber) {
+            if (terminated) {
+                return false;
+            }
+            subscribers.add(subscriber);
+            subscriber.flight = this;
+            return true;
+        }
+
+        public void unsubscribe(Subscriber<T> subscriber) {
+            boolean abandoned = false;
+            Future<T> toCancel = null;
+            synchronized (this) {
+                if (subscribers.remove(subscriber) && subscribers.isEmpty() && !terminated) {
+                    // nobody is waiting for the result
+                    terminated = true;
+                    abandoned = true;
+                    toCancel = future;
+                }
+            }
+            if (abandoned) {
+                flights.remove(key, this);
+                if (toCancel != null) {
+                    toCancel.cancel(true);
+                }
+            }
+        }
+
+        @Override
+        public void done(T result) {
+            flights.remove(key, this);
+            for (Subscriber<T> subscriber : terminate()) {
+                subscriber.lifecycle().done(result);
+            }
+        }
+
+        @Override
+        public void failed(Throwable e) {
+            flights.remove(key, this);
+            for (Subscriber<T> subscriber : terminate()) {
+                subscriber.lifecycle().failed(e);
+            }
+        }
+
+        @Override
+        public void cancelled() {
+            flights.remove(key, this);
+            for (Subscriber<T> subscriber : terminate()) {
+                subscriber.lifecycle().cancelled();
+            }
+        }
+
+        @Override
+        public void updateProgress(long done, long total) {
+            for (Subscriber<T> subscriber : snapshot()) {
+                subscriber.callback.updateProgress(done, total);
+            }
+        }
+
+        @Override
+        public void retry(Throwable e, int current, int max) {
+            for (Subscriber<T> subscriber : snapshot()) {
+                subscriber.callback.retry(e, current, max);
+            }
+        }
+
+        private synchronized List<Subscriber<T>> snapshot() {
+            return new ArrayList<>(subscribers);
+        }
+
+        private synchronized List<Subscriber<T>> terminate() {
+            terminated = true;
+            List<Subscriber<T>> result = new ArrayList<>(subscribers);
+            subscribers.clear();
+            return result;
+        }
+
+    }
+
+    private class Subscriber<T> extends CallbackAsyncTask<T> {
+
+        private final DownloadCallback<T> callback;
+        private volatile Flight<T> flight;
+
+        public Subscriber(DownloadCallback<T> callback) {
+            this.callback = callback;
+            addCancelable(new Cancelable() {
+
+                @Override
+                public boolean cancel(boolean mayInterruptIfRunning) {
+                    Flight<T> flight = Subscriber.this.flight;
+                    if (flight != null) {
+                        flight.unsubscribe(Subscriber.this);
+                    }
+                    return true;
+                }
+            });
+        }
+
+        @Override
+        protected void execute() {
+            // driven by the flight
+        }
+
+        @Override
+        protected Callback<T> lifecycle() {
+            // makes the lifecycle accessible to the flight
+            return super.lifecycle();
+        }
+
+    }
+
+}
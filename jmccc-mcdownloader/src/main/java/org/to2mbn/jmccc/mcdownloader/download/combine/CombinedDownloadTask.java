@@ -89,6 +89,95 @@ abstract public class CombinedDownloadTask<T> {
         return new AnyCombinedTask<>(tasks, expectedExceptions);
     }
 
+    @SafeVarargs
+    public static <T> CombinedDownloadTask<T> hedged(HedgeDelay delay, DownloadTask<T>... tasks) {
+        Objects.requireNonNull(tasks);
+        List<CombinedDownloadTask<T>> combinedTasks = new ArrayList<>(tasks.length);
+        for (DownloadTask<T> task : tasks) {
+            combinedTasks.add(single(task));
+        }
+        return hedged(delay, combinedTasks);
+    }
+
+    @SafeVarargs
+    public static <T> CombinedDownloadTask<T> hedged(HedgeDelay delay, CombinedDownloadTask<T>... tasks) {
+        Objects.requireNonNull(tasks);
+        // copies the elements, since the array mustn't escape
+        List<CombinedDownloadTask<T>> taskList = new ArrayList<>(tasks.length);
+        for (CombinedDownloadTask<T> task : tasks) {
+            taskList.add(task);
+        }
+        return hedged(delay, taskList);
+    }
+
+    /**
+     * Creates a hedged task which tries the next task on an
+     * {@link IOException}.
+     *
+     * @param delay the delay before starting the next task
+     * @param tasks the tasks, usually the same resource from different mirrors
+     * @param <T>   the type of the result
+     * @return the hedged task
+     * @throws IllegalArgumentException if <code>tasks</code> is empty
+     * @see #hedged(HedgeDelay, Class[], List)
+     */
+    public static <T> CombinedDownloadTask<T> hedged(HedgeDelay delay, List<CombinedDownloadTask<T>> tasks) {
+        Objects.requireNonNull(tasks);
+        @SuppressWarnings("unchecked")
+        Class<? extends Throwable>[] expectedExceptions = (Class<? extends Throwable>[]) new Class<?>[]{IOException.class};
+        return hedged(delay, expectedExceptions, tasks);
+    }
+
+    /**
+     * Creates a task which returns the result of the first succeeded task, like
+     * {@link #any(Class[], CombinedDownloadTask[])}, but doesn't wait for a
+     * slow task to fail.
+     * <p>
+     * The tasks are started in order. If a task hasn't received its first byte
+     * after the given delay, the next task is started alongside it. A task
+     * failed with an expected exception also starts the next task at once. The
+     * first succeeded task completes the hedged task, and the others are
+     * cancelled.
+     * <p>
+     * So the tasks may run concurrently, e.g. several
+     * {@link org.to2mbn.jmccc.mcdownloader.download.tasks.FileDownloadTask}s
+     * downloading the same file from different mirrors. Tasks which write the
+     * same file must claim their temporary files by
+     * {@link org.to2mbn.jmccc.mcdownloader.download.tasks.PartFiles}, so that
+     * the loser cannot write into the file committed by the winner.
+     *
+     * @param delay              the delay before starting the next task
+     * @param expectedExceptions the exceptions which cause the next task to be
+     *                           tried
+     * @param tasks              the tasks, usually the same resource from
+     *                           different mirrors
+     * @param <T>                the type of the result
+     * @return the hedged task
+     * @throws IllegalArgumentException if <code>tasks</code> is empty
+     */
+    public static <T> CombinedDownloadTask<T> hedged(HedgeDelay delay, Class<? extends Throwable>[] expectedExceptions, List<CombinedDownloadTask<T>> tasks) {
+        Objects.requireNonNull(delay);
+        Objects.requireNonNull(tasks);
+        Objects.requireNonNull(expectedExceptions);
+        if (tasks.isEmpty()) {
+            throw new IllegalArgumentException("Tasks cannot be empty");
+        }
+        if (tasks.size() == 1) {
+            return tasks.get(0);
+        }
+        return new HedgedCombinedTask<>(new ArrayList<>(tasks), expectedExceptions, delay);
+    }
+
+    @SafeVarargs
+    public static <T> CombinedDownloadTask<T> hedged(HedgeDelay delay, Class<? extends Throwable>[] expectedExceptions, CombinedDownloadTask<T>... tasks) {
+        Objects.requireNonNull(tasks);
+        List<CombinedDownloadTask<T>> taskList = new ArrayList<>(tasks.length);
+        for (CombinedDownloadTask<T> task : tasks) {
+            taskList.add(task);
+        }
+        return hedged(delay, expectedExceptions, taskList);
+    }
+
     abstract public void execute(CombinedDownloadContext<T> context) throws Exception;
 
     public CacheStrategy getCacheStrategy() {
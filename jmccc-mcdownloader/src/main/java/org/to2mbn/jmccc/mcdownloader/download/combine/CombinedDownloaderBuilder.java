@@ -8,14 +8,27 @@ import org.to2mbn.jmccc.util.Builder;
 import java.util.Objects;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
 
 public class CombinedDownloaderBuilder implements Builder<CombinedDownloader> {
 
+    private static final Logger LOGGER = Logger.getLogger(CombinedDownloaderBuilder.class.getCanonicalName());
+
     protected final Builder<Downloader> underlying;
     protected int threadPoolSize = Runtime.getRuntime().availableProcessors();
     protected long threadPoolKeepAliveTime = 10;
     protected TimeUnit threadPoolKeepAliveTimeUnit = TimeUnit.SECONDS;
     protected int defaultTries = 3;
+    protected boolean coalesceDownloads = true;
+    protected boolean adaptiveConcurrency = false;
+    protected int adaptiveConcurrencyInitialLimit = 4;
+    protected int adaptiveConcurrencyMaxLimit = 64;
+    protected int virtualThreadConcurrency = -1;
+    protected RetryPolicy retryPolicy = new BackoffRetryPolicy();
+    protected int retryBudget = -1;
+    protected int circuitBreakerThreshold = -1;
+    protected long circuitBreakerOpenTime = 30000;
+
     protected CombinedDownloaderBuilder(Builder<Downloader> underlying) {
         this.underlying = Objects.requireNonNull(underlying);
     }
@@ -52,13 +65,181 @@ public class CombinedDownloaderBuilder implements Builder<CombinedDownloader> {
         return this;
     }
 
+    /**
+     * Sets whether the identical download tasks which are downloaded at the
+     * same time share a single transfer. Default to true.
+     *
+     * @param coalesceDownloads true to share the transfer
+     * @return the builder itself
+     * @see org.to2mbn.jmccc.mcdownloader.download.tasks.DownloadTask#getCoalescingKey()
+     */
+    public CombinedDownloaderBuilder coalesceDownloads(boolean coalesceDownloads) {
+        this.coalesceDownloads = coalesceDownloads;
+        return this;
+    }
+
+    /**
+     * Enables the adaptive per-host concurrency limit.
+     * <p>
+     * The number of in-flight downloads from each host starts at
+     * <code>initialLimit</code>. It grows as the downloads succeed, up to
+     * <code>maxLimit</code>, and is halved when the host throttles the
+     * downloads (<code>429 Too Many Requests</code>,
+     * <code>503 Service Unavailable</code> or socket timeouts). The downloads
+     * beyond the limit wait in a queue.
+     * <p>
+     * The limit is applied on top of the underlying downloader, so the max
+     * connections of the underlying downloader should be raised as well to let
+     * the limit grow beyond it.
+     * <p>
+     * The adaptive concurrency limit is disabled by default.
+     *
+     * @param initialLimit the initial number of in-flight downloads per host
+     * @param maxLimit     the max number of in-flight downloads per host
+     * @return the builder itself
+     * @throws IllegalArgumentException if <code>initialLimit &lt; 1</code> or
+     *                                  <code>maxLimit &lt; initialLimit</code>
+     */
+    public CombinedDownloaderBuilder adaptiveConcurrency(int initialLimit, int maxLimit) {
+        if (initialLimit < 1)
+            throw new IllegalArgumentException("initialLimit < 1");
+        if (maxLimit < initialLimit)
+            throw new IllegalArgumentException("maxLimit < initialLimit");
+        this.adaptiveConcurrency = true;
+        this.adaptiveConcurrencyInitialLimit = initialLimit;
+        this.adaptiveConcurrencyMaxLimit = maxLimit;
+        return this;
+    }
+
+    /**
+     * Enables or disables the adaptive per-host concurrency limit, with the
+     * default limits (initially 4, at most 64).
+     *
+     * @param adaptiveConcurrency true to enable the adaptive concurrency limit
+     * @return the builder itself
+     * @see #adaptiveConcurrency(int, int)
+     */
+    public CombinedDownloaderBuilder adaptiveConcurrency(boolean adaptiveConcurrency) {
+        this.adaptiveConcurrency = adaptiveConcurrency;
+        return this;
+    }
+
+    /**
+     * Runs the subtasks on virtual threads, if they are supported by the
+     * current JVM (Java 21+). Otherwise the platform thread pool is used.
+     * <p>
+     * Each subtask runs on its own virtual thread, and no more than
+     * <code>maxConcurrency</code> subtasks run at the same time. This replaces
+     * {@link #threadPoolSize(int)}.
+     *
+     * @param maxConcurrency the max number of the subtasks running at the same
+     *                       time, -1 to disable virtual threads
+     * @return the builder itself
+     * @throws IllegalArgumentException if <code>maxConcurrency</code> is
+     *                                  neither positive nor -1
+     * @see ThreadPoolUtils#isVirtualThreadAvailable()
+     */
+    public CombinedDownloaderBuilder virtualThreads(int maxConcurrency) {
+        if (maxConcurrency < 1 && maxConcurrency != -1)
+            throw new IllegalArgumentException("maxConcurrency must be positive or -1");
+        this.virtualThreadConcurrency = maxConcurrency;
+        return this;
+    }
+
+    /**
+     * Sets the policy to retry the failed downloads. The delays between the
+     * tries are scheduled on a timer, without holding any thread or
+     * connection.
+     * <p>
+     * Default to a {@link BackoffRetryPolicy} with the default parameters. If
+     * <code>null</code>, the underlying downloader retries the failures
+     * immediately, except the ones which ask for a delay (e.g.
+     * <code>429</code>), and the retry budget and the circuit breakers are
+     * not available.
+     *
+     * @param retryPolicy the retry policy, can be null
+     * @return the builder itself
+     */
+    public CombinedDownloaderBuilder retryPolicy(RetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy;
+        return this;
+    }
+
+    /**
+     * Sets the max number of retries of a combined task, shared by all its
+     * subtasks. The subtasks fail without retrying once the budget runs out,
+     * so that a broken mirror cannot delay a large task for too long.
+     * <p>
+     * The retry budget is unlimited by default.
+     *
+     * @param retries the max number of retries of a combined task, -1 for no
+     *                limit
+     * @return the builder itself
+     * @throws IllegalArgumentException if <code>retries</code> is neither
+     *                                  non-negative nor -1
+     */
+    public CombinedDownloaderBuilder retryBudget(int retries) {
+        if (retries < -1)
+            throw new IllegalArgumentException("retries must be non-negative or -1");
+        this.retryBudget = retries;
+        return this;
+    }
+
+    /**
+     * Enables the per-host circuit breakers.
+     * <p>
+     * After <code>failureThreshold</code> consecutive failures of a host
+     * (server errors, timeouts and other I/O errors), the downloads from the
+     * host fail fast with
+     * {@link org.to2mbn.jmccc.mcdownloader.download.io.CircuitOpenException}
+     * for <code>openTime</code>, so that they are handed to the next provider
+     * without waiting. Then a single download is let through to probe the
+     * host.
+     * <p>
+     * The circuit breakers are disabled by default.
+     *
+     * @param failureThreshold the number of consecutive failures to open the
+     *                         circuit breaker, -1 to disable
+     * @param openTime         how long the circuit breaker stays open
+     * @param unit             the unit of <code>openTime</code>
+     * @return the builder itself
+     * @throws IllegalArgumentException if <code>failureThreshold</code> is
+     *                                  neither positive nor -1, or
+     *                                  <code>openTime &lt;= 0</code>
+     */
+    public CombinedDownloaderBuilder circuitBreaker(int failureThreshold, long openTime, TimeUnit unit) {
+        if (failureThreshold < 1 && failureThreshold != -1)
+            throw new IllegalArgumentException("failureThreshold must be positive or -1");
+        if (openTime <= 0)
+            throw new IllegalArgumentException("openTime <= 0");
+        this.circuitBreakerThreshold = failureThreshold;
+        this.circuitBreakerOpenTime = unit.toMillis(openTime);
+        return this;
+    }
+
     @Override
     public CombinedDownloader build() {
         ExecutorService pool = null;
         Downloader downloader = null;
         try {
-            pool = ThreadPoolUtils.createPool(threadPoolSize, threadPoolKeepAliveTime, threadPoolKeepAliveTimeUnit, "combinedDownloader");
+            if (virtualThreadConcurrency != -1 && ThreadPoolUtils.isVirtualThreadAvailable()) {
+                pool = ThreadPoolUtils.createVirtualThreadPool(virtualThreadConcurrency, "combinedDownloader");
+            } else {
+                if (virtualThreadConcurrency != -1) {
+                    LOGGER.info("Virtual threads are not supported, using platform threads");
+                }
+                pool = ThreadPoolUtils.createPool(threadPoolSize, threadPoolKeepAliveTime, threadPoolKeepAliveTimeUnit, "combinedDownloader");
+            }
             downloader = Objects.requireNonNull(this.underlying.build(), "Underlying downloader builder returns null");
+            if (adaptiveConcurrency) {
+                downloader = new AdaptiveConcurrencyDownloader(downloader, adaptiveConcurrencyInitialLimit, adaptiveConcurrencyMaxLimit);
+            }
+            if (coalesceDownloads) {
+                downloader = new CoalescingDownloader(downloader);
+            }
+            if (retryPolicy != null) {
+                downloader = new RetryingDownloader(downloader, retryPolicy, retryBudget, circuitBreakerThreshold, circuitBreakerOpenTime);
+            }
             return new CombinedDownloaderImpl(pool, downloader, defaultTries);
         } catch (Throwable e) {
             if (pool != null) {
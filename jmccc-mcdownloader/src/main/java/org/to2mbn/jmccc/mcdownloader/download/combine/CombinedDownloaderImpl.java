@@ -36,11 +36,15 @@ class CombinedDownloaderImpl implements CombinedDownloader {
 
     @Override
     public <T> Future<T> download(CombinedDownloadTask<T> downloadTask, CombinedDownloadCallback<T> callback, int tries) {
+        return download(downloadTask, callback, tries, downloader instanceof RetryingDownloader ? ((RetryingDownloader) downloader).createBudget() : null);
+    }
+
+    private <T> Future<T> download(CombinedDownloadTask<T> downloadTask, CombinedDownloadCallback<T> callback, int tries, RetryBudget retryBudget) {
         Objects.requireNonNull(downloadTask);
         if (tries < 1)
             throw new IllegalArgumentException("tries < 1");
 
-        CombinedAsyncTask<T> task = new CombinedAsyncTask<>(downloadTask, callback == null ? CombinedDownloadCallbacks.<T>empty() : callback, tries);
+        CombinedAsyncTask<T> task = new CombinedAsyncTask<>(downloadTask, callback == null ? CombinedDownloadCallbacks.<T>empty() : callback, tries, retryBudget);
         Callback<T> statusCallback = Callbacks.whatever(new TaskInactiver(task));
         if (callback != null) {
             statusCallback = Callbacks.group(statusCallback, callback);
@@ -131,10 +135,12 @@ class CombinedDownloaderImpl implements CombinedDownloader {
         private final CombinedDownloadTask<T> task;
         private final CombinedDownloadCallback<T> callback;
         private final int tries;
+        // shared by the nested combined tasks, can be null
+        private final RetryBudget retryBudget;
         private final SubtaskCountdownAction countdownAction = new SubtaskCountdownAction();
         private final SubtaskCounter subtaskCounter = new SubtaskCounter();
 
-        public CombinedAsyncTask(CombinedDownloadTask<T> task, CombinedDownloadCallback<T> callback, int tries) {
+        public CombinedAsyncTask(CombinedDownloadTask<T> task, CombinedDownloadCallback<T> callback, int tries, RetryBudget retryBudget) {
             Objects.requireNonNull(task);
             Objects.requireNonNull(callback);
             if (tries < 1)
@@ -143,6 +149,7 @@ class CombinedDownloaderImpl implements CombinedDownloader {
             this.task = task;
             this.callback = callback;
             this.tries = tries;
+            this.retryBudget = retryBudget;
         }
 
         @Override
@@ -209,7 +216,11 @@ class CombinedDownloaderImpl implements CombinedDownloader {
                 checkInterrupted();
 
                 subtaskCounter.countUp();
-                future = downloader.download(task, DownloadCallbacks.group(callbacks), tries);
+                if (retryBudget == null) {
+                    future = downloader.download(task, DownloadCallbacks.group(callbacks), tries);
+                } else {
+                    future = ((RetryingDownloader) downloader).download(task, DownloadCallbacks.group(callbacks), tries, retryBudget);
+                }
                 futureManager.setFuture(future);
             } finally {
                 lock.unlock();
@@ -245,7 +256,7 @@ class CombinedDownloaderImpl implements CombinedDownloader {
                 checkInterrupted();
 
                 subtaskCounter.countUp();
-                future = CombinedDownloaderImpl.this.download(task, CombinedDownloadCallbacks.group(callbacks), tries);
+                future = CombinedDownloaderImpl.this.download(task, CombinedDownloadCallbacks.group(callbacks), tries, retryBudget);
                 futureManager.setFuture(future);
             } finally {
                 lock.unlock();
@@ -0,0 +1,113 @@
+package org.to2mbn.jmccc.mcdownloader.download.combine;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides how long a hedged task waits for the first byte of a mirror before
+ * starting the next mirror.
+ * <p>
+ * The delay is either fixed, or a percentile of the recently observed
+ * first-byte latencies, so that only the slowest requests are hedged. A
+ * percentile delay should be shared by the tasks downloading from similar
+ * mirrors.
+ * <p>
+ * This class is thread-safe.
+ *
+ * @see CombinedDownloadTask#hedged(HedgeDelay, CombinedDownloadTask[])
+ */
+public class HedgeDelay {
+
+    private static final int MAX_SAMPLES = 256;
+    private static final int MIN_SAMPLES = 20;
+
+    /**
+     * Creates a fixed delay.
+     *
+     * @param delay the delay
+     * @param unit  the unit of <code>delay</code>
+     * @return the hedge delay
+     * @throws IllegalArgumentException if <code>delay &lt; 0</code>
+     */
+    public static HedgeDelay fixed(long delay, TimeUnit unit) {
+        return new HedgeDelay(-1, unit.toMillis(delay));
+    }
+
+    /**
+     * Creates a delay which follows the given percentile of the first-byte
+     * latencies, e.g. 0.95 for the p95 latency.
+     * <p>
+     * <code>initialDelay</code> is used until enough latencies are observed.
+     *
+     * @param percentile   the percentile, in (0, 1]
+     * @param initialDelay the initial delay
+     * @param unit         the unit of <code>initialDelay</code>
+     * @return the hedge delay
+     * @throws IllegalArgumentException if <code>percentile</code> is not in
+     *                                  (0, 1], or <code>initialDelay &lt; 0</code>
+     */
+    public static HedgeDelay percentile(double percentile, long initialDelay, TimeUnit unit) {
+        if (!(percentile > 0 && percentile <= 1))
+            throw new IllegalArgumentException("percentile must be in (0, 1]");
+        return new HedgeDelay(percentile, unit.toMillis(initialDelay));
+    }
+
+    private final double percentile;
+    private final long initialDelay;
+
+    // a ring buffer of the latest first-byte latencies
+    private final long[] samples;
+    private int sampleCount;
+    private int nextSample;
+
+    private HedgeDelay(double percentile, long initialDelay) {
+        if (initialDelay < 0)
+            throw new IllegalArgumentException("delay < 0");
+        this.percentile = percentile;
+        this.initialDelay = initialDelay;
+        this.samples = percentile > 0 ? new long[MAX_SAMPLES] : null;
+    }
+
+    /**
+     * Gets the current delay in milliseconds.
+     *
+     * @return the current delay in milliseconds
+     */
+    public long getDelay() {
+        if (samples == null) {
+            return initialDelay;
+        }
+        long[] sorted;
+        synchronized (this) {
+            if (sampleCount < MIN_SAMPLES) {
+                return initialDelay;
+            }
+            sorted = Arrays.copyOf(samples, sampleCount);
+        }
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile * sorted.length) - 1;
+        return sorted[Math.max(0, index)];
+    }
+
+    void recordFirstByte(long latency) {
+        if (samples == null) {
+            return;
+        }
+        synchronized (this) {
+            samples[nextSample] = latency;
+            nextSample = (nextSample + 1) % samples.length;
+            if (sampleCount < samples.length) {
+                sampleCount++;
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        if (samples == null) {
+            return String.format("HedgeDelay [fixed=%dms]", initialDelay);
+        }
+        return String.format("HedgeDelay [percentile=%.2f, delay=%dms]", percentile, getDelay());
+    }
+
+}
@@ -0,0 +1,228 @@
+package org.to2mbn.jmccc.mcdownloader.download.combine;
+
+import org.to2mbn.jmccc.mcdownloader.download.concurrent.CallbackAdapter;
+import org.to2mbn.jmccc.mcdownloader.download.concurrent.DownloadCallback;
+import org.to2mbn.jmccc.mcdownloader.download.tasks.DownloadTask;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+class HedgedCombinedTask<T> extends CombinedDownloadTask<T> {
+
+    private static final ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "jmccc-hedging-timer");
+            t.setDaemon(true);
+            return t;
+        }
+    });
+
+    static {
+        timer.setRemoveOnCancelPolicy(true);
+        timer.setKeepAliveTime(1, TimeUnit.MINUTES);
+        timer.allowCoreThreadTimeOut(true);
+    }
+
+    private List<CombinedDownloadTask<T>> tasks;
+    private Class<? extends Throwable>[] expectedExceptions;
+    private HedgeDelay delay;
+
+    public HedgedCombinedTask(List<CombinedDownloadTask<T>> tasks, Class<? extends Throwable>[] expectedExceptions, HedgeDelay delay) {
+        this.tasks = tasks;
+        this.expectedExceptions = expectedExceptions;
+        this.delay = delay;
+    }
+
+    @Override
+    public void execute(CombinedDownloadContext<T> context) throws Exception {
+        new Execution(context).startNext();
+    }
+
+    private boolean canContinue(Throwable e) {
+        for (Class<? extends Throwable> expected : expectedExceptions) {
+            if (expected.isInstance(e)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private class Execution {
+
+        private final CombinedDownloadContext<T> context;
+        private final List<Future<T>> futures = new ArrayList<>();
+        private int next;
+        private int running;
+        private boolean completed;
+        private Throwable failure;
+        private ScheduledFuture<?> hedge;
+
+        public Execution(CombinedDownloadContext<T> context) {
+            this.context = context;
+        }
+
+        public void startNext() {
+            int index;
+            ScheduledFuture<?> oldHedge;
+            synchronized (this) {
+                if (completed || next >= tasks.size()) {
+                    return;
+                }
+                index = next++;
+                running++;
+                oldHedge = hedge;
+                hedge = null;
+            }
+            if (oldHedge != null) {
+                oldHedge.cancel(false);
+            }
+
+            final Attempt attempt = new Attempt();
+            Future<T> future;
+            try {
+                future = context.submit(tasks.get(index), attempt, false);
+            } catch (InterruptedException e) {
+                // the whole task has failed or been cancelled
+                return;
+            }
+
+            ScheduledFuture<?> newHedge = null;
+            if (index + 1 < tasks.size()) {
+                newHedge = timer.schedule(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        if (!attempt.hasFirstByte()) {
+                            startNext();
+                        }
+                    }
+                }, delay.getDelay(), TimeUnit.MILLISECONDS);
+            }
+
+            boolean cancel;
+            synchronized (this) {
+                cancel = completed;
+                if (!cancel) {
+                    futures.add(future);
+                    if (newHedge != null && next == index + 1) {
+                        hedge = newHedge;
+                        newHedge = null;
+                    }
+                }
+            }
+            if (cancel) {
+                future.cancel(true);
+            }
+            if (newHedge != null) {
+                // completed, or superseded by a newer attempt
+                newHedge.cancel(false);
+            }
+        }
+
+        private void complete() {
+            List<Future<T>> losers;
+            ScheduledFuture<?> oldHedge;
+            synchronized (this) {
+                losers = new ArrayList<>(futures);
+                oldHedge = hedge;
+                hedge = null;
+            }
+            if (oldHedge != null) {
+                oldHedge.cancel(false);
+            }
+            for (Future<T> loser : losers) {
+                loser.cancel(true);
+            }
+        }
+
+        private class Attempt extends CallbackAdapter<T> {
+
+            private final long startTime = System.currentTimeMillis();
+            private volatile boolean firstByte;
+
+            public boolean hasFirstByte() {
+                return firstByte;
+            }
+
+            @Override
+            public <R> DownloadCallback<R> taskStart(DownloadTask<R> task) {
+                return new CallbackAdapter<R>() {
+
+                    @Override
+                    public void updateProgress(long done, long total) {
+                        if (done > 0 && !firstByte) {
+                            firstByte = true;
+                            delay.recordFirstByte(System.currentTimeMillis() - startTime);
+                        }
+                    }
+                };
+            }
+
+            @Override
+            public void done(T result) {
+                synchronized (Execution.this) {
+                    running--;
+                    if (completed) {
+                        return;
+                    }
+                    completed = true;
+                }
+                complete();
+                context.done(result);
+            }
+
+            @Override
+            public void failed(Throwable e) {
+                boolean startNext = false;
+                Throwable fatal = null;
+                synchronized (Execution.this) {
+                    running--;
+                    if (completed) {
+                        return;
+                    }
+                    if (failure != null) {
+                        e.addSuppressed(failure);
+                    }
+                    failure = e;
+                    if (canContinue(e) && next < tasks.size()) {
+                        startNext = true;
+                    } else if (!canContinue(e) || running == 0) {
+                        completed = true;
+                        fatal = e;
+                    }
+                    // otherwise waits for the other running mirrors
+                }
+                if (startNext) {
+                    startNext();
+                } else if (fatal != null) {
+                    complete();
+                    context.failed(fatal);
+                }
+            }
+
+            @Override
+            public void cancelled() {
+                synchronized (Execution.this) {
+                    running--;
+                    if (completed) {
+                        // cancelled by us
+                        return;
+                    }
+                    completed = true;
+                }
+                complete();
+                context.cancelled();
+            }
+
+        }
+
+    }
+
+}
@@ -0,0 +1,33 @@
+package org.to2mbn.jmccc.mcdownloader.download.combine;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The number of retries left for all the subtasks of a combined task.
+ */
+class RetryBudget {
+
+    private final AtomicInteger remaining;
+
+    public RetryBudget(int retries) {
+        remaining = new AtomicInteger(retries);
+    }
+
+    public boolean tryAcquire() {
+        for (;;) {
+            int current = remaining.get();
+            if (current <= 0) {
+                return false;
+            }
+            if (remaining.compareAndSet(current, current - 1)) {
+                return true;
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("RetryBudget [remaining=%d]", remaining.get());
+    }
+
+}
@@ -0,0 +1,25 @@
+package org.to2mbn.jmccc.mcdownloader.download.combine;
+
+/**
+ * Decides whether a failed download should be retried, and how long to wait
+ * before the next try.
+ * <p>
+ * The implementations must be thread-safe.
+ *
+ * @see CombinedDownloaderBuilder#retryPolicy(RetryPolicy)
+ * @see BackoffRetryPolicy
+ */
+public interface RetryPolicy {
+
+    /**
+     * Gets the delay before the next try.
+     *
+     * @param e            the exception of the failed try
+     * @param currentTries the number of the tries so far, starts from 1
+     * @param maxTries     the max number of tries
+     * @return the delay in milliseconds, 0 to retry immediately, or -1 not to
+     * retry
+     */
+    long getRetryDelay(Throwable e, int currentTries, int maxTries);
+
+}
@@ -0,0 +1,334 @@
+package org.to2mbn.jmccc.mcdownloader.download.combine;
+
+import org.to2mbn.jmccc.mcdownloader.download.Downloader;
+import org.to2mbn.jmccc.mcdownloader.download.concurrent.Callback;
+import org.to2mbn.jmccc.mcdownloader.download.concurrent.CallbackAsyncTask;
+import org.to2mbn.jmccc.mcdownloader.download.concurrent.DownloadCallback;
+import org.to2mbn.jmccc.mcdownloader.download.concurrent.DownloadCallbacks;
+import org.to2mbn.jmccc.mcdownloader.download.io.CircuitOpenException;
+import org.to2mbn.jmccc.mcdownloader.download.io.DownloaderHelper;
+import org.to2mbn.jmccc.mcdownloader.download.tasks.DownloadTask;
+
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Retries the failed downloads as the {@link RetryPolicy} decides. The
+ * underlying downloader is asked to try only once, and the delays between the
+ * tries are scheduled on a timer, so no thread or connection is held while
+ * waiting.
+ * <p>
+ * The retries of the subtasks of a combined task can be limited by a
+ * {@link RetryBudget}.
+ * <p>
+ * If circuit breakers are enabled, each host has one. It opens after
+ * <code>failureThreshold</code> consecutive retryable failures (see
+ * {@link DownloaderHelper#shouldRetry(Throwable)}) of the host, and the
+ * downloads from the host fail fast with {@link CircuitOpenException} while
+ * it's open. After <code>openTime</code> a single download is let through as a
+ * probe, which closes the breaker if the host responds.
+ */
+class RetryingDownloader implements Downloader {
+
+    private static final Logger LOGGER = Logger.getLogger(RetryingDownloader.class.getCanonicalName());
+
+    private static final ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "jmccc-retry-timer");
+            t.setDaemon(true);
+            return t;
+        }
+    });
+
+    static {
+        timer.setRemoveOnCancelPolicy(true);
+        timer.setKeepAliveTime(1, TimeUnit.MINUTES);
+        timer.allowCoreThreadTimeOut(true);
+    }
+
+    private final Downloader downloader;
+    private final RetryPolicy policy;
+    private final int retryBudget;
+    private final int failureThreshold;
+    private final long openTime;
+    private final ConcurrentMap<String, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+
+    /**
+     * @param downloader       the underlying downloader
+     * @param policy           the retry policy
+     * @param retryBudget      the max number of retries of a combined task, -1
+     *                         for no limit
+     * @param failureThreshold the number of consecutive failures to open a
+     *                         circuit breaker, -1 to disable circuit breakers
+     * @param openTime         how long a circuit breaker stays open, in
+     *                         milliseconds
+     */
+    public RetryingDownloader(Downloader downloader, RetryPolicy policy, int retryBudget, int failureThreshold, long openTime) {
+        this.downloader = Objects.requireNonNull(downloader);
+        this.policy = Objects.requireNonNull(policy);
+        this.retryBudget = retryBudget;
+        this.failureThreshold = failureThreshold;
+        this.openTime = openTime;
+    }
+
+    @Override
+    public <T> Future<T> download(DownloadTask<T> task, DownloadCallback<T> callback) {
+        return download(task, callback, 1);
+    }
+
+    @Override
+    public <T> Future<T> download(DownloadTask<T> task, DownloadCallback<T> callback, int tries) {
+        return download(task, callback, tries, null);
+    }
+
+    /**
+     * @param budget the retry budget of the combined task, can be null
+     */
+    public <T> Future<T> download(DownloadTask<T> task, DownloadCallback<T> callback, int tries, RetryBudget budget) {
+        Objects.requireNonNull(task);
+        if (tries < 1)
+            throw new IllegalArgumentException("tries < 1");
+        if (downloader.isShutdown())
+            throw new RejectedExecutionException("The downloader has been shutdown.");
+
+        RetryingDownload<T> download = new RetryingDownload<>(task, callback == null ? DownloadCallbacks.<T>empty() : callback, tries, budget, getCircuitBreaker(task));
+        download.setCallback(callback);
+        download.attempt();
+        return download;
+    }
+
+    /**
+     * Creates the retry budget of a combined task.
+     *
+     * @return the retry budget, null if the retries are not limited
+     */
+    public RetryBudget createBudget() {
+        return retryBudget == -1 ? null : new RetryBudget(retryBudget);
+    }
+
+    @Override
+    public void shutdown() {
+        downloader.shutdown();
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return downloader.isShutdown();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("RetryingDownloader [downloader=%s, policy=%s, retryBudget=%d, failureThreshold=%d, openTime=%d, breakers=%s]", downloader, policy, retryBudget, failureThreshold, openTime, breakers.values());
+    }
+
+    private CircuitBreaker getCircuitBreaker(DownloadTask<?> task) {
+        String host = task.getURI().getHost();
+        if (failureThreshold == -1 || host == null) {
+            return null;
+        }
+        host = host.toLowerCase();
+        CircuitBreaker breaker = breakers.get(host);
+        if (breaker == null) {
+            CircuitBreaker newBreaker = new CircuitBreaker(host);
+            breaker = breakers.putIfAbsent(host, newBreaker);
+            if (breaker == null) {
+                breaker = newBreaker;
+            }
+        }
+        return breaker;
+    }
+
+    private class CircuitBreaker {
+
+        private final String host;
+        private int failures;
+        // -1 if closed
+        private long openedTime = -1;
+        // -1 if no probe is in flight
+        private long probeTime = -1;
+
+        public CircuitBreaker(String host) {
+            this.host = host;
+        }
+
+        public synchronized boolean allowRequest() {
+            if (openedTime == -1) {
+                return true;
+            }
+            long now = System.currentTimeMillis();
+            if (now - openedTime < openTime) {
+                return false;
+            }
+            // half-open, a probe that never reports back is given up after openTime
+            if (probeTime != -1 && now - probeTime < openTime) {
+                return false;
+            }
+            probeTime = now;
+            return true;
+        }
+
+        public synchronized boolean isOpen() {
+            return openedTime != -1 && System.currentTimeMillis() - openedTime < openTime;
+        }
+
+        public synchronized void hostResponded() {
+            if (openedTime != -1) {
+                LOGGER.info("Circuit breaker of " + host + " closed");
+            }
+            failures = 0;
+            openedTime = -1;
+            probeTime = -1;
+        }
+
+        public synchronized void hostFailed() {
+            failures++;
+            if (probeTime != -1 || (openedTime == -1 && failures >= failureThreshold)) {
+                if (openedTime == -1) {
+                    LOGGER.info("Circuit breaker of " + host + " opened after " + failures + " consecutive failures");
+                }
+                openedTime = System.currentTimeMillis();
+                probeTime = -1;
+            }
+        }
+
+        @Override
+        public synchronized String toString() {
+            return String.format("%s [failures=%d, open=%s]", host, failures, openedTime != -1);
+        }
+
+    }
+
+    private class RetryingDownload<T> extends CallbackAsyncTask<T> implements DownloadCallback<T> {
+
+        private final DownloadTask<T> task;
+        private final DownloadCallback<T> callback;
+        private final int maxTries;
+        private final RetryBudget budget;
+        private final CircuitBreaker breaker;
+
+        private volatile int currentTries;
+        private volatile boolean skipRetry = false;
+
+        public RetryingDownload(DownloadTask<T> task, DownloadCallback<T> callback, int maxTries, RetryBudget budget, CircuitBreaker breaker) {
+            this.task = task;
+            this.callback = callback;
+            this.maxTries = maxTries;
+            this.budget = budget;
+            this.breaker = breaker;
+        }
+
+        public void attempt() {
+            if (isCancelled()) {
+                return;
+            }
+            if (breaker != null && !breaker.allowRequest()) {
+                lifecycle().failed(new CircuitOpenException("Host " + breaker.host + " is down, skipping " + task.getURI()));
+                return;
+            }
+            Future<T> future;
+            try {
+                future = downloader.download(task, this, 1);
+            } catch (Throwable e) {
+                lifecycle().failed(e);
+                return;
+            }
+            addCancelable(future);
+        }
+
+        @Override
+        protected void execute() {
+            // driven by attempt()
+        }
+
+        @Override
+        protected Callback<T> lifecycle() {
+            // makes the lifecycle accessible to the downloader
+            return super.lifecycle();
+        }
+
+        @Override
+        public void done(T result) {
+            if (breaker != null) {
+                breaker.hostResponded();
+            }
+            lifecycle().done(result);
+        }
+
+        @Override
+        public void failed(Throwable e) {
+            currentTries++;
+            if (breaker != null) {
+                if (DownloaderHelper.shouldRetry(e)) {
+                    breaker.hostFailed();
+                } else if (!(e instanceof CircuitOpenException)) {
+                    // e.g. 404, the host is up
+                    breaker.hostResponded();
+                }
+            }
+
+            long delay = skipRetry ? -1 : policy.getRetryDelay(e, currentTries, maxTries);
+            if (delay < 0) {
+                lifecycle().failed(e);
+                return;
+            }
+            if (breaker != null && breaker.isOpen()) {
+                lifecycle().failed(new CircuitOpenException("Host " + breaker.host + " is down", e));
+                return;
+            }
+            if (budget != null && !budget.tryAcquire()) {
+                lifecycle().failed(e);
+                return;
+            }
+
+            try {
+                callback.retry(e, currentTries, maxTries);
+            } catch (Throwable e1) {
+                e1.addSuppressed(e);
+                lifecycle().failed(e1);
+                return;
+            }
+
+            if (delay == 0) {
+                attempt();
+            } else {
+                addCancelable(timer.schedule(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        attempt();
+                    }
+                }, delay, TimeUnit.MILLISECONDS));
+            }
+        }
+
+        @Override
+        public void cancelled() {
+            lifecycle().cancelled();
+        }
+
+        @Override
+        public void updateProgress(long done, long total) {
+            // the exceptions thrown by the callback are not retried
+            skipRetry = true;
+            callback.updateProgress(done, total);
+            skipRetry = false;
+        }
+
+        @Override
+        public void retry(Throwable e, int current, int max) {
+            // the underlying downloader tries only once
+            callback.retry(e, current, max);
+        }
+
+    }
+
+}
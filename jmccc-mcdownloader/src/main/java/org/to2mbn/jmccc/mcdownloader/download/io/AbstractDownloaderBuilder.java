@@ -1,6 +1,7 @@
 package org.to2mbn.jmccc.mcdownloader.download.io;
 
 import org.to2mbn.jmccc.mcdownloader.download.Downloader;
+import org.to2mbn.jmccc.mcdownloader.download.tasks.DownloadTask;
 import org.to2mbn.jmccc.util.Builder;
 
 import java.net.Proxy;
@@ -14,6 +15,11 @@ abstract public class AbstractDownloaderBuilder implements Builder<Downloader> {
     protected Proxy proxy = Proxy.NO_PROXY;
     protected long downloadPoolKeepAliveTime = 10;
     protected TimeUnit downloadPoolKeepAliveTimeUnit = TimeUnit.SECONDS;
+    protected int segments = 1;
+    protected long segmentThreshold = 8 * 1024 * 1024;
+    protected long stallMinRate = -1;
+    protected long stallWindow = 30000;
+    protected BufferPool bufferPool;
 
     protected AbstractDownloaderBuilder() {
     }
@@ -44,4 +50,95 @@ abstract public class AbstractDownloaderBuilder implements Builder<Downloader> {
         return this;
     }
 
+    /**
+     * Enables the segmented download mode.
+     * <p>
+     * If a resource is larger than <code>threshold</code> and the server
+     * supports range requests, it will be split into <code>segments</code>
+     * ranges, which are downloaded over several connections in parallel. Only
+     * the tasks whose {@link DownloadTask#isSegmentable()} is true are
+     * affected.
+     * <p>
+     * The segmented download mode is disabled by default.
+     *
+     * @param segments  the max number of connections used by one resource, 1
+     *                  to disable the segmented download mode
+     * @param threshold the min length (in bytes) of the resource to split
+     * @return the builder itself
+     * @throws IllegalArgumentException if <code>segments &lt; 1</code> or
+     *                                  <code>threshold &lt; 1</code>
+     */
+    public AbstractDownloaderBuilder segmentedDownload(int segments, long threshold) {
+        if (segments < 1)
+            throw new IllegalArgumentException("segments < 1");
+        if (threshold < 1)
+            throw new IllegalArgumentException("threshold < 1");
+        this.segments = segments;
+        this.segmentThreshold = threshold;
+        return this;
+    }
+
+    /**
+     * Enables the stall detection.
+     * <p>
+     * A transfer is aborted with a {@link TransferStalledException} if it
+     * receives less than <code>minBytesPerSecond</code> on average over the
+     * last <code>window</code>, even if the read timeout is never reached. The
+     * aborted transfer is retried like other I/O failures, resuming from the
+     * committed data if the task supports it; once the tries are used up, a
+     * task with several mirrors moves on to the next one.
+     * <p>
+     * The stall detection is disabled by default.
+     *
+     * @param minBytesPerSecond the min throughput in bytes per second, -1 to
+     *                          disable the stall detection
+     * @param window            the length of the sliding window
+     * @param unit              the unit of <code>window</code>
+     * @return the builder itself
+     * @throws IllegalArgumentException if <code>minBytesPerSecond</code> is
+     *                                  neither positive nor -1, or the window
+     *                                  is shorter than 10ms
+     */
+    public AbstractDownloaderBuilder stallDetection(long minBytesPerSecond, long window, TimeUnit unit) {
+        if (minBytesPerSecond < 1 && minBytesPerSecond != -1)
+            throw new IllegalArgumentException("minBytesPerSecond must be positive or -1");
+        if (unit.toMillis(window) < 10)
+            throw new IllegalArgumentException("window < 10ms");
+        this.stallMinRate = minBytesPerSecond;
+        this.stallWindow = unit.toMillis(window);
+        return this;
+    }
+
+    /**
+     * Sets the pool of the buffers which the transfers read into.
+     * <p>
+     * Default to a pool shared by all the downloaders, which is
+     * {@link BufferPool#getDefaultDirectPool()} or
+     * {@link BufferPool#getDefaultHeapPool()}, depending on which kind of
+     * buffers the backend reads into more efficiently. The HTTP/2 backend
+     * reads into the buffers of its HTTP client, so only its fallback uses the
+     * pool.
+     *
+     * @param bufferPool the buffer pool, null to use the default one
+     * @return the builder itself
+     */
+    public AbstractDownloaderBuilder bufferPool(BufferPool bufferPool) {
+        this.bufferPool = bufferPool;
+        return this;
+    }
+
+    /**
+     * Applies the decorators configured in this builder to the given
+     * downloader.
+     *
+     * @param downloader the downloader built by the subclass
+     * @return the decorated downloader
+     */
+    protected Downloader decorate(Downloader downloader) {
+        if (segments > 1) {
+            downloader = new SegmentedDownloader(downloader, segments, segmentThreshold);
+        }
+        return downloader;
+    }
+
 }
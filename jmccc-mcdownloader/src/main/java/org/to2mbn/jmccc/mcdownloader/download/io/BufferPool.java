@@ -0,0 +1,195 @@
+package org.to2mbn.jmccc.mcdownloader.download.io;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded pool of byte buffers, which are reused by the transfers instead of
+ * allocating new buffers for each download.
+ * <p>
+ * At most <code>capacity</code> idle buffers are kept. If the pool is empty, a
+ * new buffer is allocated, and it's discarded on release if the pool is full.
+ * <p>
+ * Direct buffers can be written into files without being copied into native
+ * memory first, but they can't back the <code>byte[]</code> reads of
+ * <code>InputStream</code>s.
+ * <p>
+ * This class is thread-safe.
+ *
+ * @see AbstractDownloaderBuilder#bufferPool(BufferPool)
+ */
+public class BufferPool {
+
+    private static final BufferPool DEFAULT_DIRECT_POOL = new BufferPool(64 * 1024, 64, true);
+    private static final BufferPool DEFAULT_HEAP_POOL = new BufferPool(8192, 64, false);
+
+    /**
+     * Gets the pool of 64 KiB direct buffers shared by the downloaders by
+     * default. It keeps at most 64 idle buffers.
+     *
+     * @return the default direct buffer pool
+     */
+    public static BufferPool getDefaultDirectPool() {
+        return DEFAULT_DIRECT_POOL;
+    }
+
+    /**
+     * Gets the pool of 8 KiB heap buffers shared by the downloaders by
+     * default. It keeps at most 64 idle buffers.
+     *
+     * @return the default heap buffer pool
+     */
+    public static BufferPool getDefaultHeapPool() {
+        return DEFAULT_HEAP_POOL;
+    }
+
+    private final int bufferSize;
+    private final int capacity;
+    private final boolean direct;
+
+    private final Queue<ByteBuffer> buffers = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pooled = new AtomicInteger();
+    private final AtomicInteger inUse = new AtomicInteger();
+    private final AtomicLong acquisitions = new AtomicLong();
+    private final AtomicLong allocations = new AtomicLong();
+
+    /**
+     * @param bufferSize the size of each buffer in bytes
+     * @param capacity   the max number of idle buffers to keep, 0 to disable
+     *                   pooling
+     * @param direct     true to allocate direct buffers
+     * @throws IllegalArgumentException if <code>bufferSize &lt; 1</code> or
+     *                                  <code>capacity &lt; 0</code>
+     */
+    public BufferPool(int bufferSize, int capacity, boolean direct) {
+        if (bufferSize < 1)
+            throw new IllegalArgumentException("bufferSize < 1");
+        if (capacity < 0)
+            throw new IllegalArgumentException("capacity < 0");
+        this.bufferSize = bufferSize;
+        this.capacity = capacity;
+        this.direct = direct;
+    }
+
+    /**
+     * Takes a cleared buffer from the pool, or allocates a new one if the pool
+     * is empty. The buffer must be returned by {@link #release(ByteBuffer)}
+     * after use, and must not be used after that.
+     *
+     * @return the buffer
+     */
+    public ByteBuffer acquire() {
+        acquisitions.incrementAndGet();
+        inUse.incrementAndGet();
+        ByteBuffer buffer = buffers.poll();
+        if (buffer == null) {
+            allocations.incrementAndGet();
+            return direct ? ByteBuffer.allocateDirect(bufferSize) : ByteBuffer.allocate(bufferSize);
+        }
+        pooled.decrementAndGet();
+        return buffer;
+    }
+
+    /**
+     * Returns a buffer taken by {@link #acquire()} to the pool.
+     *
+     * @param buffer the buffer
+     */
+    public void release(ByteBuffer buffer) {
+        inUse.decrementAndGet();
+        if (pooled.incrementAndGet() > capacity) {
+            pooled.decrementAndGet();
+            return;
+        }
+        ((Buffer) buffer).clear();
+        buffers.offer(buffer);
+    }
+
+    /**
+     * Gets the size of each buffer.
+     *
+     * @return the size of each buffer in bytes
+     */
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * Gets the max number of the idle buffers to keep.
+     *
+     * @return the max number of the idle buffers
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Gets whether the buffers are direct buffers.
+     *
+     * @return true if the buffers are direct buffers
+     */
+    public boolean isDirect() {
+        return direct;
+    }
+
+    /**
+     * Gets the number of the idle buffers in the pool.
+     *
+     * @return the number of the idle buffers
+     */
+    public int getPooledBuffers() {
+        return pooled.get();
+    }
+
+    /**
+     * Gets the number of the buffers which have been acquired but not
+     * released.
+     *
+     * @return the number of the buffers in use
+     */
+    public int getBuffersInUse() {
+        return inUse.get();
+    }
+
+    /**
+     * Gets the number of the calls to {@link #acquire()}.
+     *
+     * @return the number of the acquisitions
+     */
+    public long getAcquisitions() {
+        return acquisitions.get();
+    }
+
+    /**
+     * Gets the number of the buffers allocated because the pool was empty.
+     *
+     * @return the number of the allocations
+     */
+    public long getAllocations() {
+        return allocations.get();
+    }
+
+    /**
+     * Gets the ratio of the acquisitions served by pooled buffers.
+     *
+     * @return the reuse ratio in [0, 1], 0 if no buffers were acquired
+     */
+    public double getReuseRatio() {
+        long acquisitions = this.acquisitions.get();
+        if (acquisitions == 0) {
+            return 0;
+        }
+        return Math.max(0, 1 - (double) allocations.get() / acquisitions);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("BufferPool [bufferSize=%d, capacity=%d, direct=%s, pooled=%d, inUse=%d, acquisitions=%d, allocations=%d]",
+                bufferSize, capacity, direct, pooled.get(), inUse.get(), acquisitions.get(), allocations.get());
+    }
+
+}
@@ -0,0 +1,24 @@
+package org.to2mbn.jmccc.mcdownloader.download.io;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a download fails fast because its host has failed repeatedly
+ * and is considered down, so that the download can be handed to another
+ * mirror without waiting for the host.
+ *
+ * @see org.to2mbn.jmccc.mcdownloader.download.combine.CombinedDownloaderBuilder#circuitBreaker(int, long, java.util.concurrent.TimeUnit)
+ */
+public class CircuitOpenException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    public CircuitOpenException(String message) {
+        super(message);
+    }
+
+    public CircuitOpenException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+}
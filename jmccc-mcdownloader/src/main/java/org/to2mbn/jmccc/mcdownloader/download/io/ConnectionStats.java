@@ -0,0 +1,108 @@
+package org.to2mbn.jmccc.mcdownloader.download.io;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Collects the connection statistics of a downloader.
+ * <p>
+ * New connections can only be observed for https requests (by counting the TLS
+ * sockets), so the reuse ratio only covers https requests.
+ * <p>
+ * This class is thread-safe.
+ *
+ * @see JdkDownloaderBuilder#connectionStats(ConnectionStats)
+ */
+public class ConnectionStats {
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong secureRequests = new AtomicLong();
+    private final AtomicLong secureConnections = new AtomicLong();
+    private final AtomicLong releasedConnections = new AtomicLong();
+    private final AtomicLong discardedConnections = new AtomicLong();
+
+    /**
+     * Gets the number of the requests sent.
+     *
+     * @return the number of the requests sent
+     */
+    public long getRequests() {
+        return requests.get();
+    }
+
+    /**
+     * Gets the number of the https requests sent.
+     *
+     * @return the number of the https requests sent
+     */
+    public long getSecureRequests() {
+        return secureRequests.get();
+    }
+
+    /**
+     * Gets the number of the TLS connections opened (the TLS handshakes).
+     *
+     * @return the number of the TLS connections opened
+     */
+    public long getSecureConnections() {
+        return secureConnections.get();
+    }
+
+    /**
+     * Gets the number of the connections which were drained and released for
+     * reuse after their responses.
+     *
+     * @return the number of the connections released for reuse
+     */
+    public long getReleasedConnections() {
+        return releasedConnections.get();
+    }
+
+    /**
+     * Gets the number of the connections which were closed after their
+     * responses.
+     *
+     * @return the number of the connections closed
+     */
+    public long getDiscardedConnections() {
+        return discardedConnections.get();
+    }
+
+    /**
+     * Gets the ratio of the https requests sent over reused connections.
+     *
+     * @return the reuse ratio in [0, 1], 0 if no https requests were sent
+     */
+    public double getReuseRatio() {
+        long secureRequests = this.secureRequests.get();
+        if (secureRequests == 0) {
+            return 0;
+        }
+        return Math.max(0, 1 - (double) secureConnections.get() / secureRequests);
+    }
+
+    void requestSent(boolean secure) {
+        requests.incrementAndGet();
+        if (secure) {
+            secureRequests.incrementAndGet();
+        }
+    }
+
+    void secureConnectionOpened() {
+        secureConnections.incrementAndGet();
+    }
+
+    void connectionReleased() {
+        releasedConnections.incrementAndGet();
+    }
+
+    void connectionDiscarded() {
+        discardedConnections.incrementAndGet();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ConnectionStats [requests=%d, secureRequests=%d, secureConnections=%d, released=%d, discarded=%d, reuseRatio=%.2f]",
+                getRequests(), getSecureRequests(), getSecureConnections(), getReleasedConnections(), getDiscardedConnections(), getReuseRatio());
+    }
+
+}
@@ -0,0 +1,75 @@
+package org.to2mbn.jmccc.mcdownloader.download.io;
+
+import javax.net.ssl.SSLSocketFactory;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+
+/**
+ * Counts the TLS sockets created by the delegated factory.
+ * <p>
+ * The JDK keep-alive cache only reuses the connections created by the same
+ * factory, so a downloader must use a single instance for all its requests.
+ */
+class CountingSSLSocketFactory extends SSLSocketFactory {
+
+    private final SSLSocketFactory delegated;
+    private final ConnectionStats stats;
+
+    public CountingSSLSocketFactory(SSLSocketFactory delegated, ConnectionStats stats) {
+        this.delegated = delegated;
+        this.stats = stats;
+    }
+
+    @Override
+    public String[] getDefaultCipherSuites() {
+        return delegated.getDefaultCipherSuites();
+    }
+
+    @Override
+    public String[] getSupportedCipherSuites() {
+        return delegated.getSupportedCipherSuites();
+    }
+
+    @Override
+    public Socket createSocket() throws IOException {
+        return opened(delegated.createSocket());
+    }
+
+    @Override
+    public Socket createSocket(Socket s, String host, int port, boolean autoClose) throws IOException {
+        return opened(delegated.createSocket(s, host, port, autoClose));
+    }
+
+    @Override
+    public Socket createSocket(Socket s, InputStream consumed, boolean autoClose) throws IOException {
+        return opened(delegated.createSocket(s, consumed, autoClose));
+    }
+
+    @Override
+    public Socket createSocket(String host, int port) throws IOException {
+        return opened(delegated.createSocket(host, port));
+    }
+
+    @Override
+    public Socket createSocket(String host, int port, InetAddress localHost, int localPort) throws IOException {
+        return opened(delegated.createSocket(host, port, localHost, localPort));
+    }
+
+    @Override
+    public Socket createSocket(InetAddress host, int port) throws IOException {
+        return opened(delegated.createSocket(host, port));
+    }
+
+    @Override
+    public Socket createSocket(InetAddress address, int port, InetAddress localAddress, int localPort) throws IOException {
+        return opened(delegated.createSocket(address, port, localAddress, localPort));
+    }
+
+    private Socket opened(Socket socket) {
+        stats.secureConnectionOpened();
+        return socket;
+    }
+
+}
@@ -1,9 +1,23 @@
 package org.to2mbn.jmccc.mcdownloader.download.io;
 
+import org.to2mbn.jmccc.mcdownloader.download.tasks.ByteRange;
+import org.to2mbn.jmccc.mcdownloader.download.tasks.DownloadTask;
+import org.to2mbn.jmccc.mcdownloader.download.tasks.ResumePoint;
+
 import java.io.IOException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 public final class DownloaderHelper {
 
+    private static final Logger LOGGER = Logger.getLogger(DownloaderHelper.class.getCanonicalName());
+
     private DownloaderHelper() {
     }
 
@@ -11,15 +25,48 @@ public final class DownloaderHelper {
         if (!(e instanceof IOException)) {
             return false;
         }
+        if (e instanceof ResumeRejectedException) {
+            // retrying the same range makes no sense
+            return false;
+        }
+        if (e instanceof CircuitOpenException) {
+            // the host is down, try another one instead
+            return false;
+        }
         if (e instanceof IllegalHttpResponseCodeException) {
-            return isResponseCodeRetryable(((IllegalHttpResponseCodeException) e).getResponseCode());
+            IllegalHttpResponseCodeException responseCodeException = (IllegalHttpResponseCodeException) e;
+            // the server asks us to come back later
+            return responseCodeException.getRetryAfter() != -1 || isResponseCodeRetryable(responseCodeException.getResponseCode());
+        }
+        return true;
+    }
+
+    /**
+     * Returns true if the failure can be retried at once.
+     * <p>
+     * The failures which ask for a delay (<code>429</code>, or a
+     * <code>Retry-After</code> header) are not retried at once, they are left
+     * to the {@link org.to2mbn.jmccc.mcdownloader.download.combine.RetryPolicy},
+     * which waits without holding a thread.
+     *
+     * @param e the failure
+     * @return true if the failure can be retried at once
+     */
+    public static boolean shouldRetryImmediately(Throwable e) {
+        if (!shouldRetry(e)) {
+            return false;
+        }
+        if (e instanceof IllegalHttpResponseCodeException) {
+            IllegalHttpResponseCodeException responseCodeException = (IllegalHttpResponseCodeException) e;
+            return responseCodeException.getRetryAfter() == -1 && responseCodeException.getResponseCode() != 429;
         }
         return true;
     }
 
     public static boolean isResponseCodeRetryable(int responseCode) {
         if (responseCode >= 400 && responseCode <= 499) { // 4xx
-            if (responseCode == 408 // Request Timeout
+            if (responseCode == 408 || // Request Timeout
+                    responseCode == 429 // Too Many Requests
             ) {
                 return true;
             } else {
@@ -39,4 +86,227 @@ public final class DownloaderHelper {
         }
     }
 
+    /**
+     * Returns the entity tag if it's a strong entity tag, otherwise null.
+     * <p>
+     * Weak entity tags (<code>W/"..."</code>) cannot be used in
+     * <code>If-Range</code> headers, so they are ignored.
+     *
+     * @param entityTag the value of <code>ETag</code> header, can be null
+     * @return the strong entity tag, or null
+     */
+    public static String getStrongEntityTag(String entityTag) {
+        if (entityTag == null) {
+            return null;
+        }
+        entityTag = entityTag.trim();
+        if (entityTag.isEmpty() || entityTag.startsWith("W/")) {
+            return null;
+        }
+        return entityTag;
+    }
+
+    /**
+     * Parses a <code>Content-Range</code> header in the form of
+     * <code>bytes first-last/complete</code>.
+     *
+     * @param contentRange the value of <code>Content-Range</code> header, can
+     *                     be null
+     * @return <code>{first, last, complete}</code>, <code>complete</code> is -1
+     * if unknown; or null if the header is absent or malformed
+     */
+    public static long[] parseContentRange(String contentRange) {
+        if (contentRange == null) {
+            return null;
+        }
+        contentRange = contentRange.trim();
+        if (!contentRange.startsWith("bytes ")) {
+            return null;
+        }
+        int idxDash = contentRange.indexOf('-');
+        int idxSlash = contentRange.indexOf('/');
+        if (idxDash == -1 || idxSlash == -1 || idxDash > idxSlash) {
+            return null;
+        }
+        try {
+            long first = Long.parseLong(contentRange.substring("bytes ".length(), idxDash).trim());
+            long last = Long.parseLong(contentRange.substring(idxDash + 1, idxSlash).trim());
+            String completeStr = contentRange.substring(idxSlash + 1).trim();
+            long complete = "*".equals(completeStr) ? -1 : Long.parseLong(completeStr);
+            if (first < 0 || last < first || (complete != -1 && complete <= last)) {
+                return null;
+            }
+            return new long[]{first, last, complete};
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Gets the range to request for the given task.
+     * <p>
+     * The range is the one required by the task, or, if <code>resume</code> is
+     * true, the rest of the resource after the resume point of the task. A
+     * resume point is used only if its entity tag is known, so that the
+     * <code>If-Range</code> header can ensure the resource hasn't changed.
+     *
+     * @param task   the task
+     * @param resume false to ignore the resume point
+     * @return the range to request, or null to request the whole resource
+     */
+    public static ByteRange getRequestRange(DownloadTask<?> task, boolean resume) {
+        ByteRange requestRange = task.getRequestRange();
+        if (requestRange != null || !resume) {
+            return requestRange;
+        }
+        ResumePoint resumePoint;
+        try {
+            resumePoint = task.getResumePoint();
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Couldn't get the resume point of " + task, e);
+            return null;
+        }
+        // if the entity tag is unknown, we cannot ensure the resource hasn't changed
+        if (resumePoint != null && !resumePoint.isBeginning() && resumePoint.getEntityTag() != null) {
+            return new ByteRange(resumePoint.getOffset(), -1, resumePoint.getEntityTag());
+        }
+        return null;
+    }
+
+    /**
+     * Gets the headers for requesting the given range.
+     * <p>
+     * The whole resource may be sent with gzip encoding. Ranges are applied to
+     * the encoded data, so a range is requested with the identity encoding.
+     *
+     * @param requestRange the range to request, null for the whole resource
+     * @return the names and the values of the headers
+     */
+    public static Map<String, String> getRequestHeaders(ByteRange requestRange) {
+        Map<String, String> headers = new LinkedHashMap<>();
+        if (requestRange == null) {
+            headers.put("Accept-Encoding", "gzip");
+        } else {
+            headers.put("Accept-Encoding", "identity");
+            headers.put("Range", requestRange.toHeaderValue());
+            if (requestRange.getEntityTag() != null) {
+                headers.put("If-Range", requestRange.getEntityTag());
+            }
+        }
+        return headers;
+    }
+
+    /**
+     * Decides where the download session starts from the response to a
+     * request made by {@link #getRequestHeaders(ByteRange)}.
+     * <p>
+     * A response other than a partial one means the server has sent the full
+     * resource, which is accepted unless the range is required by the task
+     * (e.g. a segment). A partial response must be the requested range, with
+     * the identity encoding: its <code>Content-Range</code> must start and end
+     * where the range does (an open-ended or overlong range ends at the
+     * complete length), and agree with the <code>Content-Length</code>.
+     *
+     * @param uri           the uri of the resource, for the error messages
+     * @param statusCode    the status code of the response
+     * @param requestRange  the requested range, can be null
+     * @param rangeRequired true if the range is required by the task
+     * @param contentRange  the value of <code>Content-Range</code> header, can
+     *                      be null
+     * @param entityTag     the value of <code>ETag</code> header, can be null
+     * @param gzipOn        true if the response is gzip encoded
+     * @param contentLength the value of <code>Content-Length</code> header, -1
+     *                      if unknown
+     * @return where the session starts
+     * @throws ResumeRejectedException if the range hasn't been served as
+     *                                 requested
+     */
+    public static SessionStart getSessionStart(String uri, int statusCode, ByteRange requestRange, boolean rangeRequired,
+                                               String contentRange, String entityTag, boolean gzipOn, long contentLength) throws ResumeRejectedException {
+        if (statusCode == 206 && requestRange != null) {
+            long[] range = parseContentRange(contentRange);
+            if (gzipOn || range == null || !isServedAsRequested(requestRange, range, contentLength)) {
+                throw new ResumeRejectedException("Unexpected partial response for " + requestRange + " of " + uri);
+            }
+            return new SessionStart(new ResumePoint(range[0], requestRange.getEntityTag() == null ? getStrongEntityTag(entityTag) : requestRange.getEntityTag()), range[2]);
+        } else if (rangeRequired) {
+            throw new ResumeRejectedException("Server doesn't support range requests: " + uri);
+        } else {
+            // the server sent the full resource
+            return new SessionStart(ResumePoint.beginning(gzipOn ? null : getStrongEntityTag(entityTag)), contentLength);
+        }
+    }
+
+    private static boolean isServedAsRequested(ByteRange requestRange, long[] range, long contentLength) {
+        long complete = range[2];
+        long expectedLast;
+        if (requestRange.getLast() == -1) {
+            // the end of an open-ended range cannot be checked without the complete length, so it is rejected
+            expectedLast = complete == -1 ? -1 : complete - 1;
+        } else {
+            expectedLast = complete == -1 ? requestRange.getLast() : Math.min(requestRange.getLast(), complete - 1);
+        }
+        return range[0] == requestRange.getFirst()
+                && range[1] == expectedLast
+                && (contentLength == -1 || contentLength == range[1] - range[0] + 1);
+    }
+
+    /**
+     * Parses a <code>Retry-After</code> header, which is either a number of
+     * seconds or an HTTP date.
+     *
+     * @param retryAfter the value of <code>Retry-After</code> header, can be
+     *                   null
+     * @return the delay in milliseconds, or -1 if the header is absent or
+     * malformed
+     */
+    public static long parseRetryAfter(String retryAfter) {
+        if (retryAfter == null) {
+            return -1;
+        }
+        retryAfter = retryAfter.trim();
+        try {
+            long seconds = Long.parseLong(retryAfter);
+            return seconds < 0 ? -1 : seconds * 1000;
+        } catch (NumberFormatException e) {
+            // not delta-seconds, try HTTP-date
+        }
+        SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+        try {
+            return Math.max(0, format.parse(retryAfter).getTime() - System.currentTimeMillis());
+        } catch (ParseException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Where a download session starts, and the length of the whole resource.
+     *
+     * @see DownloaderHelper#getSessionStart(String, int, ByteRange, boolean,
+     * String, String, boolean, long)
+     */
+    public static final class SessionStart {
+
+        private final ResumePoint resumePoint;
+        private final long totalLength;
+
+        private SessionStart(ResumePoint resumePoint, long totalLength) {
+            this.resumePoint = resumePoint;
+            this.totalLength = totalLength;
+        }
+
+        public ResumePoint getResumePoint() {
+            return resumePoint;
+        }
+
+        /**
+         * @return the length of the whole resource, -1 if unknown
+         */
+        public long getTotalLength() {
+            return totalLength;
+        }
+
+    }
+
 }
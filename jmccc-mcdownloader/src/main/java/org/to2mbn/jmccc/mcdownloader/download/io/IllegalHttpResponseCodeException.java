@@ -7,29 +7,54 @@ public class IllegalHttpResponseCodeException extends IOException {
     private static final long serialVersionUID = 1L;
 
     private final int responseCode;
+    private final long retryAfter;
 
     public IllegalHttpResponseCodeException(int responseCode) {
         super(String.valueOf(responseCode));
         this.responseCode = responseCode;
+        this.retryAfter = -1;
     }
 
     public IllegalHttpResponseCodeException(String message, Throwable cause, int responseCode) {
         super(message, cause);
         this.responseCode = responseCode;
+        this.retryAfter = -1;
     }
 
     public IllegalHttpResponseCodeException(String message, int responseCode) {
         super(message);
         this.responseCode = responseCode;
+        this.retryAfter = -1;
     }
 
     public IllegalHttpResponseCodeException(Throwable cause, int responseCode) {
         super(String.valueOf(responseCode), cause);
         this.responseCode = responseCode;
+        this.retryAfter = -1;
+    }
+
+    /**
+     * @param retryAfter the delay requested by the <code>Retry-After</code>
+     *                   header in milliseconds, -1 if absent
+     */
+    public IllegalHttpResponseCodeException(String message, int responseCode, long retryAfter) {
+        super(message);
+        this.responseCode = responseCode;
+        this.retryAfter = retryAfter;
     }
 
     public int getResponseCode() {
         return responseCode;
     }
 
+    /**
+     * Gets the delay requested by the server before retrying, which is sent
+     * along with <code>429</code> and <code>503</code> responses.
+     *
+     * @return the delay in milliseconds, -1 if the server didn't request one
+     */
+    public long getRetryAfter() {
+        return retryAfter;
+    }
+
 }
@@ -1,9 +1,17 @@
 package org.to2mbn.jmccc.mcdownloader.download.io;
 
 import org.to2mbn.jmccc.mcdownloader.download.Downloader;
+import org.to2mbn.jmccc.mcdownloader.util.ThreadPoolUtils;
+
+import java.util.concurrent.ExecutorService;
 
 public class JdkDownloaderBuilder extends AbstractDownloaderBuilder {
 
+    protected boolean connectionReuse = false;
+    protected int maxConnectionsPerHost = -1;
+    protected ConnectionStats connectionStats;
+    protected boolean virtualThreads = false;
+
     public static JdkDownloaderBuilder create() {
         return new JdkDownloaderBuilder();
     }
@@ -12,9 +20,89 @@ public class JdkDownloaderBuilder extends AbstractDownloaderBuilder {
         return create().build();
     }
 
+    /**
+     * Sets whether the connections are reused.
+     * <p>
+     * If true, the responses are read to the end (unused bodies up to 64 KiB),
+     * and the connections are released to the keep-alive cache of the JDK
+     * instead of being closed, so that the following requests to the same host
+     * can skip the TCP and TLS handshakes. The number of idle connections kept
+     * for each host is controlled by the <code>http.maxConnections</code>
+     * system property (5 by default), and should be raised along with
+     * {@link #maxConnectionsPerHost(int)} to make full use of the cache.
+     * <p>
+     * Default to false, the connections are closed after each response.
+     *
+     * @param connectionReuse true to reuse the connections
+     * @return the builder itself
+     */
+    public JdkDownloaderBuilder connectionReuse(boolean connectionReuse) {
+        this.connectionReuse = connectionReuse;
+        return this;
+    }
+
+    /**
+     * Sets the max number of the connections to a single host. The downloads
+     * beyond the limit are queued until the running ones complete, without
+     * occupying any thread of the pool.
+     * <p>
+     * Default to -1 (no limit other than {@link #maxConnections(int)}).
+     *
+     * @param maxConnectionsPerHost the max number of connections to a host, -1
+     *                              for no limit
+     * @return the builder itself
+     * @throws IllegalArgumentException if <code>maxConnectionsPerHost</code> is
+     *                                  neither positive nor -1
+     */
+    public JdkDownloaderBuilder maxConnectionsPerHost(int maxConnectionsPerHost) {
+        if (maxConnectionsPerHost < 1 && maxConnectionsPerHost != -1)
+            throw new IllegalArgumentException("maxConnectionsPerHost must be positive or -1");
+        this.maxConnectionsPerHost = maxConnectionsPerHost;
+        return this;
+    }
+
+    /**
+     * Sets the object to collect the connection statistics into, such as the
+     * reuse ratio.
+     *
+     * @param connectionStats the connection statistics, null to discard them
+     * @return the builder itself
+     */
+    public JdkDownloaderBuilder connectionStats(ConnectionStats connectionStats) {
+        this.connectionStats = connectionStats;
+        return this;
+    }
+
+    /**
+     * Sets whether the transfers run on virtual threads, if they are supported
+     * by the current JVM (Java 21+). Otherwise the platform thread pool is
+     * used.
+     * <p>
+     * Each transfer blocks its own virtual thread instead of a pooled platform
+     * thread, and no more than {@link #maxConnections(int)} transfers run at
+     * the same time. So <code>maxConnections</code> can be raised to hundreds
+     * without creating as many OS threads.
+     * <p>
+     * Default to false.
+     *
+     * @param virtualThreads true to use virtual threads
+     * @return the builder itself
+     */
+    public JdkDownloaderBuilder virtualThreads(boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+        return this;
+    }
+
     @Override
     public Downloader build() {
-        return new JdkHttpDownloader(maxConnections, connectTimeout, readTimeout, downloadPoolKeepAliveTime, downloadPoolKeepAliveTimeUnit, proxy);
+        ExecutorService executor;
+        if (virtualThreads && ThreadPoolUtils.isVirtualThreadAvailable()) {
+            executor = ThreadPoolUtils.createVirtualThreadPool(maxConnections, "jdkDownloader.io");
+        } else {
+            executor = ThreadPoolUtils.createPool(maxConnections, downloadPoolKeepAliveTime, downloadPoolKeepAliveTimeUnit, "jdkDownloader.io");
+        }
+        return decorate(new JdkHttpDownloader(executor, connectTimeout, readTimeout, proxy, connectionReuse, maxConnectionsPerHost, connectionStats, stallMinRate, stallWindow,
+                bufferPool == null ? BufferPool.getDefaultHeapPool() : bufferPool));
     }
 
 }
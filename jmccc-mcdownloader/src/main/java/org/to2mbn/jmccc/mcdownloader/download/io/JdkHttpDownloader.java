@@ -2,19 +2,28 @@ package org.to2mbn.jmccc.mcdownloader.download.io;
 
 import org.to2mbn.jmccc.mcdownloader.download.Downloader;
 import org.to2mbn.jmccc.mcdownloader.download.concurrent.*;
+import org.to2mbn.jmccc.mcdownloader.download.tasks.ByteRange;
 import org.to2mbn.jmccc.mcdownloader.download.tasks.DownloadSession;
 import org.to2mbn.jmccc.mcdownloader.download.tasks.DownloadTask;
-import org.to2mbn.jmccc.mcdownloader.util.ThreadPoolUtils;
+import org.to2mbn.jmccc.mcdownloader.download.tasks.ResumePoint;
 
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLSocketFactory;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.HttpURLConnection;
 import java.net.Proxy;
 import java.net.URL;
 import java.net.URLConnection;
+import java.nio.Buffer;
 import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayDeque;
 import java.util.Collections;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.*;
 import java.util.concurrent.locks.Lock;
@@ -26,6 +35,13 @@ class JdkHttpDownloader implements Downloader {
 
     private static final int BUFFER_SIZE = 8192;
 
+    /**
+     * The max length of the unused response body to read, in order to release
+     * the connection for reuse. Longer bodies are discarded with the
+     * connection.
+     */
+    private static final int MAX_DRAIN_LENGTH = 64 * 1024;
+
     private static final Logger LOGGER = Logger.getLogger(JdkHttpDownloader.class.getCanonicalName());
     private final ReadWriteLock rwlock = new ReentrantReadWriteLock();
     private final Set<Future<?>> tasks = Collections.newSetFromMap(new ConcurrentHashMap<Future<?>, Boolean>());
@@ -34,15 +50,48 @@ class JdkHttpDownloader implements Downloader {
     private int connectTimeout;
     private int readTimeout;
     private Proxy proxy;
+    private boolean connectionReuse;
+    private int maxConnectionsPerHost;
+    private ConnectionStats stats;
+    private SSLSocketFactory sslSocketFactory;
+    private long stallMinRate;
+    private long stallWindow;
+    private BufferPool bufferPool;
+    private final ConcurrentMap<String, HostQueue> hostQueues = new ConcurrentHashMap<>();
 
     private volatile boolean shutdown;
-    public JdkHttpDownloader(int maxConns, int connectTimeout, int readTimeout, long poolThreadLivingTime, TimeUnit poolThreadLivingTimeUnit, Proxy proxy) {
+    /**
+     * @param executor              the pool to run the transfers, which is
+     *                              shutdown along with the downloader
+     * @param connectionReuse       true to release the connections to the JDK
+     *                              keep-alive cache instead of closing them
+     * @param maxConnectionsPerHost the max number of connections to a host, -1
+     *                              for no limit
+     * @param stats                 the stats to update, can be null
+     * @param stallMinRate          the min throughput in bytes per second, -1
+     *                              to disable the stall detection
+     * @param stallWindow           the window of the stall detection in
+     *                              milliseconds
+     * @param bufferPool            the pool of the buffers to read into
+     */
+    public JdkHttpDownloader(ExecutorService executor, int connectTimeout, int readTimeout, Proxy proxy, boolean connectionReuse, int maxConnectionsPerHost, ConnectionStats stats, long stallMinRate, long stallWindow, BufferPool bufferPool) {
+        Objects.requireNonNull(executor);
         Objects.requireNonNull(proxy);
+        Objects.requireNonNull(bufferPool);
 
         this.connectTimeout = connectTimeout;
         this.readTimeout = readTimeout;
         this.proxy = proxy;
-        executor = ThreadPoolUtils.createPool(maxConns, poolThreadLivingTime, poolThreadLivingTimeUnit, "jdkDownloader.io");
+        this.connectionReuse = connectionReuse;
+        this.maxConnectionsPerHost = maxConnectionsPerHost;
+        this.stats = stats == null ? new ConnectionStats() : stats;
+        // the keep-alive cache matches the connections by the socket factory,
+        // so a single instance is shared by all the requests
+        sslSocketFactory = new CountingSSLSocketFactory(HttpsURLConnection.getDefaultSSLSocketFactory(), this.stats);
+        this.executor = executor;
+        this.stallMinRate = stallMinRate;
+        this.stallWindow = stallWindow;
+        this.bufferPool = bufferPool;
     }
 
     @Override
@@ -61,7 +110,7 @@ class JdkHttpDownloader implements Downloader {
          *
          * 	2. Create a task handler, store it in tasks. ......................................... write tasks
          *
-         * 	3. Start the task handler. ........................................................... read executor
+         * 	3. Start the task handler, or queue it if the host is busy. ......................... read executor
          * ---- read unlock
          */
 
@@ -87,7 +136,12 @@ class JdkHttpDownloader implements Downloader {
                 throw new RejectedExecutionException("The downloader has been shutdown.");
 
             tasks.add(task);
-            executor.execute(task);
+            String host = downloadTask.getURI().getHost();
+            if (maxConnectionsPerHost == -1 || host == null) {
+                executor.execute(task);
+            } else {
+                getHostQueue(host.toLowerCase()).submit(task);
+            }
         } finally {
             lock.unlock();
         }
@@ -136,6 +190,98 @@ class JdkHttpDownloader implements Downloader {
         return shutdown;
     }
 
+    @Override
+    public String toString() {
+        return String.format("JdkHttpDownloader [connectionReuse=%s, maxConnectionsPerHost=%d, stallMinRate=%d, stats=%s, bufferPool=%s, shutdown=%s]", connectionReuse, maxConnectionsPerHost, stallMinRate, stats, bufferPool, shutdown);
+    }
+
+    private HostQueue getHostQueue(String host) {
+        HostQueue queue = hostQueues.get(host);
+        if (queue == null) {
+            HostQueue newQueue = new HostQueue();
+            queue = hostQueues.putIfAbsent(host, newQueue);
+            if (queue == null) {
+                queue = newQueue;
+            }
+        }
+        return queue;
+    }
+
+    /**
+     * Runs the downloads from a host, no more than
+     * <code>maxConnectionsPerHost</code> at the same time. The downloads
+     * beyond the limit wait in the queue, and are handed to the executor when
+     * the running ones complete, so that no thread of the pool is blocked
+     * waiting for the host.
+     */
+    private class HostQueue {
+
+        private final Queue<RunnableFuture<?>> pending = new ArrayDeque<>();
+        private int running;
+
+        // called with the read lock held
+        public void submit(RunnableFuture<?> task) {
+            synchronized (this) {
+                if (running >= maxConnectionsPerHost) {
+                    pending.add(task);
+                    return;
+                }
+                running++;
+            }
+            try {
+                execute(task);
+            } catch (Throwable e) {
+                synchronized (this) {
+                    running--;
+                }
+                throw e;
+            }
+        }
+
+        private void execute(final Runnable task) {
+            executor.execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    try {
+                        task.run();
+                    } finally {
+                        next();
+                    }
+                }
+            });
+        }
+
+        private void next() {
+            for (; ; ) {
+                RunnableFuture<?> task;
+                synchronized (this) {
+                    task = pending.poll();
+                    if (task == null) {
+                        running--;
+                        return;
+                    }
+                }
+
+                Lock lock = rwlock.readLock();
+                lock.lock();
+                try {
+                    if (!shutdown) {
+                        execute(task);
+                        return;
+                    }
+                } catch (RejectedExecutionException e) {
+                    LOGGER.fine("Couldn't start the download: " + e);
+                } finally {
+                    lock.unlock();
+                }
+                // the downloader has been shutdown, or the executor refused the task
+                task.cancel(true);
+            }
+        }
+
+    }
+
     private class CallableDownloadTask<T> implements Callable<T> {
 
         private final DownloadTask<T> task;
@@ -164,7 +310,7 @@ class JdkHttpDownloader implements Downloader {
                 } catch (IOException e) {
                     checkInterrupted();
                     currentTries++;
-                    if (currentTries < maxTries && !skipRetry && DownloaderHelper.shouldRetry(e)) {
+                    if (currentTries < maxTries && !skipRetry && DownloaderHelper.shouldRetryImmediately(e)) {
                         callback.retry(e, currentTries, maxTries);
                     } else {
                         throw e;
@@ -174,32 +320,51 @@ class JdkHttpDownloader implements Downloader {
         }
 
         private T download() throws Exception {
-            return downloadCore(task.getURI().toURL());
+            return downloadCore(task.getURI().toURL(), true);
         }
 
-        private T downloadCore(URL url) throws Exception {
+        private T downloadCore(URL url, boolean resume) throws Exception {
+            boolean rangeRequired = task.getRequestRange() != null;
+            ByteRange requestRange = DownloaderHelper.getRequestRange(task, resume);
+
             URLConnection connection = url.openConnection(proxy);
             connection.setReadTimeout(readTimeout);
             connection.setConnectTimeout(connectTimeout);
             connection.setRequestProperty("Accept", "*/*");
             connection.setRequestProperty("Connection", "keep-alive");
-            connection.setRequestProperty("Accept-Encoding", "gzip");
+            if (connection instanceof HttpsURLConnection) {
+                ((HttpsURLConnection) connection).setSSLSocketFactory(sslSocketFactory);
+            }
+            for (Map.Entry<String, String> header : DownloaderHelper.getRequestHeaders(requestRange).entrySet()) {
+                connection.setRequestProperty(header.getKey(), header.getValue());
+            }
             if (connection instanceof HttpURLConnection) {
                 ((HttpURLConnection) connection).setRequestMethod("GET");
                 ((HttpURLConnection) connection).setInstanceFollowRedirects(true);
             }
             connection.connect();
+            stats.requestSent(connection instanceof HttpsURLConnection);
 
+            // whether the response has been consumed, so that the connection can be reused
+            boolean consumed = false;
             try {
+                int responseCode = -1;
                 if (connection instanceof HttpURLConnection) {
                     HttpURLConnection urlConnection = (HttpURLConnection) connection;
-                    int responseCode = urlConnection.getResponseCode();
+                    responseCode = urlConnection.getResponseCode();
                     if (responseCode == 301 || responseCode == 302 || responseCode == 307) {
-                        return downloadCore(new URL(urlConnection.getHeaderField("Location")));
+                        consumed = drain(urlConnection);
+                        return downloadCore(new URL(urlConnection.getHeaderField("Location")), resume);
+                    }
+                    if (responseCode == 416 && requestRange != null) {
+                        consumed = drain(urlConnection);
+                        return rangeRejected(url, rangeRequired, "Server refused to serve " + requestRange + " of " + url);
                     }
                     if (responseCode < 200 || responseCode > 299) {
                         // non-2xx response code
-                        throw new IllegalHttpResponseCodeException(urlConnection.getHeaderField(0), responseCode);
+                        consumed = drain(urlConnection);
+                        throw new IllegalHttpResponseCodeException(urlConnection.getHeaderField(0), responseCode,
+                                DownloaderHelper.parseRetryAfter(urlConnection.getHeaderField("Retry-After")));
                     }
                 }
 
@@ -217,41 +382,124 @@ class JdkHttpDownloader implements Downloader {
                     }
                 }
 
+                boolean gzipOn = connection instanceof HttpURLConnection && "gzip".equals(connection.getHeaderField("Content-Encoding"));
+
+                DownloaderHelper.SessionStart start;
+                try {
+                    start = DownloaderHelper.getSessionStart(url.toString(), responseCode, requestRange, rangeRequired,
+                            connection.getHeaderField("Content-Range"), connection.getHeaderField("ETag"), gzipOn, contentLength);
+                } catch (ResumeRejectedException e) {
+                    if (connection instanceof HttpURLConnection) {
+                        consumed = drain((HttpURLConnection) connection);
+                    }
+                    return rangeRejected(url, rangeRequired, e.getMessage());
+                }
+                ResumePoint sessionStart = start.getResumePoint();
+                long totalLength = start.getTotalLength();
+
                 checkInterrupted();
 
-                DownloadSession<T> session = (contentLength == -1)
-                        ? task.createSession()
-                        : task.createSession(contentLength);
+                DownloadSession<T> session = task.createSession(sessionStart, totalLength);
 
-                if (connection instanceof HttpURLConnection && "gzip".equals(connection.getHeaderField("Content-Encoding"))) {
+                if (gzipOn) {
                     session = new GzipDownloadSession<>(session);
                 }
 
-                long downloaded = 0;
+                long downloaded = sessionStart.getOffset();
+                StallDetector stallDetector = stallMinRate > 0 ? new StallDetector(stallMinRate, stallWindow) : null;
 
+                ByteBuffer buf = bufferPool.acquire();
                 try (InputStream in = connection.getInputStream()) {
-                    byte[] buf = new byte[BUFFER_SIZE];
+                    // a direct buffer is filled through a channel, since streams only read into arrays
+                    ReadableByteChannel channel = buf.hasArray() ? null : Channels.newChannel(in);
                     int read;
-                    while ((read = in.read(buf)) != -1) {
+                    while ((read = read(in, channel, buf)) != -1) {
                         checkInterrupted();
                         downloaded += read;
-                        session.receiveData(ByteBuffer.wrap(buf, 0, read));
+                        ((Buffer) buf).flip();
+                        session.receiveData(buf);
+                        ((Buffer) buf).clear();
+                        if (stallDetector != null) {
+                            stallDetector.update(read);
+                        }
                         skipRetry = true;
-                        callback.updateProgress(downloaded, contentLength);
+                        callback.updateProgress(downloaded, totalLength);
                         skipRetry = false;
                     }
+                    consumed = true;
                 } catch (Throwable e) {
                     session.failed();
                     throw e;
+                } finally {
+                    bufferPool.release(buf);
                 }
                 return session.completed();
             } finally {
                 if (connection instanceof HttpURLConnection) {
-                    ((HttpURLConnection) connection).disconnect();
+                    if (connectionReuse && consumed) {
+                        // the stream has been closed, and the connection is back in the keep-alive cache
+                        stats.connectionReleased();
+                    } else {
+                        ((HttpURLConnection) connection).disconnect();
+                        stats.connectionDiscarded();
+                    }
                 }
             }
         }
 
+        private int read(InputStream in, ReadableByteChannel channel, ByteBuffer buf) throws IOException {
+            if (channel != null) {
+                return channel.read(buf);
+            }
+            int read = in.read(buf.array(), buf.arrayOffset() + buf.position(), buf.remaining());
+            if (read > 0) {
+                ((Buffer) buf).position(buf.position() + read);
+            }
+            return read;
+        }
+
+        /**
+         * Reads and closes the unused response body, so that the connection can
+         * be reused.
+         *
+         * @return true if the body has been read to the end
+         */
+        private boolean drain(HttpURLConnection connection) {
+            if (!connectionReuse) {
+                return false;
+            }
+            try {
+                InputStream in = connection.getResponseCode() >= 400 ? connection.getErrorStream() : connection.getInputStream();
+                if (in == null) {
+                    // no body
+                    return true;
+                }
+                try (InputStream body = in) {
+                    byte[] buf = new byte[BUFFER_SIZE];
+                    long drained = 0;
+                    int read;
+                    while ((read = body.read(buf)) != -1) {
+                        drained += read;
+                        if (drained > MAX_DRAIN_LENGTH) {
+                            return false;
+                        }
+                    }
+                    return true;
+                }
+            } catch (IOException e) {
+                LOGGER.fine("Failed to drain the response of " + connection.getURL() + ": " + e);
+                return false;
+            }
+        }
+
+        private T rangeRejected(URL url, boolean rangeRequired, String message) throws Exception {
+            if (rangeRequired) {
+                throw new ResumeRejectedException(message);
+            }
+            LOGGER.fine(message + ", restarting");
+            return downloadCore(url, false);
+        }
+
         private void checkInterrupted() throws InterruptedException {
             if (Thread.interrupted()) {
                 throw new InterruptedException();
@@ -0,0 +1,18 @@
+package org.to2mbn.jmccc.mcdownloader.download.io;
+
+import java.io.IOException;
+
+/**
+ * Thrown when the server doesn't serve the requested range of a resource, so
+ * the download cannot be resumed or segmented, and the resource should be
+ * downloaded from the beginning.
+ */
+public class ResumeRejectedException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    public ResumeRejectedException(String message) {
+        super(message);
+    }
+
+}
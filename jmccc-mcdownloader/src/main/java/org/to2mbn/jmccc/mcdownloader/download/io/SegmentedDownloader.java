@@ -0,0 +1,378 @@
+package org.to2mbn.jmccc.mcdownloader.download.io;
+
+import org.to2mbn.jmccc.mcdownloader.download.Downloader;
+import org.to2mbn.jmccc.mcdownloader.download.concurrent.CallbackAsyncTask;
+import org.to2mbn.jmccc.mcdownloader.download.concurrent.DownloadCallback;
+import org.to2mbn.jmccc.mcdownloader.download.concurrent.DownloadCallbacks;
+import org.to2mbn.jmccc.mcdownloader.download.tasks.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Splits a large resource into several ranges, and downloads them in parallel.
+ * <p>
+ * The first range (<code>[0, threshold)</code>) is requested at first. If the
+ * resource isn't larger than the threshold, the response holds the whole
+ * resource, which is streamed into the session created by
+ * {@link DownloadTask#createSession(ResumePoint, long)} as a normal download.
+ * Otherwise the rest of the resource is split into <code>segments - 1</code>
+ * ranges, which are requested while the first range is still being received.
+ * All the ranges are written into the session created by
+ * {@link DownloadTask#createSegmentedSession(long)}.
+ * <p>
+ * If the server doesn't support range requests, the task is downloaded over a
+ * single connection, and the host is remembered so that no more segmented
+ * downloads will be attempted on it.
+ */
+class SegmentedDownloader implements Downloader {
+
+    private static final Logger LOGGER = Logger.getLogger(SegmentedDownloader.class.getCanonicalName());
+
+    private final Downloader downloader;
+    private final int segments;
+    private final long threshold;
+
+    private final Set<String> rangeUnsupportedHosts = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    public SegmentedDownloader(Downloader downloader, int segments, long threshold) {
+        Objects.requireNonNull(downloader);
+        if (segments < 2)
+            throw new IllegalArgumentException("segments < 2");
+        if (threshold < 1)
+            throw new IllegalArgumentException("threshold < 1");
+        this.downloader = downloader;
+        this.segments = segments;
+        this.threshold = threshold;
+    }
+
+    @Override
+    public <T> Future<T> download(DownloadTask<T> task, DownloadCallback<T> callback) {
+        return download(task, callback, 1);
+    }
+
+    @Override
+    public <T> Future<T> download(DownloadTask<T> task, DownloadCallback<T> callback, int tries) {
+        Objects.requireNonNull(task);
+        if (tries < 1)
+            throw new IllegalArgumentException("tries < 1");
+
+        if (!isSegmentable(task)) {
+            return downloader.download(task, callback, tries);
+        }
+
+        SegmentedTask<T> segmentedTask = new SegmentedTask<>(task, callback == null ? DownloadCallbacks.<T>empty() : callback, tries);
+        segmentedTask.setCallback(callback);
+        segmentedTask.run();
+        return segmentedTask;
+    }
+
+    @Override
+    public void shutdown() {
+        downloader.shutdown();
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return downloader.isShutdown();
+    }
+
+    private boolean isSegmentable(DownloadTask<?> task) {
+        if (!task.isSegmentable() || task.getRequestRange() != null) {
+            return false;
+        }
+        String host = task.getURI().getHost();
+        if (host == null || rangeUnsupportedHosts.contains(host)) {
+            return false;
+        }
+        try {
+            if (task.getResumePoint() != null) {
+                // resuming the partial data is cheaper
+                return false;
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Couldn't get the resume point of " + task, e);
+        }
+        return true;
+    }
+
+    private class SegmentedTask<T> extends CallbackAsyncTask<T> {
+
+        private final DownloadTask<T> task;
+        private final DownloadCallback<T> callback;
+        private final int tries;
+
+        private final Object initLock = new Object();
+        private final Set<Future<?>> segmentFutures = Collections.newSetFromMap(new ConcurrentHashMap<Future<?>, Boolean>());
+        private final AtomicInteger remaining = new AtomicInteger(1);
+        private final AtomicLong downloaded = new AtomicLong();
+        private final AtomicBoolean terminated = new AtomicBoolean();
+
+        private volatile SegmentedDownloadSession<T> session;
+        private volatile long total = -1;
+
+        // the result of the first range, if it's the whole resource
+        private volatile T wholeResult;
+
+        public SegmentedTask(DownloadTask<T> task, DownloadCallback<T> callback, int tries) {
+            this.task = task;
+            this.callback = callback;
+            this.tries = tries;
+        }
+
+        @Override
+        protected void execute() throws Exception {
+            submitSegment(new SegmentDownloadTask(0, threshold - 1, null, true));
+        }
+
+        private void submitSegment(SegmentDownloadTask segment) {
+            FutureManager<Void> manager = createFutureManager();
+            Future<Void> future = downloader.download(segment, DownloadCallbacks.group(DownloadCallbacks.fromCallback(manager), new SegmentCallback()), tries);
+            manager.setFuture(future);
+            segmentFutures.add(future);
+        }
+
+        /**
+         * Calls when the response of the first range is received.
+         */
+        private void initSession(long total, String entityTag) throws IOException {
+            synchronized (initLock) {
+                if (session != null) {
+                    return;
+                }
+                if (total == -1) {
+                    throw new ResumeRejectedException("Unknown length: " + task.getURI());
+                }
+                session = task.createSegmentedSession(total);
+                this.total = total;
+            }
+
+            if (total > threshold) {
+                long rest = total - threshold;
+                long segmentLength = Math.max(1, (rest + segments - 2) / (segments - 1));
+                int count = (int) ((rest + segmentLength - 1) / segmentLength);
+                remaining.addAndGet(count);
+                for (long first = threshold; first < total; first += segmentLength) {
+                    submitSegment(new SegmentDownloadTask(first, Math.min(first + segmentLength, total) - 1, entityTag, false));
+                }
+            }
+        }
+
+        private void segmentDone() {
+            if (remaining.decrementAndGet() == 0 && terminated.compareAndSet(false, true)) {
+                T result;
+                try {
+                    result = session == null ? wholeResult : session.completed();
+                } catch (Throwable e) {
+                    lifecycle().failed(e);
+                    return;
+                }
+                lifecycle().done(result);
+            }
+        }
+
+        private void segmentFailed(Throwable e) {
+            if (!terminated.compareAndSet(false, true)) {
+                return;
+            }
+            for (Future<?> future : segmentFutures) {
+                future.cancel(true);
+            }
+            if (session != null) {
+                try {
+                    session.failed();
+                } catch (Throwable e1) {
+                    if (e != null) {
+                        e.addSuppressed(e1);
+                    }
+                }
+            }
+
+            if (e == null) {
+                lifecycle().cancelled();
+            } else if (e instanceof ResumeRejectedException) {
+                String host = task.getURI().getHost();
+                if (session == null && host != null) {
+                    rangeUnsupportedHosts.add(host);
+                }
+                LOGGER.fine("Segmented download of " + task.getURI() + " is not supported, falling back: " + e.getMessage());
+                fallback();
+            } else {
+                lifecycle().failed(e);
+            }
+        }
+
+        private void fallback() {
+            FutureManager<T> manager = createFutureManager();
+            Future<T> future = downloader.download(task, DownloadCallbacks.group(DownloadCallbacks.fromCallback(manager), new DownloadCallback<T>() {
+
+                @Override
+                public void done(T result) {
+                    lifecycle().done(result);
+                }
+
+                @Override
+                public void failed(Throwable e) {
+                    lifecycle().failed(e);
+                }
+
+                @Override
+                public void cancelled() {
+                    lifecycle().cancelled();
+                }
+
+                @Override
+                public void updateProgress(long done, long total) {
+                    callback.updateProgress(done, total);
+                }
+
+                @Override
+                public void retry(Throwable e, int current, int max) {
+                    callback.retry(e, current, max);
+                }
+            }), tries);
+            manager.setFuture(future);
+        }
+
+        private class SegmentDownloadTask extends DownloadTask<Void> {
+
+            private final ByteRange range;
+            private final boolean first;
+
+            public SegmentDownloadTask(long first, long last, String entityTag, boolean isFirst) {
+                super(task.getURI());
+                this.range = new ByteRange(first, last, entityTag);
+                this.first = isFirst;
+            }
+
+            @Override
+            public ByteRange getRequestRange() {
+                return range;
+            }
+
+            @Override
+            public DownloadSession<Void> createSession() throws IOException {
+                throw new UnsupportedOperationException("A segment must be downloaded with a range request");
+            }
+
+            @Override
+            public DownloadSession<Void> createSession(final ResumePoint resumePoint, long length) throws IOException {
+                if (first) {
+                    if (length != -1 && length <= threshold) {
+                        return createWholeSession(resumePoint, length);
+                    }
+                    initSession(length, resumePoint.getEntityTag());
+                }
+                final long end = Math.min(range.getLast() + 1, total);
+                return new DownloadSession<Void>() {
+
+                    private long position = resumePoint.getOffset();
+
+                    @Override
+                    public void receiveData(ByteBuffer data) throws IOException {
+                        int length = data.remaining();
+                        if (position + length > end) {
+                            throw new IOException("Received more data than requested: " + range);
+                        }
+                        session.receiveData(position, data);
+                        position += length;
+                        callback.updateProgress(downloaded.addAndGet(length), total);
+                    }
+
+                    @Override
+                    public Void completed() throws IOException {
+                        if (position != end) {
+                            throw new IOException("Segment is incomplete: " + range + ", received up to " + position);
+                        }
+                        return null;
+                    }
+
+                    @Override
+                    public void failed() {
+                        // the segment will be downloaded again
+                        downloaded.addAndGet(resumePoint.getOffset() - position);
+                    }
+                };
+            }
+
+            /**
+             * Streams the whole resource into a normal session, which
+             * verifies the data as they are written.
+             */
+            private DownloadSession<Void> createWholeSession(ResumePoint resumePoint, final long length) throws IOException {
+                final DownloadSession<T> whole = task.createSession(resumePoint, length);
+                return new DownloadSession<Void>() {
+
+                    private long received;
+
+                    @Override
+                    public void receiveData(ByteBuffer data) throws IOException {
+                        int count = data.remaining();
+                        whole.receiveData(data);
+                        received += count;
+                        callback.updateProgress(downloaded.addAndGet(count), length);
+                    }
+
+                    @Override
+                    public Void completed() throws Exception {
+                        wholeResult = whole.completed();
+                        return null;
+                    }
+
+                    @Override
+                    public void failed() throws Exception {
+                        downloaded.addAndGet(-received);
+                        whole.failed();
+                    }
+                };
+            }
+
+            @Override
+            public String toString() {
+                return String.format("SegmentDownloadTask [uri=%s, range=%s]", getURI(), range);
+            }
+
+        }
+
+        private class SegmentCallback implements DownloadCallback<Void> {
+
+            @Override
+            public void done(Void result) {
+                segmentDone();
+            }
+
+            @Override
+            public void failed(Throwable e) {
+                segmentFailed(e);
+            }
+
+            @Override
+            public void cancelled() {
+                segmentFailed(null);
+            }
+
+            @Override
+            public void updateProgress(long done, long total) {
+                // the progress is reported by the segment sessions
+            }
+
+            @Override
+            public void retry(Throwable e, int current, int max) {
+                callback.retry(e, current, max);
+            }
+
+        }
+
+    }
+
+}
@@ -0,0 +1,84 @@
+package org.to2mbn.jmccc.mcdownloader.download.io;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Detects a transfer whose throughput falls below a floor over a sliding
+ * window.
+ * <p>
+ * The window starts at the first received data, so the time to the first byte
+ * isn't counted. The detector is only checked when data are received, a
+ * transfer receiving nothing at all is left to the read timeout.
+ * <p>
+ * Each transfer uses its own detector. This class is not thread-safe.
+ */
+public class StallDetector {
+
+    private static final int BUCKETS = 10;
+
+    private final long minRate;
+    private final long window;
+    private final long bucketTime;
+    // the bytes received in each slice of the window, in a ring
+    private final long[] buckets = new long[BUCKETS];
+    private int currentBucket;
+    private long currentBucketStart;
+    private long startTime = -1;
+
+    /**
+     * @param minRate the min throughput in bytes per second
+     * @param window  the length of the sliding window in milliseconds
+     */
+    public StallDetector(long minRate, long window) {
+        if (minRate < 1)
+            throw new IllegalArgumentException("minRate < 1");
+        if (window < BUCKETS)
+            throw new IllegalArgumentException("window < " + BUCKETS + "ms");
+        this.minRate = minRate;
+        this.window = window;
+        this.bucketTime = window / BUCKETS;
+    }
+
+    /**
+     * Records the received data, and checks the throughput.
+     *
+     * @param bytes the number of the bytes received
+     * @throws TransferStalledException if the throughput over the last window
+     *                                  is below the floor
+     */
+    public void update(long bytes) throws TransferStalledException {
+        long now = TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+        if (startTime == -1) {
+            startTime = now;
+            currentBucketStart = now;
+        }
+
+        long elapsedBuckets = (now - currentBucketStart) / bucketTime;
+        if (elapsedBuckets > 0) {
+            for (int i = 0; i < Math.min(elapsedBuckets, BUCKETS); i++) {
+                currentBucket = (currentBucket + 1) % BUCKETS;
+                buckets[currentBucket] = 0;
+            }
+            currentBucketStart += elapsedBuckets * bucketTime;
+        }
+        buckets[currentBucket] += bytes;
+
+        if (now - startTime >= window) {
+            long received = 0;
+            for (long bucket : buckets) {
+                received += bucket;
+            }
+            // the current bucket is not full yet
+            long elapsed = (BUCKETS - 1) * bucketTime + (now - currentBucketStart);
+            if (received * 1000 < minRate * elapsed) {
+                throw new TransferStalledException(String.format("Transfer stalled: %d bytes in the last %dms, below %d bytes/s", received, elapsed, minRate));
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("StallDetector [minRate=%d, window=%d]", minRate, window);
+    }
+
+}
@@ -0,0 +1,20 @@
+package org.to2mbn.jmccc.mcdownloader.download.io;
+
+import java.io.IOException;
+
+/**
+ * Thrown when the throughput of a transfer falls below the floor, so the
+ * transfer is aborted in order to be retried (resuming from the committed data
+ * if possible) or handed to another mirror.
+ *
+ * @see AbstractDownloaderBuilder#stallDetection(long, long, java.util.concurrent.TimeUnit)
+ */
+public class TransferStalledException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    public TransferStalledException(String message) {
+        super(message);
+    }
+
+}
@@ -1,24 +1,33 @@
 package org.to2mbn.jmccc.mcdownloader.download.io.async;
 
 import org.apache.http.*;
+import org.apache.http.client.methods.HttpGet;
 import org.apache.http.concurrent.FutureCallback;
 import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.entity.ContentType;
+import org.apache.http.nio.ContentDecoder;
 import org.apache.http.nio.IOControl;
-import org.apache.http.nio.client.methods.AsyncByteConsumer;
 import org.apache.http.nio.client.methods.HttpAsyncMethods;
+import org.apache.http.nio.protocol.AbstractAsyncResponseConsumer;
 import org.apache.http.nio.protocol.HttpAsyncResponseConsumer;
 import org.apache.http.protocol.HttpContext;
 import org.to2mbn.jmccc.mcdownloader.download.Downloader;
 import org.to2mbn.jmccc.mcdownloader.download.concurrent.*;
+import org.to2mbn.jmccc.mcdownloader.download.io.BufferPool;
 import org.to2mbn.jmccc.mcdownloader.download.io.DownloaderHelper;
 import org.to2mbn.jmccc.mcdownloader.download.io.GzipDownloadSession;
 import org.to2mbn.jmccc.mcdownloader.download.io.IllegalHttpResponseCodeException;
+import org.to2mbn.jmccc.mcdownloader.download.io.ResumeRejectedException;
+import org.to2mbn.jmccc.mcdownloader.download.io.StallDetector;
+import org.to2mbn.jmccc.mcdownloader.download.tasks.ByteRange;
 import org.to2mbn.jmccc.mcdownloader.download.tasks.DownloadSession;
 import org.to2mbn.jmccc.mcdownloader.download.tasks.DownloadTask;
 
 import java.io.IOException;
+import java.nio.Buffer;
 import java.nio.ByteBuffer;
 import java.util.Collections;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
@@ -42,13 +51,26 @@ class HttpAsyncDownloader implements Downloader {
     private final Set<Future<?>> tasks = Collections.newSetFromMap(new ConcurrentHashMap<Future<?>, Boolean>());
     private CloseableHttpAsyncClient httpClient;
     private ExecutorService bootstrapPool;
+    private final long stallMinRate;
+    private final long stallWindow;
+    private final BufferPool bufferPool;
     private volatile int status = RUNNING;
 
-    public HttpAsyncDownloader(CloseableHttpAsyncClient client, ExecutorService bootstrapPool) {
+    /**
+     * @param stallMinRate the min throughput in bytes per second, -1 to disable
+     *                     the stall detection
+     * @param stallWindow  the window of the stall detection in milliseconds
+     * @param bufferPool   the pool of the buffers to read into
+     */
+    public HttpAsyncDownloader(CloseableHttpAsyncClient client, ExecutorService bootstrapPool, long stallMinRate, long stallWindow, BufferPool bufferPool) {
         Objects.requireNonNull(client);
         Objects.requireNonNull(bootstrapPool);
+        Objects.requireNonNull(bufferPool);
         this.httpClient = client;
         this.bootstrapPool = bootstrapPool;
+        this.stallMinRate = stallMinRate;
+        this.stallWindow = stallWindow;
+        this.bufferPool = bufferPool;
 
         httpClient.start();
     }
@@ -170,43 +192,88 @@ class HttpAsyncDownloader implements Downloader {
         public final FutureCallback<T> callback;
         private final DownloadTask<T> task;
         private final DownloadCallback<T> downloadCallback;
+        private final ByteRange requestRange;
+        private final boolean rangeRequired;
+        private final StallDetector stallDetector;
+        private final BufferPool bufferPool;
 
         private volatile DownloadSession<T> session;
         private volatile Throwable resultBuildingEx;
 
-        public DownloadSessionHandler(DownloadTask<T> task, DownloadCallback<T> downloadCallback) {
+        /**
+         * @param stallDetector the stall detector, null to disable the stall
+         *                      detection
+         */
+        public DownloadSessionHandler(DownloadTask<T> task, DownloadCallback<T> downloadCallback, ByteRange requestRange, boolean rangeRequired, StallDetector stallDetector, BufferPool bufferPool) {
             Objects.requireNonNull(task);
             Objects.requireNonNull(downloadCallback);
             this.task = task;
             this.downloadCallback = downloadCallback;
+            this.requestRange = requestRange;
+            this.rangeRequired = rangeRequired;
+            this.stallDetector = stallDetector;
+            this.bufferPool = bufferPool;
 
             consumer = new DataConsumer();
             callback = new DownloadCallbackAdapter(downloadCallback);
         }
 
-        private class DataConsumer extends AsyncByteConsumer<T> {
+        private class DataConsumer extends AbstractAsyncResponseConsumer<T> {
 
             private volatile long contextLength = -1;
             private volatile long received = 0;
 
             @Override
-            protected void onByteReceived(ByteBuffer buf, IOControl ioctrl) throws IOException {
+            protected void onContentReceived(ContentDecoder decoder, IOControl ioctrl) throws IOException {
+                // the buffer is held only while the decoder has data, so a few
+                // buffers are enough for all the exchanges of the I/O threads
+                ByteBuffer buf = bufferPool.acquire();
+                try {
+                    while (decoder.read(buf) > 0) {
+                        ((Buffer) buf).flip();
+                        onByteReceived(buf);
+                        ((Buffer) buf).clear();
+                    }
+                } finally {
+                    bufferPool.release(buf);
+                }
+            }
+
+            @Override
+            protected void onEntityEnclosed(HttpEntity entity, ContentType contentType) {
+            }
+
+            @Override
+            protected void releaseResources() {
+            }
+
+            private void onByteReceived(ByteBuffer buf) throws IOException {
                 if (session == null)
                     session = task.createSession();
 
-                received += buf.remaining();
+                int length = buf.remaining();
+                received += length;
                 session.receiveData(buf);
+                if (stallDetector != null) {
+                    // aborts the exchange
+                    stallDetector.update(length);
+                }
                 downloadCallback.updateProgress(received, contextLength);
             }
 
             @Override
             protected void onResponseReceived(HttpResponse response) throws HttpException, IOException {
+                int statusCode = -1;
                 StatusLine statusLine = response.getStatusLine();
                 if (statusLine != null) {
-                    int statusCode = statusLine.getStatusCode();
-                    if (statusCode < 200 || statusCode > 299)
+                    statusCode = statusLine.getStatusCode();
+                    if (statusCode == 416 && requestRange != null)
+                        throw new ResumeRejectedException("Server refused to serve " + requestRange + " of " + task.getURI());
+                    if (statusCode < 200 || statusCode > 299) {
                         // non-2xx response code
-                        throw new IllegalHttpResponseCodeException(statusLine.toString(), statusCode);
+                        Header retryAfter = response.getFirstHeader("Retry-After");
+                        throw new IllegalHttpResponseCodeException(statusLine.toString(), statusCode, DownloaderHelper.parseRetryAfter(retryAfter == null ? null : retryAfter.getValue()));
+                    }
                 }
 
                 if (session == null) {
@@ -224,9 +291,16 @@ class HttpAsyncDownloader implements Downloader {
                         }
                     }
 
-                    session = contextLength > 0
-                            ? task.createSession(contextLength)
-                            : task.createSession();
+                    Header contentRangeHeader = response.getFirstHeader("Content-Range");
+                    Header entityTagHeader = response.getFirstHeader("ETag");
+                    DownloaderHelper.SessionStart start = DownloaderHelper.getSessionStart(task.getURI().toString(), statusCode, requestRange, rangeRequired,
+                            contentRangeHeader == null ? null : contentRangeHeader.getValue(),
+                            entityTagHeader == null ? null : entityTagHeader.getValue(),
+                            gzipOn, contextLength);
+                    contextLength = start.getTotalLength();
+                    received = start.getResumePoint().getOffset();
+
+                    session = task.createSession(start.getResumePoint(), contextLength > 0 ? contextLength : -1);
 
                     if (gzipOn) {
                         session = new GzipDownloadSession<>(session);
@@ -305,6 +379,7 @@ class HttpAsyncDownloader implements Downloader {
         private final DownloadCallback<T> callback;
         private final int maxTries;
         private volatile int currentTries;
+        private volatile boolean ignoreResumePoint;
 
         public AsyncDownloadTask(DownloadTask<T> task, DownloadCallback<T> callback, int maxTries) {
             Objects.requireNonNull(task);
@@ -328,17 +403,32 @@ class HttpAsyncDownloader implements Downloader {
                 return;
             }
 
+            boolean rangeRequired = task.getRequestRange() != null;
+            ByteRange requestRange = DownloaderHelper.getRequestRange(task, !ignoreResumePoint);
+            ignoreResumePoint = false;
+
+            HttpGet request = new HttpGet(task.getURI());
+            for (Map.Entry<String, String> header : DownloaderHelper.getRequestHeaders(requestRange).entrySet()) {
+                request.setHeader(header.getKey(), header.getValue());
+            }
+
             FutureManager<T> manager = createFutureManager();
-            DownloadRetryHandler retryHandler = new DownloadRetryHandler();
-            DownloadSessionHandler<T> handler = new DownloadSessionHandler<>(task, DownloadCallbacks.group(DownloadCallbacks.fromCallback(manager), retryHandler));
-            Future<T> downloadFuture = httpClient.execute(HttpAsyncMethods.createGet(task.getURI()), handler.consumer, handler.callback);
+            DownloadRetryHandler retryHandler = new DownloadRetryHandler(requestRange != null && !rangeRequired);
+            StallDetector stallDetector = stallMinRate > 0 ? new StallDetector(stallMinRate, stallWindow) : null;
+            DownloadSessionHandler<T> handler = new DownloadSessionHandler<>(task, DownloadCallbacks.group(DownloadCallbacks.fromCallback(manager), retryHandler), requestRange, rangeRequired, stallDetector, bufferPool);
+            Future<T> downloadFuture = httpClient.execute(HttpAsyncMethods.create(request), handler.consumer, handler.callback);
             manager.setFuture(downloadFuture);
         }
 
         private class DownloadRetryHandler implements DownloadCallback<T> {
 
+            private final boolean resuming;
             private volatile boolean skipRetry;
 
+            public DownloadRetryHandler(boolean resuming) {
+                this.resuming = resuming;
+            }
+
             @Override
             public void done(T result) {
                 skipRetry = true;
@@ -348,8 +438,14 @@ class HttpAsyncDownloader implements Downloader {
 
             @Override
             public void failed(Throwable e) {
+                if (resuming && e instanceof ResumeRejectedException) {
+                    // restart from the beginning, this doesn't count as a try
+                    ignoreResumePoint = true;
+                    download();
+                    return;
+                }
                 currentTries++;
-                if (currentTries < maxTries && !skipRetry && DownloaderHelper.shouldRetry(e)) {
+                if (currentTries < maxTries && !skipRetry && DownloaderHelper.shouldRetryImmediately(e)) {
                     skipRetry = true;
                     callback.retry(e, currentTries, maxTries);
                     skipRetry = false;
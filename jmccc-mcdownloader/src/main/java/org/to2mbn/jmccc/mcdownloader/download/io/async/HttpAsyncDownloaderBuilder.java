@@ -8,6 +8,7 @@ import org.apache.http.impl.nio.reactor.IOReactorConfig;
 import org.apache.http.message.BasicHeader;
 import org.to2mbn.jmccc.mcdownloader.download.Downloader;
 import org.to2mbn.jmccc.mcdownloader.download.io.AbstractDownloaderBuilder;
+import org.to2mbn.jmccc.mcdownloader.download.io.BufferPool;
 import org.to2mbn.jmccc.mcdownloader.util.ThreadPoolUtils;
 import org.to2mbn.jmccc.util.Builder;
 
@@ -80,7 +81,8 @@ public class HttpAsyncDownloaderBuilder extends AbstractDownloaderBuilder {
             }
 
             pool = ThreadPoolUtils.createPool(bootstrapPoolSize, downloadPoolKeepAliveTime, downloadPoolKeepAliveTimeUnit, "asyncDownloader.bootstrap");
-            return new HttpAsyncDownloader(client, pool);
+            return decorate(new HttpAsyncDownloader(client, pool, stallMinRate, stallWindow,
+                    bufferPool == null ? BufferPool.getDefaultDirectPool() : bufferPool));
         } catch (Throwable e) {
             if (client != null) {
                 try {
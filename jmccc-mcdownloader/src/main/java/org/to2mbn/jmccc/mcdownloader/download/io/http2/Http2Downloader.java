@@ -0,0 +1,714 @@
+package org.to2mbn.jmccc.mcdownloader.download.io.http2;
+
+import org.apache.hc.client5.http.async.methods.AbstractBinResponseConsumer;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.core5.concurrent.FutureCallback;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.HttpResponse;
+import org.apache.hc.core5.http.nio.AsyncRequestProducer;
+import org.apache.hc.core5.http.nio.support.AsyncRequestBuilder;
+import org.apache.hc.core5.io.CloseMode;
+import org.to2mbn.jmccc.mcdownloader.download.Downloader;
+import org.to2mbn.jmccc.mcdownloader.download.concurrent.*;
+import org.to2mbn.jmccc.mcdownloader.download.io.DownloaderHelper;
+import org.to2mbn.jmccc.mcdownloader.download.io.GzipDownloadSession;
+import org.to2mbn.jmccc.mcdownloader.download.io.IllegalHttpResponseCodeException;
+import org.to2mbn.jmccc.mcdownloader.download.io.ResumeRejectedException;
+import org.to2mbn.jmccc.mcdownloader.download.io.StallDetector;
+import org.to2mbn.jmccc.mcdownloader.download.io.TransferStalledException;
+import org.to2mbn.jmccc.mcdownloader.download.tasks.ByteRange;
+import org.to2mbn.jmccc.mcdownloader.download.tasks.DownloadSession;
+import org.to2mbn.jmccc.mcdownloader.download.tasks.DownloadTask;
+
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Logger;
+
+/**
+ * Downloads over HTTP/2, multiplexing the requests to the same host over a
+ * single connection.
+ * <p>
+ * A host is assumed to support HTTP/2 until its first request fails before
+ * any response is received. Such hosts are remembered, and their tasks are
+ * handed to the fallback downloader (if any) from then on.
+ */
+class Http2Downloader implements Downloader {
+
+    private static final Logger LOGGER = Logger.getLogger(Http2Downloader.class.getCanonicalName());
+
+    private static final int RUNNING = 0;
+    private static final int SHUTTING_DOWN = 1;
+    private static final int TERMINATED = 2;
+    private final ReadWriteLock rwlock = new ReentrantReadWriteLock();
+    private final Set<Future<?>> tasks = Collections.newSetFromMap(new ConcurrentHashMap<Future<?>, Boolean>());
+    private final Set<String> http2Hosts = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private final Set<String> http1Hosts = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private final Semaphore streams;
+    // the requests waiting for a stream, so that no thread is blocked
+    private final Queue<PendingStream> pendingStreams = new ConcurrentLinkedQueue<>();
+    private final int maxStreams;
+    private CloseableHttpAsyncClient httpClient;
+    private ExecutorService bootstrapPool;
+    private Downloader fallback;
+    private final long stallMinRate;
+    private final long stallWindow;
+    private volatile int status = RUNNING;
+
+    /**
+     * @param client        the HTTP/2 client
+     * @param bootstrapPool the pool to prepare the requests
+     * @param maxStreams    the max number of in-flight requests
+     * @param fallback      the downloader for the hosts which don't support
+     *                      HTTP/2, null to fail their tasks
+     * @param stallMinRate  the min throughput in bytes per second, -1 to
+     *                      disable the stall detection
+     * @param stallWindow   the window of the stall detection in milliseconds
+     */
+    public Http2Downloader(CloseableHttpAsyncClient client, ExecutorService bootstrapPool, int maxStreams, Downloader fallback, long stallMinRate, long stallWindow) {
+        Objects.requireNonNull(client);
+        Objects.requireNonNull(bootstrapPool);
+        if (maxStreams < 1)
+            throw new IllegalArgumentException("maxStreams < 1");
+        this.httpClient = client;
+        this.bootstrapPool = bootstrapPool;
+        this.maxStreams = maxStreams;
+        this.streams = new Semaphore(maxStreams);
+        this.fallback = fallback;
+        this.stallMinRate = stallMinRate;
+        this.stallWindow = stallWindow;
+
+        httpClient.start();
+    }
+
+    @Override
+    public <T> Future<T> download(DownloadTask<T> downloadTask, DownloadCallback<T> callback, int tries) {
+        Objects.requireNonNull(downloadTask);
+        if (tries < 1)
+            throw new IllegalArgumentException("tries < 1");
+
+        if (fallback != null && http1Hosts.contains(hostOf(downloadTask))) {
+            return fallback.download(downloadTask, callback, tries);
+        }
+
+        AsyncDownloadTask<T> task = new AsyncDownloadTask<T>(downloadTask, callback == null ? DownloadCallbacks.<T>empty() : callback, tries);
+        Callback<T> statusCallback = Callbacks.whatever(new TaskInactiver(task));
+        if (callback != null)
+            statusCallback = Callbacks.group(statusCallback, callback);
+        task.setCallback(statusCallback);
+
+        Lock lock = rwlock.readLock();
+        lock.lock();
+        try {
+            if (isShutdown())
+                throw new RejectedExecutionException("The downloader has been shutdown.");
+
+            bootstrapPool.execute(task);
+
+            tasks.add(task);
+        } finally {
+            lock.unlock();
+        }
+
+        return task;
+    }
+
+    @Override
+    public <T> Future<T> download(DownloadTask<T> task, DownloadCallback<T> callback) {
+        return download(task, callback, 1);
+    }
+
+    @Override
+    public void shutdown() {
+        // see HttpAsyncDownloader.shutdown()
+        boolean isTasksEmpty;
+
+        Lock lock = rwlock.writeLock();
+        lock.lock();
+        try {
+            if (isShutdown()) {
+                return;
+            }
+
+            status = SHUTTING_DOWN;
+            isTasksEmpty = tasks.isEmpty();
+            if (isTasksEmpty) {
+                status = TERMINATED;
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        bootstrapPool.shutdownNow();
+        if (fallback != null) {
+            fallback.shutdown();
+        }
+
+        if (isTasksEmpty) {
+            completeShutdown();
+        } else {
+            for (Future<?> task : tasks)
+                task.cancel(true);
+        }
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return status != RUNNING;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Http2Downloader [maxStreams=%d, activeStreams=%d, http2Hosts=%s, http1Hosts=%s, fallback=%s, status=%d]",
+                maxStreams, maxStreams - streams.availablePermits(), http2Hosts, http1Hosts, fallback, status);
+    }
+
+    private void completeShutdown() {
+        bootstrapPool = null;
+        httpClient.close(CloseMode.GRACEFUL);
+        httpClient = null;
+    }
+
+    /**
+     * Starts the request once a stream is available. The request is started
+     * in the current thread if a stream is available now, otherwise it's
+     * queued, and started on the bootstrap pool when a stream is released.
+     */
+    private void acquireStream(PendingStream stream) {
+        if (pendingStreams.isEmpty() && streams.tryAcquire()) {
+            stream.run();
+            return;
+        }
+        pendingStreams.add(stream);
+        drainPendingStreams();
+    }
+
+    private void releaseStream() {
+        streams.release();
+        drainPendingStreams();
+    }
+
+    private void drainPendingStreams() {
+        while (!pendingStreams.isEmpty() && streams.tryAcquire()) {
+            PendingStream stream = pendingStreams.poll();
+            if (stream == null) {
+                // taken by another thread
+                streams.release();
+                continue;
+            }
+            try {
+                bootstrapPool.execute(stream);
+            } catch (Throwable e) {
+                streams.release();
+                stream.abort(e);
+            }
+        }
+    }
+
+    private static String hostOf(DownloadTask<?> task) {
+        String host = task.getURI().getHost();
+        return host == null ? "" : host.toLowerCase();
+    }
+
+    /**
+     * Returns true if the exception may indicate that the host doesn't speak
+     * HTTP/2, rather than that the host is unreachable.
+     */
+    private static boolean isProtocolFailure(Throwable e) {
+        return !(e instanceof IllegalHttpResponseCodeException
+                || e instanceof ResumeRejectedException
+                || e instanceof ConnectException
+                || e instanceof UnknownHostException
+                || e instanceof InterruptedIOException);
+    }
+
+    private class DownloadSessionHandler<T> {
+
+        public final DataConsumer consumer;
+        public final FutureCallback<T> callback;
+        private final DownloadTask<T> task;
+        private final DownloadCallback<T> downloadCallback;
+        private final ByteRange requestRange;
+        private final boolean rangeRequired;
+
+        private final StallDetector stallDetector = stallMinRate > 0 ? new StallDetector(stallMinRate, stallWindow) : null;
+
+        private volatile DownloadSession<T> session;
+        private volatile Throwable resultBuildingEx;
+        private volatile boolean responseReceived;
+        // the exchange, which is cancelled to reset a stalled stream
+        private volatile Future<T> exchange;
+
+        public DownloadSessionHandler(DownloadTask<T> task, DownloadCallback<T> downloadCallback, ByteRange requestRange, boolean rangeRequired) {
+            Objects.requireNonNull(task);
+            Objects.requireNonNull(downloadCallback);
+            this.task = task;
+            this.downloadCallback = downloadCallback;
+            this.requestRange = requestRange;
+            this.rangeRequired = rangeRequired;
+
+            consumer = new DataConsumer();
+            callback = new DownloadCallbackAdapter(downloadCallback);
+        }
+
+        private class DataConsumer extends AbstractBinResponseConsumer<T> {
+
+            private volatile long contextLength = -1;
+            private volatile long received = 0;
+
+            /*
+             * The exceptions thrown by the consumer close the whole connection,
+             * failing all the streams multiplexed over it. So the failure of
+             * this stream is recorded, and reported when the stream completes.
+             */
+            private volatile Throwable failure;
+
+            @Override
+            protected void start(HttpResponse response, ContentType contentType) {
+                responseReceived = true;
+                http2Hosts.add(hostOf(task));
+                try {
+                    startSession(response);
+                } catch (Throwable e) {
+                    failure = e;
+                }
+            }
+
+            private void startSession(HttpResponse response) throws Exception {
+                int statusCode = response.getCode();
+                if (statusCode == 416 && requestRange != null)
+                    throw new ResumeRejectedException("Server refused to serve " + requestRange + " of " + task.getURI());
+                if (statusCode < 200 || statusCode > 299) {
+                    // non-2xx response code
+                    Header retryAfter = response.getFirstHeader("Retry-After");
+                    throw new IllegalHttpResponseCodeException(statusCode + " " + response.getReasonPhrase(), statusCode, DownloaderHelper.parseRetryAfter(retryAfter == null ? null : retryAfter.getValue()));
+                }
+
+                Header contentLengthHeader = response.getFirstHeader("Content-Length");
+                if (contentLengthHeader != null) {
+                    try {
+                        long contextLength = Long.parseLong(contentLengthHeader.getValue());
+                        if (contextLength >= 0) {
+                            this.contextLength = contextLength;
+                        }
+                    } catch (NumberFormatException e) {
+                        LOGGER.warning("Invalid Content-Length: " + contentLengthHeader.getValue() + ", ignoring: " + e);
+                    }
+                }
+
+                Header contentEncodingHeader = response.getFirstHeader("Content-Encoding");
+                boolean gzipOn = contentEncodingHeader != null && "gzip".equals(contentEncodingHeader.getValue());
+
+                Header contentRangeHeader = response.getFirstHeader("Content-Range");
+                Header entityTagHeader = response.getFirstHeader("ETag");
+                DownloaderHelper.SessionStart start = DownloaderHelper.getSessionStart(task.getURI().toString(), statusCode, requestRange, rangeRequired,
+                        contentRangeHeader == null ? null : contentRangeHeader.getValue(),
+                        entityTagHeader == null ? null : entityTagHeader.getValue(),
+                        gzipOn, contextLength);
+                contextLength = start.getTotalLength();
+                received = start.getResumePoint().getOffset();
+
+                session = task.createSession(start.getResumePoint(), contextLength > 0 ? contextLength : -1);
+
+                if (gzipOn) {
+                    session = new GzipDownloadSession<>(session);
+                }
+            }
+
+            @Override
+            protected int capacityIncrement() {
+                // the data are consumed as soon as they are received
+                return Integer.MAX_VALUE;
+            }
+
+            @Override
+            protected void data(ByteBuffer src, boolean endOfStream) {
+                if (failure != null || !src.hasRemaining()) {
+                    // the rest of a failed stream is discarded
+                    return;
+                }
+                try {
+                    int length = src.remaining();
+                    received += length;
+                    session.receiveData(src);
+                    if (stallDetector != null) {
+                        stallDetector.update(length);
+                    }
+                    downloadCallback.updateProgress(received, contextLength);
+                } catch (Throwable e) {
+                    failure = e;
+                    if (e instanceof TransferStalledException && exchange != null) {
+                        // resets the stream only, the connection is kept for the other streams
+                        exchange.cancel(true);
+                    }
+                }
+            }
+
+            @Override
+            protected T buildResult() {
+                T result = null;
+                try {
+                    if (failure != null) {
+                        failSession(failure);
+                        throw failure;
+                    }
+                    if (session == null) {
+                        throw new IllegalStateException("Download session is not active");
+                    }
+
+                    result = session.completed();
+                    resultBuildingEx = null;
+                } catch (Throwable e) {
+                    resultBuildingEx = e;
+                }
+                return result;
+            }
+
+            @Override
+            public void releaseResources() {
+                // the session is completed by buildResult(), or failed by the callback
+            }
+
+        }
+
+        /**
+         * Fails the session, which closes and deletes its partial data.
+         */
+        private void failSession(Throwable ex) {
+            if (session != null) {
+                try {
+                    session.failed();
+                } catch (Throwable e) {
+                    if (e != ex)
+                        ex.addSuppressed(e);
+                }
+            }
+        }
+
+        private class DownloadCallbackAdapter implements FutureCallback<T> {
+
+            private final Callback<T> adapted;
+
+            public DownloadCallbackAdapter(Callback<T> adapted) {
+                this.adapted = adapted;
+            }
+
+            @Override
+            public void completed(T result) {
+                if (resultBuildingEx == null) {
+                    adapted.done(result);
+                } else {
+                    adapted.failed(resultBuildingEx);
+                }
+            }
+
+            @Override
+            public void failed(Exception ex) {
+                failSession(ex);
+                adapted.failed(ex);
+            }
+
+            @Override
+            public void cancelled() {
+                Throwable failure = consumer.failure;
+                if (failure instanceof TransferStalledException) {
+                    // cancelled by the consumer
+                    failed((TransferStalledException) failure);
+                    return;
+                }
+                if (session != null) {
+                    try {
+                        session.failed();
+                    } catch (Throwable e) {
+                        adapted.failed(e);
+                        return;
+                    }
+                }
+                adapted.cancelled();
+            }
+
+        }
+
+    }
+
+    private class AsyncDownloadTask<T> extends CallbackAsyncTask<T> {
+
+        private final DownloadTask<T> task;
+        private final DownloadCallback<T> callback;
+        private final int maxTries;
+        private volatile int currentTries;
+        private volatile boolean ignoreResumePoint;
+
+        public AsyncDownloadTask(DownloadTask<T> task, DownloadCallback<T> callback, int maxTries) {
+            Objects.requireNonNull(task);
+            Objects.requireNonNull(callback);
+            if (maxTries < 1)
+                throw new IllegalArgumentException(String.valueOf(maxTries));
+
+            this.task = task;
+            this.callback = callback;
+            this.maxTries = maxTries;
+        }
+
+        @Override
+        protected void execute() throws Exception {
+            download();
+        }
+
+        private void download() {
+            if (Thread.interrupted() || isExceptional()) {
+                lifecycle().cancelled();
+                return;
+            }
+
+            boolean rangeRequired = task.getRequestRange() != null;
+            ByteRange requestRange = DownloaderHelper.getRequestRange(task, !ignoreResumePoint);
+            ignoreResumePoint = false;
+
+            AsyncRequestBuilder request = AsyncRequestBuilder.get(task.getURI());
+            for (Map.Entry<String, String> header : DownloaderHelper.getRequestHeaders(requestRange).entrySet()) {
+                request.setHeader(header.getKey(), header.getValue());
+            }
+            final AsyncRequestProducer producer = request.build();
+            final ByteRange range = requestRange;
+
+            acquireStream(new PendingStream() {
+
+                @Override
+                public void run() {
+                    // the stream is released by the retry handler
+                    try {
+                        if (isExceptional()) {
+                            releaseStream();
+                            lifecycle().cancelled();
+                            return;
+                        }
+                        execute(producer, range, rangeRequired);
+                    } catch (Throwable e) {
+                        releaseStream();
+                        lifecycle().failed(e);
+                    }
+                }
+
+                @Override
+                public void abort(Throwable e) {
+                    lifecycle().failed(e);
+                }
+            });
+        }
+
+        private void execute(AsyncRequestProducer producer, ByteRange requestRange, boolean rangeRequired) {
+            FutureManager<T> manager = createFutureManager();
+            DownloadRetryHandler retryHandler = new DownloadRetryHandler(requestRange != null && !rangeRequired);
+            DownloadSessionHandler<T> handler = new DownloadSessionHandler<>(task, DownloadCallbacks.group(DownloadCallbacks.fromCallback(manager), retryHandler), requestRange, rangeRequired);
+            retryHandler.handler = handler;
+            Future<T> downloadFuture = httpClient.execute(producer, handler.consumer, handler.callback);
+            handler.exchange = downloadFuture;
+            manager.setFuture(downloadFuture);
+        }
+
+        /**
+         * Starts the next try on the bootstrap pool, since the callbacks are
+         * invoked on the I/O threads, which mustn't be blocked.
+         */
+        private void redownload() {
+            try {
+                bootstrapPool.execute(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        try {
+                            download();
+                        } catch (Throwable e) {
+                            lifecycle().failed(e);
+                        }
+                    }
+                });
+            } catch (Throwable e) {
+                lifecycle().failed(e);
+            }
+        }
+
+        private void fallback() {
+            final Future<T> future;
+            try {
+                future = fallback.download(task, new DownloadCallback<T>() {
+
+                    @Override
+                    public void done(T result) {
+                        lifecycle().done(result);
+                    }
+
+                    @Override
+                    public void failed(Throwable e) {
+                        lifecycle().failed(e);
+                    }
+
+                    @Override
+                    public void cancelled() {
+                        lifecycle().cancelled();
+                    }
+
+                    @Override
+                    public void updateProgress(long done, long total) {
+                        callback.updateProgress(done, total);
+                    }
+
+                    @Override
+                    public void retry(Throwable e, int current, int max) {
+                        callback.retry(e, current, max);
+                    }
+                }, maxTries - currentTries);
+            } catch (Throwable e) {
+                lifecycle().failed(e);
+                return;
+            }
+            addCancelable(future);
+        }
+
+        private class DownloadRetryHandler implements DownloadCallback<T> {
+
+            private final boolean resuming;
+            private volatile boolean skipRetry;
+            private volatile boolean released;
+            private volatile DownloadSessionHandler<T> handler;
+
+            public DownloadRetryHandler(boolean resuming) {
+                this.resuming = resuming;
+            }
+
+            @Override
+            public void done(T result) {
+                release();
+                skipRetry = true;
+                lifecycle().done(result);
+                skipRetry = false;
+            }
+
+            @Override
+            public void failed(Throwable e) {
+                release();
+                String host = hostOf(task);
+                if (fallback != null && !handler.responseReceived && !http2Hosts.contains(host) && isProtocolFailure(e)) {
+                    // this doesn't count as a try
+                    if (http1Hosts.add(host)) {
+                        LOGGER.info("Host " + host + " doesn't seem to support HTTP/2, falling back: " + e);
+                    }
+                    fallback();
+                    return;
+                }
+                if (resuming && e instanceof ResumeRejectedException) {
+                    // restart from the beginning, this doesn't count as a try
+                    ignoreResumePoint = true;
+                    redownload();
+                    return;
+                }
+                currentTries++;
+                if (currentTries < maxTries && !skipRetry && DownloaderHelper.shouldRetryImmediately(e)) {
+                    skipRetry = true;
+                    callback.retry(e, currentTries, maxTries);
+                    skipRetry = false;
+                    redownload();
+                } else {
+                    skipRetry = true;
+                    lifecycle().failed(e);
+                    skipRetry = false;
+                }
+            }
+
+            @Override
+            public void cancelled() {
+                release();
+                skipRetry = true;
+                lifecycle().cancelled();
+                skipRetry = false;
+            }
+
+            @Override
+            public void updateProgress(long done, long total) {
+                skipRetry = true;
+                callback.updateProgress(done, total);
+                skipRetry = false;
+            }
+
+            @Override
+            public void retry(Throwable e, int current, int max) {
+                throw new AssertionError("This method shouldn't be invoked.");
+            }
+
+            private void release() {
+                if (!released) {
+                    released = true;
+                    releaseStream();
+                }
+            }
+
+        }
+
+    }
+
+    private static abstract class PendingStream implements Runnable {
+
+        /**
+         * Invoked if the request cannot be started.
+         */
+        public abstract void abort(Throwable e);
+
+    }
+
+    private class TaskInactiver implements Runnable {
+
+        private final Future<?> task;
+
+        public TaskInactiver(Future<?> task) {
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            // see HttpAsyncDownloader.TaskInactiver
+            Lock rlock = rwlock.readLock();
+            rlock.lock();
+            try {
+                tasks.remove(task);
+            } finally {
+                rlock.unlock();
+            }
+
+            if (status == SHUTTING_DOWN) {
+                boolean doCleanup = false;
+                Lock wlock = rwlock.writeLock();
+                wlock.lock();
+                try {
+                    if (status == SHUTTING_DOWN && tasks.isEmpty()) {
+                        status = TERMINATED;
+                        doCleanup = true;
+                    }
+                } finally {
+                    wlock.unlock();
+                }
+                if (doCleanup) {
+                    completeShutdown();
+                }
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,181 @@
+package org.to2mbn.jmccc.mcdownloader.download.io.http2;
+
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.client5.http.impl.async.H2AsyncClientBuilder;
+import org.apache.hc.core5.http2.config.H2Config;
+import org.apache.hc.core5.reactor.IOReactorConfig;
+import org.apache.hc.core5.util.Timeout;
+import org.to2mbn.jmccc.mcdownloader.download.Downloader;
+import org.to2mbn.jmccc.mcdownloader.download.io.AbstractDownloaderBuilder;
+import org.to2mbn.jmccc.mcdownloader.download.io.JdkDownloaderBuilder;
+import org.to2mbn.jmccc.mcdownloader.download.io.async.HttpAsyncDownloaderBuilder;
+import org.to2mbn.jmccc.mcdownloader.util.ThreadPoolUtils;
+import org.to2mbn.jmccc.util.Builder;
+
+import java.net.Proxy;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Builds a downloader which multiplexes the requests to the same host over a
+ * single HTTP/2 connection.
+ * <p>
+ * This downloader requires Apache HttpClient 5. HTTP/2 is negotiated with ALPN
+ * for https uris (which requires Java 9+ or Java 8u252+), and used with prior
+ * knowledge for http uris. The hosts which turn out not to support HTTP/2 are
+ * served by the fallback downloader, which is an HTTP/1.1 downloader with the
+ * same settings by default.
+ * <p>
+ * {@link #maxConnections(int)} limits the number of in-flight requests
+ * (streams) of the downloader, rather than the number of connections. Proxies
+ * are not supported.
+ */
+public class Http2DownloaderBuilder extends AbstractDownloaderBuilder {
+
+    protected Builder<CloseableHttpAsyncClient> httpClient;
+    protected int bootstrapPoolSize = Runtime.getRuntime().availableProcessors();
+    protected boolean fallbackEnabled = true;
+    protected Builder<Downloader> fallback;
+
+    protected Http2DownloaderBuilder() {
+        // a few connections can carry many more streams than HTTP/1.1 connections
+        maxConnections = 100;
+    }
+
+    public static boolean isAvailable() {
+        try {
+            Class.forName("org.apache.hc.client5.http.impl.async.H2AsyncClientBuilder");
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+        return true;
+    }
+
+    public static Http2DownloaderBuilder create() {
+        return new Http2DownloaderBuilder();
+    }
+
+    public static Downloader buildDefault() {
+        return create().build();
+    }
+
+    public Http2DownloaderBuilder httpClient(Builder<CloseableHttpAsyncClient> httpClient) {
+        this.httpClient = httpClient;
+        return this;
+    }
+
+    public Http2DownloaderBuilder bootstrapPoolSize(int bootstrapPoolSize) {
+        this.bootstrapPoolSize = bootstrapPoolSize;
+        return this;
+    }
+
+    /**
+     * Sets whether the tasks from the hosts which don't support HTTP/2 are
+     * handed to the fallback downloader. Default to true.
+     *
+     * @param fallbackEnabled true to enable the fallback downloader
+     * @return the builder itself
+     */
+    public Http2DownloaderBuilder fallbackEnabled(boolean fallbackEnabled) {
+        this.fallbackEnabled = fallbackEnabled;
+        return this;
+    }
+
+    /**
+     * Sets the downloader for the hosts which don't support HTTP/2.
+     *
+     * @param fallback the fallback downloader, null to use an HTTP/1.1
+     *                 downloader with the same settings as this builder
+     * @return the builder itself
+     */
+    public Http2DownloaderBuilder fallback(Builder<Downloader> fallback) {
+        this.fallback = fallback;
+        return this;
+    }
+
+    @Override
+    public Downloader build() {
+        if (proxy.type() != Proxy.Type.DIRECT) {
+            throw new IllegalArgumentException("Proxy '" + proxy + "' is not supported");
+        }
+
+        CloseableHttpAsyncClient client = null;
+        ExecutorService pool = null;
+        Downloader fallbackDownloader = null;
+        try {
+            if (httpClient == null) {
+                client = buildDefaultHttpClient();
+            } else {
+                client = httpClient.build();
+            }
+            if (fallbackEnabled) {
+                fallbackDownloader = fallback == null ? buildDefaultFallback() : fallback.build();
+            }
+
+            pool = ThreadPoolUtils.createPool(bootstrapPoolSize, downloadPoolKeepAliveTime, downloadPoolKeepAliveTimeUnit, "http2Downloader.bootstrap");
+            return decorate(new Http2Downloader(client, pool, maxConnections, fallbackDownloader, stallMinRate, stallWindow));
+        } catch (Throwable e) {
+            if (client != null) {
+                try {
+                    client.close();
+                } catch (Throwable e1) {
+                    e.addSuppressed(e1);
+                }
+            }
+            if (pool != null) {
+                try {
+                    pool.shutdownNow();
+                } catch (Throwable e1) {
+                    e.addSuppressed(e1);
+                }
+            }
+            if (fallbackDownloader != null) {
+                try {
+                    fallbackDownloader.shutdown();
+                } catch (Throwable e1) {
+                    e.addSuppressed(e1);
+                }
+            }
+            throw e;
+        }
+    }
+
+    protected CloseableHttpAsyncClient buildDefaultHttpClient() {
+        return H2AsyncClientBuilder.create()
+                .setH2Config(H2Config.custom()
+                        .setPushEnabled(false)
+                        .build())
+                .setIOReactorConfig(IOReactorConfig.custom()
+                        .setSoTimeout(Timeout.ofMilliseconds(readTimeout))
+                        .build())
+                .setDefaultConnectionConfig(ConnectionConfig.custom()
+                        .setConnectTimeout(Timeout.ofMilliseconds(connectTimeout))
+                        .setSocketTimeout(Timeout.ofMilliseconds(readTimeout))
+                        .build())
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        .setResponseTimeout(Timeout.ofMilliseconds(readTimeout))
+                        .build())
+                // retries are done by the downloader
+                .disableAutomaticRetries()
+                .disableCookieManagement()
+                .build();
+    }
+
+    protected Downloader buildDefaultFallback() {
+        AbstractDownloaderBuilder builder = HttpAsyncDownloaderBuilder.isAvailable()
+                ? HttpAsyncDownloaderBuilder.create()
+                : JdkDownloaderBuilder.create();
+        builder.maxConnections(Math.min(maxConnections, 20))
+                .connectTimeout(connectTimeout)
+                .readTimeout(readTimeout)
+                .downloadPoolKeepAliveTime(downloadPoolKeepAliveTime, downloadPoolKeepAliveTimeUnit)
+                .bufferPool(bufferPool);
+        if (stallMinRate > 0) {
+            builder.stallDetection(stallMinRate, stallWindow, TimeUnit.MILLISECONDS);
+        }
+        return builder.build();
+    }
+
+}
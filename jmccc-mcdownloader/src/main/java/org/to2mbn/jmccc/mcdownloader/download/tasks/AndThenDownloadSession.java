@@ -2,6 +2,7 @@ package org.to2mbn.jmccc.mcdownloader.download.tasks;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 
 class AndThenDownloadSession<R, S> implements DownloadSession<S> {
 
@@ -18,6 +19,16 @@ class AndThenDownloadSession<R, S> implements DownloadSession<S> {
         delegated.receiveData(data);
     }
 
+    @Override
+    public void receiveData(FileChannel src, long position, long count) throws IOException {
+        delegated.receiveData(src, position, count);
+    }
+
+    @Override
+    public void receiveData(FileChannel src, long position, long count, String checksum) throws IOException {
+        delegated.receiveData(src, position, count, checksum);
+    }
+
     @Override
     public S completed() throws Exception {
         return processor.process(delegated.completed());
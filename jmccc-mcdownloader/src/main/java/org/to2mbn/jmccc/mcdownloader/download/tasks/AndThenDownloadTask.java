@@ -1,5 +1,7 @@
 package org.to2mbn.jmccc.mcdownloader.download.tasks;
 
+import java.util.Arrays;
+
 class AndThenDownloadTask<SRC, DEST> extends DownloadTaskDecorator<SRC, DEST> {
 
     private ResultProcessor<SRC, DEST> processor;
@@ -14,4 +16,14 @@ class AndThenDownloadTask<SRC, DEST> extends DownloadTaskDecorator<SRC, DEST> {
         return new AndThenDownloadSession<>(processor, toDelegate);
     }
 
+    @Override
+    public Object getCoalescingKey() {
+        Object key = delegated.getCoalescingKey();
+        if (key == null) {
+            return null;
+        }
+        // the processor is left out, it's usually a new object at every call site
+        return Arrays.asList("andThen", key);
+    }
+
 }
\ No newline at end of file
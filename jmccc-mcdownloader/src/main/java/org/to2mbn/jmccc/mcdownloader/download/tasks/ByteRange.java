@@ -0,0 +1,101 @@
+package org.to2mbn.jmccc.mcdownloader.download.tasks;
+
+import java.io.Serializable;
+import java.util.Objects;
+
+/**
+ * Describes a range of bytes to request.
+ *
+ * @see DownloadTask#getRequestRange()
+ */
+public final class ByteRange implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long first;
+    private final long last;
+    private final String entityTag;
+
+    /**
+     * Constructs a ByteRange.
+     *
+     * @param first     the offset of the first byte, inclusive
+     * @param last      the offset of the last byte, inclusive, -1 if the range
+     *                  extends to the end of the resource
+     * @param entityTag the strong entity tag the resource must match, or null
+     *                  if not required
+     * @throws IllegalArgumentException if <code>first &lt; 0</code>, or
+     *                                  <code>last != -1 &amp;&amp; last &lt; first</code>
+     */
+    public ByteRange(long first, long last, String entityTag) {
+        if (first < 0)
+            throw new IllegalArgumentException("first < 0");
+        if (last != -1 && last < first)
+            throw new IllegalArgumentException("last < first");
+        this.first = first;
+        this.last = last;
+        this.entityTag = entityTag;
+    }
+
+    /**
+     * Gets the offset of the first byte.
+     *
+     * @return the offset of the first byte, inclusive
+     */
+    public long getFirst() {
+        return first;
+    }
+
+    /**
+     * Gets the offset of the last byte.
+     *
+     * @return the offset of the last byte, inclusive, -1 if the range extends
+     * to the end of the resource
+     */
+    public long getLast() {
+        return last;
+    }
+
+    /**
+     * Gets the strong entity tag the resource must match.
+     *
+     * @return the entity tag, or null if not required
+     */
+    public String getEntityTag() {
+        return entityTag;
+    }
+
+    /**
+     * Returns the value of the <code>Range</code> header.
+     *
+     * @return the value of the <code>Range</code> header
+     */
+    public String toHeaderValue() {
+        return "bytes=" + first + "-" + (last == -1 ? "" : String.valueOf(last));
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(first, last, entityTag);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == this) {
+            return true;
+        }
+        if (obj instanceof ByteRange) {
+            ByteRange another = (ByteRange) obj;
+            return first == another.first
+                    && last == another.last
+                    && Objects.equals(entityTag, another.entityTag);
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ByteRange [first=%d, last=%d, entityTag=%s]", first, last, entityTag);
+    }
+
+}
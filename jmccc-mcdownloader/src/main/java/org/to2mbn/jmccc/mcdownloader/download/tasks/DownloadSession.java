@@ -1,7 +1,9 @@
 package org.to2mbn.jmccc.mcdownloader.download.tasks;
 
+import java.io.EOFException;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 
 /**
  * A download session is used to handle received data and write them to the
@@ -25,6 +27,57 @@ public interface DownloadSession<T> {
      */
     void receiveData(ByteBuffer data) throws IOException;
 
+    /**
+     * Calls when receives a part of data which is stored in a local file, such
+     * as a cache entry.
+     * <p>
+     * The default implementation reads the data into a buffer and passes it
+     * to {@link #receiveData(ByteBuffer)}. The sessions which store data into
+     * files may override this method to transfer the data without copying
+     * them into the heap.
+     *
+     * @param src      the channel to read from, must not be modified
+     * @param position the position of the first byte in the channel
+     * @param count    the number of bytes to receive
+     * @throws IOException if an I/O error occurs
+     */
+    default void receiveData(FileChannel src, long position, long count) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate((int) Math.min(count, 8192));
+        long end = position + count;
+        while (position < end) {
+            ((java.nio.Buffer) buf).clear();
+            if (end - position < buf.capacity()) {
+                ((java.nio.Buffer) buf).limit((int) (end - position));
+            }
+            int read = src.read(buf, position);
+            if (read == -1) {
+                throw new EOFException("Unexpected end of file at " + position + ", expected " + end);
+            }
+            position += read;
+            ((java.nio.Buffer) buf).flip();
+            receiveData(buf);
+        }
+    }
+
+    /**
+     * Calls when receives a part of data which is stored in a local file, and
+     * whose SHA-1 checksum is already known, such as a content-addressed cache
+     * entry.
+     * <p>
+     * The sessions which verify the data may trust the given checksum instead
+     * of digesting the data again. The default implementation ignores the
+     * checksum and calls {@link #receiveData(FileChannel, long, long)}.
+     *
+     * @param src      the channel to read from, must not be modified
+     * @param position the position of the first byte in the channel
+     * @param count    the number of bytes to receive
+     * @param checksum the SHA-1 checksum (in hex) of the bytes to receive
+     * @throws IOException if an I/O error occurs
+     */
+    default void receiveData(FileChannel src, long position, long count, String checksum) throws IOException {
+        receiveData(src, position, count);
+    }
+
     /**
      * Calls when all the data has been received successfully.
      * <p>
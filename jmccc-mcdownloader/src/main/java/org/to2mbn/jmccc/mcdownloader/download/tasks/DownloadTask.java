@@ -80,6 +80,129 @@ abstract public class DownloadTask<T> {
         return createSession();
     }
 
+    /**
+     * Gets the point where an interrupted download of this task can be
+     * resumed from.
+     * <p>
+     * If the returned value is not null, the downloader will request the data
+     * after {@link ResumePoint#getOffset()}, and ensure the remote resource
+     * still matches {@link ResumePoint#getEntityTag()}. If the server refuses
+     * to resume, the downloader will fall back to download the full resource.
+     * <p>
+     * The default implementation returns null, which means the task cannot be
+     * resumed.
+     *
+     * @return the resume point, or null if the task cannot be resumed
+     * @throws IOException if an I/O error occurs
+     */
+    public ResumePoint getResumePoint() throws IOException {
+        return null;
+    }
+
+    /**
+     * Calls when the download task begins, with the point where the received
+     * data begins.
+     * <p>
+     * If {@link ResumePoint#isBeginning()} is true, the session will receive
+     * the full resource, and the previous partial data (if any) should be
+     * discarded. Otherwise, the session will receive the data after the given
+     * offset, which is the resume point returned by {@link #getResumePoint()}.
+     * <p>
+     * The default implementation delegates to {@link #createSession(long)} or
+     * {@link #createSession()}, and doesn't support resuming.
+     *
+     * @param resumePoint where the received data begins
+     * @param length      the possible length of the full resource, -1 if
+     *                    unknown
+     * @return a new download session
+     * @throws IOException                   if an I/O error occurs
+     * @throws UnsupportedOperationException if the task cannot be resumed from
+     *                                       the given point
+     */
+    public DownloadSession<T> createSession(ResumePoint resumePoint, long length) throws IOException {
+        if (!resumePoint.isBeginning()) {
+            throw new UnsupportedOperationException("Task " + this + " cannot be resumed from " + resumePoint);
+        }
+        return length == -1
+                ? createSession()
+                : createSession(length);
+    }
+
+    /**
+     * Gets the range of the resource to request.
+     * <p>
+     * If the returned value is not null, the downloader will only request the
+     * given range, and fail with
+     * {@link org.to2mbn.jmccc.mcdownloader.download.io.ResumeRejectedException}
+     * if the server doesn't serve the range. The session will be created by
+     * {@link #createSession(ResumePoint, long)}, where the offset of the
+     * resume point is the first byte of the range.
+     * <p>
+     * The default implementation returns null, which means the full resource
+     * is requested.
+     *
+     * @return the range to request, or null to request the full resource
+     */
+    public ByteRange getRequestRange() {
+        return null;
+    }
+
+    /**
+     * Returns true if the task can receive the resource in several segments in
+     * parallel.
+     * <p>
+     * The default implementation returns false.
+     *
+     * @return true if {@link #createSegmentedSession(long)} is supported
+     */
+    public boolean isSegmentable() {
+        return false;
+    }
+
+    /**
+     * Calls when the download task begins, and the resource will be received
+     * in several segments in parallel.
+     *
+     * @param length the length of the resource
+     * @return a new segmented download session
+     * @throws IOException                   if an I/O error occurs
+     * @throws UnsupportedOperationException if {@link #isSegmentable()} is
+     *                                       false
+     */
+    public SegmentedDownloadSession<T> createSegmentedSession(long length) throws IOException {
+        throw new UnsupportedOperationException("Task " + this + " is not segmentable");
+    }
+
+    /**
+     * Gets the key which identifies the resource and where it is saved.
+     * <p>
+     * Two tasks with equal keys produce the same result, so if they are
+     * downloaded at the same time, they can share a single transfer.
+     * <p>
+     * The default implementation returns null, which means the task must not
+     * share its transfer with others.
+     *
+     * @return the key of the task, or null if the task cannot be coalesced
+     */
+    public Object getCoalescingKey() {
+        return null;
+    }
+
+    /**
+     * Creates a task which passes the result of this task to the given
+     * processor.
+     * <p>
+     * The new task is coalesced with the other <code>andThen</code> tasks of
+     * the tasks with the same key, whatever their processors are. Only the
+     * processor of the downloading task is called, and its result is passed to
+     * all of them, so the tasks with the same key must use equivalent
+     * processors.
+     *
+     * @param processor the processor of the result
+     * @param <R>       the type of the new result
+     * @return the new task
+     * @see #getCoalescingKey()
+     */
     public final <R> DownloadTask<R> andThen(ResultProcessor<T, R> processor) {
         Objects.requireNonNull(processor);
         return new AndThenDownloadTask<>(processor, this);
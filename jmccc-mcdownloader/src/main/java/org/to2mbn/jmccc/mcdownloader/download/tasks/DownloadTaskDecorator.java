@@ -2,6 +2,7 @@ package org.to2mbn.jmccc.mcdownloader.download.tasks;
 
 import java.io.IOException;
 import java.net.URI;
+import java.nio.ByteBuffer;
 import java.util.Objects;
 
 /**
@@ -48,6 +49,68 @@ abstract public class DownloadTaskDecorator<SRC, DEST> extends DownloadTask<DEST
         return createSessionDelegate(delegated.createSession(length));
     }
 
+    @Override
+    public ResumePoint getResumePoint() throws IOException {
+        return delegated.getResumePoint();
+    }
+
+    @Override
+    public DownloadSession<DEST> createSession(ResumePoint resumePoint, long length) throws IOException {
+        return createSessionDelegate(delegated.createSession(resumePoint, length));
+    }
+
+    @Override
+    public ByteRange getRequestRange() {
+        return delegated.getRequestRange();
+    }
+
+    @Override
+    public boolean isSegmentable() {
+        return delegated.isSegmentable();
+    }
+
+    @Override
+    public SegmentedDownloadSession<DEST> createSegmentedSession(long length) throws IOException {
+        final SegmentedDownloadSession<SRC> segmented = delegated.createSegmentedSession(length);
+
+        // only the completion of the session is decorated, the data are written to the segmented session directly
+        final DownloadSession<DEST> completion = createSessionDelegate(new DownloadSession<SRC>() {
+
+            @Override
+            public void receiveData(ByteBuffer data) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public SRC completed() throws Exception {
+                return segmented.completed();
+            }
+
+            @Override
+            public void failed() throws Exception {
+                segmented.failed();
+            }
+        });
+
+        return new SegmentedDownloadSession<DEST>() {
+
+            @Override
+            public void receiveData(long position, ByteBuffer data) throws IOException {
+                segmented.receiveData(position, data);
+            }
+
+            @Override
+            public DEST completed() throws Exception {
+                return completion.completed();
+            }
+
+            @Override
+            public void failed() throws Exception {
+                completion.failed();
+            }
+        };
+    }
+
     abstract protected DownloadSession<DEST> createSessionDelegate(DownloadSession<SRC> toDelegate);
 
 }
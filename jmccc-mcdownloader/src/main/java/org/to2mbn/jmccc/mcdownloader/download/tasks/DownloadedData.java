@@ -0,0 +1,113 @@
+package org.to2mbn.jmccc.mcdownloader.download.tasks;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The data downloaded by a {@link SpillingDownloadTask}, which are either held
+ * in memory or stored in a temporary file.
+ * <p>
+ * The data must be closed after use, so that the temporary file is deleted.
+ *
+ * @see SpillingDownloadTask
+ */
+public class DownloadedData implements Closeable {
+
+    private final byte[] data;
+    private final Path file;
+    private final long length;
+
+    DownloadedData(byte[] data, int length) {
+        this.data = data;
+        this.file = null;
+        this.length = length;
+    }
+
+    DownloadedData(Path file, long length) {
+        this.data = null;
+        this.file = file;
+        this.length = length;
+    }
+
+    /**
+     * Gets the length of the data.
+     *
+     * @return the length of the data in bytes
+     */
+    public long getLength() {
+        return length;
+    }
+
+    /**
+     * Gets whether the data are held in memory.
+     *
+     * @return true if the data are held in memory, false if they are stored in
+     * a temporary file
+     */
+    public boolean isInMemory() {
+        return file == null;
+    }
+
+    /**
+     * Opens a stream to read the data.
+     *
+     * @return the stream
+     * @throws IOException if an I/O error occurs
+     */
+    public InputStream openStream() throws IOException {
+        if (file == null) {
+            return new ByteArrayInputStream(data, 0, (int) length);
+        } else {
+            return new BufferedInputStream(Files.newInputStream(file));
+        }
+    }
+
+    /**
+     * Returns a read-only view of the data. If the data are stored in a file,
+     * the file is mapped into memory.
+     * <p>
+     * A mapped file may not be deleted until the buffer is garbage-collected on
+     * some platforms, so {@link #openStream()} should be preferred.
+     *
+     * @return the buffer
+     * @throws IOException if an I/O error occurs
+     */
+    public ByteBuffer toByteBuffer() throws IOException {
+        if (file == null) {
+            return ByteBuffer.wrap(data, 0, (int) length).asReadOnlyBuffer();
+        } else {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                return channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+            }
+        }
+    }
+
+    /**
+     * Deletes the temporary file, if any.
+     */
+    @Override
+    public void close() throws IOException {
+        if (file != null) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                // the file is still mapped
+                file.toFile().deleteOnExit();
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("DownloadedData [length=%d, file=%s]", length, file);
+    }
+
+}
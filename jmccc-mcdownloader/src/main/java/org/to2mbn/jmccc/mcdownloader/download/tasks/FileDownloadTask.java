@@ -1,13 +1,22 @@
 package org.to2mbn.jmccc.mcdownloader.download.tasks;
 
+import org.to2mbn.jmccc.util.ChecksumUtils;
 import org.to2mbn.jmccc.util.FileUtils;
+import org.to2mbn.jmccc.util.HexUtils;
 
+import java.io.EOFException;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.net.URI;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
 import java.util.Objects;
 
 /**
@@ -18,6 +27,8 @@ import java.util.Objects;
 public class FileDownloadTask extends DownloadTask<Void> {
 
     private File target;
+    private String checksum;
+    private long size = -1;
 
     /**
      * Constructs a FileDownloadTask.
@@ -47,6 +58,27 @@ public class FileDownloadTask extends DownloadTask<Void> {
         this.target = target;
     }
 
+    /**
+     * Constructs a FileDownloadTask, which verifies the downloaded file before
+     * moving it to the target.
+     * <p>
+     * The checksum is computed as the data are received, so the file is not
+     * read again after it's written. A download which exceeds the expected
+     * size is aborted at once.
+     *
+     * @param uri      the uri of the resource to download
+     * @param target   the folder to save the file
+     * @param checksum the expected SHA-1 checksum (in hex) of the file, null if
+     *                 unknown
+     * @param size     the expected size of the file, -1 if unknown
+     * @throws NullPointerException if <code>uri==null || target==null</code>
+     */
+    public FileDownloadTask(URI uri, File target, String checksum, long size) {
+        this(uri, target);
+        this.checksum = checksum;
+        this.size = size;
+    }
+
     /**
      * Gets the folder to save the file downloaded.
      *
@@ -56,6 +88,24 @@ public class FileDownloadTask extends DownloadTask<Void> {
         return target;
     }
 
+    /**
+     * Gets the expected SHA-1 checksum of the file.
+     *
+     * @return the expected SHA-1 checksum (in hex), null if unknown
+     */
+    public String getChecksum() {
+        return checksum;
+    }
+
+    /**
+     * Gets the expected size of the file.
+     *
+     * @return the expected size of the file, -1 if unknown
+     */
+    public long getSize() {
+        return size;
+    }
+
     @Override
     public int hashCode() {
         return Objects.hash(super.hashCode(), target);
@@ -73,49 +123,318 @@ public class FileDownloadTask extends DownloadTask<Void> {
         return false;
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Tasks which download the same uri into the same file, with the same
+     * expected checksum and size, have equal keys.
+     */
+    @Override
+    public Object getCoalescingKey() {
+        return Arrays.asList(getURI(), target.getAbsoluteFile(), checksum, size);
+    }
+
     @Override
     public DownloadSession<Void> createSession() throws IOException {
-        final File partFile = new File(target.getParentFile(), target.getName() + ".part");
+        return createSession(ResumePoint.beginning(null), -1);
+    }
 
-        FileUtils.prepareWrite(partFile);
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The partial data is kept in <code>${target}.part</code>, and the entity
+     * tag of the resource is kept in <code>${target}.part.etag</code>. Only
+     * the downloads whose entity tags are known can be resumed.
+     * <p>
+     * If another session is writing the same target (e.g. a hedged download
+     * from another mirror), the data is kept in an alternate
+     * <code>${target}.part.N</code> instead, which cannot be resumed.
+     */
+    @Override
+    public ResumePoint getResumePoint() throws IOException {
+        File partFile = getPartFile();
+        File entityTagFile = getEntityTagFile();
+        if (PartFiles.isClaimed(partFile)) {
+            return null;
+        }
+        if (!partFile.isFile() || !entityTagFile.isFile()) {
+            return null;
+        }
+        long committed = partFile.length();
+        if (committed == 0) {
+            return null;
+        }
+        String entityTag = new String(Files.readAllBytes(entityTagFile.toPath()), StandardCharsets.UTF_8).trim();
+        if (entityTag.isEmpty()) {
+            return null;
+        }
+        return new ResumePoint(committed, entityTag);
+    }
 
-        final FileOutputStream out = new FileOutputStream(partFile);
-        final FileChannel channel = out.getChannel();
+    @Override
+    public DownloadSession<Void> createSession(ResumePoint resumePoint, long length) throws IOException {
+        final File partFile = PartFiles.claim(target, ".part");
+        final File entityTagFile = getEntityTagFile();
+        final boolean primary = partFile.equals(getPartFile().getAbsoluteFile());
+        final boolean resumable = primary && resumePoint.getEntityTag() != null;
+
+        final MessageDigest digest;
+        try {
+            digest = checksum == null ? null : MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            PartFiles.release(partFile);
+            throw new IOException(e);
+        }
+
+        final FileChannel channel;
+        try {
+            FileUtils.prepareWrite(partFile);
+
+            if (resumePoint.isBeginning()) {
+                channel = FileChannel.open(partFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+                try {
+                    if (resumable) {
+                        Files.write(entityTagFile.toPath(), resumePoint.getEntityTag().getBytes(StandardCharsets.UTF_8));
+                    } else if (primary) {
+                        Files.deleteIfExists(entityTagFile.toPath());
+                    }
+                } catch (Throwable e) {
+                    channel.close();
+                    throw e;
+                }
+            } else {
+                if (!primary) {
+                    throw new IOException("Cannot resume " + getPartFile() + ", it's being written by another session");
+                }
+                channel = FileChannel.open(partFile.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+                try {
+                    if (channel.size() < resumePoint.getOffset()) {
+                        throw new IOException("Cannot resume " + partFile + " from " + resumePoint + ", only " + channel.size() + " bytes committed");
+                    }
+                    channel.truncate(resumePoint.getOffset());
+                    if (digest != null) {
+                        // only the committed data are read again
+                        update(digest, channel, resumePoint.getOffset());
+                    }
+                    channel.position(resumePoint.getOffset());
+                } catch (Throwable e) {
+                    channel.close();
+                    throw e;
+                }
+            }
+        } catch (Throwable e) {
+            PartFiles.release(partFile);
+            throw e;
+        }
 
         return new DownloadSession<Void>() {
 
+            private long received = resumePoint.getOffset();
+
+            // the length of the data whose checksum has been vouched for by the source, -1 if none
+            private long vouchedLength = -1;
+
             @Override
             public void receiveData(ByteBuffer data) throws IOException {
-                channel.write(data);
+                received += data.remaining();
+                if (size != -1 && received > size) {
+                    throw new IOException("The size of " + target + " exceeds " + size + " bytes");
+                }
+                if (digest != null) {
+                    digest.update(data.duplicate());
+                }
+                while (data.hasRemaining()) {
+                    channel.write(data);
+                }
+            }
+
+            @Override
+            public void receiveData(FileChannel src, long position, long count) throws IOException {
+                if (digest != null) {
+                    // the data must pass through the digest
+                    DownloadSession.super.receiveData(src, position, count);
+                    return;
+                }
+                transfer(src, position, count);
+            }
+
+            @Override
+            public void receiveData(FileChannel src, long position, long count, String sourceChecksum) throws IOException {
+                if (digest != null && received == 0 && checksum.equalsIgnoreCase(sourceChecksum)) {
+                    // the whole file is vouched for by the source, so it's not digested again
+                    transfer(src, position, count);
+                    vouchedLength = count;
+                    return;
+                }
+                receiveData(src, position, count);
+            }
+
+            private void transfer(FileChannel src, long position, long count) throws IOException {
+                received += count;
+                if (size != -1 && received > size) {
+                    throw new IOException("The size of " + target + " exceeds " + size + " bytes");
+                }
+                // the kernel may copy the data without passing them through the user space
+                while (count > 0) {
+                    long transferred = src.transferTo(position, count, channel);
+                    if (transferred <= 0) {
+                        throw new EOFException("Unexpected end of file at " + position + ", " + count + " bytes remaining");
+                    }
+                    position += transferred;
+                    count -= transferred;
+                }
             }
 
             @Override
             public void failed() throws IOException {
-                close();
-                if (!partFile.delete()) {
-                    throw new IOException("Failed to delete " + partFile);
+                try {
+                    close();
+                    if (!resumable) {
+                        // the partial data cannot be resumed without an entity tag
+                        if (!partFile.delete()) {
+                            throw new IOException("Failed to delete " + partFile);
+                        }
+                    }
+                } finally {
+                    PartFiles.release(partFile);
                 }
             }
 
             @Override
             public Void completed() throws IOException {
-                close();
-                FileUtils.prepareWrite(target);
-                if (target.exists()) {
-                    if (!target.delete()) {
-                        throw new IOException("Failed to delete " + target);
+                try {
+                    close();
+                    if (primary) {
+                        Files.deleteIfExists(entityTagFile.toPath());
                     }
-                }
-                if (!partFile.renameTo(target)) {
-                    throw new IOException("Failed to rename " + partFile + " to " + target);
+                    if ((size != -1 && received != size) || (digest != null && received != vouchedLength && !MessageDigest.isEqual(HexUtils.hexToBytes(checksum), digest.digest()))) {
+                        partFile.delete();
+                        throw new IOException("checksums mismatch: " + target);
+                    }
+                    commit(partFile, false);
+                } finally {
+                    PartFiles.release(partFile);
                 }
                 return null;
             }
 
             private void close() throws IOException {
-                out.close();
+                channel.close();
             }
         };
     }
 
+    @Override
+    public boolean isSegmentable() {
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The segments are written into a preallocated
+     * <code>${target}.part</code> (or an alternate part file, see
+     * {@link #getResumePoint()}). A segmented download cannot be resumed.
+     */
+    @Override
+    public SegmentedDownloadSession<Void> createSegmentedSession(long length) throws IOException {
+        final File partFile = PartFiles.claim(target, ".part");
+
+        final FileChannel channel;
+        try {
+            FileUtils.prepareWrite(partFile);
+            if (partFile.equals(getPartFile().getAbsoluteFile())) {
+                Files.deleteIfExists(getEntityTagFile().toPath());
+            }
+
+            channel = FileChannel.open(partFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            try (RandomAccessFile preallocating = new RandomAccessFile(partFile, "rw")) {
+                preallocating.setLength(length);
+            } catch (Throwable e) {
+                channel.close();
+                throw e;
+            }
+        } catch (Throwable e) {
+            PartFiles.release(partFile);
+            throw e;
+        }
+
+        return new SegmentedDownloadSession<Void>() {
+
+            @Override
+            public void receiveData(long position, ByteBuffer data) throws IOException {
+                while (data.hasRemaining()) {
+                    position += channel.write(data, position);
+                }
+            }
+
+            @Override
+            public Void completed() throws IOException {
+                try {
+                    channel.close();
+                    // the segments arrive out of order, so they cannot be digested on the fly
+                    commit(partFile, true);
+                } finally {
+                    PartFiles.release(partFile);
+                }
+                return null;
+            }
+
+            @Override
+            public void failed() throws IOException {
+                try {
+                    channel.close();
+                    if (!partFile.delete()) {
+                        throw new IOException("Failed to delete " + partFile);
+                    }
+                } finally {
+                    PartFiles.release(partFile);
+                }
+            }
+        };
+    }
+
+    private void commit(File partFile, boolean verify) throws IOException {
+        if (verify && (checksum != null || size != -1)) {
+            boolean valid;
+            try {
+                valid = ChecksumUtils.verify(partFile, checksum, "SHA-1", size);
+            } catch (NoSuchAlgorithmException e) {
+                throw new IOException(e);
+            }
+            if (!valid) {
+                partFile.delete();
+                throw new IOException("checksums mismatch: " + target);
+            }
+        }
+
+        PartFiles.commit(partFile, target);
+    }
+
+    private static void update(MessageDigest digest, FileChannel channel, long length) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(8192);
+        long position = 0;
+        while (position < length) {
+            ((java.nio.Buffer) buf).clear();
+            if (length - position < buf.capacity()) {
+                ((java.nio.Buffer) buf).limit((int) (length - position));
+            }
+            int read = channel.read(buf, position);
+            if (read == -1) {
+                throw new EOFException("Unexpected end of file at " + position + ", expected " + length);
+            }
+            position += read;
+            ((java.nio.Buffer) buf).flip();
+            digest.update(buf);
+        }
+    }
+
+    private File getPartFile() {
+        return new File(target.getParentFile(), target.getName() + ".part");
+    }
+
+    private File getEntityTagFile() {
+        return new File(target.getParentFile(), target.getName() + ".part.etag");
+    }
+
 }
@@ -1,11 +1,9 @@
 package org.to2mbn.jmccc.mcdownloader.download.tasks;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.net.URI;
 import java.nio.ByteBuffer;
-import java.nio.channels.Channels;
-import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
 
 /**
  * A download task which stores data in memory.
@@ -38,14 +36,26 @@ public class MemoryDownloadTask extends DownloadTask<byte[]> {
 
     @Override
     public DownloadSession<byte[]> createSession(final long length) throws IOException {
+        if (length > Integer.MAX_VALUE - 8) {
+            throw new IOException("Resource is too large to store in memory: " + length + " bytes");
+        }
         return new DownloadSession<byte[]>() {
 
-            private ByteArrayOutputStream out = new ByteArrayOutputStream(length == -1 ? 8192 : (int) length);
-            private WritableByteChannel channel = Channels.newChannel(out);
+            // if the length is known, the array is returned without copying
+            private byte[] buffer = new byte[length == -1 ? 8192 : (int) length];
+            private int count;
 
             @Override
             public void receiveData(ByteBuffer data) throws IOException {
-                channel.write(data);
+                int remaining = data.remaining();
+                if (buffer.length - count < remaining) {
+                    if ((long) count + remaining > Integer.MAX_VALUE - 8) {
+                        throw new IOException("Resource is too large to store in memory");
+                    }
+                    buffer = Arrays.copyOf(buffer, (int) Math.min(Integer.MAX_VALUE - 8, Math.max((long) buffer.length * 2, (long) count + remaining)));
+                }
+                data.get(buffer, count, remaining);
+                count += remaining;
             }
 
             @Override
@@ -55,14 +65,42 @@ public class MemoryDownloadTask extends DownloadTask<byte[]> {
 
             @Override
             public byte[] completed() throws IOException {
-                byte[] data = out.toByteArray();
+                byte[] data = count == buffer.length ? buffer : Arrays.copyOf(buffer, count);
                 close();
                 return data;
             }
 
             private void close() {
-                channel = null;
-                out = null;
+                buffer = null;
+            }
+        };
+    }
+
+    @Override
+    public boolean isSegmentable() {
+        return true;
+    }
+
+    @Override
+    public SegmentedDownloadSession<byte[]> createSegmentedSession(long length) throws IOException {
+        if (length > Integer.MAX_VALUE - 8) {
+            throw new IOException("Resource is too large to store in memory: " + length + " bytes");
+        }
+        final byte[] buffer = new byte[(int) length];
+        return new SegmentedDownloadSession<byte[]>() {
+
+            @Override
+            public void receiveData(long position, ByteBuffer data) throws IOException {
+                data.get(buffer, (int) position, data.remaining());
+            }
+
+            @Override
+            public byte[] completed() {
+                return buffer;
+            }
+
+            @Override
+            public void failed() {
             }
         };
     }
@@ -0,0 +1,89 @@
+package org.to2mbn.jmccc.mcdownloader.download.tasks;
+
+import org.to2mbn.jmccc.util.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Allocates the part files of the sessions which write files, and moves them
+ * to their targets.
+ * <p>
+ * Several sessions may write the same target at the same time (e.g. a hedged
+ * download from another mirror). Each of them writes its own part file, and
+ * the target is replaced atomically when a session completes, so the target
+ * is always either absent or complete.
+ */
+public final class PartFiles {
+
+    // the part files being written by the sessions in this JVM
+    private static final Set<File> claimedPartFiles = Collections.newSetFromMap(new ConcurrentHashMap<File, Boolean>());
+
+    private PartFiles() {
+    }
+
+    /**
+     * Claims a part file of the given target.
+     * <p>
+     * The part file is <code>${target}${suffix}</code>, or an alternate
+     * <code>${target}${suffix}.N</code> if the former has been claimed by
+     * another session.
+     *
+     * @param target the target file
+     * @param suffix the suffix of the part file
+     * @return the absolute path of the part file, which must be released by
+     * {@link #release(File)}
+     */
+    public static File claim(File target, String suffix) {
+        File partFile = new File(target.getAbsoluteFile().getParentFile(), target.getName() + suffix);
+        for (int i = 1; !claimedPartFiles.add(partFile); i++) {
+            partFile = new File(partFile.getParentFile(), target.getName() + suffix + "." + i);
+        }
+        return partFile;
+    }
+
+    /**
+     * Checks whether the given part file is being written by a session.
+     *
+     * @param partFile the part file
+     * @return true if the part file has been claimed
+     */
+    public static boolean isClaimed(File partFile) {
+        return claimedPartFiles.contains(partFile.getAbsoluteFile());
+    }
+
+    /**
+     * Releases a part file claimed by {@link #claim(File, String)}.
+     *
+     * @param partFile the part file
+     */
+    public static void release(File partFile) {
+        claimedPartFiles.remove(partFile);
+    }
+
+    /**
+     * Replaces the target with the given part file.
+     *
+     * @param partFile the part file
+     * @param target   the target file
+     * @throws IOException if an I/O error occurs
+     */
+    public static void commit(File partFile, File target) throws IOException {
+        // the sessions writing the same target may complete at the same time
+        synchronized (claimedPartFiles) {
+            FileUtils.prepareWrite(target);
+            try {
+                Files.move(partFile.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(partFile.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+    }
+
+}
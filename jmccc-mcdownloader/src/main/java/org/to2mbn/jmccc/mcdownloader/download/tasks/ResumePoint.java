@@ -0,0 +1,99 @@
+package org.to2mbn.jmccc.mcdownloader.download.tasks;
+
+import java.io.Serializable;
+import java.util.Objects;
+
+/**
+ * Describes where the data of a download session begins.
+ * <p>
+ * A resume point consists of the offset of the first byte to receive, and the
+ * entity tag of the resource. The entity tag is used to ensure the data
+ * received before and the data to receive belong to the same resource.
+ *
+ * @see DownloadTask#getResumePoint()
+ * @see DownloadTask#createSession(ResumePoint, long)
+ */
+public final class ResumePoint implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long offset;
+    private final String entityTag;
+
+    /**
+     * Constructs a ResumePoint.
+     *
+     * @param offset    the offset of the first byte to receive
+     * @param entityTag the strong entity tag of the resource, or null if
+     *                  unknown
+     * @throws IllegalArgumentException if <code>offset &lt; 0</code>
+     */
+    public ResumePoint(long offset, String entityTag) {
+        if (offset < 0)
+            throw new IllegalArgumentException("offset < 0");
+        this.offset = offset;
+        this.entityTag = entityTag;
+    }
+
+    /**
+     * Creates a ResumePoint which begins from the first byte of the resource.
+     *
+     * @param entityTag the strong entity tag of the resource, or null if
+     *                  unknown
+     * @return the resume point
+     */
+    public static ResumePoint beginning(String entityTag) {
+        return new ResumePoint(0, entityTag);
+    }
+
+    /**
+     * Gets the offset of the first byte to receive.
+     *
+     * @return the offset of the first byte to receive
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * Gets the strong entity tag of the resource.
+     *
+     * @return the entity tag, or null if unknown
+     */
+    public String getEntityTag() {
+        return entityTag;
+    }
+
+    /**
+     * Returns true if the session begins from the first byte of the resource.
+     *
+     * @return true if <code>offset == 0</code>
+     */
+    public boolean isBeginning() {
+        return offset == 0;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(offset, entityTag);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == this) {
+            return true;
+        }
+        if (obj instanceof ResumePoint) {
+            ResumePoint another = (ResumePoint) obj;
+            return offset == another.offset
+                    && Objects.equals(entityTag, another.entityTag);
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ResumePoint [offset=%d, entityTag=%s]", offset, entityTag);
+    }
+
+}
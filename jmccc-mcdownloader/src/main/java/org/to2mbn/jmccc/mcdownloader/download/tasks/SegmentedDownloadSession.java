@@ -0,0 +1,45 @@
+package org.to2mbn.jmccc.mcdownloader.download.tasks;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A download session which receives several segments of the resource in
+ * parallel.
+ * <p>
+ * Unlike {@link DownloadSession}, the data may arrive in any order, and
+ * {@link #receiveData(long, ByteBuffer)} may be invoked by several threads at
+ * the same time. The segments never overlap, and the length of the resource is
+ * known when the session is created.
+ *
+ * @param <T> the type of result
+ * @see DownloadTask#createSegmentedSession(long)
+ */
+public interface SegmentedDownloadSession<T> {
+
+    /**
+     * Calls when a part of data is received.
+     *
+     * @param position the offset of the first byte of the data in the
+     *                 resource
+     * @param data     the data
+     * @throws IOException if an I/O error occurs
+     */
+    void receiveData(long position, ByteBuffer data) throws IOException;
+
+    /**
+     * Calls when all the segments have been received.
+     *
+     * @return the result
+     * @throws Exception if an exception occurs
+     */
+    T completed() throws Exception;
+
+    /**
+     * Calls when the download fails or is cancelled.
+     *
+     * @throws Exception if an exception occurs
+     */
+    void failed() throws Exception;
+
+}
@@ -23,4 +23,10 @@ public class SimpleDownloadTaskDecorator<T> extends DownloadTaskDecorator<T, T>
         return toDelegate;
     }
 
+    @Override
+    public Object getCoalescingKey() {
+        // the result isn't changed by the decorator
+        return delegated.getCoalescingKey();
+    }
+
 }
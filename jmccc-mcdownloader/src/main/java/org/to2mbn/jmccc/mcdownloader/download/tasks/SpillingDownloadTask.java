@@ -0,0 +1,207 @@
+package org.to2mbn.jmccc.mcdownloader.download.tasks;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * A download task which stores small data in memory, and spills the data into
+ * a temporary file once they exceed the threshold.
+ * <p>
+ * This task is used in place of {@link MemoryDownloadTask} for the resources
+ * which may be large, such as installers, so that the heap usage stays bounded
+ * when many of them are downloaded in parallel. The result must be closed
+ * after use.
+ *
+ * @see DownloadedData
+ */
+public class SpillingDownloadTask extends DownloadTask<DownloadedData> {
+
+    /**
+     * The default threshold, 1 MiB.
+     */
+    public static final int DEFAULT_THRESHOLD = 1024 * 1024;
+
+    private final int threshold;
+
+    /**
+     * Constructs a SpillingDownloadTask with the default threshold.
+     *
+     * @param uri the uri of resource to download
+     * @throws NullPointerException     if <code>uri==null</code>
+     * @throws IllegalArgumentException if <code>uri</code> is not in a valid
+     *                                  URI format
+     */
+    public SpillingDownloadTask(String uri) {
+        this(uri, DEFAULT_THRESHOLD);
+    }
+
+    /**
+     * Constructs a SpillingDownloadTask with the default threshold.
+     *
+     * @param uri the uri of resource to download
+     * @throws NullPointerException if <code>uri==null</code>
+     */
+    public SpillingDownloadTask(URI uri) {
+        this(uri, DEFAULT_THRESHOLD);
+    }
+
+    /**
+     * Constructs a SpillingDownloadTask.
+     *
+     * @param uri       the uri of resource to download
+     * @param threshold the max number of bytes to hold in memory
+     * @throws NullPointerException     if <code>uri==null</code>
+     * @throws IllegalArgumentException if <code>uri</code> is not in a valid
+     *                                  URI format, or <code>threshold &lt; 0</code>
+     */
+    public SpillingDownloadTask(String uri, int threshold) {
+        super(uri);
+        if (threshold < 0)
+            throw new IllegalArgumentException("threshold < 0");
+        this.threshold = threshold;
+    }
+
+    /**
+     * Constructs a SpillingDownloadTask.
+     *
+     * @param uri       the uri of resource to download
+     * @param threshold the max number of bytes to hold in memory
+     * @throws NullPointerException     if <code>uri==null</code>
+     * @throws IllegalArgumentException if <code>threshold &lt; 0</code>
+     */
+    public SpillingDownloadTask(URI uri, int threshold) {
+        super(uri);
+        if (threshold < 0)
+            throw new IllegalArgumentException("threshold < 0");
+        this.threshold = threshold;
+    }
+
+    /**
+     * Gets the max number of bytes to hold in memory.
+     *
+     * @return the threshold in bytes
+     */
+    public int getThreshold() {
+        return threshold;
+    }
+
+    @Override
+    public DownloadSession<DownloadedData> createSession(final long length) throws IOException {
+        return new DownloadSession<DownloadedData>() {
+
+            private byte[] buffer;
+            private int count;
+            private Path file;
+            private FileChannel channel;
+            private long written;
+
+            {
+                if (length > threshold) {
+                    spill();
+                } else {
+                    buffer = new byte[length == -1 ? Math.min(8192, threshold) : (int) length];
+                }
+            }
+
+            @Override
+            public void receiveData(ByteBuffer data) throws IOException {
+                int remaining = data.remaining();
+                if (channel == null && (long) count + remaining > threshold) {
+                    spill();
+                }
+                if (channel == null) {
+                    if (buffer.length - count < remaining) {
+                        buffer = Arrays.copyOf(buffer, (int) Math.min(threshold, Math.max((long) buffer.length * 2, (long) count + remaining)));
+                    }
+                    data.get(buffer, count, remaining);
+                    count += remaining;
+                } else {
+                    while (data.hasRemaining()) {
+                        written += channel.write(data);
+                    }
+                }
+            }
+
+            @Override
+            public void receiveData(FileChannel src, long position, long count) throws IOException {
+                if (channel == null && this.count + count > threshold) {
+                    spill();
+                }
+                if (channel == null) {
+                    DownloadSession.super.receiveData(src, position, count);
+                    return;
+                }
+                long end = position + count;
+                while (position < end) {
+                    long transferred = src.transferTo(position, end - position, channel);
+                    if (transferred <= 0) {
+                        // the source is shorter than expected
+                        DownloadSession.super.receiveData(src, position, end - position);
+                        return;
+                    }
+                    position += transferred;
+                    written += transferred;
+                }
+            }
+
+            @Override
+            public DownloadedData completed() throws IOException {
+                if (channel == null) {
+                    DownloadedData data = new DownloadedData(buffer, count);
+                    buffer = null;
+                    return data;
+                }
+                channel.close();
+                channel = null;
+                return new DownloadedData(file, written);
+            }
+
+            @Override
+            public void failed() throws IOException {
+                buffer = null;
+                if (channel != null) {
+                    try {
+                        channel.close();
+                    } finally {
+                        channel = null;
+                        Files.deleteIfExists(file);
+                    }
+                }
+            }
+
+            private void spill() throws IOException {
+                file = Files.createTempFile("jmccc-", ".download");
+                try {
+                    channel = FileChannel.open(file, StandardOpenOption.WRITE);
+                    if (count > 0) {
+                        ByteBuffer data = ByteBuffer.wrap(buffer, 0, count);
+                        while (data.hasRemaining()) {
+                            written += channel.write(data);
+                        }
+                    }
+                } catch (Throwable e) {
+                    if (channel != null) {
+                        channel.close();
+                        channel = null;
+                    }
+                    Files.deleteIfExists(file);
+                    throw e;
+                }
+                buffer = null;
+                count = 0;
+            }
+        };
+    }
+
+    @Override
+    public DownloadSession<DownloadedData> createSession() throws IOException {
+        return createSession(-1);
+    }
+
+}
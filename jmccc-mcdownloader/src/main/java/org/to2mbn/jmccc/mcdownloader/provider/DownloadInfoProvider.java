@@ -7,12 +7,10 @@ import org.to2mbn.jmccc.mcdownloader.download.combine.CombinedDownloadTask;
 import org.to2mbn.jmccc.mcdownloader.download.tasks.FileDownloadTask;
 import org.to2mbn.jmccc.mcdownloader.download.tasks.ResultProcessor;
 import org.to2mbn.jmccc.option.MinecraftDirectory;
-import org.to2mbn.jmccc.util.ChecksumUtils;
 import org.to2mbn.jmccc.version.*;
 import org.to2mbn.jmccc.version.parsing.Versions;
 
 import java.io.File;
-import java.io.IOException;
 import java.net.URI;
 import java.util.List;
 import java.util.Map;
@@ -92,21 +90,11 @@ class DownloadInfoProvider extends AbstractMinecraftDownloadProvider implements
         this.upstreamProvider = upstreamProvider;
     }
 
-    private CombinedDownloadTask<Void> download(final DownloadInfo info, final File target, String cachePool) {
+    private CombinedDownloadTask<Void> download(DownloadInfo info, File target, String cachePool) {
         if (info == null || info.getUrl() == null) {
             return null;
         }
-        return CombinedDownloadTask.single(new FileDownloadTask(parseURI(info.getUrl()), target)
-                .andThen(new ResultProcessor<Void, Void>() {
-
-                    @Override
-                    public Void process(Void arg) throws Exception {
-                        if (!ChecksumUtils.verify(target, info.getChecksum(), "SHA-1", info.getSize())) {
-                            throw new IOException("checksums mismatch");
-                        }
-                        return null;
-                    }
-                })
+        return CombinedDownloadTask.single(new FileDownloadTask(parseURI(info.getUrl()), target, info.getChecksum(), info.getSize())
                 .cachePool(cachePool));
     }
 
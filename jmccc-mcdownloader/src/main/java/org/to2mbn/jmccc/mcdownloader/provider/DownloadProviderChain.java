@@ -1,5 +1,7 @@
 package org.to2mbn.jmccc.mcdownloader.provider;
 
+import org.to2mbn.jmccc.mcdownloader.download.combine.CombinedDownloadTask;
+import org.to2mbn.jmccc.mcdownloader.download.combine.HedgeDelay;
 import org.to2mbn.jmccc.util.Builder;
 
 import java.util.ArrayList;
@@ -82,6 +84,9 @@ public class DownloadProviderChain implements Builder<MinecraftDownloadProvider>
     protected List<Builder<MinecraftDownloadProvider>> aheadProviders = new ArrayList<>();
     protected boolean useDownloadInfo = true;
     protected List<DownloadInfoProcessor> downloadInfoProcessor = new ArrayList<>();
+    protected HedgeDelay hedgeDelay;
+    protected MirrorRanking ranking;
+
     protected DownloadProviderChain() {
     }
 
@@ -118,20 +123,77 @@ public class DownloadProviderChain implements Builder<MinecraftDownloadProvider>
         return this;
     }
 
+    /**
+     * Hedges the library and asset downloads across the providers.
+     * <p>
+     * By default, a library or an asset is only downloaded from the first
+     * provider which provides it. If hedging is enabled, the next provider
+     * which also provides it is started if the former hasn't received its
+     * first byte after the delay, or has failed.
+     *
+     * @param hedgeDelay the hedge delay, null to disable hedging
+     * @return the chain itself
+     * @see CombinedDownloadTask#hedged(HedgeDelay, CombinedDownloadTask[])
+     */
+    public DownloadProviderChain hedging(HedgeDelay hedgeDelay) {
+        this.hedgeDelay = hedgeDelay;
+        return this;
+    }
+
+    /**
+     * Ranks the providers by their health, instead of the static order of the
+     * chain.
+     * <p>
+     * If ranking is enabled, a library, an asset, a game jar or an asset index
+     * is resolved by all the providers, and then downloaded from the healthiest
+     * provider first, the next provider on failure (or after the hedge delay,
+     * see {@link #hedging(HedgeDelay)}). The outcomes of the downloads are
+     * recorded into the ranking. The other requests still follow the static
+     * order.
+     *
+     * @param ranking the ranking, null to disable ranking
+     * @return the chain itself
+     * @see MirrorRanking
+     */
+    public DownloadProviderChain ranking(MirrorRanking ranking) {
+        this.ranking = ranking;
+        return this;
+    }
+
     @Override
     public MinecraftDownloadProvider build() {
-        MinecraftDownloadProvider right = this.baseProvider == null ? new MojangDownloadProvider() : this.baseProvider;
+        MinecraftDownloadProvider base = this.baseProvider == null ? new MojangDownloadProvider() : this.baseProvider;
+        MinecraftDownloadProvider right = base;
         for (MinecraftDownloadProvider left : providers) {
             if (left instanceof ExtendedDownloadProvider) {
                 ((ExtendedDownloadProvider) left).setUpstreamProvider(withAheadProvider(right));
             }
-            right = new DownloadProviderTree(left, right);
+            right = new DownloadProviderTree(left, right, hedgeDelay);
         }
-        right = withAheadProvider(right);
-        return right;
+        if (ranking == null) {
+            return withAheadProvider(right);
+        }
+
+        List<MinecraftDownloadProvider> ahead = buildAheadProviders();
+        MinecraftDownloadProvider tree = withAheadProvider(right, ahead);
+
+        // the same order as the tree
+        List<MinecraftDownloadProvider> ordered = new ArrayList<>();
+        for (int i = ahead.size() - 1; i >= 0; i--) {
+            ordered.add(ahead.get(i));
+        }
+        for (int i = providers.size() - 1; i >= 0; i--) {
+            ordered.add(providers.get(i));
+        }
+        ordered.add(base);
+        return new RankedDownloadProvider(tree, ordered, ranking, hedgeDelay);
     }
 
     protected MinecraftDownloadProvider withAheadProvider(MinecraftDownloadProvider right) {
+        return withAheadProvider(right, buildAheadProviders());
+    }
+
+    private List<MinecraftDownloadProvider> buildAheadProviders() {
         List<MinecraftDownloadProvider> ahead = new ArrayList<>();
         for (Builder<MinecraftDownloadProvider> builder : aheadProviders) {
             ahead.add(Objects.requireNonNull(builder.build(), "Ahead provider builder [" + builder + "] returns null"));
@@ -139,12 +201,15 @@ public class DownloadProviderChain implements Builder<MinecraftDownloadProvider>
         if (useDownloadInfo) {
             ahead.add(new DownloadInfoProvider(new ArrayList<>(downloadInfoProcessor)));
         }
+        return ahead;
+    }
 
+    private MinecraftDownloadProvider withAheadProvider(MinecraftDownloadProvider right, List<MinecraftDownloadProvider> ahead) {
         for (MinecraftDownloadProvider left : ahead) {
             if (left instanceof ExtendedDownloadProvider) {
                 ((ExtendedDownloadProvider) left).setUpstreamProvider(right);
             }
-            right = new DownloadProviderTree(left, right);
+            right = new DownloadProviderTree(left, right, hedgeDelay);
         }
         return right;
     }
@@ -2,21 +2,33 @@ package org.to2mbn.jmccc.mcdownloader.provider;
 
 import org.to2mbn.jmccc.mcdownloader.RemoteVersionList;
 import org.to2mbn.jmccc.mcdownloader.download.combine.CombinedDownloadTask;
+import org.to2mbn.jmccc.mcdownloader.download.combine.HedgeDelay;
 import org.to2mbn.jmccc.option.MinecraftDirectory;
 import org.to2mbn.jmccc.version.Asset;
 import org.to2mbn.jmccc.version.Library;
 import org.to2mbn.jmccc.version.Version;
 
+import java.util.Arrays;
 import java.util.Set;
 
 class DownloadProviderTree implements MinecraftDownloadProvider {
 
     private MinecraftDownloadProvider left;
     private MinecraftDownloadProvider right;
+    private HedgeDelay hedgeDelay;
 
     public DownloadProviderTree(MinecraftDownloadProvider left, MinecraftDownloadProvider right) {
+        this(left, right, null);
+    }
+
+    /**
+     * @param hedgeDelay if not null, the libraries and the assets provided by
+     *                   both sides are hedged across them
+     */
+    public DownloadProviderTree(MinecraftDownloadProvider left, MinecraftDownloadProvider right, HedgeDelay hedgeDelay) {
         this.left = left;
         this.right = right;
+        this.hedgeDelay = hedgeDelay;
     }
 
     @Override
@@ -64,6 +76,15 @@ class DownloadProviderTree implements MinecraftDownloadProvider {
         CombinedDownloadTask<Void> result = left.library(mcdir, library);
         if (result == null && right != null) {
             result = right.library(mcdir, library);
+        } else if (hedgeDelay != null && right != null) {
+            CombinedDownloadTask<Void> mirror;
+            try {
+                mirror = right.library(mcdir, library);
+            } catch (IllegalArgumentException e) {
+                // no provider on the right
+                mirror = null;
+            }
+            result = hedge(result, mirror);
         }
         checkFinalResult(result);
         return result;
@@ -74,11 +95,27 @@ class DownloadProviderTree implements MinecraftDownloadProvider {
         CombinedDownloadTask<Void> result = left.asset(mcdir, asset);
         if (result == null && right != null) {
             result = right.asset(mcdir, asset);
+        } else if (hedgeDelay != null && right != null) {
+            CombinedDownloadTask<Void> mirror;
+            try {
+                mirror = right.asset(mcdir, asset);
+            } catch (IllegalArgumentException e) {
+                // no provider on the right
+                mirror = null;
+            }
+            result = hedge(result, mirror);
         }
         checkFinalResult(result);
         return result;
     }
 
+    private CombinedDownloadTask<Void> hedge(CombinedDownloadTask<Void> primary, CombinedDownloadTask<Void> mirror) {
+        if (mirror == null) {
+            return primary;
+        }
+        return CombinedDownloadTask.hedged(hedgeDelay, Arrays.asList(primary, mirror));
+    }
+
     private void checkFinalResult(Object result) {
         if (result == null) {
             throw new IllegalArgumentException("No provider is available for this operation");
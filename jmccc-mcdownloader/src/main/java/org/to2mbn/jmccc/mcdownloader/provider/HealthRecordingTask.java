@@ -0,0 +1,92 @@
+package org.to2mbn.jmccc.mcdownloader.provider;
+
+import org.to2mbn.jmccc.mcdownloader.download.combine.CombinedDownloadContext;
+import org.to2mbn.jmccc.mcdownloader.download.combine.CombinedDownloadTask;
+import org.to2mbn.jmccc.mcdownloader.download.concurrent.CallbackAdapter;
+import org.to2mbn.jmccc.mcdownloader.download.concurrent.DownloadCallback;
+import org.to2mbn.jmccc.mcdownloader.download.tasks.DownloadTask;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records the outcome of a task into the health of its provider.
+ * <p>
+ * The tasks which transfer no data (e.g. served from the cache) and the
+ * cancelled tasks are not recorded.
+ */
+class HealthRecordingTask<T> extends CombinedDownloadTask<T> {
+
+    private final CombinedDownloadTask<T> task;
+    private final MirrorRanking ranking;
+    private final String provider;
+    private final String type;
+
+    public HealthRecordingTask(CombinedDownloadTask<T> task, MirrorRanking ranking, String provider, String type) {
+        this.task = task;
+        this.ranking = ranking;
+        this.provider = provider;
+        this.type = type;
+    }
+
+    @Override
+    public void execute(final CombinedDownloadContext<T> context) throws Exception {
+        context.submit(task, new CallbackAdapter<T>() {
+
+            private final AtomicLong bytes = new AtomicLong();
+            private volatile long startTime = -1;
+            private volatile long firstByteTime = -1;
+            private volatile boolean started;
+
+            @Override
+            public <R> DownloadCallback<R> taskStart(DownloadTask<R> subtask) {
+                if (!started) {
+                    started = true;
+                    startTime = System.currentTimeMillis();
+                }
+                return new CallbackAdapter<R>() {
+
+                    private long lastDone;
+
+                    @Override
+                    public void updateProgress(long done, long total) {
+                        if (done > 0 && firstByteTime == -1) {
+                            firstByteTime = System.currentTimeMillis();
+                        }
+                        bytes.addAndGet(done - lastDone);
+                        lastDone = done;
+                    }
+
+                    @Override
+                    public void retry(Throwable e, int current, int max) {
+                        // the subtask restarts from the beginning
+                        bytes.addAndGet(-lastDone);
+                        lastDone = 0;
+                    }
+                };
+            }
+
+            @Override
+            public void done(T result) {
+                if (firstByteTime != -1 && bytes.get() > 0) {
+                    ranking.recordSuccess(provider, type, firstByteTime - startTime, bytes.get(), System.currentTimeMillis() - firstByteTime);
+                }
+                context.done(result);
+            }
+
+            @Override
+            public void failed(Throwable e) {
+                if (started) {
+                    ranking.recordFailure(provider, type);
+                }
+                context.failed(e);
+            }
+
+            @Override
+            public void cancelled() {
+                context.cancelled();
+            }
+
+        }, false);
+    }
+
+}
@@ -0,0 +1,110 @@
+package org.to2mbn.jmccc.mcdownloader.provider;
+
+/**
+ * A snapshot of the health of a provider for a type of requests.
+ *
+ * @see MirrorRanking#getRanking(String)
+ */
+public class MirrorHealth {
+
+    private final String provider;
+    private final String type;
+    private final long samples;
+    private final double successRate;
+    private final double timeToFirstByte;
+    private final double throughput;
+    private final long lastUpdated;
+    private final double cost;
+
+    MirrorHealth(String provider, String type, long samples, double successRate, double timeToFirstByte, double throughput, long lastUpdated, double cost) {
+        this.provider = provider;
+        this.type = type;
+        this.samples = samples;
+        this.successRate = successRate;
+        this.timeToFirstByte = timeToFirstByte;
+        this.throughput = throughput;
+        this.lastUpdated = lastUpdated;
+        this.cost = cost;
+    }
+
+    /**
+     * Gets the name of the provider.
+     *
+     * @return the name of the provider
+     */
+    public String getProvider() {
+        return provider;
+    }
+
+    /**
+     * Gets the type of the requests.
+     *
+     * @return the type of the requests, such as {@link MirrorRanking#LIBRARY}
+     */
+    public String getType() {
+        return type;
+    }
+
+    /**
+     * Gets the number of the downloads observed.
+     *
+     * @return the number of the downloads observed
+     */
+    public long getSamples() {
+        return samples;
+    }
+
+    /**
+     * Gets the rolling success rate.
+     *
+     * @return the rolling success rate in [0, 1]
+     */
+    public double getSuccessRate() {
+        return successRate;
+    }
+
+    /**
+     * Gets the rolling time to the first byte.
+     *
+     * @return the rolling time to the first byte in milliseconds, -1 if unknown
+     */
+    public double getTimeToFirstByte() {
+        return timeToFirstByte;
+    }
+
+    /**
+     * Gets the rolling throughput.
+     *
+     * @return the rolling throughput in bytes per second, -1 if unknown
+     */
+    public double getThroughput() {
+        return throughput;
+    }
+
+    /**
+     * Gets the time of the last observed download.
+     *
+     * @return the time of the last observed download, in milliseconds since
+     * the epoch
+     */
+    public long getLastUpdated() {
+        return lastUpdated;
+    }
+
+    /**
+     * Gets the estimated time to download 1 MiB successfully, considering the
+     * retries of the failures. The providers with lower costs are tried first.
+     *
+     * @return the cost in milliseconds, 0 if the health is unknown or stale
+     */
+    public double getCost() {
+        return cost;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("MirrorHealth [provider=%s, type=%s, samples=%d, successRate=%.2f, timeToFirstByte=%.0fms, throughput=%.0fB/s, cost=%.0fms]",
+                provider, type, samples, successRate, timeToFirstByte, throughput, cost);
+    }
+
+}
@@ -0,0 +1,314 @@
+package org.to2mbn.jmccc.mcdownloader.provider;
+
+import org.to2mbn.jmccc.internal.org.json.JSONArray;
+import org.to2mbn.jmccc.internal.org.json.JSONObject;
+import org.to2mbn.jmccc.util.FileUtils;
+import org.to2mbn.jmccc.util.IOUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps a rolling health score of each provider for each type of requests, and
+ * ranks the providers by them.
+ * <p>
+ * The health consists of the success rate, the time to the first byte and the
+ * throughput, each of which is an exponentially weighted moving average of the
+ * observed downloads. The providers are ranked by the estimated time to
+ * download 1 MiB successfully (see {@link MirrorHealth#getCost()}). The health
+ * which is unknown or stale (not updated for a while) ranks first, so that a
+ * recovered provider can be observed again.
+ * <p>
+ * The providers are identified by their base URLs, or by their class names if
+ * they don't have one. The ranking can be saved to a file and loaded after
+ * restarts.
+ * <p>
+ * This class is thread-safe.
+ *
+ * @see DownloadProviderChain#ranking(MirrorRanking)
+ */
+public class MirrorRanking {
+
+    public static final String LIBRARY = "library";
+    public static final String ASSET = "asset";
+    public static final String GAME_JAR = "gameJar";
+    public static final String ASSETS_INDEX = "assetsIndex";
+
+    private static final double ALPHA = 0.2;
+    private static final double REFERENCE_SIZE = 1024 * 1024;
+    private static final double MIN_SUCCESS_RATE = 0.05;
+    // the transfer time when the throughput is unknown
+    private static final double DEFAULT_TRANSFER_TIME = 1000;
+
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private volatile long staleTime = TimeUnit.MINUTES.toMillis(30);
+
+    /**
+     * Sets how long the health is kept without updates. After that the
+     * provider is treated as unknown, and ranks first again.
+     * <p>
+     * Default to 30 minutes.
+     *
+     * @param staleTime the stale time
+     * @param unit      the unit of <code>staleTime</code>
+     */
+    public void setStaleTime(long staleTime, TimeUnit unit) {
+        this.staleTime = unit.toMillis(staleTime);
+    }
+
+    /**
+     * Gets the health of the providers for the given type of requests, the
+     * healthiest first.
+     *
+     * @param type the type of the requests, such as {@link #LIBRARY}
+     * @return the health of the providers
+     */
+    public List<MirrorHealth> getRanking(String type) {
+        Objects.requireNonNull(type);
+        long now = System.currentTimeMillis();
+        List<MirrorHealth> result = new ArrayList<>();
+        for (Entry entry : entries.values()) {
+            if (entry.type.equals(type)) {
+                result.add(entry.snapshot(now, staleTime));
+            }
+        }
+        Collections.sort(result, new Comparator<MirrorHealth>() {
+
+            @Override
+            public int compare(MirrorHealth o1, MirrorHealth o2) {
+                return Double.compare(o1.getCost(), o2.getCost());
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Gets the health of all the providers for all the types of requests.
+     *
+     * @return the health of all the providers
+     */
+    public List<MirrorHealth> getHealth() {
+        long now = System.currentTimeMillis();
+        List<MirrorHealth> result = new ArrayList<>();
+        for (Entry entry : entries.values()) {
+            result.add(entry.snapshot(now, staleTime));
+        }
+        return result;
+    }
+
+    /**
+     * Saves the ranking into the given file.
+     *
+     * @param file the file to save
+     * @throws IOException if an I/O error occurs
+     */
+    public void save(File file) throws IOException {
+        JSONArray array = new JSONArray();
+        for (Entry entry : entries.values()) {
+            array.put(entry.toJson());
+        }
+        JSONObject json = new JSONObject();
+        json.put("entries", array);
+
+        FileUtils.prepareWrite(file);
+        // the rankings saved concurrently don't share the temporary file
+        Path tempFile = Files.createTempFile(file.getAbsoluteFile().getParentFile().toPath(), file.getName(), ".tmp");
+        try {
+            try (Writer writer = Files.newBufferedWriter(tempFile, StandardCharsets.UTF_8)) {
+                writer.write(json.toString(4));
+            }
+            try {
+                Files.move(tempFile, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tempFile, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    /**
+     * Loads the ranking saved by {@link #save(File)}, which replaces the
+     * health of the same providers. Does nothing if the file doesn't exist.
+     *
+     * @param file the file to load
+     * @throws IOException if an I/O error occurs
+     */
+    public void load(File file) throws IOException {
+        if (!file.isFile()) {
+            return;
+        }
+        JSONArray array = IOUtils.toJson(file).getJSONArray("entries");
+        for (int i = 0; i < array.length(); i++) {
+            Entry entry = Entry.fromJson(array.getJSONObject(i));
+            entries.put(key(entry.provider, entry.type), entry);
+        }
+    }
+
+    /**
+     * Sorts the candidates by the health of their providers, the healthiest
+     * first. The sort is stable, so the candidates keep their order if their
+     * health is unknown.
+     */
+    <T> void sort(String type, List<String> providers, List<T> candidates) {
+        long now = System.currentTimeMillis();
+        final List<Double> costs = new ArrayList<>(providers.size());
+        final List<Integer> indexes = new ArrayList<>(providers.size());
+        for (int i = 0; i < providers.size(); i++) {
+            Entry entry = entries.get(key(providers.get(i), type));
+            costs.add(entry == null ? 0 : entry.cost(now, staleTime));
+            indexes.add(i);
+        }
+        Collections.sort(indexes, new Comparator<Integer>() {
+
+            @Override
+            public int compare(Integer o1, Integer o2) {
+                return Double.compare(costs.get(o1), costs.get(o2));
+            }
+        });
+
+        List<String> sortedProviders = new ArrayList<>(providers.size());
+        List<T> sortedCandidates = new ArrayList<>(candidates.size());
+        for (int index : indexes) {
+            sortedProviders.add(providers.get(index));
+            sortedCandidates.add(candidates.get(index));
+        }
+        providers.clear();
+        providers.addAll(sortedProviders);
+        candidates.clear();
+        candidates.addAll(sortedCandidates);
+    }
+
+    /**
+     * @param timeToFirstByte the time to the first byte in milliseconds
+     * @param bytes           the number of the bytes transferred
+     * @param transferTime    the time from the first byte to the end in
+     *                        milliseconds
+     */
+    void recordSuccess(String provider, String type, long timeToFirstByte, long bytes, long transferTime) {
+        getEntry(provider, type).recordSuccess(timeToFirstByte, bytes, transferTime);
+    }
+
+    void recordFailure(String provider, String type) {
+        getEntry(provider, type).recordFailure();
+    }
+
+    private Entry getEntry(String provider, String type) {
+        String key = key(provider, type);
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            Entry newEntry = new Entry(provider, type);
+            entry = entries.putIfAbsent(key, newEntry);
+            if (entry == null) {
+                entry = newEntry;
+            }
+        }
+        return entry;
+    }
+
+    private static String key(String provider, String type) {
+        return type + "|" + provider;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("MirrorRanking %s", getHealth());
+    }
+
+    private static class Entry {
+
+        final String provider;
+        final String type;
+        private long samples;
+        private double successRate;
+        // NaN if unknown
+        private double timeToFirstByte = Double.NaN;
+        // in bytes per millisecond, NaN if unknown
+        private double throughput = Double.NaN;
+        private long lastUpdated;
+
+        Entry(String provider, String type) {
+            this.provider = provider;
+            this.type = type;
+        }
+
+        synchronized void recordSuccess(long timeToFirstByte, long bytes, long transferTime) {
+            this.timeToFirstByte = average(this.timeToFirstByte, timeToFirstByte);
+            this.throughput = average(this.throughput, (double) bytes / Math.max(1, transferTime));
+            recordResult(1);
+        }
+
+        synchronized void recordFailure() {
+            recordResult(0);
+        }
+
+        private void recordResult(double success) {
+            successRate = samples == 0 ? success : successRate + ALPHA * (success - successRate);
+            samples++;
+            lastUpdated = System.currentTimeMillis();
+        }
+
+        private static double average(double average, double sample) {
+            return Double.isNaN(average) ? sample : average + ALPHA * (sample - average);
+        }
+
+        synchronized double cost(long now, long staleTime) {
+            if (samples == 0 || now - lastUpdated > staleTime) {
+                return 0;
+            }
+            double time = Double.isNaN(throughput)
+                    ? DEFAULT_TRANSFER_TIME
+                    : (Double.isNaN(timeToFirstByte) ? 0 : timeToFirstByte) + REFERENCE_SIZE / Math.max(throughput, 1e-3);
+            return time / Math.max(successRate, MIN_SUCCESS_RATE);
+        }
+
+        synchronized MirrorHealth snapshot(long now, long staleTime) {
+            return new MirrorHealth(provider, type, samples, successRate,
+                    Double.isNaN(timeToFirstByte) ? -1 : timeToFirstByte,
+                    Double.isNaN(throughput) ? -1 : throughput * 1000,
+                    lastUpdated, cost(now, staleTime));
+        }
+
+        synchronized JSONObject toJson() {
+            JSONObject json = new JSONObject();
+            json.put("provider", provider);
+            json.put("type", type);
+            json.put("samples", samples);
+            json.put("successRate", successRate);
+            if (!Double.isNaN(timeToFirstByte)) {
+                json.put("timeToFirstByte", timeToFirstByte);
+            }
+            if (!Double.isNaN(throughput)) {
+                json.put("throughput", throughput);
+            }
+            json.put("lastUpdated", lastUpdated);
+            return json;
+        }
+
+        static Entry fromJson(JSONObject json) {
+            Entry entry = new Entry(json.getString("provider"), json.getString("type"));
+            entry.samples = json.getLong("samples");
+            entry.successRate = json.getDouble("successRate");
+            entry.timeToFirstByte = json.optDouble("timeToFirstByte", Double.NaN);
+            entry.throughput = json.optDouble("throughput", Double.NaN);
+            entry.lastUpdated = json.getLong("lastUpdated");
+            return entry;
+        }
+
+    }
+
+}
@@ -0,0 +1,321 @@
+package org.to2mbn.jmccc.mcdownloader.provider;
+
+import org.apache.commons.compress.compressors.pack200.Pack200CompressorInputStream;
+import org.apache.commons.compress.compressors.pack200.Pack200Strategy;
+import org.to2mbn.jmccc.mcdownloader.download.tasks.DownloadSession;
+import org.to2mbn.jmccc.mcdownloader.download.tasks.DownloadTask;
+import org.to2mbn.jmccc.mcdownloader.download.tasks.PartFiles;
+import org.to2mbn.jmccc.util.ChecksumUtils;
+import org.to2mbn.jmccc.util.FileUtils;
+import org.tukaani.xz.XZInputStream;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.StringReader;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static org.to2mbn.jmccc.util.HexUtils.bytesToHex;
+import static org.to2mbn.jmccc.util.HexUtils.hexToBytes;
+
+/**
+ * Downloads a library packed by pack200 (and optionally compressed by xz), and
+ * unpacks it into a jar.
+ * <p>
+ * The unpacked pack data end with the checksums of the classes, the length of
+ * the checksums (4 bytes, little-endian) and <code>SIGN</code>. The checksums
+ * are verified while the jar is being written, and stored as
+ * <code>checksums.sha1</code> in the jar.
+ * <p>
+ * All the stages go through files with fixed-size buffers, so the heap usage
+ * doesn't grow with the size of the library. The files are claimed by
+ * {@link PartFiles}, so another task writing the same library at the same
+ * time (e.g. a hedged download of the plain jar) doesn't share them, and the
+ * jar replaces the target atomically.
+ */
+class PackDownloadTask extends DownloadTask<Void> {
+
+    private static final byte[] POSTFIX = "SIGN".getBytes(StandardCharsets.US_ASCII);
+
+    private final File target;
+    private final boolean xz;
+
+    /**
+     * @param uri    the uri of the pack
+     * @param target the jar to save
+     * @param xz     true if the pack is compressed by xz
+     */
+    public PackDownloadTask(URI uri, File target, boolean xz) {
+        super(uri);
+        this.target = target;
+        this.xz = xz;
+    }
+
+    @Override
+    public Object getCoalescingKey() {
+        return Arrays.asList(getURI(), target.getAbsoluteFile(), xz);
+    }
+
+    @Override
+    public DownloadSession<Void> createSession() throws IOException {
+        final File downloadFile = PartFiles.claim(target, xz ? ".pack.xz.part" : ".pack.part");
+        final FileChannel channel;
+        try {
+            FileUtils.prepareWrite(downloadFile);
+            channel = FileChannel.open(downloadFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        } catch (Throwable e) {
+            PartFiles.release(downloadFile);
+            throw e;
+        }
+
+        return new DownloadSession<Void>() {
+
+            @Override
+            public void receiveData(ByteBuffer data) throws IOException {
+                while (data.hasRemaining()) {
+                    channel.write(data);
+                }
+            }
+
+            @Override
+            public void receiveData(FileChannel src, long position, long count) throws IOException {
+                while (count > 0) {
+                    long transferred = src.transferTo(position, count, channel);
+                    if (transferred <= 0) {
+                        throw new EOFException("Unexpected end of file at " + position + ", " + count + " bytes remaining");
+                    }
+                    position += transferred;
+                    count -= transferred;
+                }
+            }
+
+            @Override
+            public Void completed() throws Exception {
+                try {
+                    channel.close();
+                    unpack(downloadFile);
+                } finally {
+                    Files.deleteIfExists(downloadFile.toPath());
+                    PartFiles.release(downloadFile);
+                }
+                return null;
+            }
+
+            @Override
+            public void failed() throws IOException {
+                try {
+                    channel.close();
+                    Files.deleteIfExists(downloadFile.toPath());
+                } finally {
+                    PartFiles.release(downloadFile);
+                }
+            }
+        };
+    }
+
+    private void unpack(File downloadFile) throws IOException, NoSuchAlgorithmException {
+        if (!xz) {
+            unpackJar(downloadFile);
+            return;
+        }
+
+        File packFile = PartFiles.claim(target, ".pack.part");
+        try {
+            try (InputStream in = new XZInputStream(new BufferedInputStream(Files.newInputStream(downloadFile.toPath())));
+                 OutputStream out = Files.newOutputStream(packFile.toPath())) {
+                copy(in, out, null);
+            }
+            Files.delete(downloadFile.toPath());
+            unpackJar(packFile);
+        } finally {
+            Files.deleteIfExists(packFile.toPath());
+            PartFiles.release(packFile);
+        }
+    }
+
+    private void unpackJar(File packFile) throws IOException, NoSuchAlgorithmException {
+        // not ${target}.part, which may be the resumable data of a plain jar download
+        File jarFile = PartFiles.claim(target, ".unpacked.part");
+        try {
+            writeJar(packFile, jarFile);
+            Files.delete(packFile.toPath());
+            PartFiles.commit(jarFile, target);
+        } finally {
+            Files.deleteIfExists(jarFile.toPath());
+            PartFiles.release(jarFile);
+        }
+    }
+
+    private void writeJar(File packFile, File jarFile) throws IOException, NoSuchAlgorithmException {
+        long packLength;
+        byte[] checksumData;
+        try (RandomAccessFile in = new RandomAccessFile(packFile, "r")) {
+            long length = in.length();
+            if (length < 4 + POSTFIX.length) {
+                throw new IOException("pack data too short: " + length);
+            }
+            byte[] postfix = new byte[POSTFIX.length];
+            in.seek(length - POSTFIX.length);
+            in.readFully(postfix);
+            if (!Arrays.equals(POSTFIX, postfix)) {
+                throw new IOException("bad postfix");
+            }
+
+            long checksumsLengthPos = length - POSTFIX.length - 4;
+            in.seek(checksumsLengthPos);
+            int checksumsLength = Integer.reverseBytes(in.readInt());
+            if (checksumsLength < 0 || checksumsLength > checksumsLengthPos) {
+                throw new IOException("illegal checksums length: " + checksumsLength);
+            }
+            packLength = checksumsLengthPos - checksumsLength;
+            checksumData = new byte[checksumsLength];
+            in.seek(packLength);
+            in.readFully(checksumData);
+        }
+        Map<String, byte[]> checksums = readChecksums(checksumData);
+
+        FileUtils.prepareWrite(jarFile);
+        try (ZipInputStream in = new ZipInputStream(new Pack200CompressorInputStream(
+                new LimitedInputStream(new BufferedInputStream(Files.newInputStream(packFile.toPath())), packLength),
+                Pack200Strategy.TEMP_FILE));
+             JarOutputStream out = new JarOutputStream(new BufferedOutputStream(Files.newOutputStream(jarFile.toPath())))) {
+            MessageDigest sha1 = ChecksumUtils.getDigest("SHA-1");
+            ZipEntry entry;
+            while ((entry = in.getNextEntry()) != null) {
+                ZipEntry copy = new ZipEntry(entry.getName());
+                copy.setTime(entry.getTime());
+                out.putNextEntry(copy);
+                sha1.reset();
+                // the entry is hashed in the same pass as it's written
+                copy(in, out, sha1);
+                out.closeEntry();
+                in.closeEntry();
+
+                byte[] expectedChecksum = checksums.get(entry.getName());
+                if (expectedChecksum != null) {
+                    byte[] actualChecksum = sha1.digest();
+                    if (!Arrays.equals(expectedChecksum, actualChecksum)) {
+                        throw new IOException("illegal sha1 checksum for " + entry.getName() + ": expected="
+                                + bytesToHex(expectedChecksum) + ", actual=" + bytesToHex(actualChecksum));
+                    }
+                }
+            }
+
+            JarEntry checksumsEntry = new JarEntry("checksums.sha1");
+            checksumsEntry.setTime(0);
+            out.putNextEntry(checksumsEntry);
+            out.write(checksumData);
+            out.closeEntry();
+        }
+    }
+
+    private static void copy(InputStream in, OutputStream out, MessageDigest digest) throws IOException {
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+            if (digest != null) {
+                digest.update(buffer, 0, read);
+            }
+        }
+    }
+
+    private static Map<String, byte[]> readChecksums(byte[] checksumData) throws IOException {
+        Map<String, byte[]> checksums = new HashMap<>();
+        try (BufferedReader reader = new BufferedReader(new StringReader(new String(checksumData, StandardCharsets.UTF_8)))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.trim().isEmpty()) {
+                    String[] splited = line.split(" ", 2);
+                    if (splited.length < 2) {
+                        throw new IOException("bad checksum format: " + line);
+                    }
+                    checksums.put(splited[1], hexToBytes(splited[0]));
+                }
+            }
+        }
+        return checksums;
+    }
+
+    /**
+     * Reads no more than the given number of bytes, which excludes the
+     * checksums at the end of the pack data.
+     * <p>
+     * This class doesn't extend FilterInputStream on purpose: some versions of
+     * the unpacker unwrap FilterInputStreams to find the underlying file, and
+     * then read it to the end.
+     */
+    private static class LimitedInputStream extends InputStream {
+
+        private final InputStream in;
+        private long remaining;
+
+        public LimitedInputStream(InputStream in, long limit) {
+            this.in = in;
+            this.remaining = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int b = in.read();
+            if (b != -1) {
+                remaining--;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int read = in.read(b, off, (int) Math.min(len, remaining));
+            if (read > 0) {
+                remaining -= read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = in.skip(Math.min(n, remaining));
+            remaining -= skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(in.available(), remaining);
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+
+    }
+
+}
@@ -1,7 +1,6 @@
 package org.to2mbn.jmccc.mcdownloader.provider;
 
 import org.to2mbn.jmccc.mcdownloader.download.tasks.DownloadTask;
-import org.to2mbn.jmccc.mcdownloader.download.tasks.MemoryDownloadTask;
 import org.to2mbn.jmccc.version.Library;
 
 import java.io.File;
@@ -11,7 +10,7 @@ class PackLibraryDownloadHandler implements LibraryDownloadHandler {
 
     @Override
     public DownloadTask<Void> createDownloadTask(File target, Library library, URI libraryUri) {
-        return new MemoryDownloadTask(libraryUri).andThen(new PackProcessor(target));
+        return new PackDownloadTask(libraryUri, target, false);
     }
 
 }
@@ -0,0 +1,164 @@
+package org.to2mbn.jmccc.mcdownloader.provider;
+
+import org.to2mbn.jmccc.mcdownloader.RemoteVersionList;
+import org.to2mbn.jmccc.mcdownloader.download.combine.CombinedDownloadTask;
+import org.to2mbn.jmccc.mcdownloader.download.combine.HedgeDelay;
+import org.to2mbn.jmccc.option.MinecraftDirectory;
+import org.to2mbn.jmccc.version.Asset;
+import org.to2mbn.jmccc.version.Library;
+import org.to2mbn.jmccc.version.Version;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Tries the providers in the order of their health.
+ * <p>
+ * Only the resources which are the same on all the providers (libraries,
+ * assets, game jars and asset indexes) are ranked. The other requests are
+ * delegated to the static provider tree, since their results may depend on
+ * the provider.
+ * <p>
+ * A provider with the default layout is identified in the ranking by its base
+ * URL, so that its health still applies after the provider chain is changed,
+ * or to another instance of the same mirror. The other providers are
+ * identified by their class names.
+ */
+class RankedDownloadProvider implements MinecraftDownloadProvider {
+
+    private final MinecraftDownloadProvider tree;
+    private final List<MinecraftDownloadProvider> providers;
+    private final List<String> names;
+    private final MirrorRanking ranking;
+    private final HedgeDelay hedgeDelay;
+
+    /**
+     * @param tree       the static provider tree
+     * @param providers  the providers in the static order
+     * @param ranking    the ranking of the providers
+     * @param hedgeDelay the hedge delay, null to try the providers sequentially
+     */
+    public RankedDownloadProvider(MinecraftDownloadProvider tree, List<MinecraftDownloadProvider> providers, MirrorRanking ranking, HedgeDelay hedgeDelay) {
+        this.tree = tree;
+        this.providers = providers;
+        this.ranking = ranking;
+        this.hedgeDelay = hedgeDelay;
+
+        // the same provider may occur more than once
+        names = new ArrayList<>(providers.size());
+        Map<String, Integer> occurrences = new HashMap<>();
+        for (MinecraftDownloadProvider provider : providers) {
+            String name = getId(provider);
+            Integer count = occurrences.get(name);
+            occurrences.put(name, count == null ? 1 : count + 1);
+            names.add(count == null ? name : name + "#" + (count + 1));
+        }
+    }
+
+    private static String getId(MinecraftDownloadProvider provider) {
+        if (provider instanceof DefaultLayoutProvider) {
+            DefaultLayoutProvider layout = (DefaultLayoutProvider) provider;
+            String url = layout.getLibraryBaseURL();
+            if (url == null) {
+                url = layout.getAssetBaseURL();
+            }
+            if (url == null) {
+                url = layout.getVersionListURL();
+            }
+            if (url != null) {
+                return url;
+            }
+        }
+        return provider.getClass().getName();
+    }
+
+    @Override
+    public CombinedDownloadTask<RemoteVersionList> versionList() {
+        return tree.versionList();
+    }
+
+    @Override
+    public CombinedDownloadTask<Set<Asset>> assetsIndex(final MinecraftDirectory mcdir, final Version version) {
+        return rank(MirrorRanking.ASSETS_INDEX, new Resolver<Set<Asset>>() {
+
+            @Override
+            CombinedDownloadTask<Set<Asset>> resolve(MinecraftDownloadProvider provider) {
+                return provider.assetsIndex(mcdir, version);
+            }
+        });
+    }
+
+    @Override
+    public CombinedDownloadTask<Void> gameJar(final MinecraftDirectory mcdir, final Version version) {
+        return rank(MirrorRanking.GAME_JAR, new Resolver<Void>() {
+
+            @Override
+            CombinedDownloadTask<Void> resolve(MinecraftDownloadProvider provider) {
+                return provider.gameJar(mcdir, version);
+            }
+        });
+    }
+
+    @Override
+    public CombinedDownloadTask<String> gameVersionJson(MinecraftDirectory mcdir, String version) {
+        return tree.gameVersionJson(mcdir, version);
+    }
+
+    @Override
+    public CombinedDownloadTask<Void> library(final MinecraftDirectory mcdir, final Library library) {
+        return rank(MirrorRanking.LIBRARY, new Resolver<Void>() {
+
+            @Override
+            CombinedDownloadTask<Void> resolve(MinecraftDownloadProvider provider) {
+                return provider.library(mcdir, library);
+            }
+        });
+    }
+
+    @Override
+    public CombinedDownloadTask<Void> asset(final MinecraftDirectory mcdir, final Asset asset) {
+        return rank(MirrorRanking.ASSET, new Resolver<Void>() {
+
+            @Override
+            CombinedDownloadTask<Void> resolve(MinecraftDownloadProvider provider) {
+                return provider.asset(mcdir, asset);
+            }
+        });
+    }
+
+    private <T> CombinedDownloadTask<T> rank(String type, Resolver<T> resolver) {
+        List<String> candidateNames = new ArrayList<>();
+        List<CombinedDownloadTask<T>> candidates = new ArrayList<>();
+        for (int i = 0; i < providers.size(); i++) {
+            CombinedDownloadTask<T> task = resolver.resolve(providers.get(i));
+            if (task != null) {
+                candidateNames.add(names.get(i));
+                candidates.add(task);
+            }
+        }
+        if (candidates.isEmpty()) {
+            throw new IllegalArgumentException("No provider is available for this operation");
+        }
+
+        ranking.sort(type, candidateNames, candidates);
+
+        CombinedDownloadTask<?>[] recording = new CombinedDownloadTask<?>[candidates.size()];
+        for (int i = 0; i < recording.length; i++) {
+            recording[i] = new HealthRecordingTask<>(candidates.get(i), ranking, candidateNames.get(i), type);
+        }
+        // all the elements are CombinedDownloadTask<T>
+        @SuppressWarnings("unchecked")
+        CombinedDownloadTask<T>[] tasks = (CombinedDownloadTask<T>[]) recording;
+        return hedgeDelay == null ? CombinedDownloadTask.any(tasks) : CombinedDownloadTask.hedged(hedgeDelay, tasks);
+    }
+
+    private abstract class Resolver<T> {
+
+        abstract CombinedDownloadTask<T> resolve(MinecraftDownloadProvider provider);
+
+    }
+
+}
@@ -4,6 +4,7 @@ import org.to2mbn.jmccc.internal.org.json.JSONObject;
 import org.to2mbn.jmccc.mcdownloader.RemoteVersionList;
 import org.to2mbn.jmccc.mcdownloader.download.cache.CacheNames;
 import org.to2mbn.jmccc.mcdownloader.download.combine.CombinedDownloadTask;
+import org.to2mbn.jmccc.mcdownloader.download.combine.HedgeDelay;
 import org.to2mbn.jmccc.mcdownloader.download.tasks.DownloadTask;
 import org.to2mbn.jmccc.mcdownloader.download.tasks.FileDownloadTask;
 import org.to2mbn.jmccc.mcdownloader.download.tasks.MemoryDownloadTask;
@@ -36,6 +37,7 @@ abstract public class URIDownloadProvider implements MinecraftDownloadProvider {
             return result;
         }
     });
+    private volatile HedgeDelay hedgeDelay;
 
     public URIDownloadProvider() {
         registerLibraryDownloadHandler(".jar", new JarLibraryDownloadHandler());
@@ -158,7 +160,8 @@ abstract public class URIDownloadProvider implements MinecraftDownloadProvider {
             tasks[i] = handler.createDownloadTask(mcdir.getLibrary(library), library, uri);
         }
 
-        return CombinedDownloadTask.any(tasks)
+        HedgeDelay hedgeDelay = this.hedgeDelay;
+        return (hedgeDelay == null ? CombinedDownloadTask.any(tasks) : CombinedDownloadTask.hedged(hedgeDelay, tasks))
                 .cachePool(CacheNames.LIBRARY);
     }
 
@@ -169,7 +172,7 @@ abstract public class URIDownloadProvider implements MinecraftDownloadProvider {
             return null;
         }
         return CombinedDownloadTask.single(
-                new FileDownloadTask(uri, mcdir.getAsset(asset))
+                new FileDownloadTask(uri, mcdir.getAsset(asset), asset.getHash(), asset.getSize())
                         .cachePool(CacheNames.ASSET));
     }
 
@@ -182,4 +185,19 @@ abstract public class URIDownloadProvider implements MinecraftDownloadProvider {
     public void unregisterLibraryDownloadHandler(String postfix) {
         libraryHandlers.remove(postfix);
     }
+
+    public HedgeDelay getHedgeDelay() {
+        return hedgeDelay;
+    }
+
+    /**
+     * Sets the delay before a library download starts the next mirror
+     * alongside the slow one.
+     *
+     * @param hedgeDelay the hedge delay, null to try the mirrors sequentially
+     * @see CombinedDownloadTask#hedged(HedgeDelay, CombinedDownloadTask[])
+     */
+    public void setHedgeDelay(HedgeDelay hedgeDelay) {
+        this.hedgeDelay = hedgeDelay;
+    }
 }
@@ -4,8 +4,10 @@ import org.to2mbn.jmccc.internal.org.json.JSONException;
 import org.to2mbn.jmccc.internal.org.json.JSONObject;
 import org.to2mbn.jmccc.mcdownloader.download.cache.CacheNames;
 import org.to2mbn.jmccc.mcdownloader.download.combine.CombinedDownloadTask;
+import org.to2mbn.jmccc.mcdownloader.download.tasks.DownloadedData;
 import org.to2mbn.jmccc.mcdownloader.download.tasks.FileDownloadTask;
 import org.to2mbn.jmccc.mcdownloader.download.tasks.MemoryDownloadTask;
+import org.to2mbn.jmccc.mcdownloader.download.tasks.SpillingDownloadTask;
 import org.to2mbn.jmccc.mcdownloader.provider.*;
 import org.to2mbn.jmccc.option.MinecraftDirectory;
 import org.to2mbn.jmccc.util.FileUtils;
@@ -150,10 +152,10 @@ public class ForgeDownloadProvider extends AbstractMinecraftDownloadProvider imp
         this.upstreamProvider = upstreamProvider;
     }
 
-    protected CombinedDownloadTask<byte[]> installerTask(String m2Version) {
+    protected CombinedDownloadTask<DownloadedData> installerTask(String m2Version) {
         Library lib = new Library(FORGE_GROUP_ID, FORGE_ARTIFACT_ID, m2Version, CLASSIFIER_INSTALLER, "jar");
         return CombinedDownloadTask.single(
-                new MemoryDownloadTask(source.getForgeMavenRepositoryUrl() + lib.getPath())
+                new SpillingDownloadTask(source.getForgeMavenRepositoryUrl() + lib.getPath())
                         .cacheable()
                         .cachePool(CacheNames.FORGE_INSTALLER));
     }
@@ -2,12 +2,12 @@ package org.to2mbn.jmccc.mcdownloader.provider.forge;
 
 import org.to2mbn.jmccc.internal.org.json.JSONObject;
 import org.to2mbn.jmccc.internal.org.json.JSONTokener;
+import org.to2mbn.jmccc.mcdownloader.download.tasks.DownloadedData;
 import org.to2mbn.jmccc.mcdownloader.download.tasks.ResultProcessor;
 import org.to2mbn.jmccc.mcdownloader.provider.VersionJsonInstaller;
 import org.to2mbn.jmccc.option.MinecraftDirectory;
 import org.to2mbn.jmccc.util.IOUtils;
 
-import java.io.ByteArrayInputStream;
 import java.lang.reflect.Method;
 import java.net.URL;
 import java.net.URLClassLoader;
@@ -20,7 +20,7 @@ import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 import java.util.zip.ZipOutputStream;
 
-public class InstallProfileProcessor implements ResultProcessor<byte[], String> {
+public class InstallProfileProcessor implements ResultProcessor<DownloadedData, String> {
 
     private final MinecraftDirectory mcdir;
     private final String installerArtifact;
@@ -31,7 +31,7 @@ public class InstallProfileProcessor implements ResultProcessor<byte[], String>
     }
 
     @Override
-    public String process(byte[] arg) throws Exception {
+    public String process(DownloadedData arg) throws Exception {
         Path installer = this.mcdir.get(this.installerArtifact);
         ZipOutputStream zos = new ZipOutputStream(Files.newOutputStream(installer));
 
@@ -40,7 +40,8 @@ public class InstallProfileProcessor implements ResultProcessor<byte[], String>
 
         boolean asmServerToClientAction = false;
 
-        try (ZipInputStream in = new ZipInputStream(new ByteArrayInputStream(arg))) {
+        try (DownloadedData installerData = arg;
+             ZipInputStream in = new ZipInputStream(installerData.openStream())) {
             ZipEntry entry;
             while ((entry = in.getNextEntry()) != null) {
 
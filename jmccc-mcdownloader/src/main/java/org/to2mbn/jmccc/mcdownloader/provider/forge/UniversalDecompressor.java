@@ -1,16 +1,16 @@
 package org.to2mbn.jmccc.mcdownloader.provider.forge;
 
+import org.to2mbn.jmccc.mcdownloader.download.tasks.DownloadedData;
 import org.to2mbn.jmccc.mcdownloader.download.tasks.ResultProcessor;
 import org.to2mbn.jmccc.util.FileUtils;
 
-import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.OutputStream;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 
-class UniversalDecompressor implements ResultProcessor<byte[], Void> {
+class UniversalDecompressor implements ResultProcessor<DownloadedData, Void> {
 
     private static final String NAME_TEMPLATE = "forge-%s-universal.jar";
     private static final String OLD_NAME_TEMPLATE = "minecraftforge-universal-%s.jar";
@@ -28,8 +28,9 @@ class UniversalDecompressor implements ResultProcessor<byte[], Void> {
     }
 
     @Override
-    public Void process(byte[] arg) throws Exception {
-        try (ZipInputStream in = new ZipInputStream(new ByteArrayInputStream(arg))) {
+    public Void process(DownloadedData arg) throws Exception {
+        try (DownloadedData installerData = arg;
+             ZipInputStream in = new ZipInputStream(installerData.openStream())) {
             ZipEntry entry;
             while ((entry = in.getNextEntry()) != null) {
                 if (isUniversalJar(entry.getName())) {
@@ -4,7 +4,9 @@ import org.to2mbn.jmccc.internal.org.json.JSONException;
 import org.to2mbn.jmccc.internal.org.json.JSONObject;
 import org.to2mbn.jmccc.mcdownloader.download.cache.CacheNames;
 import org.to2mbn.jmccc.mcdownloader.download.combine.CombinedDownloadTask;
+import org.to2mbn.jmccc.mcdownloader.download.tasks.DownloadedData;
 import org.to2mbn.jmccc.mcdownloader.download.tasks.MemoryDownloadTask;
+import org.to2mbn.jmccc.mcdownloader.download.tasks.SpillingDownloadTask;
 import org.to2mbn.jmccc.mcdownloader.provider.*;
 import org.to2mbn.jmccc.mcdownloader.provider.forge.*;
 import org.to2mbn.jmccc.option.MinecraftDirectory;
@@ -102,10 +104,10 @@ public class NeoForgeDownloadProvider extends AbstractMinecraftDownloadProvider
         this.upstreamProvider = upstreamProvider;
     }
 
-    protected CombinedDownloadTask<byte[]> installerTask(NeoForgeVersion neoForgeVersion) {
+    protected CombinedDownloadTask<DownloadedData> installerTask(NeoForgeVersion neoForgeVersion) {
         Library lib = new Library(FORGE_GROUP_ID, FORGE_ARTIFACT_ID, neoForgeVersion.getNeoForgeVersion(), CLASSIFIER_INSTALLER, "jar");
         return CombinedDownloadTask.single(
-                new MemoryDownloadTask(source.getNeoForgeMavenRepositoryUrl() + lib.getPath())
+                new SpillingDownloadTask(source.getNeoForgeMavenRepositoryUrl() + lib.getPath())
                         .cacheable()
                         .cachePool(CacheNames.FORGE_INSTALLER));
     }
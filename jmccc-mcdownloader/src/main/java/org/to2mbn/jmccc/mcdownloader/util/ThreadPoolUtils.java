@@ -1,7 +1,14 @@
 package org.to2mbn.jmccc.mcdownloader.util;
 
+import java.lang.reflect.InvocationTargetException;
+import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
@@ -22,6 +29,131 @@ public final class ThreadPoolUtils {
         return pool;
     }
 
+    /**
+     * Returns true if virtual threads are supported by the current JVM (Java
+     * 21+).
+     *
+     * @return true if virtual threads are supported
+     */
+    public static boolean isVirtualThreadAvailable() {
+        try {
+            createVirtualThreadFactory("availabilityCheck");
+            return true;
+        } catch (UnsupportedOperationException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Creates an executor which runs each task on a new virtual thread, and
+     * runs no more than <code>maxConcurrency</code> tasks at the same time.
+     * <p>
+     * The tasks beyond the limit wait on their own (cheap) virtual threads. If
+     * such a task is interrupted while waiting (e.g. by
+     * {@link ExecutorService#shutdownNow()}), it's cancelled if it's a
+     * {@link Future}, or discarded otherwise.
+     *
+     * @param maxConcurrency the max number of the running tasks
+     * @param poolName       the prefix of the names of the threads
+     * @return the executor
+     * @throws UnsupportedOperationException if virtual threads are not
+     *                                       supported by the current JVM
+     * @throws IllegalArgumentException      if <code>maxConcurrency &lt; 1</code>
+     */
+    public static ExecutorService createVirtualThreadPool(int maxConcurrency, String poolName) {
+        if (maxConcurrency < 1)
+            throw new IllegalArgumentException("maxConcurrency < 1");
+        ThreadFactory factory = createVirtualThreadFactory(Objects.requireNonNull(poolName));
+        ExecutorService executor;
+        try {
+            executor = (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class).invoke(null, factory);
+        } catch (ReflectiveOperationException e) {
+            throw new UnsupportedOperationException("Virtual threads are not supported", e);
+        }
+        return new BoundedExecutorService(executor, maxConcurrency);
+    }
+
+    private static ThreadFactory createVirtualThreadFactory(String name) {
+        // reflection keeps this class loadable on Java 8
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, "virtual-" + name + "-thread-", 1L);
+            return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+        } catch (InvocationTargetException e) {
+            // virtual threads are a preview feature on Java 19 and 20
+            throw new UnsupportedOperationException("Virtual threads are not supported", e.getCause());
+        } catch (ReflectiveOperationException e) {
+            throw new UnsupportedOperationException("Virtual threads are not supported", e);
+        }
+    }
+
+    private static class BoundedExecutorService extends AbstractExecutorService {
+
+        private final ExecutorService executor;
+        private final Semaphore permits;
+
+        public BoundedExecutorService(ExecutorService executor, int maxConcurrency) {
+            this.executor = executor;
+            this.permits = new Semaphore(maxConcurrency);
+        }
+
+        @Override
+        public void execute(final Runnable command) {
+            Objects.requireNonNull(command);
+            executor.execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    try {
+                        permits.acquire();
+                    } catch (InterruptedException e) {
+                        if (command instanceof Future) {
+                            ((Future<?>) command).cancel(false);
+                        }
+                        return;
+                    }
+                    try {
+                        command.run();
+                    } finally {
+                        permits.release();
+                    }
+                }
+            });
+        }
+
+        @Override
+        public void shutdown() {
+            executor.shutdown();
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            return executor.shutdownNow();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return executor.isShutdown();
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return executor.isTerminated();
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+            return executor.awaitTermination(timeout, unit);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("BoundedExecutorService [executor=%s, availablePermits=%d]", executor, permits.availablePermits());
+        }
+
+    }
+
     private static class NamedThreadFactory implements ThreadFactory {
 
         private static final AtomicInteger poolNumber = new AtomicInteger(1);
@@ -0,0 +1,150 @@
+package org.to2mbn.jmccc.mcdownloader.test;
+
+import org.junit.Test;
+import org.to2mbn.jmccc.mcdownloader.download.Downloader;
+import org.to2mbn.jmccc.mcdownloader.download.combine.CombinedDownloader;
+import org.to2mbn.jmccc.mcdownloader.download.combine.CombinedDownloaderBuilder;
+import org.to2mbn.jmccc.mcdownloader.download.concurrent.CompletedFuture;
+import org.to2mbn.jmccc.mcdownloader.download.concurrent.DownloadCallback;
+import org.to2mbn.jmccc.mcdownloader.download.io.IllegalHttpResponseCodeException;
+import org.to2mbn.jmccc.mcdownloader.download.tasks.DownloadTask;
+import org.to2mbn.jmccc.mcdownloader.download.tasks.MemoryDownloadTask;
+import org.to2mbn.jmccc.util.Builder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+
+public class AdaptiveConcurrencyTest {
+
+    @Test
+    public void testLimitIsNotRaisedBelowLimit() throws Exception {
+        GateDownloader gate = new GateDownloader();
+        CombinedDownloader downloader = create(gate, 2);
+        try {
+            // one download at a time never reaches the limit
+            for (int i = 0; i < 20; i++) {
+                Future<byte[]> future = downloader.download(new MemoryDownloadTask("http://host/" + i), null);
+                gate.complete(1);
+                future.get();
+            }
+
+            for (int i = 0; i < 10; i++) {
+                downloader.download(new MemoryDownloadTask("http://host/burst" + i), null);
+            }
+            assertEquals(2, gate.inFlight());
+        } finally {
+            downloader.shutdown();
+        }
+    }
+
+    @Test
+    public void testAdditiveIncrease() throws Exception {
+        GateDownloader gate = new GateDownloader();
+        CombinedDownloader downloader = create(gate, 2);
+        try {
+            for (int i = 0; i < 20; i++) {
+                downloader.download(new MemoryDownloadTask("http://host/" + i), null);
+            }
+            assertEquals(2, gate.inFlight());
+
+            // 2 -> 2.5 -> 2.9 -> 3.24
+            gate.complete(2);
+            assertEquals(2, gate.inFlight());
+            gate.complete(1);
+            assertEquals(3, gate.inFlight());
+        } finally {
+            downloader.shutdown();
+        }
+    }
+
+    @Test
+    public void testMultiplicativeDecrease() throws Exception {
+        GateDownloader gate = new GateDownloader();
+        CombinedDownloader downloader = create(gate, 4);
+        try {
+            for (int i = 0; i < 20; i++) {
+                downloader.download(new MemoryDownloadTask("http://host/" + i), null);
+            }
+            assertEquals(4, gate.inFlight());
+
+            // 4 -> 2, the other failures of the same round don't count
+            gate.fail(2, new IllegalHttpResponseCodeException(503));
+            assertEquals(2, gate.inFlight());
+            gate.complete(1);
+            assertEquals(2, gate.inFlight());
+        } finally {
+            downloader.shutdown();
+        }
+    }
+
+    private static CombinedDownloader create(final Downloader underlying, int initialLimit) {
+        return CombinedDownloaderBuilder.create(new Builder<Downloader>() {
+
+            @Override
+            public Downloader build() {
+                return underlying;
+            }
+        })
+                .coalesceDownloads(false)
+                .retryPolicy(null)
+                .adaptiveConcurrency(initialLimit, 64)
+                .build();
+    }
+
+    /**
+     * Holds the downloads until they are completed or failed by the test.
+     */
+    private static class GateDownloader implements Downloader {
+
+        private final List<DownloadCallback<?>> pending = new ArrayList<>();
+        private volatile boolean shutdown;
+
+        @Override
+        public <T> Future<T> download(DownloadTask<T> task, DownloadCallback<T> callback) {
+            return download(task, callback, 1);
+        }
+
+        @Override
+        public synchronized <T> Future<T> download(DownloadTask<T> task, DownloadCallback<T> callback, int tries) {
+            pending.add(callback);
+            return new CompletedFuture<>(null);
+        }
+
+        synchronized int inFlight() {
+            return pending.size();
+        }
+
+        void complete(int n) {
+            for (DownloadCallback<?> callback : poll(n)) {
+                callback.done(null);
+            }
+        }
+
+        void fail(int n, Throwable e) {
+            for (DownloadCallback<?> callback : poll(n)) {
+                callback.failed(e);
+            }
+        }
+
+        private synchronized List<DownloadCallback<?>> poll(int n) {
+            List<DownloadCallback<?>> polled = new ArrayList<>(pending.subList(0, n));
+            pending.subList(0, n).clear();
+            return polled;
+        }
+
+        @Override
+        public void shutdown() {
+            shutdown = true;
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return shutdown;
+        }
+
+    }
+
+}
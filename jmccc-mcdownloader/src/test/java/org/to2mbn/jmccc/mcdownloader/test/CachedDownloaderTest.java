@@ -0,0 +1,83 @@
+package org.to2mbn.jmccc.mcdownloader.test;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.to2mbn.jmccc.mcdownloader.download.Downloader;
+import org.to2mbn.jmccc.mcdownloader.download.cache.CachedDownloaderBuilder;
+import org.to2mbn.jmccc.mcdownloader.download.io.JdkDownloaderBuilder;
+import org.to2mbn.jmccc.mcdownloader.download.tasks.FileDownloadTask;
+import org.to2mbn.jmccc.util.HexUtils;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class CachedDownloaderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testCacheableTaskResumes() throws Exception {
+        byte[] data = new byte[64 * 1024];
+        new Random(0).nextBytes(data);
+
+        File target = new File(folder.getRoot(), "target");
+        Files.write(new File(folder.getRoot(), "target.part").toPath(), Arrays.copyOf(data, data.length / 2));
+        Files.write(new File(folder.getRoot(), "target.part.etag").toPath(), "\"v1\"".getBytes(StandardCharsets.UTF_8));
+
+        try (ResourceHttpServer server = new ResourceHttpServer(data)) {
+            download(folder.newFolder("cache"), new FileDownloadTask(server.uri(), target));
+            assertEquals(Collections.singletonList("bytes=" + data.length / 2 + "-"), server.getRanges());
+        }
+        assertArrayEquals(data, Files.readAllBytes(target.toPath()));
+        assertFalse(new File(folder.getRoot(), "target.part").exists());
+    }
+
+    @Test
+    public void testVerifiedFileIsServedFromCache() throws Exception {
+        byte[] data = new byte[64 * 1024];
+        new Random(0).nextBytes(data);
+        String checksum = HexUtils.bytesToHex(MessageDigest.getInstance("SHA-1").digest(data));
+
+        File cacheDir = folder.newFolder("cache");
+        File target = new File(folder.getRoot(), "target");
+        try (ResourceHttpServer server = new ResourceHttpServer(data)) {
+            for (int i = 0; i < 2; i++) {
+                download(cacheDir, new FileDownloadTask(server.uri(), target, checksum, data.length));
+                assertArrayEquals(data, Files.readAllBytes(target.toPath()));
+                assertEquals(1, server.getRanges().size());
+            }
+
+            // a corrupted object is detected by the first read of a new provider
+            File object = new File(cacheDir, "objects/" + checksum.substring(0, 2) + "/" + checksum);
+            byte[] corrupted = data.clone();
+            corrupted[0]++;
+            Files.write(object.toPath(), corrupted);
+            download(cacheDir, new FileDownloadTask(server.uri(), target, checksum, data.length));
+            assertArrayEquals(data, Files.readAllBytes(target.toPath()));
+            assertEquals(2, server.getRanges().size());
+        }
+    }
+
+    private static void download(File cacheDir, FileDownloadTask task) throws Exception {
+        Downloader downloader = CachedDownloaderBuilder.create(JdkDownloaderBuilder.create())
+                .diskCache(cacheDir, 1024 * 1024)
+                .build();
+        try {
+            downloader.download(task.cacheable(), null).get();
+        } finally {
+            downloader.shutdown();
+        }
+    }
+
+}
@@ -0,0 +1,163 @@
+package org.to2mbn.jmccc.mcdownloader.test;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.to2mbn.jmccc.mcdownloader.download.cache.provider.DiskCacheProvider;
+import org.to2mbn.jmccc.mcdownloader.download.cache.provider.FileCacheProvider;
+import org.to2mbn.jmccc.util.HexUtils;
+
+import java.io.File;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class DiskCacheProviderTest {
+
+    private static final String POOL = "test";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testPutAndGet() throws Exception {
+        File dir = folder.newFolder("cache");
+        byte[] data = random(1000, 0);
+        URI key = URI.create("http://example.com/a");
+
+        new DiskCacheProvider(dir, 1024 * 1024).put(POOL, key, data);
+
+        // a new provider reads the entry from the disk
+        DiskCacheProvider provider = new DiskCacheProvider(dir, 1024 * 1024);
+        assertArrayEquals(data, provider.get(POOL, key));
+        Path file = provider.getFile(POOL, key);
+        assertArrayEquals(data, Files.readAllBytes(file));
+        assertEquals(sha1(data), provider.getChecksum(file));
+        assertNull(provider.get(POOL, URI.create("http://example.com/b")));
+        assertEquals(data.length, provider.size());
+    }
+
+    @Test
+    public void testWriter() throws Exception {
+        File dir = folder.newFolder("cache");
+        byte[] data = random(1000, 0);
+        URI key = URI.create("http://example.com/a");
+
+        DiskCacheProvider provider = new DiskCacheProvider(dir, 1024 * 1024);
+        FileCacheProvider.Writer writer = provider.newWriter(POOL, key);
+        writer.write(ByteBuffer.wrap(data, 0, 400));
+        writer.write(ByteBuffer.wrap(data, 400, 600));
+        writer.commit();
+
+        assertArrayEquals(data, new DiskCacheProvider(dir, 1024 * 1024).get(POOL, key));
+        // nothing is left in tmp/
+        assertEquals(0, new File(dir, "tmp").list().length);
+    }
+
+    @Test
+    public void testCorruptedEntryIsRemoved() throws Exception {
+        File dir = folder.newFolder("cache");
+        byte[] data = random(1000, 0);
+        URI key = URI.create("http://example.com/a");
+        new DiskCacheProvider(dir, 1024 * 1024).put(POOL, key, data);
+
+        // the same length, only the checksum tells the difference
+        Path object = getObject(dir, data);
+        byte[] corrupted = data.clone();
+        corrupted[0]++;
+        Files.write(object, corrupted);
+
+        assertNull(new DiskCacheProvider(dir, 1024 * 1024).getFile(POOL, key));
+        assertFalse(Files.exists(object));
+        assertNull(new DiskCacheProvider(dir, 1024 * 1024).get(POOL, key));
+    }
+
+    @Test
+    public void testLeastRecentlyUsedIsEvicted() throws Exception {
+        File dir = folder.newFolder("cache");
+        DiskCacheProvider provider = new DiskCacheProvider(dir, 1000);
+        byte[] a = random(400, 1);
+        byte[] b = random(400, 2);
+        byte[] c = random(400, 3);
+        URI keyA = URI.create("http://example.com/a");
+        URI keyB = URI.create("http://example.com/b");
+        URI keyC = URI.create("http://example.com/c");
+
+        provider.put(POOL, keyA, a);
+        provider.put(POOL, keyB, b);
+        long past = System.currentTimeMillis() - 60000;
+        Files.setLastModifiedTime(getObject(dir, a), FileTime.fromMillis(past));
+        Files.setLastModifiedTime(getObject(dir, b), FileTime.fromMillis(past - 1000));
+        // reading a makes b the least recently used
+        assertNotNull(provider.get(POOL, keyA));
+
+        provider.put(POOL, keyC, c);
+        assertNull(provider.get(POOL, keyB));
+        assertArrayEquals(a, provider.get(POOL, keyA));
+        assertArrayEquals(c, provider.get(POOL, keyC));
+        assertEquals(800, provider.size());
+    }
+
+    @Test
+    public void testSizeIsSharedByProviders() throws Exception {
+        File dir = folder.newFolder("cache");
+        // the providers of two processes sharing the same directory
+        DiskCacheProvider provider1 = new DiskCacheProvider(dir, 1000);
+        DiskCacheProvider provider2 = new DiskCacheProvider(dir, 1000);
+        byte[] a = random(400, 1);
+        byte[] b = random(400, 2);
+        byte[] c = random(400, 3);
+        URI keyA = URI.create("http://example.com/a");
+        URI keyB = URI.create("http://example.com/b");
+        URI keyC = URI.create("http://example.com/c");
+
+        provider1.put(POOL, keyA, a);
+        Files.setLastModifiedTime(getObject(dir, a), FileTime.fromMillis(System.currentTimeMillis() - 60000));
+        provider2.put(POOL, keyB, b);
+        assertEquals(800, provider1.size());
+
+        // exceeds the limit with the object written by the other provider
+        provider1.put(POOL, keyC, c);
+        assertEquals(800, provider2.size());
+        assertNull(provider2.get(POOL, keyA));
+        assertArrayEquals(b, provider2.get(POOL, keyB));
+        assertArrayEquals(c, provider2.get(POOL, keyC));
+    }
+
+    @Test
+    public void testEvictionRemovesIndexEntries() throws Exception {
+        File dir = folder.newFolder("cache");
+        DiskCacheProvider provider = new DiskCacheProvider(dir, 1000);
+        for (int i = 0; i < 10; i++) {
+            provider.put(POOL, URI.create("http://example.com/" + i), random(400, i));
+        }
+        // only the entries of the remaining objects are left
+        assertEquals(2, new File(dir, "index/" + POOL).list().length);
+    }
+
+    private static Path getObject(File dir, byte[] data) throws Exception {
+        String checksum = sha1(data);
+        return new File(dir, "objects/" + checksum.substring(0, 2) + "/" + checksum).toPath();
+    }
+
+    private static String sha1(byte[] data) throws Exception {
+        return HexUtils.bytesToHex(MessageDigest.getInstance("SHA-1").digest(data));
+    }
+
+    private static byte[] random(int length, long seed) {
+        byte[] data = new byte[length];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+
+}
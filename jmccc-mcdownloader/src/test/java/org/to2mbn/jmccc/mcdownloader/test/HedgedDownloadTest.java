@@ -0,0 +1,75 @@
+package org.to2mbn.jmccc.mcdownloader.test;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.to2mbn.jmccc.mcdownloader.download.combine.CombinedDownloadTask;
+import org.to2mbn.jmccc.mcdownloader.download.combine.CombinedDownloader;
+import org.to2mbn.jmccc.mcdownloader.download.combine.CombinedDownloaderBuilder;
+import org.to2mbn.jmccc.mcdownloader.download.combine.HedgeDelay;
+import org.to2mbn.jmccc.mcdownloader.download.io.JdkDownloaderBuilder;
+import org.to2mbn.jmccc.mcdownloader.download.tasks.MemoryDownloadTask;
+
+import java.net.URI;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class HedgedDownloadTest {
+
+    private byte[] data;
+    private ResourceHttpServer primary;
+    private ResourceHttpServer mirror;
+    private CombinedDownloader downloader;
+
+    @Before
+    public void setUp() throws Exception {
+        data = new byte[16 * 1024];
+        new Random(0).nextBytes(data);
+        primary = new ResourceHttpServer(data);
+        mirror = new ResourceHttpServer(data);
+        downloader = CombinedDownloaderBuilder.create(JdkDownloaderBuilder.create()).build();
+    }
+
+    @After
+    public void tearDown() {
+        downloader.shutdown();
+        primary.close();
+        mirror.close();
+    }
+
+    @Test
+    public void testSlowPrimaryIsHedged() throws Exception {
+        primary.setResponseDelay(3000);
+
+        long start = System.currentTimeMillis();
+        assertArrayEquals(data, download(HedgeDelay.fixed(100, TimeUnit.MILLISECONDS), primary.uri(), mirror.uri()));
+        assertTrue(System.currentTimeMillis() - start < 2000);
+        assertEquals(1, mirror.getRanges().size());
+    }
+
+    @Test
+    public void testFastPrimaryIsNotHedged() throws Exception {
+        assertArrayEquals(data, download(HedgeDelay.fixed(2, TimeUnit.SECONDS), primary.uri(), mirror.uri()));
+        assertEquals(1, primary.getRanges().size());
+        assertEquals(0, mirror.getRanges().size());
+    }
+
+    @Test
+    public void testFailedPrimaryStartsMirrorAtOnce() throws Exception {
+        long start = System.currentTimeMillis();
+        assertArrayEquals(data, download(HedgeDelay.fixed(10, TimeUnit.SECONDS), primary.uri().resolve("/missing"), mirror.uri()));
+        assertTrue(System.currentTimeMillis() - start < 5000);
+        assertEquals(1, mirror.getRanges().size());
+    }
+
+    private byte[] download(HedgeDelay delay, URI primaryUri, URI mirrorUri) throws Exception {
+        return downloader.download(CombinedDownloadTask.hedged(delay,
+                new MemoryDownloadTask(primaryUri),
+                new MemoryDownloadTask(mirrorUri)), null).get();
+    }
+
+}
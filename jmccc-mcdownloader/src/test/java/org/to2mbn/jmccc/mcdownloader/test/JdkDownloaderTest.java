@@ -0,0 +1,48 @@
+package org.to2mbn.jmccc.mcdownloader.test;
+
+import org.junit.Test;
+import org.to2mbn.jmccc.mcdownloader.download.Downloader;
+import org.to2mbn.jmccc.mcdownloader.download.io.JdkDownloaderBuilder;
+import org.to2mbn.jmccc.mcdownloader.download.tasks.MemoryDownloadTask;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+
+public class JdkDownloaderTest {
+
+    @Test
+    public void testBusyHostDoesNotBlockOtherHosts() throws Exception {
+        byte[] data = new byte[1024];
+        new Random(0).nextBytes(data);
+
+        try (ResourceHttpServer slow = new ResourceHttpServer(data);
+             ResourceHttpServer fast = new ResourceHttpServer(data)) {
+            slow.setResponseDelay(300);
+            Downloader downloader = JdkDownloaderBuilder.create()
+                    .maxConnectionsPerHost(1)
+                    .maxConnections(2)
+                    .build();
+            try {
+                List<Future<byte[]>> slowDownloads = new ArrayList<>();
+                for (int i = 0; i < 3; i++) {
+                    slowDownloads.add(downloader.download(new MemoryDownloadTask(slow.uri("localhost")), null));
+                }
+                // the downloads queued for the slow host don't occupy the other thread
+                assertArrayEquals(data, downloader.download(new MemoryDownloadTask(fast.uri("127.0.0.1")), null).get());
+                assertFalse(slowDownloads.get(1).isDone());
+
+                for (Future<byte[]> download : slowDownloads) {
+                    assertArrayEquals(data, download.get());
+                }
+            } finally {
+                downloader.shutdown();
+            }
+        }
+    }
+
+}
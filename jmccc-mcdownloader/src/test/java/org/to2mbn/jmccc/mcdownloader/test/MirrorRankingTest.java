@@ -0,0 +1,55 @@
+package org.to2mbn.jmccc.mcdownloader.test;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.to2mbn.jmccc.mcdownloader.provider.MirrorRanking;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+
+public class MirrorRankingTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testConcurrentSaves() throws Exception {
+        final MirrorRanking ranking = new MirrorRanking();
+        final File file = new File(folder.getRoot(), "ranking.json");
+
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Void>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                futures.add(pool.submit(new Callable<Void>() {
+
+                    @Override
+                    public Void call() throws Exception {
+                        for (int j = 0; j < 50; j++) {
+                            ranking.save(file);
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } finally {
+            pool.shutdown();
+        }
+
+        new MirrorRanking().load(file);
+        // no temporary file is left behind
+        assertEquals(1, folder.getRoot().list().length);
+    }
+
+}
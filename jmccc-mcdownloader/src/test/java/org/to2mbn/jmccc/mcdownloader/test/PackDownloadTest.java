@@ -0,0 +1,223 @@
+package org.to2mbn.jmccc.mcdownloader.test;
+
+import org.apache.commons.compress.compressors.pack200.Pack200CompressorOutputStream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.to2mbn.jmccc.mcdownloader.download.combine.CombinedDownloadTask;
+import org.to2mbn.jmccc.mcdownloader.download.combine.CombinedDownloader;
+import org.to2mbn.jmccc.mcdownloader.download.combine.CombinedDownloaderBuilder;
+import org.to2mbn.jmccc.mcdownloader.download.combine.HedgeDelay;
+import org.to2mbn.jmccc.mcdownloader.download.io.JdkDownloaderBuilder;
+import org.to2mbn.jmccc.mcdownloader.provider.URIDownloadProvider;
+import org.to2mbn.jmccc.option.MinecraftDirectory;
+import org.to2mbn.jmccc.util.HexUtils;
+import org.to2mbn.jmccc.version.Library;
+import org.tukaani.xz.LZMA2Options;
+import org.tukaani.xz.XZOutputStream;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class PackDownloadTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Map<String, byte[]> entries;
+    private byte[] jar;
+    private ResourceHttpServer packServer;
+    private MinecraftDirectory mcdir;
+    private Library library;
+    private CombinedDownloader downloader;
+    private PrintStream out;
+
+    @Before
+    public void setUp() throws Exception {
+        // the pack200 unpacker closes System.out after writing its log into it
+        out = System.out;
+        System.setOut(new PrintStream(out) {
+
+            @Override
+            public void close() {
+                flush();
+            }
+        });
+
+        entries = new LinkedHashMap<>();
+        entries.put("a.bin", random(128 * 1024, 1));
+        entries.put("b.bin", random(64 * 1024, 2));
+        jar = createJar(entries);
+        packServer = new ResourceHttpServer(createPackXz(jar, entries));
+        mcdir = new MinecraftDirectory(folder.getRoot());
+        library = new Library("org.example", "example", "1.0");
+        downloader = CombinedDownloaderBuilder.create(JdkDownloaderBuilder.create()).build();
+    }
+
+    @After
+    public void tearDown() {
+        downloader.shutdown();
+        packServer.close();
+        System.setOut(out);
+    }
+
+    @Test
+    public void testUnpackKeepsResumableJar() throws Exception {
+        File target = mcdir.getLibrary(library);
+        File partFile = new File(target.getParentFile(), target.getName() + ".part");
+        File entityTagFile = new File(target.getParentFile(), target.getName() + ".part.etag");
+        // the resumable data of a plain jar download
+        byte[] partial = Arrays.copyOf(jar, jar.length / 2);
+        Files.createDirectories(target.getParentFile().toPath());
+        Files.write(partFile.toPath(), partial);
+        Files.write(entityTagFile.toPath(), "\"v1\"".getBytes(StandardCharsets.UTF_8));
+
+        download(new URIDownloadProvider() {
+        }.library(mcdir, library, packUri()));
+
+        assertEntries(target);
+        assertArrayEquals(partial, Files.readAllBytes(partFile.toPath()));
+        assertEquals(new HashSet<>(Arrays.asList(target.getName(), partFile.getName(), entityTagFile.getName())),
+                new HashSet<>(Arrays.asList(target.getParentFile().list())));
+    }
+
+    @Test
+    public void testHedgedJarAndPackWriteSameTarget() throws Exception {
+        // the jar unpacked without a concurrent download
+        MinecraftDirectory referenceDir = new MinecraftDirectory(folder.newFolder("reference"));
+        download(new URIDownloadProvider() {
+        }.library(referenceDir, library, packUri()));
+        byte[] unpacked = Files.readAllBytes(referenceDir.getLibrary(library).toPath());
+
+        // a zip may have trailing data, which makes the plain jar a long download
+        byte[] paddedJar = Arrays.copyOf(jar, jar.length + 4 * 1024 * 1024);
+        File target = mcdir.getLibrary(library);
+        try (ResourceHttpServer jarServer = new ResourceHttpServer(paddedJar)) {
+            // the pack is started while the jar has no response, and then both are written at the same time
+            jarServer.setResponseDelay(200);
+            jarServer.setTransferDelay(1);
+            packServer.setTransferDelay(20);
+
+            URIDownloadProvider provider = new URIDownloadProvider() {
+            };
+            provider.setHedgeDelay(HedgeDelay.fixed(50, TimeUnit.MILLISECONDS));
+            download(provider.library(mcdir, library, URI.create(jarServer.uri() + ".jar"), packUri()));
+            assertEquals(1, jarServer.getRanges().size());
+
+            // waits for the cancelled jar download to stop writing
+            Thread.sleep(200);
+        }
+        // the target is written by one of them, either the pack (usually) or the jar
+        byte[] actual = Files.readAllBytes(target.toPath());
+        assertArrayEquals(actual.length == paddedJar.length ? paddedJar : unpacked, actual);
+        assertEntries(target);
+    }
+
+    private void download(CombinedDownloadTask<Void> task) throws Exception {
+        downloader.download(task, null).get();
+    }
+
+    private URI packUri() {
+        return URI.create(packServer.uri() + ".jar.pack.xz");
+    }
+
+    private void assertEntries(File target) throws IOException {
+        Map<String, byte[]> actual = new LinkedHashMap<>();
+        try (ZipInputStream in = new ZipInputStream(Files.newInputStream(target.toPath()))) {
+            ZipEntry entry;
+            while ((entry = in.getNextEntry()) != null) {
+                actual.put(entry.getName(), readAll(in));
+            }
+        }
+        for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+            assertArrayEquals(entry.getKey(), entry.getValue(), actual.get(entry.getKey()));
+        }
+    }
+
+    private static byte[] createJar(Map<String, byte[]> entries) throws IOException {
+        ByteArrayOutputStream jar = new ByteArrayOutputStream();
+        try (JarOutputStream out = new JarOutputStream(jar)) {
+            for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+                // the packer reads the entries by their sizes, which are unknown in a deflated entry
+                JarEntry jarEntry = new JarEntry(entry.getKey());
+                jarEntry.setMethod(ZipEntry.STORED);
+                jarEntry.setSize(entry.getValue().length);
+                CRC32 crc = new CRC32();
+                crc.update(entry.getValue());
+                jarEntry.setCrc(crc.getValue());
+                out.putNextEntry(jarEntry);
+                out.write(entry.getValue());
+                out.closeEntry();
+            }
+        }
+        return jar.toByteArray();
+    }
+
+    /**
+     * Packs the jar in the layout of the packed libraries: the pack data, the
+     * checksums of the entries, the length of the checksums (little-endian)
+     * and <code>SIGN</code>, compressed by xz.
+     */
+    private static byte[] createPackXz(byte[] jar, Map<String, byte[]> entries) throws Exception {
+        ByteArrayOutputStream pack = new ByteArrayOutputStream();
+        try (OutputStream out = new Pack200CompressorOutputStream(pack)) {
+            out.write(jar);
+        }
+        StringBuilder checksums = new StringBuilder();
+        for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+            checksums.append(HexUtils.bytesToHex(MessageDigest.getInstance("SHA-1").digest(entry.getValue())))
+                    .append(' ').append(entry.getKey()).append('\n');
+        }
+        byte[] checksumData = checksums.toString().getBytes(StandardCharsets.UTF_8);
+
+        ByteArrayOutputStream packXz = new ByteArrayOutputStream();
+        try (OutputStream out = new XZOutputStream(packXz, new LZMA2Options())) {
+            pack.writeTo(out);
+            out.write(checksumData);
+            out.write(new byte[]{(byte) checksumData.length, (byte) (checksumData.length >>> 8), (byte) (checksumData.length >>> 16), (byte) (checksumData.length >>> 24)});
+            out.write("SIGN".getBytes(StandardCharsets.US_ASCII));
+        }
+        return packXz.toByteArray();
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[8192];
+        int read;
+        while ((read = in.read(buf)) != -1) {
+            out.write(buf, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] random(int length, long seed) {
+        byte[] data = new byte[length];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+
+}
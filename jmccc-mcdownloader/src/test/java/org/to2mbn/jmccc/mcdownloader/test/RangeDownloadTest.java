@@ -0,0 +1,242 @@
+package org.to2mbn.jmccc.mcdownloader.test;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+import org.to2mbn.jmccc.mcdownloader.download.Downloader;
+import org.to2mbn.jmccc.mcdownloader.download.combine.CombinedDownloaderBuilder;
+import org.to2mbn.jmccc.mcdownloader.download.io.AbstractDownloaderBuilder;
+import org.to2mbn.jmccc.mcdownloader.download.io.JdkDownloaderBuilder;
+import org.to2mbn.jmccc.mcdownloader.download.io.async.HttpAsyncDownloaderBuilder;
+import org.to2mbn.jmccc.mcdownloader.download.io.http2.Http2DownloaderBuilder;
+import org.to2mbn.jmccc.mcdownloader.download.tasks.FileDownloadTask;
+import org.to2mbn.jmccc.mcdownloader.download.tasks.MemoryDownloadTask;
+import org.to2mbn.jmccc.mcdownloader.download.tasks.ResultProcessor;
+import org.to2mbn.jmccc.mcdownloader.download.tasks.SegmentedDownloadSession;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the resuming, the segmented download and the coalescing of downloads
+ * with each of the downloaders.
+ */
+@RunWith(Parameterized.class)
+public class RangeDownloadTest {
+
+    @Parameters(name = "{0}")
+    public static List<Object[]> data() {
+        return Arrays.asList(new Object[]{"jdk"}, new Object[]{"async"}, new Object[]{"http2"});
+    }
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final String downloaderName;
+    private byte[] data;
+    private ResourceHttpServer server;
+    private File target;
+
+    public RangeDownloadTest(String downloaderName) {
+        this.downloaderName = downloaderName;
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        data = random(64 * 1024, 0);
+        server = new ResourceHttpServer(data);
+        target = new File(folder.getRoot(), "target");
+    }
+
+    @After
+    public void tearDown() {
+        server.close();
+    }
+
+    @Test
+    public void testResume() throws Exception {
+        writePartFile(Arrays.copyOf(data, data.length / 2), "\"v1\"");
+
+        download(createBuilder().build(), new FileDownloadTask(server.uri(), target));
+        assertEquals(Collections.singletonList("bytes=" + data.length / 2 + "-"), server.getRanges());
+        assertArrayEquals(data, Files.readAllBytes(target.toPath()));
+        assertFalse(new File(folder.getRoot(), "target.part").exists());
+    }
+
+    @Test
+    public void testFullResponseRestarts() throws Exception {
+        server.setRangeSupported(false);
+        writePartFile(random(data.length / 2, 1), "\"v1\"");
+
+        download(createBuilder().build(), new FileDownloadTask(server.uri(), target));
+        // the range is ignored, and the full resource replaces the partial file
+        assertEquals(1, server.getRanges().size());
+        assertArrayEquals(data, Files.readAllBytes(target.toPath()));
+    }
+
+    @Test
+    public void testEntityTagMismatchRestarts() throws Exception {
+        server.setEntityTag("\"v2\"");
+        writePartFile(random(data.length / 2, 1), "\"v1\"");
+
+        download(createBuilder().build(), new FileDownloadTask(server.uri(), target));
+        // If-Range doesn't match, so the server sends the full resource
+        assertEquals(1, server.getRanges().size());
+        assertArrayEquals(data, Files.readAllBytes(target.toPath()));
+    }
+
+    @Test
+    public void testShortPartialResponseRestarts() throws Exception {
+        server.setRangeLimit(1024);
+        writePartFile(Arrays.copyOf(data, data.length / 2), "\"v1\"");
+
+        download(createBuilder().build(), new FileDownloadTask(server.uri(), target));
+        // the partial response ends before the end of the resource, so it's rejected
+        assertEquals(Arrays.asList("bytes=" + data.length / 2 + "-", null), server.getRanges());
+        assertArrayEquals(data, Files.readAllBytes(target.toPath()));
+    }
+
+    @Test
+    public void testSegmented() throws Exception {
+        Downloader downloader = createBuilder().segmentedDownload(4, 16 * 1024).build();
+        try {
+            assertArrayEquals(data, downloader.download(new MemoryDownloadTask(server.uri()), null).get());
+        } finally {
+            downloader.shutdown();
+        }
+
+        List<String> ranges = server.getRanges();
+        assertEquals(4, ranges.size());
+        assertEquals("bytes=0-16383", ranges.get(0));
+        for (String range : ranges) {
+            assertTrue(range, range.startsWith("bytes="));
+        }
+    }
+
+    @Test
+    public void testSmallResourceIsNotSegmented() throws Exception {
+        Downloader downloader = createBuilder().segmentedDownload(4, data.length).build();
+        try {
+            downloader.download(new FileDownloadTask(server.uri(), target) {
+
+                @Override
+                public SegmentedDownloadSession<Void> createSegmentedSession(long length) {
+                    throw new AssertionError("The whole resource is in the first range");
+                }
+            }, null).get();
+        } finally {
+            downloader.shutdown();
+        }
+        assertEquals(Collections.singletonList("bytes=0-" + (data.length - 1)), server.getRanges());
+        assertArrayEquals(data, Files.readAllBytes(target.toPath()));
+    }
+
+    @Test
+    public void testSegmentedFallsBackToSingleConnection() throws Exception {
+        server.setRangeSupported(false);
+        Downloader downloader = createBuilder().segmentedDownload(4, 16 * 1024).build();
+        try {
+            assertArrayEquals(data, downloader.download(new MemoryDownloadTask(server.uri()), null).get());
+            // the host is remembered, so the second download isn't segmented
+            assertArrayEquals(data, downloader.download(new MemoryDownloadTask(server.uri()), null).get());
+        } finally {
+            downloader.shutdown();
+        }
+        assertEquals(Arrays.asList("bytes=0-16383", null, null), server.getRanges());
+    }
+
+    @Test
+    public void testIdenticalDownloadsAreCoalesced() throws Exception {
+        server.setResponseDelay(300);
+        Downloader downloader = CombinedDownloaderBuilder.create(createBuilder()).build();
+        try {
+            List<Future<Void>> futures = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                futures.add(downloader.download(new FileDownloadTask(server.uri(), target), null));
+            }
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } finally {
+            downloader.shutdown();
+        }
+        assertEquals(1, server.getRanges().size());
+        assertArrayEquals(data, Files.readAllBytes(target.toPath()));
+    }
+
+    @Test
+    public void testAndThenDownloadsAreCoalesced() throws Exception {
+        server.setResponseDelay(300);
+        Downloader downloader = CombinedDownloaderBuilder.create(createBuilder()).build();
+        try {
+            List<Future<String>> futures = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                // a new processor at each call, as the providers do
+                futures.add(downloader.download(new FileDownloadTask(server.uri(), target).andThen(new ResultProcessor<Void, String>() {
+
+                    @Override
+                    public String process(Void arg) {
+                        return "done";
+                    }
+                }), null));
+            }
+            for (Future<String> future : futures) {
+                assertEquals("done", future.get());
+            }
+        } finally {
+            downloader.shutdown();
+        }
+        assertEquals(1, server.getRanges().size());
+        assertArrayEquals(data, Files.readAllBytes(target.toPath()));
+    }
+
+    private AbstractDownloaderBuilder createBuilder() {
+        switch (downloaderName) {
+            case "jdk":
+                return JdkDownloaderBuilder.create();
+            case "async":
+                return HttpAsyncDownloaderBuilder.create();
+            case "http2":
+                return Http2DownloaderBuilder.create();
+            default:
+                throw new IllegalArgumentException(downloaderName);
+        }
+    }
+
+    private void writePartFile(byte[] part, String entityTag) throws Exception {
+        Files.write(new File(folder.getRoot(), "target.part").toPath(), part);
+        Files.write(new File(folder.getRoot(), "target.part.etag").toPath(), entityTag.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void download(Downloader downloader, FileDownloadTask task) throws Exception {
+        try {
+            downloader.download(task, null).get();
+        } finally {
+            downloader.shutdown();
+        }
+    }
+
+    private static byte[] random(int length, long seed) {
+        byte[] data = new byte[length];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+
+}
@@ -0,0 +1,195 @@
+package org.to2mbn.jmccc.mcdownloader.test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * An in-process HTTP server which serves a single resource at
+ * <code>/resource</code>.
+ * <p>
+ * The resource has an entity tag, and the single byte ranges
+ * (<code>bytes=first-</code> or <code>bytes=first-last</code>) are served
+ * unless disabled. A range is ignored if <code>If-Range</code> doesn't match
+ * the entity tag.
+ */
+class ResourceHttpServer implements AutoCloseable {
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final byte[] data;
+    private final List<String> ranges = Collections.synchronizedList(new ArrayList<String>());
+
+    private volatile String entityTag = "\"v1\"";
+    private volatile boolean rangeSupported = true;
+    private volatile long responseDelay;
+    private volatile long transferDelay;
+    private volatile int rangeLimit;
+
+    public ResourceHttpServer(byte[] data) throws IOException {
+        this.data = data;
+
+        executor = Executors.newCachedThreadPool();
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 128);
+        server.setExecutor(executor);
+        server.createContext("/resource", new HttpHandler() {
+
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    serve(exchange);
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+        server.start();
+    }
+
+    private void serve(HttpExchange exchange) throws IOException {
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        String ifRange = exchange.getRequestHeaders().getFirst("If-Range");
+        boolean head = "HEAD".equals(exchange.getRequestMethod());
+        if (!head) {
+            ranges.add(range);
+        }
+        if (responseDelay > 0) {
+            try {
+                Thread.sleep(responseDelay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+
+        String tag = entityTag;
+        if (tag != null) {
+            exchange.getResponseHeaders().set("ETag", tag);
+        }
+        int first = 0;
+        int last = data.length - 1;
+        int code = 200;
+        if (rangeSupported) {
+            exchange.getResponseHeaders().set("Accept-Ranges", "bytes");
+            if (range != null && (ifRange == null || ifRange.equals(tag))) {
+                String spec = range.substring("bytes=".length());
+                int idxDash = spec.indexOf('-');
+                first = Integer.parseInt(spec.substring(0, idxDash));
+                if (idxDash < spec.length() - 1) {
+                    last = Math.min(last, Integer.parseInt(spec.substring(idxDash + 1)));
+                }
+                if (rangeLimit > 0) {
+                    last = Math.min(last, first + rangeLimit - 1);
+                }
+                if (first >= data.length) {
+                    exchange.getResponseHeaders().set("Content-Range", "bytes */" + data.length);
+                    exchange.sendResponseHeaders(416, -1);
+                    return;
+                }
+                exchange.getResponseHeaders().set("Content-Range", "bytes " + first + "-" + last + "/" + data.length);
+                code = 206;
+            }
+        }
+
+        int length = last - first + 1;
+        if (head) {
+            exchange.getResponseHeaders().set("Content-Length", String.valueOf(length));
+            exchange.sendResponseHeaders(code, -1);
+            return;
+        }
+        exchange.sendResponseHeaders(code, length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            if (transferDelay > 0) {
+                for (int off = first; off <= last; off += 8192) {
+                    out.write(data, off, Math.min(8192, last + 1 - off));
+                    out.flush();
+                    try {
+                        Thread.sleep(transferDelay);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+            } else {
+                out.write(data, first, length);
+            }
+        }
+    }
+
+    public URI uri() {
+        return uri("127.0.0.1");
+    }
+
+    /**
+     * Returns the uri of the resource with the given host name, which must
+     * resolve to the loopback address.
+     *
+     * @param host the host name
+     * @return the uri of the resource
+     */
+    public URI uri(String host) {
+        return URI.create("http://" + host + ":" + server.getAddress().getPort() + "/resource");
+    }
+
+    public void setEntityTag(String entityTag) {
+        this.entityTag = entityTag;
+    }
+
+    public void setRangeSupported(boolean rangeSupported) {
+        this.rangeSupported = rangeSupported;
+    }
+
+    public void setResponseDelay(long responseDelay) {
+        this.responseDelay = responseDelay;
+    }
+
+    /**
+     * Sets the delay after each 8 KiB of the body, which slows the transfer
+     * down.
+     *
+     * @param transferDelay the delay in milliseconds, 0 to send the body at
+     *                      once
+     */
+    public void setTransferDelay(long transferDelay) {
+        this.transferDelay = transferDelay;
+    }
+
+    /**
+     * Sets the maximum length of a partial response, which makes the server
+     * send less than the requested range.
+     *
+     * @param rangeLimit the maximum length in bytes, 0 for no limit
+     */
+    public void setRangeLimit(int rangeLimit) {
+        this.rangeLimit = rangeLimit;
+    }
+
+    /**
+     * Returns the <code>Range</code> headers of the GET requests received, a
+     * null element stands for a request without <code>Range</code>.
+     *
+     * @return the <code>Range</code> headers
+     */
+    public List<String> getRanges() {
+        synchronized (ranges) {
+            return new ArrayList<>(ranges);
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+}
@@ -0,0 +1,241 @@
+package org.to2mbn.jmccc.mcdownloader.test;
+
+import org.junit.Test;
+import org.to2mbn.jmccc.mcdownloader.download.Downloader;
+import org.to2mbn.jmccc.mcdownloader.download.combine.BackoffRetryPolicy;
+import org.to2mbn.jmccc.mcdownloader.download.combine.CombinedDownloadTask;
+import org.to2mbn.jmccc.mcdownloader.download.combine.CombinedDownloader;
+import org.to2mbn.jmccc.mcdownloader.download.combine.CombinedDownloaderBuilder;
+import org.to2mbn.jmccc.mcdownloader.download.concurrent.CompletedFuture;
+import org.to2mbn.jmccc.mcdownloader.download.concurrent.DownloadCallback;
+import org.to2mbn.jmccc.mcdownloader.download.io.CircuitOpenException;
+import org.to2mbn.jmccc.mcdownloader.download.io.DownloaderHelper;
+import org.to2mbn.jmccc.mcdownloader.download.io.IllegalHttpResponseCodeException;
+import org.to2mbn.jmccc.mcdownloader.download.tasks.DownloadTask;
+import org.to2mbn.jmccc.mcdownloader.download.tasks.MemoryDownloadTask;
+import org.to2mbn.jmccc.util.Builder;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class RetryPolicyTest {
+
+    @Test
+    public void testBackoffDelays() {
+        BackoffRetryPolicy policy = new BackoffRetryPolicy(100, 1000, TimeUnit.MILLISECONDS, false);
+        IllegalHttpResponseCodeException e503 = new IllegalHttpResponseCodeException(503);
+        assertEquals(100, policy.getRetryDelay(e503, 1, 10));
+        assertEquals(200, policy.getRetryDelay(e503, 2, 10));
+        assertEquals(800, policy.getRetryDelay(e503, 4, 10));
+        assertEquals(1000, policy.getRetryDelay(e503, 5, 10));
+        assertEquals(-1, policy.getRetryDelay(e503, 10, 10));
+        assertEquals(-1, policy.getRetryDelay(new IllegalHttpResponseCodeException(404), 1, 10));
+        assertEquals(-1, policy.getRetryDelay(new CircuitOpenException("down"), 1, 10));
+        assertEquals(300, policy.getRetryDelay(new IllegalHttpResponseCodeException("503", 503, 300), 1, 10));
+        assertEquals(-1, policy.getRetryDelay(new IllegalHttpResponseCodeException("503", 503, 5000), 1, 10));
+
+        assertEquals(100, policy.getRetryDelay(new IllegalHttpResponseCodeException(429), 1, 10));
+        assertEquals(300, policy.getRetryDelay(new IllegalHttpResponseCodeException("429", 429, 300), 1, 10));
+
+        BackoffRetryPolicy jittered = new BackoffRetryPolicy(100, 1000, TimeUnit.MILLISECONDS, true);
+        for (int i = 0; i < 100; i++) {
+            long delay = jittered.getRetryDelay(e503, 1, 10);
+            assertTrue(delay >= 50 && delay <= 100);
+        }
+    }
+
+    @Test
+    public void testThrottlingIsRetriedLater() {
+        assertTrue(DownloaderHelper.shouldRetry(new IllegalHttpResponseCodeException(429)));
+        assertTrue(DownloaderHelper.shouldRetry(new IllegalHttpResponseCodeException("500", 500, 1000)));
+        assertFalse(DownloaderHelper.shouldRetry(new IllegalHttpResponseCodeException(500)));
+        assertFalse(DownloaderHelper.shouldRetryImmediately(new IllegalHttpResponseCodeException(429)));
+        assertFalse(DownloaderHelper.shouldRetryImmediately(new IllegalHttpResponseCodeException("503", 503, 1000)));
+        assertTrue(DownloaderHelper.shouldRetryImmediately(new IllegalHttpResponseCodeException(503)));
+    }
+
+    @Test
+    public void testParseRetryAfter() {
+        assertEquals(120000, DownloaderHelper.parseRetryAfter("120"));
+        assertEquals(-1, DownloaderHelper.parseRetryAfter(null));
+        assertEquals(-1, DownloaderHelper.parseRetryAfter("soon"));
+        assertEquals(0, DownloaderHelper.parseRetryAfter("Wed, 21 Oct 2015 07:28:00 GMT"));
+    }
+
+    @Test
+    public void testRetryWithBackoff() throws Exception {
+        FlakyDownloader flaky = new FlakyDownloader(2);
+        CombinedDownloader downloader = create(flaky)
+                .retryPolicy(new BackoffRetryPolicy(50, 1000, TimeUnit.MILLISECONDS, false))
+                .build();
+        try {
+            long start = System.currentTimeMillis();
+            downloader.download(new MemoryDownloadTask("http://flaky/a"), null, 3).get();
+            assertTrue(System.currentTimeMillis() - start >= 150);
+            assertEquals(3, flaky.attempts.get());
+        } finally {
+            downloader.shutdown();
+        }
+    }
+
+    @Test
+    public void testRetryAfter() throws Exception {
+        FlakyDownloader flaky = new FlakyDownloader(1, new IllegalHttpResponseCodeException("429", 429, 200));
+        CombinedDownloader downloader = create(flaky)
+                .retryPolicy(new BackoffRetryPolicy(0, 1000, TimeUnit.MILLISECONDS, false))
+                .build();
+        try {
+            long start = System.currentTimeMillis();
+            downloader.download(new MemoryDownloadTask("http://throttled/a"), null, 3).get();
+            assertTrue(System.currentTimeMillis() - start >= 200);
+            assertEquals(2, flaky.attempts.get());
+        } finally {
+            downloader.shutdown();
+        }
+    }
+
+    @Test
+    public void testThrottlingOpensCircuitBreaker() throws Exception {
+        FlakyDownloader flaky = new FlakyDownloader(Integer.MAX_VALUE, new IllegalHttpResponseCodeException(429));
+        CombinedDownloader downloader = create(flaky)
+                .retryPolicy(new BackoffRetryPolicy(0, 0, TimeUnit.MILLISECONDS, false))
+                .circuitBreaker(2, 1, TimeUnit.MINUTES)
+                .build();
+        try {
+            try {
+                downloader.download(new MemoryDownloadTask("http://throttled/a"), null, 5).get();
+                fail();
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof CircuitOpenException);
+            }
+            assertEquals(2, flaky.attempts.get());
+        } finally {
+            downloader.shutdown();
+        }
+    }
+
+    @Test
+    public void testRetryBudget() throws Exception {
+        FlakyDownloader flaky = new FlakyDownloader(1);
+        CombinedDownloader downloader = create(flaky)
+                .retryPolicy(new BackoffRetryPolicy(0, 0, TimeUnit.MILLISECONDS, false))
+                .retryBudget(2)
+                .build();
+        try {
+            downloader.download(CombinedDownloadTask.all(
+                    new MemoryDownloadTask("http://flaky/a"),
+                    new MemoryDownloadTask("http://flaky/b")), null, 3).get();
+
+            try {
+                downloader.download(CombinedDownloadTask.all(
+                        new MemoryDownloadTask("http://flaky/c"),
+                        new MemoryDownloadTask("http://flaky/d"),
+                        new MemoryDownloadTask("http://flaky/e")), null, 3).get();
+                fail("the retry budget should run out");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof IllegalHttpResponseCodeException);
+            }
+        } finally {
+            downloader.shutdown();
+        }
+    }
+
+    @Test
+    public void testCircuitBreaker() throws Exception {
+        FlakyDownloader flaky = new FlakyDownloader(Integer.MAX_VALUE);
+        CombinedDownloader downloader = create(flaky)
+                .retryPolicy(new BackoffRetryPolicy(0, 0, TimeUnit.MILLISECONDS, false))
+                .circuitBreaker(2, 1, TimeUnit.MINUTES)
+                .build();
+        try {
+            try {
+                downloader.download(new MemoryDownloadTask("http://down/a"), null, 5).get();
+                fail();
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof CircuitOpenException);
+                assertTrue(e.getCause().getCause() instanceof IllegalHttpResponseCodeException);
+            }
+            assertEquals(2, flaky.attempts.get());
+
+            try {
+                downloader.download(new MemoryDownloadTask("http://down/b"), null, 5).get();
+                fail();
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof CircuitOpenException);
+            }
+            assertEquals(2, flaky.attempts.get());
+        } finally {
+            downloader.shutdown();
+        }
+    }
+
+    private static CombinedDownloaderBuilder create(final Downloader underlying) {
+        return CombinedDownloaderBuilder.create(new Builder<Downloader>() {
+
+            @Override
+            public Downloader build() {
+                return underlying;
+            }
+        }).coalesceDownloads(false);
+    }
+
+    /**
+     * Fails the first n tries of each URI with 503, or the given failure.
+     */
+    private static class FlakyDownloader implements Downloader {
+
+        final AtomicInteger attempts = new AtomicInteger();
+        private final int failures;
+        private final IllegalHttpResponseCodeException failure;
+        private final ConcurrentMap<String, AtomicInteger> tries = new ConcurrentHashMap<>();
+        private volatile boolean shutdown;
+
+        FlakyDownloader(int failures) {
+            this(failures, new IllegalHttpResponseCodeException(503));
+        }
+
+        FlakyDownloader(int failures, IllegalHttpResponseCodeException failure) {
+            this.failures = failures;
+            this.failure = failure;
+        }
+
+        @Override
+        public <T> Future<T> download(DownloadTask<T> task, DownloadCallback<T> callback) {
+            return download(task, callback, 1);
+        }
+
+        @Override
+        public <T> Future<T> download(DownloadTask<T> task, DownloadCallback<T> callback, int tries) {
+            attempts.incrementAndGet();
+            String uri = task.getURI().toString();
+            this.tries.putIfAbsent(uri, new AtomicInteger());
+            if (this.tries.get(uri).incrementAndGet() <= failures) {
+                callback.failed(failure);
+            } else {
+                callback.done(null);
+            }
+            return new CompletedFuture<>(null);
+        }
+
+        @Override
+        public void shutdown() {
+            shutdown = true;
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return shutdown;
+        }
+
+    }
+
+}
@@ -0,0 +1,124 @@
+package org.to2mbn.jmccc.mcdownloader.test;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.to2mbn.jmccc.mcdownloader.VerificationIndex;
+import org.to2mbn.jmccc.option.MinecraftDirectory;
+import org.to2mbn.jmccc.util.ChecksumUtils;
+import org.to2mbn.jmccc.util.HexUtils;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class VerificationIndexTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testUnchangedFileIsNotHashedAgain() throws Exception {
+        MinecraftDirectory mcdir = new MinecraftDirectory(folder.getRoot());
+        File file = createFile(mcdir, "libraries/test.jar", "original");
+        String sha1 = HexUtils.bytesToHex(ChecksumUtils.compute(file, "SHA-1"));
+
+        VerificationIndex index = VerificationIndex.load(mcdir);
+        assertTrue(index.verify(file, sha1, file.length()));
+        assertEquals(1, index.size());
+        index.save();
+
+        // same size and mtime, only a rehash would notice the change
+        long lastModified = file.lastModified();
+        overwrite(file, "modified");
+        file.setLastModified(lastModified);
+        assertTrue(VerificationIndex.load(mcdir).verify(file, sha1, file.length()));
+
+        file.setLastModified(lastModified - 10000);
+        VerificationIndex reloaded = VerificationIndex.load(mcdir);
+        assertFalse(reloaded.verify(file, sha1, file.length()));
+        assertEquals(0, reloaded.size());
+    }
+
+    @Test
+    public void testRecentlyModifiedFileIsNotRecorded() throws Exception {
+        MinecraftDirectory mcdir = new MinecraftDirectory(folder.getRoot());
+        File file = createFile(mcdir, "assets/objects/ab/abcd", "asset");
+        file.setLastModified(System.currentTimeMillis());
+        String sha1 = HexUtils.bytesToHex(ChecksumUtils.compute(file, "SHA-1"));
+
+        VerificationIndex index = VerificationIndex.load(mcdir);
+        assertTrue(index.verify(file, sha1, -1));
+        assertEquals(0, index.size());
+    }
+
+    @Test
+    public void testCorruptedIndexIsDiscarded() throws Exception {
+        MinecraftDirectory mcdir = new MinecraftDirectory(folder.getRoot());
+        File indexFile = mcdir.get(".jmccc/verification.index").toFile();
+        indexFile.getParentFile().mkdirs();
+        Files.write(indexFile.toPath(), "garbage".getBytes(StandardCharsets.UTF_8));
+
+        assertEquals(0, VerificationIndex.load(mcdir).size());
+    }
+
+    @Test
+    public void testConcurrentSavesAreMerged() throws Exception {
+        MinecraftDirectory mcdir = new MinecraftDirectory(folder.getRoot());
+        final List<VerificationIndex> indexes = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            File file = createFile(mcdir, "libraries/test-" + i + ".jar", "content " + i);
+            VerificationIndex index = VerificationIndex.load(mcdir);
+            assertTrue(index.verify(file, HexUtils.bytesToHex(ChecksumUtils.compute(file, "SHA-1")), file.length()));
+            indexes.add(index);
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(indexes.size());
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (final VerificationIndex index : indexes) {
+                futures.add(pool.submit(new Callable<Void>() {
+
+                    @Override
+                    public Void call() throws Exception {
+                        index.save();
+                        return null;
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            pool.shutdown();
+        }
+
+        assertEquals(indexes.size(), VerificationIndex.load(mcdir).size());
+    }
+
+    private static File createFile(MinecraftDirectory mcdir, String path, String content) throws Exception {
+        File file = mcdir.get(path).toFile();
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        file.setLastModified(System.currentTimeMillis() - 60000);
+        return file;
+    }
+
+    private static void overwrite(File file, String content) throws Exception {
+        try (RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+            out.write(content.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+}
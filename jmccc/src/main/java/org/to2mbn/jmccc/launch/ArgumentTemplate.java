@@ -0,0 +1,122 @@
+package org.to2mbn.jmccc.launch;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A launch argument compiled into literals and <code>${name}</code>
+ * placeholders.
+ * <p>
+ * An argument is parsed only once, and the compiled templates are shared by
+ * all the launches. Rendering a template takes a single pass, with one lookup
+ * per placeholder. A placeholder whose variable is missing is kept as it is.
+ * This class is thread-safe.
+ */
+final class ArgumentTemplate {
+
+    private static final int MAX_CACHED = 4096;
+
+    private static final ConcurrentMap<String, ArgumentTemplate> cache = new ConcurrentHashMap<>();
+
+    /**
+     * Compiles the given argument, or returns the cached template.
+     *
+     * @param argument the argument
+     * @return the template
+     */
+    public static ArgumentTemplate compile(String argument) {
+        ArgumentTemplate template = cache.get(argument);
+        if (template == null) {
+            template = parse(argument);
+            if (cache.size() >= MAX_CACHED) {
+                // the arguments of a few versions are far fewer than this
+                cache.clear();
+            }
+            cache.put(argument, template);
+        }
+        return template;
+    }
+
+    /**
+     * Renders the given arguments.
+     *
+     * @param arguments the arguments
+     * @param variables the variables
+     * @return the rendered arguments
+     */
+    public static List<String> renderAll(List<String> arguments, Map<String, String> variables) {
+        List<String> result = new ArrayList<>(arguments.size());
+        for (String argument : arguments) {
+            result.add(compile(argument).render(variables));
+        }
+        return result;
+    }
+
+    private static ArgumentTemplate parse(String argument) {
+        List<String> literals = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+        int literalStart = 0;
+        int index = 0;
+        for (;;) {
+            int start = argument.indexOf("${", index);
+            if (start == -1) {
+                break;
+            }
+            int end = argument.indexOf('}', start + 2);
+            if (end == -1) {
+                break;
+            }
+            literals.add(argument.substring(literalStart, start));
+            names.add(argument.substring(start + 2, end));
+            literalStart = end + 1;
+            index = end + 1;
+        }
+        literals.add(argument.substring(literalStart));
+        return new ArgumentTemplate(argument, literals.toArray(new String[0]), names.toArray(new String[0]));
+    }
+
+    private final String argument;
+
+    // literals[i] precedes names[i], and the last literal follows the last name
+    private final String[] literals;
+    private final String[] names;
+
+    private ArgumentTemplate(String argument, String[] literals, String[] names) {
+        this.argument = argument;
+        this.literals = literals;
+        this.names = names;
+    }
+
+    /**
+     * Renders the template.
+     *
+     * @param variables the variables
+     * @return the rendered argument
+     */
+    public String render(Map<String, String> variables) {
+        if (names.length == 0) {
+            return argument;
+        }
+        StringBuilder sb = new StringBuilder(argument.length() + 16 * names.length);
+        for (int i = 0; i < names.length; i++) {
+            sb.append(literals[i]);
+            String value = variables.get(names[i]);
+            if (value == null) {
+                sb.append("${").append(names[i]).append('}');
+            } else {
+                sb.append(value);
+            }
+        }
+        sb.append(literals[names.length]);
+        return sb.toString();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ArgumentTemplate [argument=%s]", argument);
+    }
+
+}
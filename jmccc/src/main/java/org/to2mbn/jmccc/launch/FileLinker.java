@@ -0,0 +1,97 @@
+package org.to2mbn.jmccc.launch;
+
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Materializes files by hard links, or by copies if hard links are not
+ * supported (e.g. the source is on another file system).
+ * <p>
+ * The copies keep the modification times of the sources, so that an unchanged
+ * copy is recognized and not written again. A link or a copy is made under a
+ * temporary name and then renamed over the target, so that the launchers
+ * materializing the same file concurrently don't fail. This class is
+ * thread-safe.
+ */
+class FileLinker {
+
+    private volatile boolean linkSupported = true;
+
+    /**
+     * Links or copies the source to the target, unless the target is already
+     * a link to the source or an unchanged copy of it. A different target is
+     * replaced.
+     *
+     * @param source the source file
+     * @param target the target file
+     * @return true if the target has been written
+     * @throws IOException if an I/O error occurs
+     */
+    public boolean link(Path source, Path target) throws IOException {
+        BasicFileAttributes attrs = Files.readAttributes(source, BasicFileAttributes.class);
+        if (isUpToDate(source, attrs, target)) {
+            return false;
+        }
+        Path parent = target.getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+
+        Path tmp = target.resolveSibling(target.getFileName() + "." + Long.toHexString(ThreadLocalRandom.current().nextLong()) + ".tmp");
+        try {
+            if (!createLink(source, tmp)) {
+                Files.copy(source, tmp, StandardCopyOption.COPY_ATTRIBUTES);
+            }
+            // if the target has been linked to the source by another launcher, this does nothing
+            try {
+                Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+        return true;
+    }
+
+    private boolean createLink(Path source, Path link) throws IOException {
+        if (!linkSupported) {
+            return false;
+        }
+        try {
+            Files.createLink(link, source);
+            return true;
+        } catch (UnsupportedOperationException e) {
+            linkSupported = false;
+            return false;
+        } catch (IOException e) {
+            if (!Files.getFileStore(source).equals(Files.getFileStore(link.getParent()))) {
+                // the source is on another file system
+                linkSupported = false;
+            }
+            // otherwise this file is copied, the next ones are still linked
+            return false;
+        }
+    }
+
+    private static boolean isUpToDate(Path source, BasicFileAttributes attrs, Path target) throws IOException {
+        if (!Files.exists(target, LinkOption.NOFOLLOW_LINKS)) {
+            return false;
+        }
+        try {
+            return Files.isSameFile(target, source)
+                    || (Files.size(target) == attrs.size() && Files.getLastModifiedTime(target).equals(attrs.lastModifiedTime()));
+        } catch (NoSuchFileException e) {
+            // deleted by another launcher
+            return false;
+        }
+    }
+
+}
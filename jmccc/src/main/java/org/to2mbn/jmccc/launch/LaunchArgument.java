@@ -6,13 +6,14 @@ import org.to2mbn.jmccc.version.Version;
 
 import java.io.File;
 import java.util.*;
-import java.util.Map.Entry;
 
 /**
  * {@code LaunchArgument} is used to generate launching command line.
  */
 public class LaunchArgument {
 
+    private static final List<String> DEFAULT_JVM_ARGS = Collections.unmodifiableList(Arrays.asList("-Djava.library.path=${natives_directory}", "-cp", "${classpath}"));
+
     private final LaunchOption launchOption;
     private final File nativesPath;
     private final Set<File> libraries;
@@ -61,7 +62,7 @@ public class LaunchArgument {
         List<String> jvmArgs = launchOption.getVersion().getJvmArgs();
         if (jvmArgs.isEmpty()) {
             //Default JVM args
-            jvmArgs.addAll(Arrays.asList("-Djava.library.path=${natives_directory}", "-cp", "${classpath}"));
+            jvmArgs = DEFAULT_JVM_ARGS;
         }
         args.addAll(getFormattedMinecraftArguments(jvmArgs));
 
@@ -130,22 +131,13 @@ public class LaunchArgument {
     }
 
     private List<String> getFormattedMinecraftArguments(List<String> templete) {
-        Map<String, String> variables = new HashMap<>();
-        variables.putAll(defaultVariables);
-        variables.putAll(launchOption.commandlineVariables());
-
-        List<String> args = new ArrayList<>();
-        for (String arg : templete) {
-            for (Entry<String, String> var : variables.entrySet()) {
-                String k = var.getKey();
-                String v = var.getValue();
-                if (k != null && v != null) {
-                    arg = arg.replace("${" + k + "}", v);
-                }
-            }
-            args.add(arg);
+        Map<String, String> variables = defaultVariables;
+        Map<String, String> customized = launchOption.commandlineVariables();
+        if (!customized.isEmpty()) {
+            variables = new HashMap<>(defaultVariables);
+            variables.putAll(customized);
         }
-        return args;
+        return ArgumentTemplate.renderAll(templete, variables);
     }
 
     // Getters
@@ -0,0 +1,235 @@
+package org.to2mbn.jmccc.launch;
+
+import org.to2mbn.jmccc.internal.org.json.JSONArray;
+import org.to2mbn.jmccc.internal.org.json.JSONException;
+import org.to2mbn.jmccc.internal.org.json.JSONObject;
+import org.to2mbn.jmccc.option.MinecraftDirectory;
+import org.to2mbn.jmccc.util.ChecksumUtils;
+import org.to2mbn.jmccc.util.HexUtils;
+import org.to2mbn.jmccc.version.Library;
+import org.to2mbn.jmccc.version.Version;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The parts of a launch which depend only on the version and the files on
+ * disk: the classpath, and the state of the libraries and the natives after
+ * they have been checked and extracted.
+ * <p>
+ * A plan is identified by a key computed from the content of the resolved
+ * version. It's up to date as long as none of the libraries, the game jar, the
+ * natives directory and the files in it has been modified since the plan was
+ * made, which takes one <code>stat</code> per file to check. The natives are
+ * compared by their sizes and modification times, the same way as the
+ * manifest of {@link NativesExtractor}, so a cached plan never hides a native
+ * which has been deleted or rewritten.
+ */
+class LaunchPlan {
+
+    private static final int PLAN_VERSION = 2;
+
+    /**
+     * Computes the key of the plan of the given version.
+     *
+     * @param mcdir        the minecraft directory
+     * @param version      the resolved version
+     * @param nativesStore the natives store, null if the store is disabled
+     * @return the key
+     * @throws IOException if the version cannot be serialized
+     */
+    public static String computeKey(MinecraftDirectory mcdir, Version version, File nativesStore) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = ChecksumUtils.getDigest("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException("SHA-1 is not supported", e);
+        }
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(buf)) {
+            out.writeInt(PLAN_VERSION);
+            out.writeObject(version);
+            out.writeUTF(mcdir.getAbsolutePath());
+            out.writeUTF(nativesStore == null ? "" : nativesStore.getAbsolutePath());
+        }
+        digest.update(buf.toByteArray());
+        return HexUtils.bytesToHex(digest.digest());
+    }
+
+    /**
+     * Makes a plan after the libraries have been checked and the natives have
+     * been extracted.
+     *
+     * @param key        the key of the plan
+     * @param mcdir      the minecraft directory
+     * @param version    the resolved version
+     * @param classpath  the classpath, without the extra classpath of the
+     *                   launch option
+     * @param nativesDir the natives directory
+     * @return the plan
+     */
+    public static LaunchPlan create(String key, MinecraftDirectory mcdir, Version version, Set<File> classpath, File nativesDir) {
+        Map<File, Long> files = new LinkedHashMap<>();
+        for (Library library : version.getLibraries()) {
+            File file = mcdir.getLibrary(library).getAbsoluteFile();
+            files.put(file, file.lastModified());
+        }
+        File gameJar = mcdir.getVersionJar(version).getAbsoluteFile();
+        files.put(gameJar, gameJar.lastModified());
+        nativesDir = nativesDir.getAbsoluteFile();
+        return new LaunchPlan(key, classpath, files, nativesDir, nativesDir.lastModified(), listNatives(nativesDir));
+    }
+
+    private static Map<File, FileState> listNatives(File dir) {
+        Map<File, FileState> natives = new LinkedHashMap<>();
+        // the natives directory doesn't exist if the version has no natives
+        File[] children = dir.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                if (child.isDirectory()) {
+                    natives.putAll(listNatives(child));
+                } else {
+                    natives.put(child, new FileState(child.length(), child.lastModified()));
+                }
+            }
+        }
+        return natives;
+    }
+
+    public static LaunchPlan fromJson(JSONObject json) throws JSONException {
+        if (json.getInt("version") != PLAN_VERSION) {
+            throw new JSONException("Unsupported launch plan version: " + json.getInt("version"));
+        }
+        Set<File> classpath = new LinkedHashSet<>();
+        JSONArray classpathJson = json.getJSONArray("classpath");
+        for (int i = 0; i < classpathJson.length(); i++) {
+            classpath.add(new File(classpathJson.getString(i)));
+        }
+        Map<File, Long> files = new LinkedHashMap<>();
+        JSONObject filesJson = json.getJSONObject("files");
+        for (String path : filesJson.keySet()) {
+            files.put(new File(path), filesJson.getLong(path));
+        }
+        Map<File, FileState> natives = new LinkedHashMap<>();
+        JSONObject nativesJson = json.getJSONObject("natives");
+        for (String path : nativesJson.keySet()) {
+            JSONObject nativeJson = nativesJson.getJSONObject(path);
+            natives.put(new File(path), new FileState(nativeJson.getLong("size"), nativeJson.getLong("lastModified")));
+        }
+        return new LaunchPlan(json.getString("key"), classpath, files, new File(json.getString("nativesDir")), json.getLong("nativesDirModified"), natives);
+    }
+
+    private final String key;
+    private final Set<File> classpath;
+    private final Map<File, Long> files;
+    private final File nativesDir;
+    private final long nativesDirModified;
+    private final Map<File, FileState> natives;
+
+    private LaunchPlan(String key, Set<File> classpath, Map<File, Long> files, File nativesDir, long nativesDirModified, Map<File, FileState> natives) {
+        this.key = key;
+        this.classpath = Collections.unmodifiableSet(new LinkedHashSet<>(classpath));
+        this.files = files;
+        this.nativesDir = nativesDir;
+        this.nativesDirModified = nativesDirModified;
+        this.natives = natives;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public Set<File> getClasspath() {
+        return classpath;
+    }
+
+    public File getNativesDir() {
+        return nativesDir;
+    }
+
+    /**
+     * Checks whether the files haven't been modified since the plan was made.
+     *
+     * @return true if the plan is up to date
+     */
+    public boolean isUpToDate() {
+        for (Map.Entry<File, Long> file : files.entrySet()) {
+            // lastModified() returns 0 if the file doesn't exist
+            long lastModified = file.getKey().lastModified();
+            if (lastModified == 0 || lastModified != file.getValue()) {
+                return false;
+            }
+        }
+        // the natives directory doesn't exist if the version has no natives
+        if (nativesDir.lastModified() != nativesDirModified) {
+            return false;
+        }
+        // a file rewritten in place doesn't change the mtime of its directory
+        for (Map.Entry<File, FileState> file : natives.entrySet()) {
+            if (!file.getValue().matches(file.getKey())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public JSONObject toJson() {
+        List<String> classpathJson = new ArrayList<>(classpath.size());
+        for (File file : classpath) {
+            classpathJson.add(file.getPath());
+        }
+        JSONObject filesJson = new JSONObject();
+        for (Map.Entry<File, Long> file : files.entrySet()) {
+            filesJson.put(file.getKey().getPath(), file.getValue().longValue());
+        }
+        JSONObject json = new JSONObject();
+        json.put("version", PLAN_VERSION);
+        json.put("key", key);
+        json.put("classpath", new JSONArray(classpathJson));
+        json.put("files", filesJson);
+        json.put("nativesDir", nativesDir.getPath());
+        json.put("nativesDirModified", nativesDirModified);
+        JSONObject nativesJson = new JSONObject();
+        for (Map.Entry<File, FileState> file : natives.entrySet()) {
+            JSONObject nativeJson = new JSONObject();
+            nativeJson.put("size", file.getValue().size);
+            nativeJson.put("lastModified", file.getValue().lastModified);
+            nativesJson.put(file.getKey().getPath(), nativeJson);
+        }
+        json.put("natives", nativesJson);
+        return json;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("LaunchPlan [key=%s, classpath=%s, nativesDir=%s]", key, classpath, nativesDir);
+    }
+
+    private static class FileState {
+
+        final long size;
+        final long lastModified;
+
+        FileState(long size, long lastModified) {
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+
+        boolean matches(File file) {
+            return file.isFile() && file.length() == size && file.lastModified() == lastModified;
+        }
+
+    }
+
+}
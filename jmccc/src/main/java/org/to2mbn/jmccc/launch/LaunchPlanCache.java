@@ -0,0 +1,104 @@
+package org.to2mbn.jmccc.launch;
+
+import org.to2mbn.jmccc.internal.org.json.JSONException;
+import org.to2mbn.jmccc.util.IOUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Keeps the launch plans in memory, and persists them into a directory so that
+ * they survive the restarts of the launcher.
+ * <p>
+ * The plans are stored as <code>&lt;key&gt;.json</code>. A broken plan file is
+ * treated as a missing one. This class is thread-safe.
+ */
+class LaunchPlanCache {
+
+    private final File dir;
+    private final ConcurrentMap<String, LaunchPlan> plans = new ConcurrentHashMap<>();
+
+    /**
+     * @param dir the directory to persist the plans into
+     */
+    public LaunchPlanCache(File dir) {
+        this.dir = dir;
+    }
+
+    /**
+     * Gets the plan of the given key.
+     *
+     * @param key the key of the plan
+     * @return the plan, null if it's not cached
+     */
+    public LaunchPlan get(String key) {
+        LaunchPlan plan = plans.get(key);
+        if (plan != null) {
+            return plan;
+        }
+
+        File file = getFile(key);
+        if (!file.isFile()) {
+            return null;
+        }
+        try {
+            plan = LaunchPlan.fromJson(IOUtils.toJson(file));
+        } catch (IOException | JSONException e) {
+            // the plan will be made again
+            return null;
+        }
+        if (!key.equals(plan.getKey())) {
+            return null;
+        }
+        plans.put(key, plan);
+        return plan;
+    }
+
+    /**
+     * Caches the plan, and persists it into the directory.
+     *
+     * @param plan the plan
+     * @throws IOException if the plan couldn't be written
+     */
+    public void put(LaunchPlan plan) throws IOException {
+        plans.put(plan.getKey(), plan);
+
+        File file = getFile(plan.getKey());
+        Files.createDirectories(dir.toPath());
+        File tmp = File.createTempFile(plan.getKey(), ".tmp", dir);
+        try {
+            try (Writer writer = Files.newBufferedWriter(tmp.toPath(), StandardCharsets.UTF_8)) {
+                plan.toJson().write(writer);
+            }
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tmp.toPath());
+        }
+    }
+
+    /**
+     * Removes the plan of the given key.
+     *
+     * @param key the key of the plan
+     */
+    public void remove(String key) {
+        plans.remove(key);
+        getFile(key).delete();
+    }
+
+    private File getFile(String key) {
+        return new File(dir, key + ".json");
+    }
+
+    @Override
+    public String toString() {
+        return String.format("LaunchPlanCache [dir=%s, plans=%d]", dir, plans.size());
+    }
+
+}
@@ -2,6 +2,8 @@ package org.to2mbn.jmccc.launch;
 
 import org.to2mbn.jmccc.util.Builder;
 
+import java.io.File;
+
 /**
  * Builder for {@link Launcher}.
  *
@@ -10,6 +12,8 @@ import org.to2mbn.jmccc.util.Builder;
 public class LauncherBuilder implements Builder<Launcher> {
 
     private boolean nativeFastCheck = false;
+    private File nativesStore;
+    private File launchPlanCache;
     private boolean printDebugCommandline = false;
     private boolean useDaemonThreads = false;
     protected LauncherBuilder() {
@@ -36,14 +40,17 @@ public class LauncherBuilder implements Builder<Launcher> {
     /**
      * Sets whether to do a fast check on natives.
      * <p>
-     * By default, this feature is off. In this case, when decompressing
-     * natives, the jmccc will fully compare the existing natives and the
-     * natives in jars. If, and only if, a existing native is modified, jmccc
-     * will replace it. Because replacing a native in use may cause the running
-     * JVM to be crashed.<br>
-     * If the feature is on, the jmccc won't compare the full content of
-     * natives. Jmccc only compares the sizes. This can improve the launching
-     * speed. But we cannot ensure the contents of the natives are correct.
+     * Jmccc records the extracted natives in a manifest, and skips the
+     * extraction if neither the native jars nor the extracted files have
+     * changed since the last launch.
+     * <p>
+     * Otherwise, by default, jmccc compares the CRC-32 checksums of the
+     * existing natives with the checksums in jars. If, and only if, a existing
+     * native is modified, jmccc will replace it. Because replacing a native in
+     * use may cause the running JVM to be crashed.<br>
+     * If the feature is on, the jmccc won't read the content of natives. Jmccc
+     * only compares the sizes. This can improve the launching speed. But we
+     * cannot ensure the contents of the natives are correct.
      *
      * @param nativeFastCheck true to let jmccc do a fast check on natives
      * @return the builder itself
@@ -53,6 +60,49 @@ public class LauncherBuilder implements Builder<Launcher> {
         return this;
     }
 
+    /**
+     * Sets the directory of the shared natives store.
+     * <p>
+     * By default, this feature is off, and the natives are extracted into the
+     * natives directory of each version. If the store is set, each native jar
+     * is extracted into the store only once, keyed by its SHA-1 and the
+     * platform, and the natives directories of the versions are populated
+     * with hard links to the store (or copies, if the file system doesn't
+     * support hard links). The store can be shared by the launchers and the
+     * game directories on the same host.
+     *
+     * @param nativesStore the directory of the natives store, null to disable
+     *                     the store
+     * @return the builder itself
+     */
+    public LauncherBuilder nativesStore(File nativesStore) {
+        this.nativesStore = nativesStore;
+        return this;
+    }
+
+    /**
+     * Sets the directory to cache the launch plans in.
+     * <p>
+     * By default, this feature is off, and each launch checks the libraries
+     * and the natives of the version again. If the directory is set, the
+     * classpath and the state of the libraries and the natives are recorded
+     * after a launch, keyed by the content of the resolved version. The next
+     * launch of the same version only checks that none of the libraries, the
+     * game jar and the natives directory has been modified since then, and
+     * skips the library check and the natives extraction.
+     * <p>
+     * A file replaced inside the natives directory without changing the
+     * directory itself is not detected.
+     *
+     * @param launchPlanCache the directory of the launch plan cache, null to
+     *                        disable the cache
+     * @return the builder itself
+     */
+    public LauncherBuilder launchPlanCache(File launchPlanCache) {
+        this.launchPlanCache = launchPlanCache;
+        return this;
+    }
+
     /**
      * Sets whether to print the launch commandline for debugging.
      * <p>
@@ -99,6 +149,8 @@ public class LauncherBuilder implements Builder<Launcher> {
     public Launcher build() {
         LauncherImpl launcher = new LauncherImpl();
         launcher.setNativeFastCheck(nativeFastCheck);
+        launcher.setNativesStore(nativesStore);
+        launcher.setLaunchPlanCache(launchPlanCache);
         launcher.setPrintDebugCommandline(printDebugCommandline);
         launcher.setUseDaemonThreads(useDaemonThreads);
         return launcher;
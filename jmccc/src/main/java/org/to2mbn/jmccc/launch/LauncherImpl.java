@@ -5,24 +5,21 @@ import org.to2mbn.jmccc.internal.org.json.JSONObject;
 import org.to2mbn.jmccc.option.LaunchOption;
 import org.to2mbn.jmccc.option.MinecraftDirectory;
 import org.to2mbn.jmccc.option.WindowSize;
-import org.to2mbn.jmccc.util.FileUtils;
 import org.to2mbn.jmccc.util.Platform;
 import org.to2mbn.jmccc.util.UUIDUtils;
-import org.to2mbn.jmccc.version.Asset;
 import org.to2mbn.jmccc.version.Library;
 import org.to2mbn.jmccc.version.Native;
 import org.to2mbn.jmccc.version.Version;
-import org.to2mbn.jmccc.version.parsing.Versions;
 
-import java.io.*;
-import java.nio.file.Files;
+import java.io.File;
+import java.io.IOException;
 import java.util.*;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipInputStream;
 
 class LauncherImpl implements Launcher {
 
     private boolean nativeFastCheck = false;
+    private File nativesStore;
+    private LaunchPlanCache launchPlanCache;
     private boolean printDebugCommandline = false;
     private boolean useDaemonThreads = false;
 
@@ -43,6 +40,14 @@ class LauncherImpl implements Launcher {
         this.nativeFastCheck = nativeFastCheck;
     }
 
+    public void setNativesStore(File nativesStore) {
+        this.nativesStore = nativesStore;
+    }
+
+    public void setLaunchPlanCache(File launchPlanCache) {
+        this.launchPlanCache = launchPlanCache == null ? null : new LaunchPlanCache(launchPlanCache);
+    }
+
     public void setPrintDebugCommandline(boolean printDebugCommandline) {
         this.printDebugCommandline = printDebugCommandline;
     }
@@ -87,32 +92,39 @@ class LauncherImpl implements Launcher {
         MinecraftDirectory mcdir = option.getMinecraftDirectory();
         Version version = option.getVersion();
 
-        // check libraries
-        Set<Library> missing = version.getMissingLibraries(mcdir);
-        if (!missing.isEmpty()) {
-            throw new MissingDependenciesException(missing);
+        File nativesDir = mcdir.getNatives(version);
+        Set<File> javaLibraries;
+
+        String planKey = null;
+        LaunchPlan plan = null;
+        if (launchPlanCache != null) {
+            try {
+                planKey = LaunchPlan.computeKey(mcdir, version, nativesStore);
+            } catch (IOException e) {
+                throw new LaunchException("Couldn't compute the launch plan key", e);
+            }
+            plan = launchPlanCache.get(planKey);
         }
 
-        Set<File> javaLibraries = new LinkedHashSet<>();
-        File nativesDir = mcdir.getNatives(version);
-        for (Library library : version.getLibraries()) {
-            File libraryFile = mcdir.getLibrary(library);
-            if (library instanceof Native) {
+        if (plan != null && plan.isUpToDate()) {
+            // the libraries have been checked, and the natives have been extracted
+            javaLibraries = new LinkedHashSet<>(plan.getClasspath());
+        } else {
+            javaLibraries = prepareLibraries(mcdir, version, nativesDir);
+            if (launchPlanCache != null) {
                 try {
-                    decompressZipWithExcludes(libraryFile, nativesDir, ((Native) library).getExtractExcludes());
+                    launchPlanCache.put(LaunchPlan.create(planKey, mcdir, version, javaLibraries, nativesDir));
                 } catch (IOException e) {
-                    throw new LaunchException("Couldn't uncompress " + libraryFile, e);
+                    // the launch doesn't depend on the plan
+                    launchPlanCache.remove(planKey);
                 }
-            } else {
-                javaLibraries.add(libraryFile);
             }
         }
-        javaLibraries.add(mcdir.getVersionJar(version));
         javaLibraries.addAll(option.extraClasspath());
 
         if (version.isLegacy()) {
             try {
-                buildLegacyAssets(mcdir, version);
+                new VirtualAssetsBuilder(mcdir).build(version.getAssets());
             } catch (IOException e) {
                 throw new LaunchException("Couldn't build virtual assets", e);
             }
@@ -153,83 +165,39 @@ class LauncherImpl implements Launcher {
         return new LaunchArgument(option, tokens, javaLibraries, nativesDir);
     }
 
-    private void buildLegacyAssets(MinecraftDirectory mcdir, Version version) throws IOException {
-        Set<Asset> assets = Versions.resolveAssets(mcdir, version);
-        if (assets != null)
-            for (Asset asset : assets)
-                FileUtils.copyFile(mcdir.getAsset(asset), mcdir.getVirtualAsset(asset));
-    }
-
-    private void decompressZipWithExcludes(File zip, File outputDir, Set<String> excludes) throws IOException {
-        if (!outputDir.exists())
-            outputDir.mkdirs();
-
-        try (ZipInputStream in = new ZipInputStream(Files.newInputStream(zip.toPath()))) {
-            ZipEntry entry;
-            byte[] buf = null;
-
-            while ((entry = in.getNextEntry()) != null) {
-                boolean excluded = false; // true if the file is in excludes list
-                if (excludes != null) {
-                    for (String exclude : excludes) {
-                        if (entry.getName().startsWith(exclude)) {
-                            excluded = true;
-                            break;
-                        }
-                    }
-                }
+    private Set<File> prepareLibraries(MinecraftDirectory mcdir, Version version, File nativesDir) throws LaunchException {
+        // check libraries
+        Set<Library> missing = version.getMissingLibraries(mcdir);
+        if (!missing.isEmpty()) {
+            throw new MissingDependenciesException(missing);
+        }
 
-                if (!excluded) {
-                    // 1 unused byte for sentinel
-                    if (buf == null || buf.length < entry.getSize() - 1) {
-                        buf = new byte[(int) entry.getSize() + 1];
-                    }
-                    int len = 0;
-                    int read;
-                    // read the zipped data fully
-                    while ((read = in.read(buf, len, buf.length - len)) != -1) {
-                        if (read == 0) {
-                            // reach the sentinel
-                            throw new IOException("actual length and entry length mismatch");
-                        }
-                        len += read;
-                    }
-
-                    File outFile = new File(outputDir, entry.getName());
-                    boolean match; // true if two files are the same
-                    if (outFile.isFile() && outFile.length() == entry.getSize()) {
-                        // same length, check the content
-                        match = true;
-                        if (!nativeFastCheck) {
-                            try (InputStream targetin = new BufferedInputStream(Files.newInputStream(outFile.toPath()))) {
-                                for (int i = 0; i < len; i++) {
-                                    if (buf[i] != (byte) targetin.read()) {
-                                        match = false;
-                                        break;
-                                    }
-                                }
-                            }
-                        }
-                    } else {
-                        // different length
-                        match = false;
-                    }
-
-                    if (!match) {
-                        if (entry.isDirectory()) {
-                            outFile.mkdir();//Fix extract directory as file
-                        } else {
-                            try (OutputStream out = Files.newOutputStream(outFile.toPath())) {
-                                out.write(buf, 0, len);
-                            }
-                        }
-                    }
+        Set<File> javaLibraries = new LinkedHashSet<>();
+        NativesExtractor nativesExtractor = new NativesExtractor(nativesDir, nativeFastCheck);
+        NativesStore store = nativesStore == null ? null : new NativesStore(nativesStore);
+        for (Library library : version.getLibraries()) {
+            File libraryFile = mcdir.getLibrary(library);
+            if (library instanceof Native) {
+                if (store == null) {
+                    nativesExtractor.add(libraryFile, ((Native) library).getExtractExcludes());
+                } else {
+                    store.add(libraryFile, ((Native) library).getExtractExcludes());
                 }
-
-                in.closeEntry();
+            } else {
+                javaLibraries.add(libraryFile);
             }
         }
-
+        try {
+            if (store == null) {
+                nativesExtractor.extract();
+            } else {
+                store.populate(nativesDir);
+            }
+        } catch (IOException e) {
+            throw new LaunchException("Couldn't uncompress natives into " + nativesDir, e);
+        }
+        javaLibraries.add(mcdir.getVersionJar(version));
+        return javaLibraries;
     }
 
     private void printDebugCommandline(String[] commandline) {
@@ -0,0 +1,284 @@
+package org.to2mbn.jmccc.launch;
+
+import org.to2mbn.jmccc.internal.org.json.JSONArray;
+import org.to2mbn.jmccc.internal.org.json.JSONException;
+import org.to2mbn.jmccc.internal.org.json.JSONObject;
+import org.to2mbn.jmccc.util.IOUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Extracts the native libraries of a version into its natives directory.
+ * <p>
+ * A manifest of the extracted files is written into the natives directory. If
+ * the native jars (compared by their sizes and modification times), their
+ * excludes and the extracted files haven't changed since the last extraction,
+ * the jars are not opened at all.
+ * <p>
+ * Otherwise the existing files are compared with the CRC-32 checksums in the
+ * central directories of the jars, and only the changed entries are extracted,
+ * in parallel. A native in use may crash the running JVM if it's rewritten, so
+ * the unchanged files are never touched, and the changed files are extracted
+ * into temporary files which are then renamed over the old ones. Renaming also
+ * keeps a file linked from a {@link NativesStore} intact.
+ */
+class NativesExtractor {
+
+    static final String MANIFEST_NAME = ".jmccc-natives.json";
+
+    private static final int MANIFEST_VERSION = 1;
+
+    private final File outputDir;
+    private final boolean fastCheck;
+    private final Map<File, Set<String>> sources = new LinkedHashMap<>();
+
+    /**
+     * @param outputDir the natives directory
+     * @param fastCheck true to compare only the sizes of the existing files
+     */
+    public NativesExtractor(File outputDir, boolean fastCheck) {
+        this.outputDir = outputDir;
+        this.fastCheck = fastCheck;
+    }
+
+    /**
+     * Adds a native jar to extract.
+     *
+     * @param jar      the jar
+     * @param excludes the prefixes of the entries not to extract, can be null
+     */
+    public void add(File jar, Set<String> excludes) {
+        Set<String> sorted = new TreeSet<>();
+        if (excludes != null) {
+            sorted.addAll(excludes);
+        }
+        sources.put(jar.getAbsoluteFile(), sorted);
+    }
+
+    /**
+     * Extracts the added jars.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    public void extract() throws IOException {
+        if (sources.isEmpty()) {
+            return;
+        }
+
+        JSONArray sourcesJson = new JSONArray();
+        for (Map.Entry<File, Set<String>> source : sources.entrySet()) {
+            File jar = source.getKey();
+            JSONObject sourceJson = new JSONObject();
+            sourceJson.put("path", jar.getPath());
+            sourceJson.put("size", jar.length());
+            sourceJson.put("lastModified", jar.lastModified());
+            sourceJson.put("excludes", new JSONArray(source.getValue()));
+            sourcesJson.put(sourceJson);
+        }
+
+        File manifestFile = new File(outputDir, MANIFEST_NAME);
+        if (isUpToDate(manifestFile, sourcesJson)) {
+            return;
+        }
+
+        if (!outputDir.isDirectory() && !outputDir.mkdirs()) {
+            throw new IOException("Cannot mkdirs: " + outputDir);
+        }
+        Files.deleteIfExists(manifestFile.toPath());
+
+        List<ZipFile> zips = new ArrayList<>();
+        JSONObject filesJson = new JSONObject();
+        try {
+            // if more than one jar contains the same file, the last one wins
+            Map<String, ExtractJob> jobs = new LinkedHashMap<>();
+            for (Map.Entry<File, Set<String>> source : sources.entrySet()) {
+                ZipFile zip = new ZipFile(source.getKey());
+                zips.add(zip);
+                Enumeration<? extends ZipEntry> entries = zip.entries();
+                while (entries.hasMoreElements()) {
+                    ZipEntry entry = entries.nextElement();
+                    if (isExcluded(entry.getName(), source.getValue())) {
+                        continue;
+                    }
+                    File outFile = resolve(entry.getName());
+                    if (entry.isDirectory()) {
+                        if (!outFile.isDirectory() && !outFile.mkdirs()) {
+                            throw new IOException("Cannot mkdirs: " + outFile);
+                        }
+                    } else {
+                        jobs.put(entry.getName(), new ExtractJob(zip, entry, outFile));
+                    }
+                }
+            }
+
+            List<ExtractJob> changed = new ArrayList<>();
+            for (ExtractJob job : jobs.values()) {
+                if (job.isUpToDate()) {
+                    filesJson.put(job.entry.getName(), job.toJson());
+                } else {
+                    changed.add(job);
+                }
+            }
+            ParallelTasks.runAll(changed, "natives-extractor");
+            for (ExtractJob job : changed) {
+                filesJson.put(job.entry.getName(), job.toJson());
+            }
+        } finally {
+            for (ZipFile zip : zips) {
+                zip.close();
+            }
+        }
+
+        JSONObject manifest = new JSONObject();
+        manifest.put("version", MANIFEST_VERSION);
+        manifest.put("sources", sourcesJson);
+        manifest.put("files", filesJson);
+        try (Writer writer = Files.newBufferedWriter(manifestFile.toPath(), StandardCharsets.UTF_8)) {
+            manifest.write(writer);
+        }
+    }
+
+    private boolean isUpToDate(File manifestFile, JSONArray sourcesJson) {
+        if (!manifestFile.isFile()) {
+            return false;
+        }
+        try {
+            JSONObject manifest = IOUtils.toJson(manifestFile);
+            // parses the sources again, so that the numbers have the same types
+            if (manifest.optInt("version") != MANIFEST_VERSION || !new JSONArray(sourcesJson.toString()).similar(manifest.optJSONArray("sources"))) {
+                return false;
+            }
+            JSONObject filesJson = manifest.getJSONObject("files");
+            for (String name : filesJson.keySet()) {
+                JSONObject fileJson = filesJson.getJSONObject(name);
+                File file = resolve(name);
+                if (!file.isFile()
+                        || file.length() != fileJson.getLong("size")
+                        || file.lastModified() != fileJson.getLong("lastModified")) {
+                    return false;
+                }
+            }
+            return true;
+        } catch (IOException | JSONException e) {
+            // a broken manifest
+            return false;
+        }
+    }
+
+    private File resolve(String name) throws IOException {
+        File file = new File(outputDir, name);
+        Path dir = outputDir.toPath().toAbsolutePath().normalize();
+        if (!file.toPath().toAbsolutePath().normalize().startsWith(dir)) {
+            throw new IOException("Entry is outside of the natives directory: " + name);
+        }
+        return file;
+    }
+
+    private static boolean isExcluded(String name, Set<String> excludes) {
+        for (String exclude : excludes) {
+            if (name.startsWith(exclude)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static long crc32(File file) throws IOException {
+        CRC32 crc = new CRC32();
+        byte[] buf = new byte[64 * 1024];
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            int read;
+            while ((read = in.read(buf)) != -1) {
+                crc.update(buf, 0, read);
+            }
+        }
+        return crc.getValue();
+    }
+
+    private class ExtractJob implements Callable<ExtractJob> {
+
+        final ZipFile zip;
+        final ZipEntry entry;
+        final File outFile;
+
+        ExtractJob(ZipFile zip, ZipEntry entry, File outFile) {
+            this.zip = zip;
+            this.entry = entry;
+            this.outFile = outFile;
+        }
+
+        boolean isUpToDate() throws IOException {
+            if (!outFile.isFile() || outFile.length() != entry.getSize()) {
+                return false;
+            }
+            return fastCheck || entry.getCrc() == -1 || crc32(outFile) == entry.getCrc();
+        }
+
+        @Override
+        public ExtractJob call() throws IOException {
+            File parent = outFile.getParentFile();
+            if (!parent.isDirectory() && !parent.mkdirs() && !parent.isDirectory()) {
+                throw new IOException("Cannot mkdirs: " + parent);
+            }
+
+            // the old file may be in use, or be a hard link into the natives store
+            Path tmp = Files.createTempFile(parent.toPath(), outFile.getName(), ".tmp");
+            try {
+                CRC32 crc = new CRC32();
+                long size = 0;
+                byte[] buf = new byte[64 * 1024];
+                try (InputStream in = zip.getInputStream(entry);
+                     OutputStream out = Files.newOutputStream(tmp)) {
+                    int read;
+                    while ((read = in.read(buf)) != -1) {
+                        crc.update(buf, 0, read);
+                        out.write(buf, 0, read);
+                        size += read;
+                    }
+                }
+                if ((entry.getSize() != -1 && size != entry.getSize())
+                        || (entry.getCrc() != -1 && crc.getValue() != entry.getCrc())) {
+                    throw new IOException("Corrupted entry " + entry.getName() + " in " + zip.getName());
+                }
+                try {
+                    Files.move(tmp, outFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(tmp, outFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                }
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+            return this;
+        }
+
+        JSONObject toJson() {
+            JSONObject json = new JSONObject();
+            json.put("crc", entry.getCrc());
+            json.put("size", outFile.length());
+            json.put("lastModified", outFile.lastModified());
+            return json;
+        }
+
+    }
+
+}
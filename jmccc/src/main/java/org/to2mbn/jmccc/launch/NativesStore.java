@@ -0,0 +1,158 @@
+package org.to2mbn.jmccc.launch;
+
+import org.to2mbn.jmccc.util.ChecksumUtils;
+import org.to2mbn.jmccc.util.HexUtils;
+import org.to2mbn.jmccc.util.Platform;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A content-addressed store of extracted natives, shared by all the versions
+ * and the game directories on the host.
+ * <p>
+ * Each native jar is extracted once into <code>&lt;sha1&gt;-&lt;platform&gt;</code>
+ * in the store, with no excludes. The natives directory of a version is then
+ * populated with hard links to the files in the store, so launching a version
+ * whose natives have ever been extracted costs no extraction. If hard links are
+ * not supported (e.g. the store is on another file system), the files are
+ * copied.
+ * <p>
+ * The entries of the store are written into a temporary directory and then
+ * renamed, so that concurrent launchers never see a partial entry. The files
+ * in the store must not be modified, since they are shared through the links.
+ */
+class NativesStore {
+
+    private static final String PLATFORM = Platform.CURRENT.name().toLowerCase() + "-" + System.getProperty("os.arch");
+
+    private final File root;
+    private final Map<File, Set<String>> sources = new LinkedHashMap<>();
+    private final FileLinker linker = new FileLinker();
+
+    /**
+     * @param root the root directory of the store
+     */
+    public NativesStore(File root) {
+        this.root = root;
+    }
+
+    /**
+     * Adds a native jar to extract.
+     *
+     * @param jar      the jar
+     * @param excludes the prefixes of the entries not to extract, can be null
+     */
+    public void add(File jar, Set<String> excludes) {
+        sources.put(jar.getAbsoluteFile(), excludes);
+    }
+
+    /**
+     * Populates the natives directory with the files of the added jars,
+     * extracting the jars into the store if they haven't been extracted.
+     *
+     * @param nativesDir the natives directory
+     * @throws IOException if an I/O error occurs
+     */
+    public void populate(File nativesDir) throws IOException {
+        Files.createDirectories(nativesDir.toPath());
+        for (Map.Entry<File, Set<String>> source : sources.entrySet()) {
+            Path entry = getEntry(source.getKey());
+            link(entry, nativesDir.toPath(), source.getValue());
+        }
+    }
+
+    private Path getEntry(File jar) throws IOException {
+        String sha1;
+        try {
+            sha1 = HexUtils.bytesToHex(ChecksumUtils.compute(jar, "SHA-1"));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException("SHA-1 is not supported", e);
+        }
+        Path entry = root.toPath().resolve(sha1 + "-" + PLATFORM);
+        if (Files.isDirectory(entry)) {
+            return entry;
+        }
+
+        Files.createDirectories(root.toPath());
+        Path tmp = Files.createTempDirectory(root.toPath(), sha1 + ".tmp");
+        try {
+            NativesExtractor extractor = new NativesExtractor(tmp.toFile(), false);
+            extractor.add(jar, null);
+            extractor.extract();
+            try {
+                Files.move(tmp, entry, StandardCopyOption.ATOMIC_MOVE);
+            } catch (FileAlreadyExistsException e) {
+                // extracted by another launcher
+            } catch (IOException e) {
+                if (!Files.isDirectory(entry)) {
+                    throw e;
+                }
+                // extracted by another launcher, and the platform reports it differently
+            }
+        } finally {
+            if (Files.exists(tmp)) {
+                deleteRecursively(tmp);
+            }
+        }
+        return entry;
+    }
+
+    private void link(final Path entry, final Path nativesDir, final Set<String> excludes) throws IOException {
+        Files.walkFileTree(entry, new SimpleFileVisitor<Path>() {
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                String name = entry.relativize(file).toString().replace(File.separatorChar, '/');
+                if (NativesExtractor.MANIFEST_NAME.equals(name) || isExcluded(name, excludes)) {
+                    return FileVisitResult.CONTINUE;
+                }
+                linker.link(file, nativesDir.resolve(name));
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private static boolean isExcluded(String name, Set<String> excludes) {
+        if (excludes != null) {
+            for (String exclude : excludes) {
+                if (name.startsWith(exclude)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static void deleteRecursively(Path dir) throws IOException {
+        Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+                if (exc != null) {
+                    throw exc;
+                }
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+}
@@ -0,0 +1,74 @@
+package org.to2mbn.jmccc.launch;
+
+import org.to2mbn.jmccc.option.MinecraftDirectory;
+import org.to2mbn.jmccc.util.IOUtils;
+import org.to2mbn.jmccc.version.Asset;
+import org.to2mbn.jmccc.version.parsing.Versions;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+
+/**
+ * Materializes the virtual legacy assets from the asset objects.
+ * <p>
+ * The assets are hard-linked (or copied, see {@link FileLinker}) in parallel,
+ * and the assets which are already up to date are skipped. A marker recording
+ * the asset index is written after a successful build, so a launch with an
+ * unchanged asset index doesn't touch the assets at all.
+ */
+class VirtualAssetsBuilder {
+
+    static final String MARKER_NAME = ".jmccc-virtual-assets";
+
+    private final MinecraftDirectory mcdir;
+    private final FileLinker linker = new FileLinker();
+
+    public VirtualAssetsBuilder(MinecraftDirectory mcdir) {
+        this.mcdir = mcdir;
+    }
+
+    /**
+     * Builds the virtual legacy assets of the given asset index. Nothing is
+     * done if the asset index doesn't exist.
+     *
+     * @param assets the name of the asset index
+     * @throws IOException if an I/O error occurs
+     */
+    public void build(String assets) throws IOException {
+        File index = mcdir.getAssetIndex(assets);
+        File marker = new File(mcdir.getVirtualLegacyAssets(), MARKER_NAME);
+        String stamp = assets + "\n" + index.length() + "\n" + index.lastModified() + "\n";
+        if (marker.isFile() && stamp.equals(IOUtils.toString(marker))) {
+            return;
+        }
+
+        Set<Asset> assetSet = Versions.resolveAssets(mcdir, assets);
+        if (assetSet == null) {
+            return;
+        }
+
+        Files.deleteIfExists(marker.toPath());
+        List<Callable<Void>> tasks = new ArrayList<>(assetSet.size());
+        for (final Asset asset : assetSet) {
+            tasks.add(new Callable<Void>() {
+
+                @Override
+                public Void call() throws IOException {
+                    linker.link(mcdir.getAsset(asset).toPath(), mcdir.getVirtualAsset(asset).toPath());
+                    return null;
+                }
+            });
+        }
+        ParallelTasks.runAll(tasks, "virtual-assets-builder");
+
+        Files.createDirectories(marker.getParentFile().toPath());
+        Files.write(marker.toPath(), stamp.getBytes(StandardCharsets.UTF_8));
+    }
+
+}
@@ -0,0 +1,339 @@
+package org.to2mbn.jmccc.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Verifies the checksums of files in parallel.
+ * <p>
+ * The files are read with large direct buffers taken from a small bounded
+ * pool, and hashed with cloned MessageDigests (see
+ * {@link ChecksumUtils#getDigest(String)}). The number of files read at the
+ * same time is bounded by the parallelism of the engine, which should be
+ * chosen according to the storage rather than the number of processors.
+ * <p>
+ * This class is thread-safe.
+ */
+public class ChecksumEngine implements AutoCloseable {
+
+    private static final AtomicInteger ENGINE_NUMBER = new AtomicInteger(1);
+
+    private final int parallelism;
+    private final ExecutorService executor;
+
+    private final AtomicLong files = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+    private final Object activeLock = new Object();
+    private int active;
+    private long activeSince;
+    private long elapsed;
+
+    /**
+     * Constructs a ChecksumEngine.
+     *
+     * @param parallelism the max number of files to verify at the same time
+     * @throws IllegalArgumentException if <code>parallelism &lt; 1</code>
+     */
+    public ChecksumEngine(int parallelism) {
+        if (parallelism < 1)
+            throw new IllegalArgumentException("parallelism < 1");
+        this.parallelism = parallelism;
+
+        final int engineIdx = ENGINE_NUMBER.getAndIncrement();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(parallelism, parallelism, 10, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+
+            private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "checksumEngine-" + engineIdx + "-thread-" + threadNumber.getAndIncrement());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        executor.allowCoreThreadTimeOut(true);
+        this.executor = executor;
+    }
+
+    /**
+     * Constructs a ChecksumEngine with the default parallelism.
+     * <p>
+     * A few concurrent reads are enough to keep a disk busy, so the default
+     * parallelism is the number of processors, but no less than 2 and no more
+     * than 8.
+     */
+    public ChecksumEngine() {
+        this(Math.max(2, Math.min(8, Runtime.getRuntime().availableProcessors())));
+    }
+
+    /**
+     * Verifies a file on the current thread.
+     *
+     * @param request the file to verify
+     * @return true if the file exists and matches the checksum and the size
+     * @throws IOException              if an I/O error occurs
+     * @throws NoSuchAlgorithmException if the algorithm is not supported
+     */
+    public boolean verify(Request request) throws IOException, NoSuchAlgorithmException {
+        Objects.requireNonNull(request);
+        begin();
+        try {
+            return doVerify(request);
+        } finally {
+            end();
+        }
+    }
+
+    /**
+     * Verifies the files in parallel, and blocks until all of them are
+     * verified.
+     *
+     * @param requests the files to verify
+     * @return whether each file is valid, in the order of the requests
+     * @throws IOException              if an I/O error occurs
+     * @throws NoSuchAlgorithmException if the algorithm is not supported
+     * @throws InterruptedException     if the current thread is interrupted
+     *                                  while waiting
+     */
+    public boolean[] verifyAll(List<Request> requests) throws IOException, NoSuchAlgorithmException, InterruptedException {
+        Objects.requireNonNull(requests);
+        boolean[] result = new boolean[requests.size()];
+        if (requests.isEmpty()) {
+            return result;
+        }
+
+        begin();
+        List<Future<Boolean>> futures = new ArrayList<>(requests.size());
+        try {
+            for (final Request request : requests) {
+                Objects.requireNonNull(request);
+                futures.add(executor.submit(new Callable<Boolean>() {
+
+                    @Override
+                    public Boolean call() throws Exception {
+                        return doVerify(request);
+                    }
+                }));
+            }
+            for (int i = 0; i < result.length; i++) {
+                try {
+                    result[i] = futures.get(i).get();
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof IOException) {
+                        throw (IOException) cause;
+                    } else if (cause instanceof NoSuchAlgorithmException) {
+                        throw (NoSuchAlgorithmException) cause;
+                    } else if (cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
+                    } else if (cause instanceof Error) {
+                        throw (Error) cause;
+                    }
+                    throw new IllegalStateException(cause);
+                }
+            }
+            return result;
+        } finally {
+            for (Future<Boolean> future : futures) {
+                future.cancel(true);
+            }
+            end();
+        }
+    }
+
+    /**
+     * Gets the metrics of the verifications done by this engine.
+     *
+     * @return a snapshot of the metrics
+     */
+    public Metrics getMetrics() {
+        long elapsed;
+        synchronized (activeLock) {
+            elapsed = this.elapsed;
+            if (active > 0) {
+                elapsed += System.nanoTime() - activeSince;
+            }
+        }
+        return new Metrics(files.get(), bytes.get(), elapsed);
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Stops the worker threads. The running verifications are interrupted.
+     */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ChecksumEngine [parallelism=%d, metrics=%s]", parallelism, getMetrics());
+    }
+
+    private boolean doVerify(Request request) throws IOException, NoSuchAlgorithmException {
+        File file = request.getFile();
+        boolean valid = ChecksumUtils.verify(file, request.getChecksum(), request.getAlgorithm(), request.getSize());
+        long length = file.length();
+        if (request.getChecksum() != null && (request.getSize() == -1 || request.getSize() == length)) {
+            // the file has been read
+            bytes.addAndGet(length);
+        }
+        files.incrementAndGet();
+        return valid;
+    }
+
+    private void begin() {
+        synchronized (activeLock) {
+            if (active++ == 0) {
+                activeSince = System.nanoTime();
+            }
+        }
+    }
+
+    private void end() {
+        synchronized (activeLock) {
+            if (--active == 0) {
+                elapsed += System.nanoTime() - activeSince;
+            }
+        }
+    }
+
+    /**
+     * Describes a file to verify.
+     */
+    public static class Request {
+
+        private final File file;
+        private final String checksum;
+        private final String algorithm;
+        private final long size;
+
+        /**
+         * Constructs a Request.
+         *
+         * @param file      the file to verify
+         * @param checksum  the expected checksum (in hex), null if unknown
+         * @param algorithm the algorithm of the checksum
+         * @param size      the expected size of the file, -1 if unknown
+         * @throws NullPointerException if <code>file==null</code>, or
+         *                              <code>checksum!=null&amp;&amp;algorithm==null</code>
+         */
+        public Request(File file, String checksum, String algorithm, long size) {
+            this.file = Objects.requireNonNull(file);
+            this.checksum = checksum;
+            this.algorithm = checksum == null ? algorithm : Objects.requireNonNull(algorithm);
+            this.size = size;
+        }
+
+        /**
+         * Constructs a Request with a SHA-1 checksum.
+         *
+         * @param file     the file to verify
+         * @param checksum the expected SHA-1 checksum (in hex), null if unknown
+         * @param size     the expected size of the file, -1 if unknown
+         * @throws NullPointerException if <code>file==null</code>
+         */
+        public Request(File file, String checksum, long size) {
+            this(file, checksum, "SHA-1", size);
+        }
+
+        public File getFile() {
+            return file;
+        }
+
+        public String getChecksum() {
+            return checksum;
+        }
+
+        public String getAlgorithm() {
+            return algorithm;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Request [file=%s, checksum=%s, algorithm=%s, size=%d]", file, checksum, algorithm, size);
+        }
+
+    }
+
+    /**
+     * A snapshot of the metrics of a ChecksumEngine.
+     */
+    public static class Metrics {
+
+        private final long files;
+        private final long bytes;
+        private final long elapsedNanos;
+
+        public Metrics(long files, long bytes, long elapsedNanos) {
+            this.files = files;
+            this.bytes = bytes;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        /**
+         * Gets the number of the files verified.
+         *
+         * @return the number of the files verified
+         */
+        public long getFiles() {
+            return files;
+        }
+
+        /**
+         * Gets the number of the bytes hashed.
+         *
+         * @return the number of the bytes hashed
+         */
+        public long getBytes() {
+            return bytes;
+        }
+
+        /**
+         * Gets the time during which at least one verification was running.
+         *
+         * @return the elapsed time in nanoseconds
+         */
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        /**
+         * Gets the overall hashing throughput.
+         *
+         * @return the throughput in bytes per second, 0 if nothing is verified
+         */
+        public double getThroughput() {
+            return elapsedNanos == 0 ? 0 : bytes * 1e9 / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Metrics [files=%d, bytes=%d, elapsedNanos=%d, throughput=%.0f B/s]", files, bytes, elapsedNanos, getThroughput());
+        }
+
+    }
+
+}
@@ -1,24 +1,71 @@
 package org.to2mbn.jmccc.util;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
 import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public final class ChecksumUtils {
 
+    private static final int FILE_BUFFER_SIZE = 1024 * 1024;
+    private static final int FALLBACK_BUFFER_SIZE = 64 * 1024;
+
+    // no more direct buffers are allocated, the readers beyond them use small heap buffers
+    private static final int MAX_FILE_BUFFERS = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+    private static final Queue<ByteBuffer> FILE_BUFFERS = new ConcurrentLinkedQueue<>();
+    private static final AtomicInteger allocatedFileBuffers = new AtomicInteger();
+
+    // the digests are cloned from the prototypes, which is cheaper than looking up the providers
+    private static final ConcurrentMap<String, MessageDigest> DIGEST_PROTOTYPES = new ConcurrentHashMap<>();
+
     private ChecksumUtils() {
     }
 
+    /**
+     * Creates a MessageDigest of the given algorithm.
+     * <p>
+     * The MessageDigest is cloned from a cached instance if the algorithm
+     * supports cloning, which is cheaper than
+     * {@link MessageDigest#getInstance(String)}. Nothing is bound to the
+     * current thread, so this suits virtual threads as well.
+     *
+     * @param algorithm the name of the algorithm
+     * @return the MessageDigest
+     * @throws NoSuchAlgorithmException if the algorithm is not supported
+     */
+    public static MessageDigest getDigest(String algorithm) throws NoSuchAlgorithmException {
+        MessageDigest prototype = DIGEST_PROTOTYPES.get(algorithm);
+        if (prototype == null) {
+            prototype = MessageDigest.getInstance(algorithm);
+            DIGEST_PROTOTYPES.putIfAbsent(algorithm, prototype);
+            // the prototype itself is never handed out
+            return MessageDigest.getInstance(algorithm);
+        }
+        try {
+            return (MessageDigest) prototype.clone();
+        } catch (CloneNotSupportedException e) {
+            return MessageDigest.getInstance(algorithm);
+        }
+    }
+
     public static byte[] compute(InputStream in, String algorithm) throws IOException, NoSuchAlgorithmException {
         Objects.requireNonNull(in);
         Objects.requireNonNull(algorithm);
 
-        MessageDigest checksum = MessageDigest.getInstance(algorithm);
+        MessageDigest checksum = getDigest(algorithm);
         byte[] buffer = new byte[8192];
         int read;
         while ((read = in.read(buffer)) != -1) {
@@ -31,8 +78,39 @@ public final class ChecksumUtils {
         Objects.requireNonNull(file);
         Objects.requireNonNull(algorithm);
 
-        try (InputStream in = new FileInputStream(file)) {
-            return compute(in, algorithm);
+        MessageDigest checksum = getDigest(algorithm);
+        // a large direct buffer saves both system calls and the copying into a heap array
+        ByteBuffer buffer = acquireFileBuffer();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            for (;;) {
+                ((Buffer) buffer).clear();
+                if (channel.read(buffer) == -1) {
+                    break;
+                }
+                ((Buffer) buffer).flip();
+                checksum.update(buffer);
+            }
+        } finally {
+            releaseFileBuffer(buffer);
+        }
+        return checksum.digest();
+    }
+
+    private static ByteBuffer acquireFileBuffer() {
+        ByteBuffer buffer = FILE_BUFFERS.poll();
+        if (buffer != null) {
+            return buffer;
+        }
+        if (allocatedFileBuffers.incrementAndGet() <= MAX_FILE_BUFFERS) {
+            return ByteBuffer.allocateDirect(FILE_BUFFER_SIZE);
+        }
+        allocatedFileBuffers.decrementAndGet();
+        return ByteBuffer.allocate(FALLBACK_BUFFER_SIZE);
+    }
+
+    private static void releaseFileBuffer(ByteBuffer buffer) {
+        if (buffer.isDirect()) {
+            FILE_BUFFERS.offer(buffer);
         }
     }
 
@@ -0,0 +1,91 @@
+package org.to2mbn.jmccc.launch;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FileLinkerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testLinkAndSkip() throws Exception {
+        Path source = createFile("source", "content");
+        Path target = folder.getRoot().toPath().resolve("dir/target");
+        FileLinker linker = new FileLinker();
+
+        assertTrue(linker.link(source, target));
+        assertTrue(Files.isSameFile(source, target));
+        assertFalse(linker.link(source, target));
+    }
+
+    @Test
+    public void testDifferentTargetIsReplaced() throws Exception {
+        Path source = createFile("source", "content");
+        Path target = createFile("target", "another content");
+
+        assertTrue(new FileLinker().link(source, target));
+        assertEquals("content", new String(Files.readAllBytes(target), StandardCharsets.UTF_8));
+        assertEquals(2, folder.getRoot().list().length);
+    }
+
+    @Test
+    public void testConcurrentLinks() throws Exception {
+        final Path source = createFile("source", "content");
+        final FileLinker linker = new FileLinker();
+        final int threads = 8;
+        final int targets = 50;
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            for (int i = 0; i < targets; i++) {
+                final Path target = folder.getRoot().toPath().resolve("target-" + i);
+                final CyclicBarrier barrier = new CyclicBarrier(threads);
+                List<Future<Boolean>> futures = new ArrayList<>();
+                for (int j = 0; j < threads; j++) {
+                    futures.add(pool.submit(new Callable<Boolean>() {
+
+                        @Override
+                        public Boolean call() throws Exception {
+                            barrier.await();
+                            return linker.link(source, target);
+                        }
+                    }));
+                }
+                for (Future<Boolean> future : futures) {
+                    future.get();
+                }
+                assertArrayEquals(Files.readAllBytes(source), Files.readAllBytes(target));
+            }
+        } finally {
+            pool.shutdown();
+        }
+
+        // no temporary file is left
+        assertEquals(targets + 1, folder.getRoot().list().length);
+    }
+
+    private Path createFile(String name, String content) throws Exception {
+        Path file = folder.getRoot().toPath().resolve(name);
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+}
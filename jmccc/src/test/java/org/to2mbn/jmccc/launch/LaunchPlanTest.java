@@ -0,0 +1,123 @@
+package org.to2mbn.jmccc.launch;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.to2mbn.jmccc.option.MinecraftDirectory;
+import org.to2mbn.jmccc.version.DownloadInfo;
+import org.to2mbn.jmccc.version.Library;
+import org.to2mbn.jmccc.version.Native;
+import org.to2mbn.jmccc.version.Version;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class LaunchPlanTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private MinecraftDirectory mcdir;
+    private Version version;
+    private Set<File> classpath;
+    private File nativesDir;
+
+    @Before
+    public void setUp() throws Exception {
+        mcdir = new MinecraftDirectory(folder.getRoot());
+        Library library = new Library("org.example", "library", "1.0");
+        Native natives = new Native("org.example", "natives", "1.0", "natives-linux", "jar", Collections.singleton("META-INF/"));
+        version = new Version("1.0", "release", "Main", "1.0", Collections.<String>emptyList(), Collections.<String>emptyList(), null, "1.0",
+                new LinkedHashSet<>(Arrays.asList(library, natives)), false, null, Collections.<String, DownloadInfo>emptyMap());
+
+        write(mcdir.getLibrary(library), "library");
+        write(mcdir.getVersionJar(version), "game");
+        File nativesJar = mcdir.getLibrary(natives);
+        nativesJar.getParentFile().mkdirs();
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(nativesJar))) {
+            out.putNextEntry(new ZipEntry("lib.so"));
+            out.write("native".getBytes(StandardCharsets.UTF_8));
+        }
+
+        nativesDir = mcdir.getNatives(version);
+        NativesExtractor extractor = new NativesExtractor(nativesDir, false);
+        extractor.add(nativesJar, natives.getExtractExcludes());
+        extractor.extract();
+
+        classpath = new LinkedHashSet<>(Arrays.asList(mcdir.getLibrary(library), mcdir.getVersionJar(version)));
+    }
+
+    @Test
+    public void testCachedPlanIsUpToDate() throws Exception {
+        File cacheDir = folder.newFolder("plans");
+        String key = LaunchPlan.computeKey(mcdir, version, null);
+        new LaunchPlanCache(cacheDir).put(LaunchPlan.create(key, mcdir, version, classpath, nativesDir));
+
+        // a new cache reads the plan from the disk
+        LaunchPlan plan = new LaunchPlanCache(cacheDir).get(key);
+        assertNotNull(plan);
+        assertEquals(classpath, plan.getClasspath());
+        assertTrue(plan.isUpToDate());
+    }
+
+    @Test
+    public void testModifiedLibraryInvalidatesPlan() throws Exception {
+        LaunchPlan plan = createPlan();
+        File library = classpath.iterator().next();
+        library.setLastModified(library.lastModified() - 10000);
+        assertFalse(plan.isUpToDate());
+    }
+
+    @Test
+    public void testRewrittenNativeInvalidatesPlan() throws Exception {
+        LaunchPlan plan = createPlan();
+
+        // rewriting a file in place doesn't touch its directory
+        File lib = new File(nativesDir, "lib.so");
+        long dirModified = nativesDir.lastModified();
+        try (RandomAccessFile out = new RandomAccessFile(lib, "rw")) {
+            out.setLength(0);
+        }
+        nativesDir.setLastModified(dirModified);
+
+        assertFalse(plan.isUpToDate());
+    }
+
+    @Test
+    public void testDeletedNativeInvalidatesPlan() throws Exception {
+        LaunchPlan plan = createPlan();
+
+        long dirModified = nativesDir.lastModified();
+        assertTrue(new File(nativesDir, "lib.so").delete());
+        nativesDir.setLastModified(dirModified);
+
+        assertFalse(plan.isUpToDate());
+    }
+
+    private LaunchPlan createPlan() throws Exception {
+        LaunchPlan plan = LaunchPlan.create(LaunchPlan.computeKey(mcdir, version, null), mcdir, version, classpath, nativesDir);
+        assertTrue(plan.isUpToDate());
+        return plan;
+    }
+
+    private static void write(File file, String content) throws Exception {
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+}
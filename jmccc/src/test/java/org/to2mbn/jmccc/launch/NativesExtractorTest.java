@@ -0,0 +1,94 @@
+package org.to2mbn.jmccc.launch;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class NativesExtractorTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testExtract() throws Exception {
+        File jar = createJar("natives.jar", "lib.so", "native");
+        File nativesDir = new File(folder.getRoot(), "natives");
+
+        extract(jar, nativesDir);
+        assertEquals("native", read(new File(nativesDir, "lib.so")));
+        assertFalse(new File(nativesDir, "META-INF/MANIFEST.MF").exists());
+    }
+
+    @Test
+    public void testModifiedFileIsRepaired() throws Exception {
+        File jar = createJar("natives.jar", "lib.so", "native");
+        File nativesDir = new File(folder.getRoot(), "natives");
+        extract(jar, nativesDir);
+
+        // same size and mtime, only the checksum tells the difference
+        File lib = new File(nativesDir, "lib.so");
+        long lastModified = lib.lastModified();
+        try (RandomAccessFile out = new RandomAccessFile(lib, "rw")) {
+            out.write("broken".getBytes(StandardCharsets.UTF_8));
+        }
+        lib.setLastModified(lastModified);
+        new File(nativesDir, NativesExtractor.MANIFEST_NAME).delete();
+
+        extract(jar, nativesDir);
+        assertEquals("native", read(lib));
+    }
+
+    @Test
+    public void testStoreIsNotModifiedByExtraction() throws Exception {
+        File jar = createJar("natives.jar", "lib.so", "native");
+        File store = new File(folder.getRoot(), "store");
+        File nativesDir = new File(folder.getRoot(), "natives");
+
+        NativesStore nativesStore = new NativesStore(store);
+        nativesStore.add(jar, null);
+        nativesStore.populate(nativesDir);
+
+        // the natives directory is now populated with links into the store
+        File updated = createJar("natives-2.jar", "lib.so", "updated");
+        extract(updated, nativesDir);
+
+        assertEquals("updated", read(new File(nativesDir, "lib.so")));
+        File[] entries = store.listFiles();
+        assertEquals(1, entries.length);
+        assertEquals("native", read(new File(entries[0], "lib.so")));
+    }
+
+    private void extract(File jar, File nativesDir) throws Exception {
+        NativesExtractor extractor = new NativesExtractor(nativesDir, false);
+        extractor.add(jar, Collections.singleton("META-INF/"));
+        extractor.extract();
+    }
+
+    private File createJar(String name, String entry, String content) throws Exception {
+        File jar = new File(folder.getRoot(), name);
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(jar))) {
+            out.putNextEntry(new ZipEntry("META-INF/MANIFEST.MF"));
+            out.write("Manifest-Version: 1.0\n".getBytes(StandardCharsets.UTF_8));
+            out.putNextEntry(new ZipEntry(entry));
+            out.write(content.getBytes(StandardCharsets.UTF_8));
+        }
+        return jar;
+    }
+
+    private static String read(File file) throws Exception {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+
+}
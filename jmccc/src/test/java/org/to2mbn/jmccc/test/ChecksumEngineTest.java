@@ -0,0 +1,114 @@
+package org.to2mbn.jmccc.test;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.to2mbn.jmccc.util.ChecksumEngine;
+import org.to2mbn.jmccc.util.ChecksumUtils;
+import org.to2mbn.jmccc.util.HexUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+public class ChecksumEngineTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testComputeLargeFile() throws Exception {
+        // larger than the read buffer
+        byte[] data = new byte[3 * 1024 * 1024 + 17];
+        new Random(1).nextBytes(data);
+        File file = folder.newFile("large");
+        Files.write(file.toPath(), data);
+
+        byte[] expected = MessageDigest.getInstance("SHA-1").digest(data);
+        assertArrayEquals(expected, ChecksumUtils.compute(file, "SHA-1"));
+        assertArrayEquals(expected, ChecksumUtils.compute(new ByteArrayInputStream(data), "SHA-1"));
+    }
+
+    @Test
+    public void testManyConcurrentReaders() throws Exception {
+        // more readers than the pooled direct buffers
+        final int readers = 64;
+        byte[] data = new byte[200000];
+        new Random(3).nextBytes(data);
+        final File file = folder.newFile("shared");
+        Files.write(file.toPath(), data);
+        byte[] expected = MessageDigest.getInstance("SHA-1").digest(data);
+        assertNotSame(ChecksumUtils.getDigest("SHA-1"), ChecksumUtils.getDigest("SHA-1"));
+
+        final CyclicBarrier barrier = new CyclicBarrier(readers);
+        ExecutorService pool = Executors.newFixedThreadPool(readers);
+        try {
+            List<Future<byte[]>> results = new ArrayList<>();
+            for (int i = 0; i < readers; i++) {
+                results.add(pool.submit(new Callable<byte[]>() {
+
+                    @Override
+                    public byte[] call() throws Exception {
+                        barrier.await();
+                        return ChecksumUtils.compute(file, "SHA-1");
+                    }
+                }));
+            }
+            for (Future<byte[]> result : results) {
+                assertArrayEquals(expected, result.get());
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testVerifyAll() throws Exception {
+        Random random = new Random(2);
+        List<ChecksumEngine.Request> requests = new ArrayList<>();
+        long bytes = 0;
+        for (int i = 0; i < 32; i++) {
+            byte[] data = new byte[random.nextInt(100000)];
+            random.nextBytes(data);
+            File file = folder.newFile("file" + i);
+            Files.write(file.toPath(), data);
+            String sha1 = HexUtils.bytesToHex(MessageDigest.getInstance("SHA-1").digest(data));
+            if (i % 3 == 0) {
+                // wrong checksum
+                sha1 = sha1.substring(1) + "0";
+            }
+            requests.add(new ChecksumEngine.Request(file, sha1, data.length));
+            bytes += data.length;
+        }
+        requests.add(new ChecksumEngine.Request(new File(folder.getRoot(), "missing"), null, -1));
+
+        try (ChecksumEngine engine = new ChecksumEngine(4)) {
+            boolean[] result = engine.verifyAll(requests);
+            assertEquals(requests.size(), result.length);
+            for (int i = 0; i < 32; i++) {
+                assertEquals("file" + i, i % 3 != 0, result[i]);
+            }
+            assertEquals(false, result[32]);
+
+            ChecksumEngine.Metrics metrics = engine.getMetrics();
+            assertEquals(33, metrics.getFiles());
+            assertEquals(bytes, metrics.getBytes());
+            assertTrue(metrics.getElapsedNanos() > 0);
+        }
+    }
+
+}
@@ -0,0 +1,64 @@
+package org.to2mbn.jmccc.test;
+
+import org.junit.Test;
+import org.to2mbn.jmccc.auth.OfflineAuthenticator;
+import org.to2mbn.jmccc.launch.LaunchArgument;
+import org.to2mbn.jmccc.option.LaunchOption;
+import org.to2mbn.jmccc.option.MinecraftDirectory;
+import org.to2mbn.jmccc.version.DownloadInfo;
+import org.to2mbn.jmccc.version.Library;
+import org.to2mbn.jmccc.version.Version;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+public class LaunchArgumentTest {
+
+    private static LaunchArgument createArgument(List<String> gameArgs, List<String> jvmArgs, Map<String, String> customized) {
+        Version version = new Version("test", null, "Main", "test", gameArgs, jvmArgs, null, "test", Collections.<Library>emptySet(), false, null, Collections.<String, DownloadInfo>emptyMap());
+        LaunchOption option = new LaunchOption(version, new OfflineAuthenticator("player"), new MinecraftDirectory("mcdir"));
+        option.setMaxMemory(0);
+        option.commandlineVariables().putAll(customized);
+        Map<String, String> variables = new HashMap<>();
+        variables.put("auth_player_name", "player");
+        variables.put("version_name", "test");
+        variables.put("natives_directory", "natives");
+        return new LaunchArgument(option, variables, new LinkedHashSet<>(Arrays.asList(new File("a.jar"))), new File("natives"));
+    }
+
+    @Test
+    public void testGameArguments() {
+        LaunchArgument argument = createArgument(Arrays.asList("--username", "${auth_player_name}", "--version", "${version_name}-${version_name}"), new ArrayList<String>(), Collections.<String, String>emptyMap());
+        assertEquals(Arrays.asList("--username", "player", "--version", "test-test"), argument.getGameArguments());
+    }
+
+    @Test
+    public void testUnknownAndUnclosedPlaceholders() {
+        LaunchArgument argument = createArgument(Arrays.asList("${unknown}", "${auth_player_name", "$${version_name}}"), new ArrayList<String>(), Collections.<String, String>emptyMap());
+        assertEquals(Arrays.asList("${unknown}", "${auth_player_name", "$test}"), argument.getGameArguments());
+    }
+
+    @Test
+    public void testCustomizedVariables() {
+        LaunchArgument argument = createArgument(Arrays.asList("${auth_player_name}", "${extra}"), new ArrayList<String>(), Collections.singletonMap("extra", "value"));
+        assertEquals(Arrays.asList("player", "value"), argument.getGameArguments());
+    }
+
+    @Test
+    public void testDefaultJvmArguments() {
+        List<String> jvmArgs = new ArrayList<>();
+        LaunchArgument argument = createArgument(new ArrayList<String>(), jvmArgs, Collections.<String, String>emptyMap());
+        assertEquals(Arrays.asList("-Djava.library.path=natives", "-cp", new File("a.jar").getAbsolutePath()), argument.getJvmArguments());
+        // the version is not modified
+        assertEquals(Collections.emptyList(), jvmArgs);
+    }
+
+}
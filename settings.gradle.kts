@@ -8,6 +8,7 @@ pluginManagement {
     plugins {
         id("com.github.johnrengelman.shadow") version "7.1.2"
         id("io.github.gradle-nexus.publish-plugin") version "1.1.0"
+        id("me.champeau.jmh") version "0.7.2"
     }
 }
 
@@ -18,3 +19,4 @@ include(":jmccc")
 include(":jmccc-mcdownloader")
 include(":jmccc-cli")
 include(":jmccc-microsoft-authenticator")
+include(":jmccc-benchmarks")